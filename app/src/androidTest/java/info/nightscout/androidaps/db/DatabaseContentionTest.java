@@ -0,0 +1,94 @@
+package info.nightscout.androidaps.db;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Contention benchmark: NS like ingest of BG readings running concurrently with
+ * IOB/COB like history reads. Reports reader latency with and without WAL.
+ */
+public class DatabaseContentionTest extends AndroidTestCase {
+    private static final String TAG = "DatabaseContentionTest";
+    private static final String DATABASE = "AndroidAPSDb-contention";
+    private static final int RECORDS = 2000;
+
+    @Override
+    protected void tearDown() throws Exception {
+        getContext().deleteDatabase(DATABASE);
+        super.tearDown();
+    }
+
+    public void testReadLatencyWithWal() throws Exception {
+        List<Long> latencies = runBenchmark(true);
+        assertTrue(latencies.size() > 0);
+    }
+
+    public void testReadLatencyWithoutWal() throws Exception {
+        List<Long> latencies = runBenchmark(false);
+        assertTrue(latencies.size() > 0);
+    }
+
+    private List<Long> runBenchmark(boolean wal) throws Exception {
+        getContext().deleteDatabase(DATABASE);
+        final DatabaseHelper helper = new DatabaseHelper(getContext(), DATABASE);
+        helper.setWriteAheadLoggingEnabled(wal);
+
+        final long start = System.currentTimeMillis() - RECORDS * 60 * 1000L;
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+        final AtomicBoolean ingestRunning = new AtomicBoolean(true);
+
+        Thread ingest = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < RECORDS; i++) {
+                    BgReading bgReading = new BgReading();
+                    bgReading.date = start + i * 60 * 1000L;
+                    bgReading.value = 100 + i % 50;
+                    bgReading.direction = "Flat";
+                    helper.createIfNotExists(bgReading, "benchmark");
+                }
+                ingestRunning.set(false);
+            }
+        });
+        Thread calculation = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (ingestRunning.get()) {
+                    long t = System.nanoTime();
+                    helper.getBgreadingsDataFromTime(start, false);
+                    helper.getTreatmentDataFromTime(start, false);
+                    helper.getTemporaryBasalsDataFromTime(start, false);
+                    latencies.add((System.nanoTime() - t) / 1000);
+                }
+            }
+        });
+
+        long ingestStart = System.currentTimeMillis();
+        ingest.start();
+        calculation.start();
+        ingest.join();
+        calculation.join();
+        long ingestTime = System.currentTimeMillis() - ingestStart;
+        helper.close();
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        if (sorted.size() > 0) {
+            long sum = 0;
+            for (long l : sorted)
+                sum += l;
+            Log.d(TAG, "WAL: " + wal
+                    + " ingest: " + RECORDS + " records in " + ingestTime + " ms"
+                    + " reads: " + sorted.size()
+                    + " avg: " + sum / sorted.size() + " us"
+                    + " p95: " + sorted.get((int) (sorted.size() * 0.95)) + " us"
+                    + " max: " + sorted.get(sorted.size() - 1) + " us");
+        }
+        return sorted;
+    }
+}
@@ -45,6 +45,7 @@ import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.plugins.Overview.events.EventSetWakeLock;
 import info.nightscout.androidaps.tabs.SlidingTabLayout;
 import info.nightscout.androidaps.tabs.TabPageAdapter;
+import info.nightscout.utils.ImportExportHistory;
 import info.nightscout.utils.ImportExportPrefs;
 import info.nightscout.utils.LocaleHelper;
 import info.nightscout.utils.LogDialog;
@@ -380,6 +381,14 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                                 ImportExportPrefs.verifyStoragePermissions(activity);
                                 ImportExportPrefs.importSharedPreferences(activity);
                                 break;
+                            case R.id.nav_export_history:
+                                ImportExportPrefs.verifyStoragePermissions(activity);
+                                ImportExportHistory.exportHistory(activity);
+                                break;
+                            case R.id.nav_import_history:
+                                ImportExportPrefs.verifyStoragePermissions(activity);
+                                ImportExportHistory.importHistory(activity);
+                                break;
                             case R.id.nav_show_logcat:
                                 LogDialog.showLogcat(v.getContext());
                                 break;
@@ -68,6 +68,8 @@ import info.nightscout.androidaps.plugins.SourceXdrip.SourceXdripPlugin;
 import info.nightscout.androidaps.plugins.Treatments.TreatmentsPlugin;
 import info.nightscout.androidaps.plugins.Wear.WearPlugin;
 import info.nightscout.androidaps.plugins.XDripStatusline.StatuslinePlugin;
+import info.nightscout.androidaps.queue.ConnectionHealth;
+import info.nightscout.androidaps.queue.PreConnectScheduler;
 import info.nightscout.androidaps.receivers.DataReceiver;
 import info.nightscout.androidaps.receivers.KeepAliveReceiver;
 import info.nightscout.androidaps.receivers.NSAlarmReceiver;
@@ -163,6 +165,8 @@ public class MainApp extends Application {
             pluginsList.add(sConfigBuilder = ConfigBuilderFragment.getPlugin());
 
             MainApp.getConfigBuilder().initialize();
+            PreConnectScheduler.getInstance().start();
+            ConnectionHealth.getInstance().start();
         }
         NSUpload.uploadAppStart();
         if (Config.NSCLIENT)
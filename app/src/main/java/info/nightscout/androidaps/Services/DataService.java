@@ -21,6 +21,7 @@ import info.nightscout.androidaps.db.CareportalEvent;
 import info.nightscout.androidaps.events.EventNewBasalProfile;
 import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.plugins.ConstraintsObjectives.ObjectivesPlugin;
+import info.nightscout.androidaps.plugins.NSClientInternal.NSBatchIngest;
 import info.nightscout.androidaps.plugins.NSClientInternal.data.NSDeviceStatus;
 import info.nightscout.androidaps.plugins.NSClientInternal.data.NSMbg;
 import info.nightscout.androidaps.plugins.NSClientInternal.data.NSSettingsStatus;
@@ -280,7 +281,17 @@ public class DataService extends IntentService {
         }
     }
 
-    private void handleNewDataFromNSClient(Intent intent) {
+    // same db worker as records received by NSClient socket
+    private void handleNewDataFromNSClient(final Intent intent) {
+        NSBatchIngest.runOnWorker(new Runnable() {
+            @Override
+            public void run() {
+                storeNewDataFromNSClient(intent);
+            }
+        });
+    }
+
+    private void storeNewDataFromNSClient(Intent intent) {
         Bundle bundles = intent.getExtras();
         if (bundles == null) return;
         if (Config.logIncommingData)
@@ -381,15 +392,14 @@ public class DataService extends IntentService {
             try {
                 if (bundles.containsKey("treatment")) {
                     String trstring = bundles.getString("treatment");
-                    handleAddChangeDataFromNS(trstring);
+                    handleAddChangeDataFromNS(new JSONObject(trstring));
                 }
                 if (bundles.containsKey("treatments")) {
                     String trstring = bundles.getString("treatments");
                     JSONArray jsonArray = new JSONArray(trstring);
                     for (int i = 0; i < jsonArray.length(); i++) {
                         JSONObject trJson = jsonArray.getJSONObject(i);
-                        String trstr = trJson.toString();
-                        handleAddChangeDataFromNS(trstr);
+                        handleAddChangeDataFromNS(trJson);
                     }
                 }
             } catch (Exception e) {
@@ -525,7 +535,7 @@ public class DataService extends IntentService {
         MainApp.getDbHelper().foodHelper.createFoodFromJsonIfNotExists(trJson);
     }
 
-    private void handleRemovedRecordFromNS(String _id) {
+    public static void handleRemovedRecordFromNS(String _id) {
         MainApp.getDbHelper().deleteTreatmentById(_id);
         MainApp.getDbHelper().deleteTempTargetById(_id);
         MainApp.getDbHelper().deleteTempBasalById(_id);
@@ -534,8 +544,7 @@ public class DataService extends IntentService {
         MainApp.getDbHelper().deleteProfileSwitchById(_id);
     }
 
-    private void handleAddChangeDataFromNS(String trstring) throws JSONException {
-        JSONObject trJson = new JSONObject(trstring);
+    public static void handleAddChangeDataFromNS(JSONObject trJson) throws JSONException {
         handleDanaRHistoryRecords(trJson); // update record _id in history
         handleAddChangeTempTargetRecord(trJson);
         handleAddChangeTempBasalRecord(trJson);
@@ -545,38 +554,38 @@ public class DataService extends IntentService {
         handleAddChangeProfileSwitchRecord(trJson);
     }
 
-    public void handleDanaRHistoryRecords(JSONObject trJson) {
+    public static void handleDanaRHistoryRecords(JSONObject trJson) {
         if (trJson.has(DanaRNSHistorySync.DANARSIGNATURE)) {
             MainApp.getDbHelper().updateDanaRHistoryRecordId(trJson);
         }
     }
 
-    public void handleAddChangeTreatmentRecord(JSONObject trJson) throws JSONException {
+    public static void handleAddChangeTreatmentRecord(JSONObject trJson) throws JSONException {
         if (trJson.has("insulin") || trJson.has("carbs")) {
             MainApp.getDbHelper().createTreatmentFromJsonIfNotExists(trJson);
             return;
         }
     }
 
-    public void handleAddChangeTempTargetRecord(JSONObject trJson) throws JSONException {
+    public static void handleAddChangeTempTargetRecord(JSONObject trJson) throws JSONException {
         if (trJson.has("eventType") && trJson.getString("eventType").equals(CareportalEvent.TEMPORARYTARGET)) {
             MainApp.getDbHelper().createTemptargetFromJsonIfNotExists(trJson);
         }
     }
 
-    public void handleAddChangeTempBasalRecord(JSONObject trJson) throws JSONException {
+    public static void handleAddChangeTempBasalRecord(JSONObject trJson) throws JSONException {
         if (trJson.has("eventType") && trJson.getString("eventType").equals(CareportalEvent.TEMPBASAL)) {
             MainApp.getDbHelper().createTempBasalFromJsonIfNotExists(trJson);
         }
     }
 
-    public void handleAddChangeExtendedBolusRecord(JSONObject trJson) throws JSONException {
+    public static void handleAddChangeExtendedBolusRecord(JSONObject trJson) throws JSONException {
         if (trJson.has("eventType") && trJson.getString("eventType").equals(CareportalEvent.COMBOBOLUS)) {
             MainApp.getDbHelper().createExtendedBolusFromJsonIfNotExists(trJson);
         }
     }
 
-    public void handleAddChangeCareportalEventRecord(JSONObject trJson) throws JSONException {
+    public static void handleAddChangeCareportalEventRecord(JSONObject trJson) throws JSONException {
         if (trJson.has("insulin") && trJson.getDouble("insulin") > 0)
             return;
         if (trJson.has("carbs") && trJson.getDouble("carbs") > 0)
@@ -607,7 +616,7 @@ public class DataService extends IntentService {
         }
     }
 
-    public void handleAddChangeProfileSwitchRecord(JSONObject trJson) throws JSONException {
+    public static void handleAddChangeProfileSwitchRecord(JSONObject trJson) throws JSONException {
         if (trJson.has("eventType") && trJson.getString("eventType").equals(CareportalEvent.PROFILESWITCH)) {
             MainApp.getDbHelper().createProfileSwitchFromJsonIfNotExists(trJson);
         }
@@ -0,0 +1,161 @@
+package info.nightscout.androidaps.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.interfaces.DanaRInterface;
+import info.nightscout.androidaps.interfaces.PumpInterface;
+
+/**
+ * Batch of pump operations executed in one connected session.
+ * <p>
+ * Status is read and events are loaded at most once, after all changes,
+ * so they reflect the state the session leaves in the pump.
+ */
+
+public class PumpSession {
+
+    public enum Operation {
+        TEMP_BASAL_ABSOLUTE,
+        TEMP_BASAL_PERCENT,
+        CANCEL_TEMP_BASAL,
+        READ_STATUS,
+        LOAD_EVENTS
+    }
+
+    public static class Step {
+        public final Operation operation;
+        double absoluteRate;
+        int percent;
+        int durationInMinutes;
+        boolean enforceNew;
+        // dropped as redundant, covered by another step
+        boolean skipped = false;
+        // null if not executed or operation not supported by pump
+        public PumpEnactResult result = null;
+
+        Step(Operation operation) {
+            this.operation = operation;
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+
+    public Step tempBasalAbsolute(double absoluteRate, int durationInMinutes, boolean enforceNew) {
+        Step step = new Step(Operation.TEMP_BASAL_ABSOLUTE);
+        step.absoluteRate = absoluteRate;
+        step.durationInMinutes = durationInMinutes;
+        step.enforceNew = enforceNew;
+        return add(step);
+    }
+
+    public Step tempBasalPercent(int percent, int durationInMinutes, boolean enforceNew) {
+        Step step = new Step(Operation.TEMP_BASAL_PERCENT);
+        step.percent = percent;
+        step.durationInMinutes = durationInMinutes;
+        step.enforceNew = enforceNew;
+        return add(step);
+    }
+
+    public Step cancelTempBasal(boolean enforceNew) {
+        Step step = new Step(Operation.CANCEL_TEMP_BASAL);
+        step.enforceNew = enforceNew;
+        return add(step);
+    }
+
+    public Step readStatus() {
+        return add(new Step(Operation.READ_STATUS));
+    }
+
+    public Step loadEvents() {
+        return add(new Step(Operation.LOAD_EVENTS));
+    }
+
+    private Step add(Step step) {
+        steps.add(step);
+        return step;
+    }
+
+    public int size() {
+        return steps.size();
+    }
+
+    // changes in declared order, then one status read and one events load
+    List<Step> plan() {
+        List<Step> plan = new ArrayList<>();
+        Step status = null;
+        Step events = null;
+        for (Step step : steps) {
+            step.skipped = false;
+            if (step.operation == Operation.READ_STATUS) {
+                if (status != null)
+                    status.skipped = true;
+                status = step;
+            } else if (step.operation == Operation.LOAD_EVENTS) {
+                if (events != null)
+                    events.skipped = true;
+                events = step;
+            } else {
+                plan.add(step);
+            }
+        }
+        if (status != null)
+            plan.add(status);
+        if (events != null)
+            plan.add(events);
+        return plan;
+    }
+
+    /**
+     * Executes steps one by one through standard pump calls. Pumps with session support
+     * wrap it with their own session handling.
+     *
+     * @return combined result, success if all steps succeeded, enacted if any step changed the pump
+     */
+    public PumpEnactResult run(PumpInterface pump) {
+        for (Step step : plan()) {
+            switch (step.operation) {
+                case TEMP_BASAL_ABSOLUTE:
+                    step.result = pump.setTempBasalAbsolute(step.absoluteRate, step.durationInMinutes, step.enforceNew);
+                    break;
+                case TEMP_BASAL_PERCENT:
+                    step.result = pump.setTempBasalPercent(step.percent, step.durationInMinutes, step.enforceNew);
+                    break;
+                case CANCEL_TEMP_BASAL:
+                    step.result = pump.cancelTempBasal(step.enforceNew);
+                    break;
+                case READ_STATUS:
+                    pump.getPumpStatus();
+                    step.result = new PumpEnactResult().success(true);
+                    break;
+                case LOAD_EVENTS:
+                    if (pump instanceof DanaRInterface)
+                        step.result = ((DanaRInterface) pump).loadEvents();
+                    break;
+            }
+        }
+        return combinedResult();
+    }
+
+    PumpEnactResult combinedResult() {
+        PumpEnactResult combined = new PumpEnactResult().success(true);
+        for (Step step : steps) {
+            if (step.skipped)
+                step.result = new PumpEnactResult().success(true).comment("covered by session");
+            if (step.result == null)
+                continue;
+            combined.success = combined.success && step.result.success;
+            combined.enacted = combined.enacted || step.result.enacted;
+            if (step.result.comment != null && !step.result.comment.equals("") && !step.skipped)
+                combined.comment += (combined.comment.equals("") ? "" : ", ") + step.result.comment;
+            if (step.operation == Operation.TEMP_BASAL_ABSOLUTE || step.operation == Operation.TEMP_BASAL_PERCENT || step.operation == Operation.CANCEL_TEMP_BASAL) {
+                combined.duration = step.result.duration;
+                combined.absolute = step.result.absolute;
+                combined.percent = step.result.percent;
+                combined.isPercent = step.result.isPercent;
+                combined.isTempCancel = step.result.isTempCancel;
+            }
+        }
+        return combined;
+    }
+}
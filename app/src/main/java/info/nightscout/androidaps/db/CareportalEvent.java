@@ -81,6 +81,15 @@ public class CareportalEvent implements DataPointWithLabelInterface {
         json = mbg.json;
     }
 
+    public void copyFrom(CareportalEvent t) {
+        date = t.date;
+        isValid = t.isValid;
+        source = t.source;
+        _id = t._id;
+        eventType = t.eventType;
+        json = t.json;
+    }
+
     public long getMillisecondsFromStart() {
         return System.currentTimeMillis() - date;
     }
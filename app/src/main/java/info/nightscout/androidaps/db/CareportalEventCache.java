@@ -0,0 +1,148 @@
+package info.nightscout.androidaps.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In memory copy of recent careportal events.
+ * <p>
+ * Holds latest event of every requested type and all events newer than the oldest
+ * requested time (bounded by MAX_AGE). Both parts are loaded lazily by DatabaseHelper and
+ * kept up to date on every write. Loads are tagged with modification counter so result
+ * of a query that raced with a write is thrown away instead of being cached.
+ * Events are copied in and out, callers may modify returned instances.
+ */
+
+class CareportalEventCache {
+    // Overview graph needs at most 24h + 6h back
+    static final long MAX_AGE = 48 * 60 * 60 * 1000L;
+
+    private final Map<String, CareportalEvent> lastByType = new HashMap<>();
+    private final TreeMap<Long, CareportalEvent> byDate = new TreeMap<>();
+    private long cachedFrom = Long.MAX_VALUE;
+    private long modification = 0;
+
+    synchronized long modification() {
+        return modification;
+    }
+
+    // ------------ latest event by type ------------
+
+    synchronized boolean hasLast(String eventType) {
+        return lastByType.containsKey(eventType);
+    }
+
+    // null means event of this type doesn't exist
+    synchronized CareportalEvent getLast(String eventType) {
+        return copy(lastByType.get(eventType));
+    }
+
+    synchronized void setLast(String eventType, CareportalEvent careportalEvent, long loadedAt) {
+        if (loadedAt == modification)
+            lastByType.put(eventType, copy(careportalEvent));
+    }
+
+    // ------------ time range ------------
+
+    static boolean isCacheable(long from, long now) {
+        return from >= now - MAX_AGE;
+    }
+
+    synchronized boolean covers(long from) {
+        return from >= cachedFrom;
+    }
+
+    synchronized List<CareportalEvent> getFromTime(long from, boolean ascending) {
+        Collection<CareportalEvent> range = ascending ? byDate.tailMap(from, true).values() : byDate.tailMap(from, true).descendingMap().values();
+        List<CareportalEvent> result = new ArrayList<>(range.size());
+        for (CareportalEvent careportalEvent : range)
+            result.add(copy(careportalEvent));
+        return result;
+    }
+
+    synchronized void setRange(long from, List<CareportalEvent> careportalEvents, long loadedAt) {
+        if (loadedAt != modification)
+            return;
+        byDate.clear();
+        for (CareportalEvent careportalEvent : careportalEvents)
+            byDate.put(careportalEvent.date, copy(careportalEvent));
+        cachedFrom = from;
+        trim();
+    }
+
+    private void trim() {
+        long limit = System.currentTimeMillis() - MAX_AGE;
+        if (cachedFrom < limit) {
+            byDate.headMap(limit).clear();
+            cachedFrom = limit;
+        }
+    }
+
+    // ------------ updates ------------
+
+    synchronized void put(CareportalEvent careportalEvent) {
+        modification++;
+        careportalEvent = copy(careportalEvent);
+        // date of existing record may have changed
+        removeStale(careportalEvent);
+        if (careportalEvent.date >= cachedFrom)
+            byDate.put(careportalEvent.date, careportalEvent);
+        trim();
+        // eventType of existing record may have changed
+        forgetLastIfSameDate(careportalEvent.date, careportalEvent.eventType);
+        if (lastByType.containsKey(careportalEvent.eventType)) {
+            CareportalEvent last = lastByType.get(careportalEvent.eventType);
+            if (last == null || last.date <= careportalEvent.date)
+                lastByType.put(careportalEvent.eventType, careportalEvent);
+        }
+    }
+
+    synchronized void remove(CareportalEvent careportalEvent) {
+        modification++;
+        byDate.remove(careportalEvent.date);
+        forgetLastIfSameDate(careportalEvent.date, null);
+    }
+
+    synchronized void clear() {
+        modification++;
+        lastByType.clear();
+        byDate.clear();
+        cachedFrom = Long.MAX_VALUE;
+    }
+
+    private void removeStale(CareportalEvent careportalEvent) {
+        if (careportalEvent._id == null)
+            return;
+        Iterator<CareportalEvent> iterator = byDate.values().iterator();
+        while (iterator.hasNext()) {
+            CareportalEvent cached = iterator.next();
+            if (careportalEvent._id.equals(cached._id) && cached.date != careportalEvent.date) {
+                iterator.remove();
+                forgetLastIfSameDate(cached.date, null);
+            }
+        }
+    }
+
+    private static CareportalEvent copy(CareportalEvent careportalEvent) {
+        if (careportalEvent == null)
+            return null;
+        CareportalEvent copy = new CareportalEvent();
+        copy.copyFrom(careportalEvent);
+        return copy;
+    }
+
+    // drop types whose latest event sits on this date, they are reloaded on next request
+    private void forgetLastIfSameDate(long date, String exceptType) {
+        Iterator<Map.Entry<String, CareportalEvent>> iterator = lastByType.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CareportalEvent> entry = iterator.next();
+            if (entry.getValue() != null && entry.getValue().date == date && !entry.getKey().equals(exceptType))
+                iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package info.nightscout.androidaps.db;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Per day aggregate of insulin, carbs and BG. Maintained incrementally by DailyStatsHelper
+ * so reporting does not need to rescan raw rows
+ */
+
+@DatabaseTable(tableName = DatabaseHelper.DATABASE_DAILYSTATS)
+public class DailyStats {
+    // range limits in mg/dl used for time in range counters
+    public static final double LOW = 70d;
+    public static final double HIGH = 180d;
+
+    @DatabaseField(id = true)
+    public long date; // local midnight
+
+    @DatabaseField
+    public double basal = 0d;
+    @DatabaseField
+    public double bolus = 0d;
+    @DatabaseField
+    public double carbs = 0d;
+
+    @DatabaseField
+    public double bgSum = 0d;
+    @DatabaseField
+    public double bgSumOfSquares = 0d;
+    @DatabaseField
+    public int bgCount = 0;
+    @DatabaseField
+    public int bgInRange = 0;
+    @DatabaseField
+    public int bgBelow = 0;
+    @DatabaseField
+    public int bgAbove = 0;
+
+    // true if raw data was changed in other way than appending and totals must be recalculated
+    @DatabaseField
+    public boolean dirty = true;
+    // basal is integrated up to this time, less than end of day while the day is running
+    @DatabaseField
+    public long basalUntil = 0;
+
+    public DailyStats() {
+    }
+
+    public DailyStats(long date) {
+        this.date = startOfDay(date);
+    }
+
+    public static long startOfDay(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    public static long startOfNextDay(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(startOfDay(time));
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    public void reset() {
+        basal = 0d;
+        basalUntil = 0;
+        bolus = 0d;
+        carbs = 0d;
+        bgSum = 0d;
+        bgSumOfSquares = 0d;
+        bgCount = 0;
+        bgInRange = 0;
+        bgBelow = 0;
+        bgAbove = 0;
+    }
+
+    public void addBg(double mgdl) {
+        bgSum += mgdl;
+        bgSumOfSquares += mgdl * mgdl;
+        bgCount++;
+        if (mgdl < LOW)
+            bgBelow++;
+        else if (mgdl > HIGH)
+            bgAbove++;
+        else
+            bgInRange++;
+    }
+
+    public double tdd() {
+        return basal + bolus;
+    }
+
+    public double meanBg() {
+        return bgCount > 0 ? bgSum / bgCount : 0d;
+    }
+
+    public double sdBg() {
+        if (bgCount < 2)
+            return 0d;
+        double mean = meanBg();
+        double variance = bgSumOfSquares / bgCount - mean * mean;
+        return variance > 0 ? Math.sqrt(variance) : 0d;
+    }
+
+    public double inRangePct() {
+        return bgCount > 0 ? 100d * bgInRange / bgCount : 0d;
+    }
+
+    public double belowPct() {
+        return bgCount > 0 ? 100d * bgBelow / bgCount : 0d;
+    }
+
+    public double abovePct() {
+        return bgCount > 0 ? 100d * bgAbove / bgCount : 0d;
+    }
+
+    @Override
+    public String toString() {
+        return "DailyStats{" +
+                "date=" + new Date(date).toLocaleString() +
+                ", basal=" + basal +
+                ", bolus=" + bolus +
+                ", carbs=" + carbs +
+                ", bgCount=" + bgCount +
+                ", mean=" + meanBg() +
+                ", inRange=" + bgInRange +
+                ", below=" + bgBelow +
+                ", above=" + bgAbove +
+                ", dirty=" + dirty +
+                '}';
+    }
+}
@@ -0,0 +1,230 @@
+package info.nightscout.androidaps.db;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.Where;
+import com.j256.ormlite.table.TableUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.data.NonOverlappingIntervals;
+import info.nightscout.androidaps.data.Profile;
+
+/**
+ * Keeps DailyStats table in sync with BgReadings, Treatments, TemporaryBasals and ExtendedBoluses.
+ * <p>
+ * Appended records are added to the totals of their day directly. Any other change (update, delete, temp basal,
+ * profile switch) only marks the day dirty and the day is rebuilt from raw rows on the next read.
+ */
+
+public class DailyStatsHelper {
+    private static Logger log = LoggerFactory.getLogger(DailyStatsHelper.class);
+
+    private static final long BASAL_STEP = 5 * 60 * 1000L;
+
+    DatabaseHelper databaseHelper;
+
+    public DailyStatsHelper(DatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+    }
+
+    private Dao<DailyStats, Long> getDaoDailyStats() throws SQLException {
+        return databaseHelper.getDao(DailyStats.class);
+    }
+
+    private Dao<BgReading, Long> getDaoBgReadings() throws SQLException {
+        return databaseHelper.getDao(BgReading.class);
+    }
+
+    private Dao<Treatment, Long> getDaoTreatments() throws SQLException {
+        return databaseHelper.getDao(Treatment.class);
+    }
+
+    private Dao<TemporaryBasal, Long> getDaoTemporaryBasal() throws SQLException {
+        return databaseHelper.getDao(TemporaryBasal.class);
+    }
+
+    private Dao<ExtendedBolus, Long> getDaoExtendedBolus() throws SQLException {
+        return databaseHelper.getDao(ExtendedBolus.class);
+    }
+
+    public synchronized void resetDailyStats() {
+        try {
+            TableUtils.dropTable(databaseHelper.getConnectionSource(), DailyStats.class, true);
+            TableUtils.createTableIfNotExists(databaseHelper.getConnectionSource(), DailyStats.class);
+        } catch (SQLException e) {
+            log.error("Unhandled exception", e);
+        }
+    }
+
+    // ------------------ incremental updates ------------------
+
+    public synchronized void add(BgReading bgReading) {
+        if (!bgReading.isValid || bgReading.value <= 38)
+            return;
+        try {
+            DailyStats stats = getDaoDailyStats().queryForId(DailyStats.startOfDay(bgReading.date));
+            if (stats == null || stats.dirty)
+                return; // will be rebuilt on read
+            stats.addBg(bgReading.value);
+            getDaoDailyStats().update(stats);
+        } catch (SQLException e) {
+            log.error("Unhandled exception", e);
+        }
+    }
+
+    public synchronized void add(Treatment treatment) {
+        if (!treatment.isValid)
+            return;
+        try {
+            DailyStats stats = getDaoDailyStats().queryForId(DailyStats.startOfDay(treatment.date));
+            if (stats == null || stats.dirty)
+                return; // will be rebuilt on read
+            stats.bolus += treatment.insulin;
+            stats.carbs += treatment.carbs;
+            getDaoDailyStats().update(stats);
+        } catch (SQLException e) {
+            log.error("Unhandled exception", e);
+        }
+    }
+
+    public void invalidate(TemporaryBasal tempBasal) {
+        invalidate(tempBasal.start(), tempBasal.end());
+    }
+
+    public void invalidate(ExtendedBolus extendedBolus) {
+        invalidate(extendedBolus.start(), extendedBolus.end());
+    }
+
+    // profile is used until next switch, all following days may change
+    public void invalidate(ProfileSwitch profileSwitch) {
+        invalidate(profileSwitch.date, System.currentTimeMillis());
+    }
+
+    public void invalidate(long time) {
+        invalidate(time, time);
+    }
+
+    // mark all days touching <from, to> for rebuild
+    public synchronized void invalidate(long from, long to) {
+        try {
+            for (long day = DailyStats.startOfDay(from); day <= to; day = DailyStats.startOfNextDay(day)) {
+                DailyStats stats = getDaoDailyStats().queryForId(day);
+                if (stats == null || stats.dirty)
+                    continue;
+                stats.dirty = true;
+                getDaoDailyStats().update(stats);
+            }
+        } catch (SQLException e) {
+            log.error("Unhandled exception", e);
+        }
+    }
+
+    // ------------------ reading ------------------
+
+    /**
+     * Return stats for last days including today, newest first.
+     * Only missing or dirty days touch raw data
+     */
+    public List<DailyStats> getDailyStats(int days) {
+        return getDailyStats(days, System.currentTimeMillis());
+    }
+
+    synchronized List<DailyStats> getDailyStats(int days, long now) {
+        List<DailyStats> result = new ArrayList<>();
+        long today = DailyStats.startOfDay(now);
+        long from = DailyStats.startOfDay(today - (days - 1) * 24 * 60 * 60 * 1000L);
+        try {
+            QueryBuilder<DailyStats, Long> queryBuilder = getDaoDailyStats().queryBuilder();
+            queryBuilder.orderBy("date", false);
+            Where where = queryBuilder.where();
+            where.ge("date", from);
+            PreparedQuery<DailyStats> preparedQuery = queryBuilder.prepare();
+            List<DailyStats> stored = getDaoDailyStats().query(preparedQuery);
+
+            int index = 0;
+            for (long day = today; day >= from; day = DailyStats.startOfDay(day - 1)) {
+                DailyStats stats = null;
+                if (index < stored.size() && stored.get(index).date == day)
+                    stats = stored.get(index++);
+                if (stats == null)
+                    stats = new DailyStats(day);
+                long basalEnd = Math.min(DailyStats.startOfNextDay(day), now);
+                if (stats.dirty) {
+                    rebuild(stats, basalEnd);
+                    getDaoDailyStats().createOrUpdate(stats);
+                } else if (stats.basalUntil < basalEnd) {
+                    // basal of running day is growing, day last read before midnight is completed
+                    stats.basal = calculateBasal(stats.date, basalEnd);
+                    stats.basalUntil = basalEnd;
+                    getDaoDailyStats().update(stats);
+                }
+                result.add(stats);
+            }
+        } catch (SQLException e) {
+            log.error("Unhandled exception", e);
+        }
+        return result;
+    }
+
+    private void rebuild(DailyStats stats, long basalEnd) throws SQLException {
+        long start = stats.date;
+        long end = DailyStats.startOfNextDay(start);
+        stats.reset();
+
+        QueryBuilder<BgReading, Long> bgQuery = getDaoBgReadings().queryBuilder();
+        bgQuery.where().ge("date", start).and().lt("date", end).and().gt("value", 38).and().eq("isValid", true);
+        for (BgReading bg : bgQuery.query())
+            stats.addBg(bg.value);
+
+        QueryBuilder<Treatment, Long> treatmentQuery = getDaoTreatments().queryBuilder();
+        treatmentQuery.where().ge("date", start).and().lt("date", end).and().eq("isValid", true);
+        for (Treatment t : treatmentQuery.query()) {
+            stats.bolus += t.insulin;
+            stats.carbs += t.carbs;
+        }
+
+        QueryBuilder<ExtendedBolus, Long> extendedQuery = getDaoExtendedBolus().queryBuilder();
+        extendedQuery.where().ge("date", start - 24 * 60 * 60 * 1000L).and().lt("date", end).and().eq("isValid", true);
+        for (ExtendedBolus eb : extendedQuery.query()) {
+            long overlap = Math.min(eb.end(), end) - Math.max(eb.start(), start);
+            if (overlap > 0)
+                stats.bolus += eb.absoluteRate() * overlap / 60 / 60 / 1000d;
+        }
+
+        stats.basal = calculateBasal(start, basalEnd);
+        stats.basalUntil = basalEnd;
+        stats.dirty = false;
+        log.debug("Rebuilt " + stats.toString());
+    }
+
+    private double calculateBasal(long start, long end) throws SQLException {
+        NonOverlappingIntervals<TemporaryBasal> tempBasals = new NonOverlappingIntervals<>();
+        QueryBuilder<TemporaryBasal, Long> tempBasalQuery = getDaoTemporaryBasal().queryBuilder();
+        tempBasalQuery.orderBy("date", true);
+        tempBasalQuery.where().ge("date", start - 24 * 60 * 60 * 1000L).and().lt("date", end).and().eq("isValid", true);
+        tempBasals.add(tempBasalQuery.query());
+
+        double basal = 0d;
+        for (long time = start; time < end; time += BASAL_STEP) {
+            Profile profile = MainApp.getConfigBuilder().getProfile(time);
+            if (profile == null)
+                continue;
+            double rate;
+            TemporaryBasal tb = tempBasals.getValueByInterval(time);
+            if (tb != null)
+                rate = tb.tempBasalConvertedToAbsolute(time);
+            else
+                rate = profile.getBasal(time);
+            basal += rate * Math.min(BASAL_STEP, end - time) / 60 / 60 / 1000d;
+        }
+        return basal;
+    }
+}
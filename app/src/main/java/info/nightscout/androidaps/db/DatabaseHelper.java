@@ -21,7 +21,9 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -49,6 +51,7 @@ import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.plugins.IobCobCalculator.events.EventNewHistoryData;
 import info.nightscout.androidaps.plugins.Overview.events.EventNewNotification;
 import info.nightscout.androidaps.plugins.Overview.notifications.Notification;
+import info.nightscout.androidaps.plugins.PumpDanaR.DanaRHistorySync;
 import info.nightscout.androidaps.plugins.PumpDanaR.activities.DanaRNSHistorySync;
 import info.nightscout.androidaps.plugins.PumpVirtual.VirtualPumpPlugin;
 import info.nightscout.utils.DateUtil;
@@ -69,13 +72,16 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public static final String DATABASE_CAREPORTALEVENTS = "CareportalEvents";
     public static final String DATABASE_PROFILESWITCHES = "ProfileSwitches";
     public static final String DATABASE_FOODS = "Foods";
+    public static final String DATABASE_DAILYSTATS = "DailyStats";
 
-    private static final int DATABASE_VERSION = 8;
+    static final int DATABASE_VERSION = 9;
 
     private static Long earliestDataChange = null;
 
     private static final ScheduledExecutorService bgWorker = Executors.newSingleThreadScheduledExecutor();
     private static ScheduledFuture<?> scheduledBgPost = null;
+    // oldest reading changed since last post
+    private static long earliestBgChange = Long.MAX_VALUE;
 
     private static final ScheduledExecutorService treatmentsWorker = Executors.newSingleThreadScheduledExecutor();
     private static ScheduledFuture<?> scheduledTratmentPost = null;
@@ -96,9 +102,18 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     private static ScheduledFuture<?> scheduledProfileSwitchEventPost = null;
 
     public FoodHelper foodHelper = new FoodHelper(this);
+    public DailyStatsHelper dailyStatsHelper = new DailyStatsHelper(this);
+    CareportalEventCache careportalEventCache = new CareportalEventCache();
 
     public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    DatabaseHelper(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        // WAL lets SQLiteDatabase serve reads (IOB/COB, graphs, stats) from its pool of read-only
+        // connections while NS sync or pump history writes are running on the primary connection
+        setWriteAheadLoggingEnabled(true);
         onCreate(getWritableDatabase(), getConnectionSource());
         //onUpgrade(getWritableDatabase(), getConnectionSource(), 1,1);
     }
@@ -117,6 +132,8 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             TableUtils.createTableIfNotExists(connectionSource, CareportalEvent.class);
             TableUtils.createTableIfNotExists(connectionSource, ProfileSwitch.class);
             TableUtils.createTableIfNotExists(connectionSource, Food.class);
+            TableUtils.createTableIfNotExists(connectionSource, DailyStats.class);
+            DatabaseMigrations.createIndexes(connectionSource);
         } catch (SQLException e) {
             log.error("Can't create database", e);
             throw new RuntimeException(e);
@@ -126,10 +143,9 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     @Override
     public void onUpgrade(SQLiteDatabase database, ConnectionSource connectionSource, int oldVersion, int newVersion) {
         try {
-            if (oldVersion == 7 && newVersion == 8) {
-                log.debug("Upgrading database from v7 to v8");
-                TableUtils.dropTable(connectionSource, Treatment.class, true);
-                TableUtils.createTableIfNotExists(connectionSource, Treatment.class);
+            if (oldVersion >= DatabaseMigrations.OLDEST_MIGRATABLE_VERSION) {
+                log.debug("Upgrading database from v" + oldVersion + " to v" + newVersion);
+                DatabaseMigrations.upgrade(connectionSource, oldVersion, newVersion);
             } else {
                 log.info(DatabaseHelper.class.getName(), "onUpgrade");
                 TableUtils.dropTable(connectionSource, TempTarget.class, true);
@@ -142,6 +158,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 TableUtils.dropTable(connectionSource, CareportalEvent.class, true);
                 TableUtils.dropTable(connectionSource, ProfileSwitch.class, true);
                 TableUtils.dropTable(connectionSource, Food.class, true);
+                TableUtils.dropTable(connectionSource, DailyStats.class, true);
                 onCreate(database, connectionSource);
             }
         } catch (SQLException e) {
@@ -187,6 +204,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         log.debug("Before CareportalEvent size: " + DatabaseUtils.queryNumEntries(getReadableDatabase(), DATABASE_CAREPORTALEVENTS));
         getWritableDatabase().delete(DATABASE_CAREPORTALEVENTS, "recordDate" + " < '" + (System.currentTimeMillis() - Constants.daysToKeepHistoryInDatabase * 24 * 60 * 60 * 1000L) + "'", null);
         log.debug("After CareportalEvent size: " + DatabaseUtils.queryNumEntries(getReadableDatabase(), DATABASE_CAREPORTALEVENTS));
+        careportalEventCache.clear();
 
         log.debug("Before ProfileSwitch size: " + DatabaseUtils.queryNumEntries(getReadableDatabase(), DATABASE_PROFILESWITCHES));
         getWritableDatabase().delete(DATABASE_PROFILESWITCHES, "recordDate" + " < '" + (System.currentTimeMillis() - Constants.daysToKeepHistoryInDatabase * 24 * 60 * 60 * 1000L) + "'", null);
@@ -219,13 +237,17 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             TableUtils.createTableIfNotExists(connectionSource, ExtendedBolus.class);
             TableUtils.createTableIfNotExists(connectionSource, CareportalEvent.class);
             TableUtils.createTableIfNotExists(connectionSource, ProfileSwitch.class);
+            DatabaseMigrations.createIndexes(getConnectionSource());
             foodHelper.resetFood();
+            dailyStatsHelper.resetDailyStats();
+            careportalEventCache.clear();
             updateEarliestDataChange(0);
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
         }
         VirtualPumpPlugin.setFakingStatus(true);
-        scheduleBgChange(); // trigger refresh
+        DanaRHistorySync.resetWatermarks();
+        scheduleBgChange(0); // trigger refresh
         scheduleTemporaryBasalChange();
         scheduleTreatmentChange();
         scheduleExtendedBolusChange();
@@ -249,6 +271,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             TableUtils.dropTable(connectionSource, Treatment.class, true);
             TableUtils.createTableIfNotExists(connectionSource, Treatment.class);
             updateEarliestDataChange(0);
+            DatabaseMigrations.createIndexes(getConnectionSource());
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
         }
@@ -259,6 +282,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         try {
             TableUtils.dropTable(connectionSource, TempTarget.class, true);
             TableUtils.createTableIfNotExists(connectionSource, TempTarget.class);
+            DatabaseMigrations.createIndexes(getConnectionSource());
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
         }
@@ -270,6 +294,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             TableUtils.dropTable(connectionSource, TemporaryBasal.class, true);
             TableUtils.createTableIfNotExists(connectionSource, TemporaryBasal.class);
             updateEarliestDataChange(0);
+            DatabaseMigrations.createIndexes(getConnectionSource());
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
         }
@@ -282,6 +307,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             TableUtils.dropTable(connectionSource, ExtendedBolus.class, true);
             TableUtils.createTableIfNotExists(connectionSource, ExtendedBolus.class);
             updateEarliestDataChange(0);
+            DatabaseMigrations.createIndexes(getConnectionSource());
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
         }
@@ -292,9 +318,11 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         try {
             TableUtils.dropTable(connectionSource, CareportalEvent.class, true);
             TableUtils.createTableIfNotExists(connectionSource, CareportalEvent.class);
+            DatabaseMigrations.createIndexes(getConnectionSource());
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
         }
+        careportalEventCache.clear();
         scheduleCareportalEventChange();
     }
 
@@ -302,6 +330,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         try {
             TableUtils.dropTable(connectionSource, ProfileSwitch.class, true);
             TableUtils.createTableIfNotExists(connectionSource, ProfileSwitch.class);
+            DatabaseMigrations.createIndexes(getConnectionSource());
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
         }
@@ -357,16 +386,18 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             BgReading old = getDaoBgReadings().queryForId(bgReading.date);
             if (old == null) {
                 getDaoBgReadings().create(bgReading);
+                dailyStatsHelper.add(bgReading);
                 log.debug("BG: New record from: " + from + " " + bgReading.toString());
-                scheduleBgChange();
+                scheduleBgChange(bgReading.date);
                 return true;
             }
             if (!old.isEqual(bgReading)) {
                 log.debug("BG: Similiar found: " + old.toString());
                 old.copyFrom(bgReading);
                 getDaoBgReadings().update(old);
+                dailyStatsHelper.invalidate(old.date);
                 log.debug("BG: Updating record from: " + from + " New data: " + old.toString());
-                scheduleBgChange();
+                scheduleBgChange(old.date);
                 return false;
             }
         } catch (SQLException e) {
@@ -375,23 +406,49 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         return false;
     }
 
+    // one transaction for whole batch, returns number of new records
+    public int createIfNotExists(final List<BgReading> bgReadings, final String from) {
+        try {
+            return getDaoBgReadings().callBatchTasks(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int created = 0;
+                    for (BgReading bgReading : bgReadings)
+                        if (createIfNotExists(bgReading, from))
+                            created++;
+                    return created;
+                }
+            });
+        } catch (Exception e) {
+            log.error("Unhandled exception", e);
+        }
+        return 0;
+    }
+
     public void update(BgReading bgReading) {
         bgReading.date = roundDateToSec(bgReading.date);
         try {
             getDaoBgReadings().update(bgReading);
+            dailyStatsHelper.invalidate(bgReading.date);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
-    private static void scheduleBgChange() {
+    private static synchronized void scheduleBgChange(long date) {
         class PostRunnable implements Runnable {
             public void run() {
+                long time;
+                synchronized (DatabaseHelper.class) {
+                    time = earliestBgChange;
+                    earliestBgChange = Long.MAX_VALUE;
+                    scheduledBgPost = null;
+                }
                 log.debug("Firing EventNewBg");
-                MainApp.bus().post(new EventNewBG());
-                scheduledBgPost = null;
+                MainApp.bus().post(new EventNewBG(time));
             }
         }
+        earliestBgChange = Math.min(earliestBgChange, date);
         // prepare task for execution in 1 sec
         // cancel waiting task to prevent sending multiple posts
         if (scheduledBgPost != null)
@@ -507,6 +564,30 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         return 0;
     }
 
+    public int deleteDbRequests(Collection<String> nsClientIds) {
+        try {
+            return getDaoDbRequest().deleteIds(nsClientIds);
+        } catch (SQLException e) {
+            log.error("Unhandled exception", e);
+        }
+        return 0;
+    }
+
+    public List<DbRequest> getDbRequests(String action, String collection, @Nullable String _id) {
+        try {
+            QueryBuilder<DbRequest, String> queryBuilder = getDaoDbRequest().queryBuilder();
+            Where where = queryBuilder.where();
+            where.eq("action", action).and().eq("collection", collection);
+            if (_id != null)
+                where.and().eq("_id", _id);
+            PreparedQuery<DbRequest> preparedQuery = queryBuilder.prepare();
+            return getDaoDbRequest().query(preparedQuery);
+        } catch (SQLException e) {
+            log.error("Unhandled exception", e);
+        }
+        return new ArrayList<>();
+    }
+
     public void deleteDbRequestbyMongoId(String action, String id) {
         try {
             QueryBuilder<DbRequest, String> queryBuilder = getDaoDbRequest().queryBuilder();
@@ -561,6 +642,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     return false;
                 }
                 getDaoTreatments().create(treatment);
+                dailyStatsHelper.add(treatment);
                 log.debug("TREATMENT: New record from: " + Source.getString(treatment.source) + " " + treatment.toString());
                 updateEarliestDataChange(treatment.date);
                 scheduleTreatmentChange();
@@ -575,6 +657,8 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                         getDaoTreatments().delete(old); // need to delete/create because date may change too
                         old.copyFrom(treatment);
                         getDaoTreatments().create(old);
+                        dailyStatsHelper.invalidate(oldDate);
+                        dailyStatsHelper.invalidate(old.date);
                         log.debug("TREATMENT: Updating record by date from: " + Source.getString(treatment.source) + " " + old.toString());
                         if (historyChange) {
                             updateEarliestDataChange(oldDate);
@@ -600,6 +684,8 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                             getDaoTreatments().delete(old); // need to delete/create because date may change too
                             old.copyFrom(treatment);
                             getDaoTreatments().create(old);
+                            dailyStatsHelper.invalidate(oldDate);
+                            dailyStatsHelper.invalidate(old.date);
                             log.debug("TREATMENT: Updating record by _id from: " + Source.getString(treatment.source) + " " + old.toString());
                             if (historyChange) {
                                 updateEarliestDataChange(oldDate);
@@ -611,6 +697,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     }
                 }
                 getDaoTreatments().create(treatment);
+                dailyStatsHelper.add(treatment);
                 log.debug("TREATMENT: New record from: " + Source.getString(treatment.source) + " " + treatment.toString());
                 updateEarliestDataChange(treatment.date);
                 scheduleTreatmentChange();
@@ -618,6 +705,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             }
             if (treatment.source == Source.USER) {
                 getDaoTreatments().create(treatment);
+                dailyStatsHelper.add(treatment);
                 log.debug("TREATMENT: New record from: " + Source.getString(treatment.source) + " " + treatment.toString());
                 updateEarliestDataChange(treatment.date);
                 scheduleTreatmentChange();
@@ -632,6 +720,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public void delete(Treatment treatment) {
         try {
             getDaoTreatments().delete(treatment);
+            dailyStatsHelper.invalidate(treatment.date);
             updateEarliestDataChange(treatment.date);
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -642,6 +731,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public void update(Treatment treatment) {
         try {
             getDaoTreatments().update(treatment);
+            dailyStatsHelper.invalidate(treatment.date);
             updateEarliestDataChange(treatment.date);
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -929,6 +1019,31 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         }
     }
 
+    // one transaction for whole batch
+    public void createOrUpdate(final List<DanaRHistoryRecord> records) {
+        try {
+            getDaoDanaRHistory().callBatchTasks(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (DanaRHistoryRecord record : records)
+                        getDaoDanaRHistory().createOrUpdate(record);
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.error("Unhandled exception", e);
+        }
+    }
+
+    public boolean hasDanaRHistoryRecords(byte type) {
+        try {
+            return getDaoDanaRHistory().queryBuilder().where().eq("recordCode", type).queryForFirst() != null;
+        } catch (SQLException e) {
+            log.error("Unhandled exception", e);
+        }
+        return false;
+    }
+
     public List<DanaRHistoryRecord> getDanaRHistoryRecordsByType(byte type) {
         List<DanaRHistoryRecord> historyList;
         try {
@@ -992,6 +1107,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     return false;
                 }
                 getDaoTemporaryBasal().create(tempBasal);
+                dailyStatsHelper.invalidate(tempBasal);
                 log.debug("TEMPBASAL: New record from: " + Source.getString(tempBasal.source) + " " + tempBasal.toString());
                 updateEarliestDataChange(tempBasal.date);
                 scheduleTemporaryBasalChange();
@@ -1009,6 +1125,8 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                         getDaoTemporaryBasal().delete(old); // need to delete/create because date may change too
                         old.copyFrom(tempBasal);
                         getDaoTemporaryBasal().create(old);
+                        dailyStatsHelper.invalidate(oldDate);
+                        dailyStatsHelper.invalidate(old);
                         log.debug("TEMPBASAL: Updating record by date from: " + Source.getString(tempBasal.source) + " " + old.toString());
                         updateEarliestDataChange(oldDate);
                         updateEarliestDataChange(old.date);
@@ -1031,6 +1149,8 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                             getDaoTemporaryBasal().delete(old); // need to delete/create because date may change too
                             old.copyFrom(tempBasal);
                             getDaoTemporaryBasal().create(old);
+                            dailyStatsHelper.invalidate(oldDate);
+                            dailyStatsHelper.invalidate(old);
                             log.debug("TEMPBASAL: Updating record by _id from: " + Source.getString(tempBasal.source) + " " + old.toString());
                             updateEarliestDataChange(oldDate);
                             updateEarliestDataChange(old.date);
@@ -1040,6 +1160,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     }
                 }
                 getDaoTemporaryBasal().create(tempBasal);
+                dailyStatsHelper.invalidate(tempBasal);
                 log.debug("TEMPBASAL: New record from: " + Source.getString(tempBasal.source) + " " + tempBasal.toString());
                 updateEarliestDataChange(tempBasal.date);
                 scheduleTemporaryBasalChange();
@@ -1047,6 +1168,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             }
             if (tempBasal.source == Source.USER) {
                 getDaoTemporaryBasal().create(tempBasal);
+                dailyStatsHelper.invalidate(tempBasal);
                 log.debug("TEMPBASAL: New record from: " + Source.getString(tempBasal.source) + " " + tempBasal.toString());
                 updateEarliestDataChange(tempBasal.date);
                 scheduleTemporaryBasalChange();
@@ -1061,6 +1183,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public void delete(TemporaryBasal tempBasal) {
         try {
             getDaoTemporaryBasal().delete(tempBasal);
+            dailyStatsHelper.invalidate(tempBasal);
             updateEarliestDataChange(tempBasal.date);
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -1225,6 +1348,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     return false;
                 }
                 getDaoExtendedBolus().create(extendedBolus);
+                dailyStatsHelper.invalidate(extendedBolus);
                 log.debug("EXTENDEDBOLUS: New record from: " + Source.getString(extendedBolus.source) + " " + extendedBolus.toString());
                 updateEarliestDataChange(extendedBolus.date);
                 scheduleExtendedBolusChange();
@@ -1238,6 +1362,8 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                         getDaoExtendedBolus().delete(old); // need to delete/create because date may change too
                         old.copyFrom(extendedBolus);
                         getDaoExtendedBolus().create(old);
+                        dailyStatsHelper.invalidate(oldDate);
+                        dailyStatsHelper.invalidate(old);
                         log.debug("EXTENDEDBOLUS: Updating record by date from: " + Source.getString(extendedBolus.source) + " " + old.toString());
                         updateEarliestDataChange(oldDate);
                         updateEarliestDataChange(old.date);
@@ -1260,6 +1386,8 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                             getDaoExtendedBolus().delete(old); // need to delete/create because date may change too
                             old.copyFrom(extendedBolus);
                             getDaoExtendedBolus().create(old);
+                            dailyStatsHelper.invalidate(oldDate);
+                            dailyStatsHelper.invalidate(old);
                             log.debug("EXTENDEDBOLUS: Updating record by _id from: " + Source.getString(extendedBolus.source) + " " + old.toString());
                             updateEarliestDataChange(oldDate);
                             updateEarliestDataChange(old.date);
@@ -1269,6 +1397,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     }
                 }
                 getDaoExtendedBolus().create(extendedBolus);
+                dailyStatsHelper.invalidate(extendedBolus);
                 log.debug("EXTENDEDBOLUS: New record from: " + Source.getString(extendedBolus.source) + " " + extendedBolus.toString());
                 updateEarliestDataChange(extendedBolus.date);
                 scheduleExtendedBolusChange();
@@ -1276,6 +1405,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             }
             if (extendedBolus.source == Source.USER) {
                 getDaoExtendedBolus().create(extendedBolus);
+                dailyStatsHelper.invalidate(extendedBolus);
                 log.debug("EXTENDEDBOLUS: New record from: " + Source.getString(extendedBolus.source) + " " + extendedBolus.toString());
                 updateEarliestDataChange(extendedBolus.date);
                 scheduleExtendedBolusChange();
@@ -1290,6 +1420,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public void delete(ExtendedBolus extendedBolus) {
         try {
             getDaoExtendedBolus().delete(extendedBolus);
+            dailyStatsHelper.invalidate(extendedBolus);
             updateEarliestDataChange(extendedBolus.date);
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
@@ -1421,6 +1552,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         careportalEvent.date = careportalEvent.date - careportalEvent.date % 1000;
         try {
             getDaoCareportalEvents().createOrUpdate(careportalEvent);
+            careportalEventCache.put(careportalEvent);
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
         }
@@ -1430,6 +1562,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public void delete(CareportalEvent careportalEvent) {
         try {
             getDaoCareportalEvents().delete(careportalEvent);
+            careportalEventCache.remove(careportalEvent);
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
         }
@@ -1438,6 +1571,16 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
 
     @Nullable
     public CareportalEvent getLastCareportalEvent(String event) {
+        if (careportalEventCache.hasLast(event))
+            return careportalEventCache.getLast(event);
+        long loadedAt = careportalEventCache.modification();
+        CareportalEvent careportalEvent = loadLastCareportalEvent(event);
+        careportalEventCache.setLast(event, careportalEvent, loadedAt);
+        return careportalEvent;
+    }
+
+    @Nullable
+    private CareportalEvent loadLastCareportalEvent(String event) {
         try {
             List<CareportalEvent> careportalEvents;
             QueryBuilder<CareportalEvent, Long> queryBuilder = getDaoCareportalEvents().queryBuilder();
@@ -1458,6 +1601,16 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     }
 
     public List<CareportalEvent> getCareportalEventsFromTime(long mills, boolean ascending) {
+        if (careportalEventCache.covers(mills))
+            return careportalEventCache.getFromTime(mills, ascending);
+        long loadedAt = careportalEventCache.modification();
+        List<CareportalEvent> careportalEvents = loadCareportalEventsFromTime(mills, ascending);
+        if (CareportalEventCache.isCacheable(mills, System.currentTimeMillis()))
+            careportalEventCache.setRange(mills, careportalEvents, loadedAt);
+        return careportalEvents;
+    }
+
+    private List<CareportalEvent> loadCareportalEventsFromTime(long mills, boolean ascending) {
         try {
             List<CareportalEvent> careportalEvents;
             QueryBuilder<CareportalEvent, Long> queryBuilder = getDaoCareportalEvents().queryBuilder();
@@ -1529,6 +1682,8 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 careportalEvent = list.get(0);
                 if (Config.logIncommingData)
                     log.debug("Updating CareportalEvent record in database: " + trJson.toString());
+                if (careportalEvent.date != trJson.getLong("mills"))
+                    delete(careportalEvent); // need to delete/create because date may change too
             } else {
                 log.error("Something went wrong");
                 return;
@@ -1592,6 +1747,8 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                         profileSwitch.profileName = old.profileName; // preserver profileName to prevent multiple CPP extension
                         getDaoProfileSwitch().delete(old); // need to delete/create because date may change too
                         getDaoProfileSwitch().create(profileSwitch);
+                        dailyStatsHelper.invalidate(old);
+                        dailyStatsHelper.invalidate(profileSwitch);
                         log.debug("PROFILESWITCH: Updating record by date from: " + Source.getString(profileSwitch.source) + " " + old.toString());
                         scheduleProfileSwitchChange();
                         return true;
@@ -1608,9 +1765,12 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     if (trList.size() > 0) {
                         old = trList.get(0);
                         if (!old.isEqual(profileSwitch)) {
+                            long oldDate = old.date;
                             getDaoProfileSwitch().delete(old); // need to delete/create because date may change too
                             old.copyFrom(profileSwitch);
                             getDaoProfileSwitch().create(old);
+                            dailyStatsHelper.invalidate(oldDate, System.currentTimeMillis());
+                            dailyStatsHelper.invalidate(old);
                             log.debug("PROFILESWITCH: Updating record by _id from: " + Source.getString(profileSwitch.source) + " " + old.toString());
                             scheduleProfileSwitchChange();
                             return true;
@@ -1620,12 +1780,14 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 // look for already added percentage from NS
                 profileSwitch.profileName = PercentageSplitter.pureName(profileSwitch.profileName);
                 getDaoProfileSwitch().create(profileSwitch);
+                dailyStatsHelper.invalidate(profileSwitch);
                 log.debug("PROFILESWITCH: New record from: " + Source.getString(profileSwitch.source) + " " + profileSwitch.toString());
                 scheduleProfileSwitchChange();
                 return true;
             }
             if (profileSwitch.source == Source.USER) {
                 getDaoProfileSwitch().create(profileSwitch);
+                dailyStatsHelper.invalidate(profileSwitch);
                 log.debug("PROFILESWITCH: New record from: " + Source.getString(profileSwitch.source) + " " + profileSwitch.toString());
                 scheduleProfileSwitchChange();
                 return true;
@@ -1639,6 +1801,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public void delete(ProfileSwitch profileSwitch) {
         try {
             getDaoProfileSwitch().delete(profileSwitch);
+            dailyStatsHelper.invalidate(profileSwitch);
             scheduleProfileSwitchChange();
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
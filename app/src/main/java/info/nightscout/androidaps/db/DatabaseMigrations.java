@@ -0,0 +1,91 @@
+package info.nightscout.androidaps.db;
+
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.table.TableUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+
+/**
+ * In place schema upgrades. Every database version has one step which moves the schema
+ * from previous version. Steps are applied in order so any supported version can be upgraded
+ * without losing data.
+ */
+
+public class DatabaseMigrations {
+    private static Logger log = LoggerFactory.getLogger(DatabaseMigrations.class);
+
+    // oldest version we know how to upgrade from. Older databases are recreated
+    public static final int OLDEST_MIGRATABLE_VERSION = 7;
+
+    /**
+     * Indexes matching the query shapes used in DatabaseHelper, DailyStatsHelper and FoodHelper.
+     * Date lookups are already served by primary keys, pumpId by field annotations.
+     */
+    public static final String[] INDEXES = {
+            // getLastCareportalEvent: eventType = ? ORDER BY date DESC LIMIT 1
+            "CREATE INDEX IF NOT EXISTS idx_CareportalEvents_eventType_date ON " + DatabaseHelper.DATABASE_CAREPORTALEVENTS + " (eventType, date)",
+            "CREATE INDEX IF NOT EXISTS idx_CareportalEvents__id ON " + DatabaseHelper.DATABASE_CAREPORTALEVENTS + " (_id)",
+            // lastBg, getBgreadingsDataFromTime: isValid = 1 AND date >= ? ORDER BY date
+            "CREATE INDEX IF NOT EXISTS idx_BgReadings_isValid_date ON " + DatabaseHelper.DATABASE_BGREADINGS + " (isValid, date)",
+            // NS _id lookups on sync
+            "CREATE INDEX IF NOT EXISTS idx_Treatments__id ON " + DatabaseHelper.DATABASE_TREATMENTS + " (_id)",
+            "CREATE INDEX IF NOT EXISTS idx_TemporaryBasals__id ON " + DatabaseHelper.DATABASE_TEMPORARYBASALS + " (_id)",
+            "CREATE INDEX IF NOT EXISTS idx_ExtendedBoluses__id ON " + DatabaseHelper.DATABASE_EXTENDEDBOLUSES + " (_id)",
+            "CREATE INDEX IF NOT EXISTS idx_TempTargets__id ON " + DatabaseHelper.DATABASE_TEMPTARGETS + " (_id)",
+            "CREATE INDEX IF NOT EXISTS idx_ProfileSwitches__id ON " + DatabaseHelper.DATABASE_PROFILESWITCHES + " (_id)",
+            "CREATE INDEX IF NOT EXISTS idx_Foods__id ON " + DatabaseHelper.DATABASE_FOODS + " (_id)",
+            // deleteDbRequestbyMongoId: _id = ? AND action = ?
+            "CREATE INDEX IF NOT EXISTS idx_DBRequests__id_action ON " + DatabaseHelper.DATABASE_DBREQUESTS + " (_id, action)",
+            // getDanaRHistoryRecordsByType: recordCode = ? ORDER BY recordDate DESC
+            "CREATE INDEX IF NOT EXISTS idx_DanaRHistory_recordCode_recordDate ON " + DatabaseHelper.DATABASE_DANARHISTORY + " (recordCode, recordDate)",
+    };
+
+    public static void createIndexes(ConnectionSource connectionSource) {
+        DatabaseConnection connection;
+        try {
+            connection = connectionSource.getReadWriteConnection();
+        } catch (SQLException e) {
+            log.error("Can't create indexes", e);
+            return;
+        }
+        try {
+            for (String sql : INDEXES) {
+                try {
+                    connection.executeStatement(sql, DatabaseConnection.DEFAULT_RESULT_FLAGS);
+                } catch (SQLException e) {
+                    // table not created yet, index will be added by onCreate
+                    log.error("Can't create index: " + sql, e);
+                }
+            }
+        } finally {
+            try {
+                connectionSource.releaseConnection(connection);
+            } catch (SQLException e) {
+                log.error("Unhandled exception", e);
+            }
+        }
+    }
+
+    public static void upgrade(ConnectionSource connectionSource, int oldVersion, int newVersion) throws SQLException {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            log.debug("Upgrading database to v" + version);
+            switch (version) {
+                case 8:
+                    TableUtils.dropTable(connectionSource, Treatment.class, true);
+                    TableUtils.createTableIfNotExists(connectionSource, Treatment.class);
+                    break;
+                case 9:
+                    // DailyStats table is new in v9, onCreate is not called on upgrade
+                    TableUtils.createTableIfNotExists(connectionSource, DailyStats.class);
+                    createIndexes(connectionSource);
+                    break;
+                default:
+                    log.error("No migration step for v" + version);
+            }
+        }
+    }
+}
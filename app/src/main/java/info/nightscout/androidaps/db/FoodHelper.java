@@ -47,6 +47,7 @@ public class FoodHelper {
         try {
             TableUtils.dropTable(databaseHelper.getConnectionSource(), Food.class, true);
             TableUtils.createTableIfNotExists(databaseHelper.getConnectionSource(), Food.class);
+            DatabaseMigrations.createIndexes(databaseHelper.getConnectionSource());
         } catch (SQLException e) {
             log.error("Unhandled exception", e);
         }
@@ -0,0 +1,411 @@
+package info.nightscout.androidaps.db;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.table.DatabaseTable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.DataFormatException;
+
+import info.nightscout.utils.ColumnCodec;
+
+/**
+ * Streaming export/import of history tables to a compact columnar file.
+ * <p>
+ * File layout:
+ * <pre>
+ * header:  "AAPSHIST" formatVersion(int) databaseVersion(int)
+ * table:   TABLE name columnCount(int) [columnName type(byte)]...
+ *          BLOCK rowCount(int) [encoding(byte) rawLength(int) compressedLength(int) data]...
+ *          ...
+ *          END_TABLE
+ * end:     END
+ * </pre>
+ * Rows are read from database and written to file one block at a time so memory usage
+ * does not depend on history size. Columns are matched by name on import, so fields added
+ * in later versions get default values and unknown columns are skipped.
+ */
+
+public class HistoryArchive {
+    private static Logger log = LoggerFactory.getLogger(HistoryArchive.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] MAGIC = "AAPSHIST".getBytes(UTF8);
+    private static final int FORMAT_VERSION = 1;
+    static final int BLOCK_SIZE = 4096;
+
+    private static final byte TABLE = 'T';
+    private static final byte BLOCK = 'B';
+    private static final byte END_TABLE = 'E';
+    private static final byte END = 'Z';
+
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_DOUBLE = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_STRING = 5;
+
+    // all tables are keyed by "date"
+    private static final Class<?>[] TABLES = {
+            BgReading.class,
+            Treatment.class,
+            TemporaryBasal.class,
+            ExtendedBolus.class,
+            CareportalEvent.class,
+            TempTarget.class,
+            ProfileSwitch.class,
+    };
+
+    private final DatabaseHelper databaseHelper;
+
+    public HistoryArchive(DatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+    }
+
+    // --------------------- export ---------------------
+
+    /**
+     * @return number of exported records
+     */
+    public int exportHistory(File file) throws IOException, SQLException {
+        int records = 0;
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 8);
+            header.put(MAGIC).putInt(FORMAT_VERSION).putInt(DatabaseHelper.DATABASE_VERSION);
+            write(channel, header);
+            for (Class<?> table : TABLES)
+                records += exportTable(channel, table);
+            write(channel, ByteBuffer.allocate(1).put(END));
+            channel.force(false);
+        } finally {
+            stream.close();
+        }
+        return records;
+    }
+
+    private <T> int exportTable(FileChannel channel, Class<T> clazz) throws IOException, SQLException {
+        List<Field> fields = databaseFields(clazz);
+        Field key = null;
+        for (Field field : fields) {
+            if (field.getName().equals("date"))
+                key = field;
+        }
+        if (key == null)
+            throw new IllegalArgumentException("No date column in " + clazz);
+
+        ByteArrayOutputStream schema = new ByteArrayOutputStream();
+        schema.write(TABLE);
+        writeString(schema, tableName(clazz));
+        writeInt(schema, fields.size());
+        for (Field field : fields) {
+            writeString(schema, field.getName());
+            schema.write(type(field));
+        }
+        write(channel, ByteBuffer.wrap(schema.toByteArray()));
+
+        Dao<T, Long> dao = databaseHelper.getDao(clazz);
+        int records = 0;
+        long last = Long.MIN_VALUE;
+        while (true) {
+            // keyset pagination keeps only one block in memory
+            QueryBuilder<T, Long> queryBuilder = dao.queryBuilder();
+            queryBuilder.where().gt("date", last);
+            queryBuilder.orderBy("date", true);
+            queryBuilder.limit((long) BLOCK_SIZE);
+            List<T> rows = queryBuilder.query();
+            if (rows.isEmpty())
+                break;
+            writeBlock(channel, fields, rows);
+            records += rows.size();
+            try {
+                last = key.getLong(rows.get(rows.size() - 1));
+            } catch (IllegalAccessException e) {
+                throw new IOException(e);
+            }
+            if (rows.size() < BLOCK_SIZE)
+                break;
+        }
+        write(channel, ByteBuffer.allocate(1).put(END_TABLE));
+        log.debug("Exported " + records + " records from " + tableName(clazz));
+        return records;
+    }
+
+    private <T> void writeBlock(FileChannel channel, List<Field> fields, List<T> rows) throws IOException {
+        int count = rows.size();
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        block.write(BLOCK);
+        writeInt(block, count);
+        try {
+            for (Field field : fields) {
+                raw.reset();
+                byte encoding;
+                switch (type(field)) {
+                    case TYPE_LONG:
+                        long[] longs = new long[count];
+                        for (int i = 0; i < count; i++)
+                            longs[i] = field.getLong(rows.get(i));
+                        ColumnCodec.encodeLongs(longs, count, raw);
+                        encoding = ColumnCodec.ENCODING_DELTA;
+                        break;
+                    case TYPE_INT:
+                        long[] ints = new long[count];
+                        for (int i = 0; i < count; i++)
+                            ints[i] = field.getInt(rows.get(i));
+                        ColumnCodec.encodeLongs(ints, count, raw);
+                        encoding = ColumnCodec.ENCODING_DELTA;
+                        break;
+                    case TYPE_DOUBLE:
+                        double[] doubles = new double[count];
+                        for (int i = 0; i < count; i++)
+                            doubles[i] = field.getDouble(rows.get(i));
+                        encoding = ColumnCodec.encodeDoubles(doubles, count, raw);
+                        break;
+                    case TYPE_BOOLEAN:
+                        boolean[] booleans = new boolean[count];
+                        for (int i = 0; i < count; i++)
+                            booleans[i] = field.getBoolean(rows.get(i));
+                        ColumnCodec.encodeBooleans(booleans, count, raw);
+                        encoding = ColumnCodec.ENCODING_BOOLEAN;
+                        break;
+                    default:
+                        String[] strings = new String[count];
+                        for (int i = 0; i < count; i++)
+                            strings[i] = (String) field.get(rows.get(i));
+                        ColumnCodec.encodeStrings(strings, count, raw);
+                        encoding = ColumnCodec.ENCODING_STRING;
+                        break;
+                }
+                byte[] compressed = ColumnCodec.compress(raw.toByteArray(), raw.size());
+                block.write(encoding);
+                writeInt(block, raw.size());
+                writeInt(block, compressed.length);
+                block.write(compressed, 0, compressed.length);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+        write(channel, ByteBuffer.wrap(block.toByteArray()));
+    }
+
+    // --------------------- import ---------------------
+
+    /**
+     * Records are merged into existing history (createOrUpdate by date)
+     *
+     * @return number of imported records
+     */
+    public int importHistory(File file) throws IOException, SQLException {
+        int records = 0;
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            ByteBuffer header = read(channel, MAGIC.length + 8);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            int formatVersion = header.getInt();
+            int fileDatabaseVersion = header.getInt();
+            if (!new String(magic, UTF8).equals(new String(MAGIC, UTF8)) || formatVersion > FORMAT_VERSION)
+                throw new IOException("Unsupported file format");
+            log.debug("Importing history exported from database v" + fileDatabaseVersion);
+
+            Map<String, Class<?>> tables = new HashMap<>();
+            for (Class<?> table : TABLES)
+                tables.put(tableName(table), table);
+
+            byte marker;
+            while ((marker = read(channel, 1).get()) != END) {
+                if (marker != TABLE)
+                    throw new IOException("Corrupted file, unexpected marker " + marker);
+                String name = readString(channel);
+                Class<?> clazz = tables.get(name);
+                records += importTable(channel, clazz, name);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            stream.close();
+            databaseHelper.careportalEventCache.clear();
+        }
+        return records;
+    }
+
+    private <T> int importTable(FileChannel channel, Class<T> clazz, String name) throws IOException, SQLException, DataFormatException {
+        int columns = read(channel, 4).getInt();
+        List<Field> fields = new ArrayList<>();
+        List<Byte> types = new ArrayList<>();
+        for (int c = 0; c < columns; c++) {
+            String column = readString(channel);
+            byte type = read(channel, 1).get();
+            Field field = null;
+            if (clazz != null) {
+                try {
+                    field = clazz.getField(column);
+                    if (field.getAnnotation(DatabaseField.class) == null || type(field) != type)
+                        field = null;
+                } catch (NoSuchFieldException ignored) {
+                }
+            }
+            if (field == null)
+                log.debug("Skipping column " + name + "." + column);
+            fields.add(field);
+            types.add(type);
+        }
+
+        Dao<T, Long> tableDao = null;
+        if (clazz != null)
+            tableDao = databaseHelper.getDao(clazz);
+        final Dao<T, Long> dao = tableDao;
+        int records = 0;
+        byte marker;
+        while ((marker = read(channel, 1).get()) == BLOCK) {
+            int count = read(channel, 4).getInt();
+            final List<T> rows = new ArrayList<>(count);
+            try {
+                for (int i = 0; i < count && clazz != null; i++)
+                    rows.add(clazz.newInstance());
+                for (int c = 0; c < columns; c++) {
+                    ByteBuffer header = read(channel, 9);
+                    byte encoding = header.get();
+                    int rawLength = header.getInt();
+                    int compressedLength = header.getInt();
+                    ByteBuffer compressed = read(channel, compressedLength);
+                    Field field = fields.get(c);
+                    if (field == null)
+                        continue;
+                    ByteBuffer raw = ColumnCodec.decompress(compressed.array(), rawLength);
+                    switch (types.get(c)) {
+                        case TYPE_LONG:
+                            long[] longs = ColumnCodec.decodeLongs(raw, count);
+                            for (int i = 0; i < count; i++)
+                                field.setLong(rows.get(i), longs[i]);
+                            break;
+                        case TYPE_INT:
+                            long[] ints = ColumnCodec.decodeLongs(raw, count);
+                            for (int i = 0; i < count; i++)
+                                field.setInt(rows.get(i), (int) ints[i]);
+                            break;
+                        case TYPE_DOUBLE:
+                            double[] doubles = ColumnCodec.decodeDoubles(raw, count, encoding);
+                            for (int i = 0; i < count; i++)
+                                field.setDouble(rows.get(i), doubles[i]);
+                            break;
+                        case TYPE_BOOLEAN:
+                            boolean[] booleans = ColumnCodec.decodeBooleans(raw, count);
+                            for (int i = 0; i < count; i++)
+                                field.setBoolean(rows.get(i), booleans[i]);
+                            break;
+                        default:
+                            String[] strings = ColumnCodec.decodeStrings(raw, count);
+                            for (int i = 0; i < count; i++)
+                                field.set(rows.get(i), strings[i]);
+                            break;
+                    }
+                }
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IOException(e);
+            }
+            if (dao != null) {
+                // one transaction per block
+                try {
+                    dao.callBatchTasks(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            for (T row : rows)
+                                dao.createOrUpdate(row);
+                            return null;
+                        }
+                    });
+                } catch (Exception e) {
+                    throw new SQLException(e);
+                }
+                records += count;
+            }
+        }
+        if (marker != END_TABLE)
+            throw new IOException("Corrupted file, unexpected marker " + marker);
+        log.debug("Imported " + records + " records to " + name);
+        return records;
+    }
+
+    // --------------------- helpers ---------------------
+
+    private static String tableName(Class<?> clazz) {
+        return clazz.getAnnotation(DatabaseTable.class).tableName();
+    }
+
+    private static List<Field> databaseFields(Class<?> clazz) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : clazz.getFields()) {
+            if (field.getAnnotation(DatabaseField.class) != null)
+                fields.add(field);
+        }
+        return fields;
+    }
+
+    private static byte type(Field field) {
+        Class<?> type = field.getType();
+        if (type == long.class) return TYPE_LONG;
+        if (type == int.class) return TYPE_INT;
+        if (type == double.class) return TYPE_DOUBLE;
+        if (type == boolean.class) return TYPE_BOOLEAN;
+        if (type == String.class) return TYPE_STRING;
+        throw new IllegalArgumentException("Unsupported column type " + field);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        if (buffer.position() != 0)
+            buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private static ByteBuffer read(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new EOFException();
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(UTF8);
+        writeInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(FileChannel channel) throws IOException {
+        int length = read(channel, 4).getInt();
+        return new String(read(channel, length).array(), UTF8);
+    }
+}
@@ -4,4 +4,10 @@ package info.nightscout.androidaps.events;
  * Created by mike on 05.06.2016.
  */
 public class EventNewBG extends EventLoop {
+    // date of oldest new or changed reading, 0 if everything changed
+    public long time = 0;
+
+    public EventNewBG(long time) {
+        this.time = time;
+    }
 }
@@ -7,6 +7,7 @@ import java.util.Date;
 import info.nightscout.androidaps.data.DetailedBolusInfo;
 import info.nightscout.androidaps.data.PumpEnactResult;
 import info.nightscout.androidaps.data.Profile;
+import info.nightscout.androidaps.data.PumpSession;
 
 /**
  * Created by mike on 04.06.2016.
@@ -25,6 +26,9 @@ public interface PumpInterface {
 
     void getPumpStatus();
 
+    // Run batch of operations in one connected session and return combined result
+    PumpEnactResult runSession(PumpSession session);
+
     // Upload to pump new basal profile
     PumpEnactResult setNewBasalProfile(Profile profile);
     boolean isThisProfileSet(Profile profile);
@@ -0,0 +1,220 @@
+package info.nightscout.androidaps.plugins.IobCobCalculator;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TreeSet;
+
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.data.Profile;
+import info.nightscout.androidaps.db.ExtendedBolus;
+import info.nightscout.androidaps.db.ProfileSwitch;
+import info.nightscout.androidaps.db.TemporaryBasal;
+import info.nightscout.androidaps.interfaces.Interval;
+import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
+
+/**
+ * Basal rates in a time window as segments of constant rate.
+ * <p>
+ * Built from change points of profile switches, basal schedule, temporary basals
+ * and extended boluses faked as temps, so cost depends on number of changes
+ * instead of length of the window.
+ */
+
+public class BasalTimeline {
+
+    public static class Segment extends BasalData {
+        public long start;
+        public long end;
+
+        Segment(long start, long end, double basal, boolean isTempBasalRunning, double tempBasalAbsolute) {
+            this.start = start;
+            this.end = end;
+            this.basal = basal;
+            this.isTempBasalRunning = isTempBasalRunning;
+            this.tempBasalAbsolute = tempBasalAbsolute;
+        }
+
+        boolean sameRates(Segment other) {
+            return basal == other.basal && isTempBasalRunning == other.isTempBasalRunning && tempBasalAbsolute == other.tempBasalAbsolute;
+        }
+    }
+
+    // basal schedule of one profile valid in [start, end)
+    static class Schedule {
+        final long start;
+        final long end;
+        // seconds from midnight, ascending, first is 0
+        final int[] times;
+        final double[] values;
+
+        Schedule(long start, long end, int[] times, double[] values) {
+            this.start = start;
+            this.end = end;
+            this.times = times;
+            this.values = values;
+        }
+
+        Schedule(long start, long end, Profile profile) {
+            this.start = start;
+            this.end = end;
+            Profile.BasalValue[] basalValues = profile.getBasalValues();
+            times = new int[basalValues.length];
+            values = new double[basalValues.length];
+            for (int i = 0; i < basalValues.length; i++) {
+                times[i] = basalValues[i].timeAsSeconds;
+                values[i] = basalValues[i].value;
+            }
+        }
+
+        // same lookup as Profile.getBasal(time)
+        double basal(long time) {
+            int seconds = Profile.secondsFromMidnight(time);
+            double value = values[0];
+            for (int i = 0; i < times.length && times[i] <= seconds; i++)
+                value = values[i];
+            return value;
+        }
+
+        void addChangePoints(TreeSet<Long> points) {
+            Calendar c = Calendar.getInstance();
+            c.setTimeInMillis(start);
+            c.set(Calendar.HOUR_OF_DAY, 0);
+            c.set(Calendar.MINUTE, 0);
+            c.set(Calendar.SECOND, 0);
+            c.set(Calendar.MILLISECOND, 0);
+            while (c.getTimeInMillis() < end) {
+                long midnight = c.getTimeInMillis();
+                for (int time : times) {
+                    long point = midnight + time * 1000L;
+                    if (point > start && point < end)
+                        points.add(point);
+                }
+                c.add(Calendar.DAY_OF_MONTH, 1);
+            }
+        }
+    }
+
+    // walks sorted non-overlapping intervals with ascending time
+    private static class Cursor<T extends Interval> {
+        private final List<T> intervals;
+        private int index = 0;
+
+        Cursor(List<T> intervals) {
+            this.intervals = intervals;
+        }
+
+        T at(long time) {
+            while (index < intervals.size() && intervals.get(index).end() <= time)
+                index++;
+            if (index < intervals.size() && intervals.get(index).start() <= time)
+                return intervals.get(index);
+            return null;
+        }
+    }
+
+    /**
+     * @return segments covering [from, to) where profile is known, oldest first
+     */
+    public static List<Segment> build(long from, long to) {
+        ConfigBuilderPlugin configBuilder = MainApp.getConfigBuilder();
+        List<ExtendedBolus> extendedBoluses = new ArrayList<>();
+        if (ConfigBuilderPlugin.getActivePump().isFakingTempsByExtendedBoluses())
+            extendedBoluses = configBuilder.getExtendedBolusesFromHistory().getList();
+        return build(from, to, schedules(from, to), configBuilder.getTemporaryBasalsFromHistory().getList(), extendedBoluses);
+    }
+
+    // profile may change only at start or end of profile switch
+    private static List<Schedule> schedules(long from, long to) {
+        TreeSet<Long> points = new TreeSet<>();
+        points.add(from);
+        points.add(to);
+        for (ProfileSwitch profileSwitch : MainApp.getConfigBuilder().getProfileSwitchesFromHistory().getList()) {
+            if (profileSwitch.start() > from && profileSwitch.start() < to)
+                points.add(profileSwitch.start());
+            if (profileSwitch.end() > from && profileSwitch.end() < to)
+                points.add(profileSwitch.end());
+        }
+        List<Schedule> schedules = new ArrayList<>();
+        Long start = null;
+        for (Long point : points) {
+            if (start != null) {
+                Profile profile = MainApp.getConfigBuilder().getProfile(start + (point - start) / 2);
+                if (profile != null)
+                    schedules.add(new Schedule(start, point, profile));
+            }
+            start = point;
+        }
+        return schedules;
+    }
+
+    static List<Segment> build(long from, long to, List<Schedule> schedules, List<TemporaryBasal> temps, List<ExtendedBolus> extendedBoluses) {
+        TreeSet<Long> points = new TreeSet<>();
+        points.add(from);
+        for (Schedule schedule : schedules) {
+            points.add(schedule.start);
+            schedule.addChangePoints(points);
+        }
+        addChangePoints(points, temps);
+        addChangePoints(points, extendedBoluses);
+
+        List<Segment> segments = new ArrayList<>();
+        Cursor<TemporaryBasal> tempCursor = new Cursor<>(withDuration(temps));
+        Cursor<ExtendedBolus> extendedCursor = new Cursor<>(withDuration(extendedBoluses));
+        int scheduleIndex = 0;
+        Long[] sorted = points.subSet(from, to).toArray(new Long[0]);
+        for (int i = 0; i < sorted.length; i++) {
+            long start = sorted[i];
+            long end = i + 1 < sorted.length ? sorted[i + 1] : to;
+            while (scheduleIndex < schedules.size() && schedules.get(scheduleIndex).end <= start)
+                scheduleIndex++;
+            if (scheduleIndex == schedules.size() || schedules.get(scheduleIndex).start > start)
+                continue; // profile unknown
+            double basal = schedules.get(scheduleIndex).basal(start);
+
+            boolean isTempBasalRunning = true;
+            double tempBasalAbsolute;
+            TemporaryBasal temp = tempCursor.at(start);
+            ExtendedBolus extendedBolus = extendedCursor.at(start);
+            if (temp != null) {
+                if (temp.isFakeExtended)
+                    tempBasalAbsolute = basal + temp.netExtendedRate;
+                else if (temp.isAbsolute)
+                    tempBasalAbsolute = temp.absoluteRate;
+                else
+                    tempBasalAbsolute = basal * temp.percentRate / 100;
+            } else if (extendedBolus != null) {
+                tempBasalAbsolute = basal + extendedBolus.absoluteRate();
+            } else {
+                isTempBasalRunning = false;
+                tempBasalAbsolute = basal;
+            }
+
+            Segment segment = new Segment(start, end, basal, isTempBasalRunning, tempBasalAbsolute);
+            Segment last = segments.size() > 0 ? segments.get(segments.size() - 1) : null;
+            if (last != null && last.end == start && last.sameRates(segment))
+                last.end = end;
+            else
+                segments.add(segment);
+        }
+        return segments;
+    }
+
+    private static void addChangePoints(TreeSet<Long> points, List<? extends Interval> intervals) {
+        for (Interval interval : intervals) {
+            if (interval.isEndingEvent())
+                continue;
+            points.add(interval.start());
+            points.add(interval.end());
+        }
+    }
+
+    // ending events only cut previous interval
+    private static <T extends Interval> List<T> withDuration(List<T> intervals) {
+        List<T> result = new ArrayList<>();
+        for (T interval : intervals)
+            if (!interval.isEndingEvent() && interval.end() > interval.start())
+                result.add(interval);
+        return result;
+    }
+}
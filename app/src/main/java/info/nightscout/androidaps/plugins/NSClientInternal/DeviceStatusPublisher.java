@@ -0,0 +1,174 @@
+package info.nightscout.androidaps.plugins.NSClientInternal;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import info.nightscout.androidaps.R;
+import info.nightscout.utils.SP;
+
+/**
+ * Decides which devicestatus records go to NS and in what size.
+ * <p>
+ * Record is uploaded only if loop, pump or uploader state changed since last upload.
+ * Unchanged records are sent as heartbeat only, its interval grows from 5 to 30 min while
+ * nothing changes so NS still sees the uploader alive. Prediction arrays are cut to configured
+ * horizon, NS plots them in 5 min steps so points are dropped from the end only.
+ * Records created while disconnected wait in UploadQueue where newer devicestatus replaces older.
+ */
+
+public class DeviceStatusPublisher {
+    private static Logger log = LoggerFactory.getLogger(DeviceStatusPublisher.class);
+
+    static final long MIN_HEARTBEAT = 5 * 60 * 1000L;
+    // well below NS default OpenAPS warn threshold (30 min), quiet loop must not look stale
+    static final long MAX_HEARTBEAT = 15 * 60 * 1000L;
+    static final int DEFAULT_HORIZON = 240; // min
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    // change every run and don't make status different
+    private static final Set<String> VOLATILE = new HashSet<>(Arrays.asList(
+            "created_at", "timestamp", "time", "clock", "date", "mills", "deliverAt", "predBGs", "reason"));
+    private static final int BATTERY_STEP = 5; // %
+
+    private static String lastFingerprint = null;
+    private static long lastUpload = 0;
+    private static long heartbeat = MIN_HEARTBEAT;
+    private static int skipped = 0;
+
+    // time and size of uploaded records within last hour
+    private static final Deque<long[]> sent = new ArrayDeque<>();
+
+    /**
+     * @param record devicestatus mongo record, it's not modified
+     * @return record to upload or null if nothing relevant changed
+     */
+    public static synchronized JSONObject prepare(JSONObject record, long now) {
+        try {
+            JSONObject copy = new JSONObject(record.toString());
+            String fingerprint = fingerprint(copy);
+            if (fingerprint.equals(lastFingerprint)) {
+                if (now - lastUpload < heartbeat) {
+                    skipped++;
+                    return null;
+                }
+                heartbeat = Math.min(MAX_HEARTBEAT, heartbeat * 2);
+            } else {
+                heartbeat = MIN_HEARTBEAT;
+            }
+            if (skipped > 0)
+                log.debug("Unchanged devicestatus skipped: " + skipped);
+            skipped = 0;
+            lastFingerprint = fingerprint;
+            lastUpload = now;
+
+            int points = SP.getInt(R.string.key_ns_devicestatus_prediction_horizon, DEFAULT_HORIZON) / 5;
+            JSONObject openaps = copy.optJSONObject("openaps");
+            if (openaps != null) {
+                truncatePredictions(openaps.optJSONObject("suggested"), points);
+                truncatePredictions(openaps.optJSONObject("enacted"), points);
+            }
+            return copy;
+        } catch (JSONException e) {
+            log.error("Unhandled exception", e);
+            return record;
+        }
+    }
+
+    public static synchronized void reset() {
+        lastFingerprint = null;
+        lastUpload = 0;
+        heartbeat = MIN_HEARTBEAT;
+        skipped = 0;
+    }
+
+    // called by UploadEngine when devicestatus is emitted
+    static synchronized void sent(int bytes, long now) {
+        sent.addLast(new long[]{now, bytes});
+        expire(now);
+    }
+
+    public static synchronized long bytesPerHour(long now) {
+        expire(now);
+        long sum = 0;
+        for (long[] upload : sent)
+            sum += upload[1];
+        return sum;
+    }
+
+    private static void expire(long now) {
+        while (!sent.isEmpty() && sent.peekFirst()[0] < now - HOUR)
+            sent.removeFirst();
+    }
+
+    static void truncatePredictions(JSONObject result, int points) throws JSONException {
+        if (result == null)
+            return;
+        JSONObject predBGs = result.optJSONObject("predBGs");
+        if (predBGs == null)
+            return;
+        Iterator<String> keys = predBGs.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            JSONArray values = predBGs.optJSONArray(key);
+            if (values == null || values.length() <= points)
+                continue;
+            JSONArray truncated = new JSONArray();
+            for (int i = 0; i < points; i++)
+                truncated.put(values.get(i));
+            predBGs.put(key, truncated);
+        }
+    }
+
+    // canonical form of record without volatile fields, keys sorted
+    static String fingerprint(JSONObject record) throws JSONException {
+        StringBuilder builder = new StringBuilder();
+        append(builder, record);
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> keys = new ArrayList<>();
+            Iterator<String> iterator = object.keys();
+            while (iterator.hasNext())
+                keys.add(iterator.next());
+            Collections.sort(keys);
+            builder.append('{');
+            for (String key : keys) {
+                if (VOLATILE.contains(key))
+                    continue;
+                builder.append(key).append(':');
+                if (key.equals("uploaderBattery") || key.equals("percent"))
+                    builder.append(object.optInt(key) / BATTERY_STEP);
+                else
+                    append(builder, object.get(key));
+                builder.append(',');
+            }
+            builder.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            builder.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                append(builder, array.get(i));
+                builder.append(',');
+            }
+            builder.append(']');
+        } else {
+            builder.append(value);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package info.nightscout.androidaps.plugins.NSClientInternal;
+
+import android.os.Handler;
+import android.os.Process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Ordered processing lane for messages received from NS.
+ * <p>
+ * Alarms, announcements and alarm acks go through small lane on its own foreground priority
+ * thread, data packets through bulk lane on service handler thread. Long history resync
+ * in bulk lane doesn't delay alarm notification. Time from receiving to start of processing
+ * is recorded per lane.
+ */
+
+public class InboundLane {
+    private static Logger log = LoggerFactory.getLogger(InboundLane.class);
+
+    private final String name;
+    private final Executor executor;
+
+    private long count = 0;
+    private long latencySum = 0;
+    private long maxLatency = 0;
+
+    public InboundLane(String name, Executor executor) {
+        this.name = name;
+        this.executor = executor;
+    }
+
+    public static InboundLane prioritized(final String name) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_FOREGROUND);
+                        runnable.run();
+                    }
+                }, name);
+            }
+        });
+        return new InboundLane(name, executor);
+    }
+
+    public static InboundLane onHandler(String name, final Handler handler) {
+        return new InboundLane(name, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                handler.post(runnable);
+            }
+        });
+    }
+
+    public void post(final Runnable runnable) {
+        final long received = System.currentTimeMillis();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                record(System.currentTimeMillis() - received);
+                try {
+                    runnable.run();
+                } catch (RuntimeException e) {
+                    // lane must survive bad message
+                    log.error("Unhandled exception", e);
+                }
+            }
+        });
+    }
+
+    private synchronized void record(long latency) {
+        count++;
+        latencySum += latency;
+        maxLatency = Math.max(maxLatency, latency);
+    }
+
+    public synchronized long averageLatency() {
+        return count > 0 ? latencySum / count : 0;
+    }
+
+    public synchronized long maxLatency() {
+        return maxLatency;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return name + ": " + count + " msgs, avg " + averageLatency() + " ms, max " + maxLatency + " ms";
+    }
+}
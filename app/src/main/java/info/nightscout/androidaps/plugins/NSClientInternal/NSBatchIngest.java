@@ -0,0 +1,151 @@
+package info.nightscout.androidaps.plugins.NSClientInternal;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.R;
+import info.nightscout.androidaps.Services.DataService;
+import info.nightscout.androidaps.db.BgReading;
+import info.nightscout.androidaps.plugins.NSClientInternal.data.NSSgv;
+import info.nightscout.utils.SP;
+
+/**
+ * Stores records received from NS directly into database.
+ * <p>
+ * Records are mapped one by one from received array into typed objects and written
+ * in bounded batches, one transaction per batch. Nothing is copied or serialized
+ * for local consumers, history load of 48h sgvs doesn't produce any Intent.
+ * Treatments are passed to DataService handlers the same way, Intents are
+ * broadcast for other apps only.
+ * <p>
+ * DatabaseHelper looks records up by _id and then creates or updates them, so all
+ * writes of received and local records run on one serial worker.
+ */
+
+public class NSBatchIngest {
+    private static Logger log = LoggerFactory.getLogger(NSBatchIngest.class);
+
+    static final int BATCH_SIZE = 100;
+
+    private static final ExecutorService dbWorker = Executors.newSingleThreadExecutor();
+
+    // runs task on db worker and waits for it, must not be called from the worker itself
+    static <T> T runOnWorker(Callable<T> task) {
+        try {
+            return dbWorker.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Unhandled exception", e);
+        } catch (ExecutionException e) {
+            log.error("Unhandled exception", e.getCause());
+        }
+        return null;
+    }
+
+    public static void runOnWorker(final Runnable task) {
+        runOnWorker(new Callable<Void>() {
+            @Override
+            public Void call() {
+                task.run();
+                return null;
+            }
+        });
+    }
+
+    // returns number of new records
+    public static int storeSgvs(final JSONArray sgvs) {
+        Integer created = runOnWorker(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return doStoreSgvs(sgvs);
+            }
+        });
+        return created != null ? created : 0;
+    }
+
+    private static int doStoreSgvs(JSONArray sgvs) {
+        List<BgReading> batch = new ArrayList<>(Math.min(BATCH_SIZE, sgvs.length()));
+        int created = 0;
+        for (int index = 0; index < sgvs.length(); index++) {
+            JSONObject jsonSgv = sgvs.optJSONObject(index);
+            if (jsonSgv == null)
+                continue;
+            NSSgv sgv = new NSSgv(jsonSgv);
+            if (sgv.getMills() == null || sgv.getMgdl() == null) {
+                log.debug("Invalid sgv: " + jsonSgv.toString());
+                continue;
+            }
+            batch.add(new BgReading(sgv));
+            if (batch.size() == BATCH_SIZE) {
+                created += MainApp.getDbHelper().createIfNotExists(batch, "NS");
+                batch.clear();
+            }
+        }
+        if (batch.size() > 0)
+            created += MainApp.getDbHelper().createIfNotExists(batch, "NS");
+        return created;
+    }
+
+    private static boolean acceptNSData() {
+        return !SP.getBoolean(R.string.key_ns_upload_only, false);
+    }
+
+    public static void storeTreatments(final JSONArray treatments) {
+        if (!acceptNSData())
+            return;
+        runOnWorker(new Runnable() {
+            @Override
+            public void run() {
+                for (int index = 0; index < treatments.length(); index++) {
+                    try {
+                        DataService.handleAddChangeDataFromNS(treatments.getJSONObject(index));
+                    } catch (JSONException e) {
+                        log.error("Unhandled exception", e);
+                    }
+                }
+            }
+        });
+    }
+
+    public static void removeTreatments(final JSONArray treatments) {
+        if (!acceptNSData())
+            return;
+        runOnWorker(new Runnable() {
+            @Override
+            public void run() {
+                for (int index = 0; index < treatments.length(); index++) {
+                    JSONObject jsonTreatment = treatments.optJSONObject(index);
+                    if (jsonTreatment != null && jsonTreatment.has("_id")) {
+                        log.debug("Removing record deleted in NS: " + jsonTreatment.optString("_id"));
+                        DataService.handleRemovedRecordFromNS(jsonTreatment.optString("_id"));
+                    }
+                }
+            }
+        });
+    }
+
+    // treatment created in AAPS and waiting for upload, stored even in upload only mode
+    public static void storeLocalTreatment(final JSONObject treatment) {
+        dbWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    DataService.handleAddChangeDataFromNS(treatment);
+                } catch (JSONException e) {
+                    log.error("Unhandled exception", e);
+                }
+            }
+        });
+    }
+}
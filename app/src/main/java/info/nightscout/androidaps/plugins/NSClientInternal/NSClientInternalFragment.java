@@ -33,6 +33,8 @@ import info.nightscout.androidaps.plugins.Common.SubscriberFragment;
 import info.nightscout.androidaps.plugins.NSClientInternal.events.EventNSClientNewLog;
 import info.nightscout.androidaps.plugins.NSClientInternal.events.EventNSClientRestart;
 import info.nightscout.androidaps.plugins.NSClientInternal.events.EventNSClientUpdateGUI;
+import info.nightscout.androidaps.plugins.NSClientInternal.services.NSClientService;
+import info.nightscout.utils.DecimalFormatter;
 import info.nightscout.utils.SP;
 
 public class NSClientInternalFragment extends SubscriberFragment implements View.OnClickListener, CompoundButton.OnCheckedChangeListener {
@@ -167,7 +169,12 @@ public class NSClientInternalFragment extends SubscriberFragment implements View
                         logScrollview.fullScroll(ScrollView.FOCUS_DOWN);
                     }
                     urlTextView.setText(NSClientInternalPlugin.getPlugin().url());
-                    Spanned queuetext = Html.fromHtml(MainApp.sResources.getString(R.string.queue) + " <b>" + UploadQueue.size() + "</b>");
+                    long latency = NSClientService.uploadEngine.averageLatency();
+                    double throughput = NSClientService.uploadEngine.averageThroughput();
+                    long statusBytes = DeviceStatusPublisher.bytesPerHour(System.currentTimeMillis());
+                    Spanned queuetext = Html.fromHtml(MainApp.sResources.getString(R.string.queue) + " <b>" + UploadQueue.size() + "</b>" + (latency > 0 ? " (" + latency + " ms)" : "")
+                            + (throughput > 0 ? " " + DecimalFormatter.to1Decimal(throughput) + " records/s" : "")
+                            + (statusBytes > 0 ? " devicestatus: " + statusBytes / 1024 + " kB/h" : ""));
                     queueTextView.setText(queuetext);
                     statusTextView.setText(NSClientInternalPlugin.getPlugin().status);
                 }
@@ -0,0 +1,479 @@
+package info.nightscout.androidaps.plugins.NSClientInternal;
+
+import com.j256.ormlite.dao.CloseableIterator;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.db.DbRequest;
+import info.nightscout.androidaps.plugins.NSClientInternal.events.EventNSClientNewLog;
+import info.nightscout.androidaps.plugins.NSClientInternal.events.EventNSClientRestart;
+import info.nightscout.utils.DecimalFormatter;
+import io.socket.client.Ack;
+
+/**
+ * Pipelined upload of queued DbRequests to NS.
+ * <p>
+ * Up to window requests are sent without waiting for ack. dbAdd records of collections
+ * NS inserts as plain documents are sent as one array per emit. Acked records are removed
+ * from queue in one bulk delete, missing or failed acks delay next attempt with exponential backoff.
+ */
+
+public class UploadEngine {
+    private static Logger log = LoggerFactory.getLogger(UploadEngine.class);
+
+    public interface Transport {
+        boolean isReady();
+
+        void emit(String event, JSONObject message, Ack ack);
+    }
+
+    public interface Store {
+        // requests in queue order, without those in skip
+        List<DbRequest> pending(int max, Set<String> skip);
+
+        // _id == null matches any
+        List<DbRequest> find(String action, String collection, String _id);
+
+        void create(DbRequest dbr);
+
+        void delete(Collection<String> nsClientIDs);
+    }
+
+    public static final int DEFAULT_WINDOW = 8;
+    static final int MAX_BATCH = 50;
+    static final long ACK_TIMEOUT = 60 * 1000L;
+    static final long MIN_BACKOFF = 5 * 1000L;
+    static final long MAX_BACKOFF = 5 * 60 * 1000L;
+
+    // NS handles dbAdd of these collections by plain insert so array of documents is accepted.
+    // treatments and devicestatus are checked for duplicates one by one on server side
+    static final Set<String> BATCHED_COLLECTIONS = new HashSet<>(Arrays.asList("entries"));
+
+    private final Transport transport;
+    private final Store store;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+
+    private int window = DEFAULT_WINDOW;
+    // shortened by tests
+    long ackTimeout = ACK_TIMEOUT;
+    long minBackoff = MIN_BACKOFF;
+    private final Map<Integer, InFlight> inFlight = new LinkedHashMap<>();
+    private final Set<String> inFlightIDs = new HashSet<>();
+    private final Set<String> acked = new HashSet<>();
+    private int sequence = 0;
+    private int failures = 0;
+    private long backoffUntil = 0;
+    private boolean drained = false;
+    private boolean pumpScheduled = false;
+    // time from request creation (nsClientID) to emit
+    private long latencySum = 0;
+    private long latencyCount = 0;
+    // records per time from emit to ack
+    private long ackedRecords = 0;
+    private long ackedTime = 0;
+
+    private class InFlight {
+        final int id;
+        final String action;
+        final String collection;
+        final List<String> nsClientIDs;
+        final long sent = System.currentTimeMillis();
+
+        InFlight(int id, String action, String collection, List<String> nsClientIDs) {
+            this.id = id;
+            this.action = action;
+            this.collection = collection;
+            this.nsClientIDs = nsClientIDs;
+        }
+    }
+
+    public UploadEngine(Transport transport) {
+        this(transport, new DatabaseStore());
+    }
+
+    public UploadEngine(Transport transport, Store store) {
+        this.transport = transport;
+        this.store = store;
+    }
+
+    public synchronized void setWindow(int window) {
+        this.window = Math.max(1, window);
+    }
+
+    public synchronized int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Store new request merged with pending ones and send it as soon as possible.
+     * Database work runs on engine worker, caller (UI thread too) is not blocked.
+     */
+    public void add(final DbRequest dbr) {
+        try {
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    addNow(dbr);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // engine is shut down, request waits in queue for next engine
+            addNow(dbr);
+        }
+    }
+
+    // runs under engine lock so records being sent are never merged or cancelled
+    synchronized void addNow(DbRequest dbr) {
+        // acked requests are sent already, coalescing must not cancel against them
+        flushAcked();
+        if (UploadQueue.coalesce(dbr, store, inFlightIDs))
+            store.create(dbr);
+        drained = false;
+        schedulePump(0);
+    }
+
+    public synchronized long averageLatency() {
+        return latencyCount > 0 ? latencySum / latencyCount : 0;
+    }
+
+    // records per second of one emit
+    public synchronized double averageThroughput() {
+        return ackedTime > 0 ? ackedRecords * 1000d / ackedTime : 0d;
+    }
+
+    /**
+     * New data in queue or connection (re)established
+     */
+    public synchronized void resend(String reason) {
+        drained = false;
+        log.debug("Resend requested: " + reason);
+        schedulePump(0);
+    }
+
+    /**
+     * Connection lost. Unacked requests stay in queue and are sent again after reconnect
+     */
+    public synchronized void reset() {
+        inFlight.clear();
+        inFlightIDs.clear();
+        failures = 0;
+        backoffUntil = 0;
+        if (!acked.isEmpty())
+            schedulePump(0);
+    }
+
+    /**
+     * Stops worker thread when NSClientService is destroyed
+     */
+    public synchronized void shutdown() {
+        worker.shutdownNow();
+        log.debug("Upload engine shut down");
+    }
+
+    public boolean isShutdown() {
+        return worker.isShutdown();
+    }
+
+    private void schedule(Runnable task, long delay) {
+        if (worker.isShutdown())
+            return;
+        worker.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void schedulePump(long delay) {
+        if (pumpScheduled && delay > 0)
+            return;
+        if (worker.isShutdown())
+            return;
+        pumpScheduled = true;
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                pump();
+            }
+        }, delay);
+    }
+
+    synchronized void pump() {
+        pumpScheduled = false;
+        flushAcked();
+        if (!transport.isReady())
+            return;
+        long now = System.currentTimeMillis();
+        if (now < backoffUntil) {
+            schedulePump(backoffUntil - now);
+            return;
+        }
+        int free = window - inFlight.size();
+        if (free <= 0 || drained)
+            return;
+
+        // read only rows which fit into free emits, more are read when batches have room left
+        int limit = free;
+        List<DbRequest> pending;
+        while (true) {
+            pending = store.pending(limit, inFlightIDs);
+            if (pending.size() < limit) {
+                drained = true;
+                break;
+            }
+            int needed = rowsToFill(pending, free);
+            if (needed <= limit)
+                break;
+            limit = needed;
+        }
+
+        // group into emits keeping queue order of first record in each emit
+        List<List<DbRequest>> emits = new ArrayList<>();
+        Map<String, List<DbRequest>> openBatches = new LinkedHashMap<>();
+        for (DbRequest dbr : pending) {
+            if (batched(dbr)) {
+                List<DbRequest> batch = openBatches.get(dbr.collection);
+                if (batch == null || batch.size() >= MAX_BATCH) {
+                    batch = new ArrayList<>();
+                    openBatches.put(dbr.collection, batch);
+                    emits.add(batch);
+                }
+                batch.add(dbr);
+            } else {
+                List<DbRequest> single = new ArrayList<>();
+                single.add(dbr);
+                emits.add(single);
+            }
+        }
+        if (emits.size() > free) {
+            emits = emits.subList(0, free);
+            drained = false;
+        }
+
+        for (List<DbRequest> emit : emits)
+            send(emit);
+        if (emits.size() > 0)
+            MainApp.bus().post(new EventNSClientNewLog("QUEUE", "Sent " + emits.size() + " requests, in flight: " + inFlight.size()));
+    }
+
+    private static boolean batched(DbRequest dbr) {
+        return dbr.action.equals("dbAdd") && BATCHED_COLLECTIONS.contains(dbr.collection);
+    }
+
+    // number of rows free emits can take, rows not read yet are counted as batched
+    static int rowsToFill(List<DbRequest> pending, int free) {
+        int emits = 0;
+        Map<String, Integer> openBatches = new HashMap<>();
+        for (int i = 0; i < pending.size(); i++) {
+            DbRequest dbr = pending.get(i);
+            if (batched(dbr)) {
+                Integer size = openBatches.get(dbr.collection);
+                if (size != null && size < MAX_BATCH) {
+                    openBatches.put(dbr.collection, size + 1);
+                    continue;
+                }
+                openBatches.put(dbr.collection, 1);
+            }
+            if (++emits > free)
+                return i;
+        }
+        int room = (free - emits) * MAX_BATCH;
+        for (int size : openBatches.values())
+            room += MAX_BATCH - size;
+        return pending.size() + room;
+    }
+
+    private void send(List<DbRequest> requests) {
+        DbRequest first = requests.get(0);
+        List<String> ids = new ArrayList<>();
+        for (DbRequest dbr : requests)
+            ids.add(dbr.nsClientID);
+        final InFlight entry = new InFlight(++sequence, first.action, first.collection, ids);
+        try {
+            JSONObject message = new JSONObject();
+            message.put("collection", first.collection);
+            if (first.action.equals("dbAdd")) {
+                if (requests.size() == 1 && !BATCHED_COLLECTIONS.contains(first.collection)) {
+                    message.put("data", new JSONObject(first.data));
+                } else {
+                    JSONArray data = new JSONArray();
+                    for (DbRequest dbr : requests)
+                        data.put(new JSONObject(dbr.data));
+                    message.put("data", data);
+                }
+            } else {
+                message.put("_id", first._id);
+                if (!first.action.equals("dbRemove"))
+                    message.put("data", new JSONObject(first.data));
+            }
+            inFlight.put(entry.id, entry);
+            inFlightIDs.addAll(ids);
+            transport.emit(first.action, message, new Ack() {
+                @Override
+                public void call(Object... args) {
+                    onAck(entry, args.length > 0 ? args[0] : null);
+                }
+            });
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    onTimeout(entry);
+                }
+            }, ackTimeout);
+            if (first.collection.equals("devicestatus")) {
+                int bytes = 0;
+                for (DbRequest dbr : requests)
+                    bytes += dbr.data.length();
+                DeviceStatusPublisher.sent(bytes, System.currentTimeMillis());
+            }
+            long latency = latency(requests);
+            if (requests.size() > 1)
+                MainApp.bus().post(new EventNSClientNewLog(first.action.toUpperCase() + " " + first.collection, "Sent " + requests.size() + " records, latency " + latency + " ms"));
+            else
+                MainApp.bus().post(new EventNSClientNewLog(first.action.toUpperCase() + " " + first.collection, "Sent " + (first.action.equals("dbAdd") ? first.nsClientID : first._id) + ", latency " + latency + " ms"));
+        } catch (JSONException e) {
+            // record can't be ever sent, drop it from queue
+            log.error("Unhandled exception", e);
+            acked.addAll(ids);
+        }
+    }
+
+    // highest latency in emit, requests waiting in queue over reconnect are included
+    private long latency(List<DbRequest> requests) {
+        long now = System.currentTimeMillis();
+        long max = 0;
+        for (DbRequest dbr : requests) {
+            try {
+                long latency = now - Long.parseLong(dbr.nsClientID);
+                latencySum += latency;
+                latencyCount++;
+                max = Math.max(max, latency);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return max;
+    }
+
+    synchronized void onAck(InFlight entry, Object response) {
+        if (inFlight.remove(entry.id) == null)
+            return; // timed out or connection reset meanwhile
+        inFlightIDs.removeAll(entry.nsClientIDs);
+        if (isSuccess(entry, response)) {
+            acked.addAll(entry.nsClientIDs);
+            failures = 0;
+            long time = Math.max(1, System.currentTimeMillis() - entry.sent);
+            ackedRecords += entry.nsClientIDs.size();
+            ackedTime += time;
+            MainApp.bus().post(new EventNSClientNewLog(entry.action.toUpperCase(), "Acked " + entry.nsClientIDs.size() + " " + entry.collection
+                    + " in " + time + " ms, " + DecimalFormatter.to1Decimal(entry.nsClientIDs.size() * 1000d / time) + " records/s"));
+        } else {
+            failed("Unknown response " + response);
+        }
+        schedulePump(0);
+    }
+
+    synchronized void onTimeout(InFlight entry) {
+        if (inFlight.remove(entry.id) == null)
+            return;
+        inFlightIDs.removeAll(entry.nsClientIDs);
+        failed("Ack timeout " + entry.action + " " + entry.collection);
+        schedulePump(0);
+    }
+
+    private void failed(String reason) {
+        failures++;
+        long backoff = Math.min(MAX_BACKOFF, minBackoff << Math.min(failures - 1, 16));
+        backoffUntil = System.currentTimeMillis() + backoff;
+        drained = false;
+        MainApp.bus().post(new EventNSClientNewLog("ERROR", reason + ", next attempt in " + backoff / 1000 + " sec"));
+    }
+
+    private boolean isSuccess(InFlight entry, Object response) {
+        try {
+            if (entry.action.equals("dbAdd")) {
+                // inserted (or already existing) documents are returned
+                if (response instanceof JSONArray)
+                    return true;
+                if (response instanceof JSONObject && ((JSONObject) response).has("result")) {
+                    String result = ((JSONObject) response).getString("result");
+                    if (result.contains("Not"))
+                        MainApp.bus().post(new EventNSClientRestart());
+                    log.debug("DBACCESS " + result);
+                }
+                return false;
+            }
+            if (response instanceof JSONObject && ((JSONObject) response).has("result")) {
+                String result = ((JSONObject) response).getString("result");
+                if (result.equals("Missing _id"))
+                    log.debug("Internal error: Missing _id returned on " + entry.action + " ack");
+                return result.equals("success") || result.equals("Missing _id");
+            }
+        } catch (JSONException e) {
+            log.error("Unhandled exception", e);
+        }
+        return false;
+    }
+
+    private void flushAcked() {
+        if (acked.isEmpty())
+            return;
+        store.delete(new ArrayList<>(acked));
+        log.debug("Removed " + acked.size() + " items from UploadQueue");
+        acked.clear();
+    }
+
+    static class DatabaseStore implements Store {
+        @Override
+        public List<DbRequest> pending(int max, Set<String> skip) {
+            List<DbRequest> result = new ArrayList<>();
+            CloseableIterator<DbRequest> iterator = MainApp.getDbHelper().getDbRequestInterator();
+            if (iterator == null)
+                return result;
+            try {
+                while (iterator.hasNext() && result.size() < max) {
+                    DbRequest dbr = iterator.next();
+                    if (!skip.contains(dbr.nsClientID))
+                        result.add(dbr);
+                }
+            } finally {
+                try {
+                    iterator.close();
+                } catch (SQLException e) {
+                    log.error("Unhandled exception", e);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public List<DbRequest> find(String action, String collection, String _id) {
+            return MainApp.getDbHelper().getDbRequests(action, collection, _id);
+        }
+
+        @Override
+        public void create(DbRequest dbr) {
+            MainApp.getDbHelper().create(dbr);
+        }
+
+        @Override
+        public void delete(Collection<String> nsClientIDs) {
+            MainApp.getDbHelper().deleteDbRequests(nsClientIDs);
+        }
+    }
+}
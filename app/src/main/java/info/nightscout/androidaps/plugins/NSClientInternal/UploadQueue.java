@@ -2,7 +2,6 @@ package info.nightscout.androidaps.plugins.NSClientInternal;
 
 import android.content.Context;
 import android.content.Intent;
-import android.os.SystemClock;
 
 import com.j256.ormlite.dao.CloseableIterator;
 
@@ -12,6 +11,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.db.DatabaseHelper;
@@ -36,24 +39,78 @@ public class UploadQueue {
         if (NSClientService.handler == null) {
             Context context = MainApp.instance();
             context.startService(new Intent(context, NSClientService.class));
-            SystemClock.sleep(2000);
         }
     }
 
+    // request is stored by upload engine worker and sent when service connects
     public static void add(final DbRequest dbr) {
         startService();
-        if (NSClientService.handler != null) {
-            NSClientService.handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    log.debug("QUEUE adding: " + dbr.data);
-                    MainApp.getDbHelper().create(dbr);
-                    NSClientInternalPlugin plugin = MainApp.getSpecificPlugin(NSClientInternalPlugin.class);
-                    if (plugin != null) {
-                        plugin.resend("newdata");
+        log.debug("QUEUE adding: " + dbr.data);
+        NSClientService.uploadEngine.add(dbr);
+    }
+
+    /**
+     * Merge new request with requests waiting in queue (not those already sent):
+     * - successive dbUpdate (dbUpdateUnset) of the same record fold into one
+     * - dbRemove of record whose dbAdd was not sent yet cancels both
+     * - dbRemove drops waiting updates of the same record
+     * - new devicestatus replaces waiting ones
+     *
+     * @return false if request cancelled out and should not be queued
+     */
+    static boolean coalesce(DbRequest dbr, UploadEngine.Store store, Set<String> inFlight) {
+        List<String> obsolete = new ArrayList<>();
+        boolean queue = true;
+        try {
+            if (dbr.action.equals("dbAdd")) {
+                if (dbr.collection.equals("devicestatus")) {
+                    for (DbRequest pending : store.find("dbAdd", "devicestatus", null))
+                        if (!inFlight.contains(pending.nsClientID))
+                            obsolete.add(pending.nsClientID);
+                }
+            } else if (dbr.action.equals("dbUpdate") || dbr.action.equals("dbUpdateUnset")) {
+                JSONObject merged = new JSONObject();
+                for (DbRequest pending : store.find(dbr.action, dbr.collection, dbr._id)) {
+                    if (inFlight.contains(pending.nsClientID))
+                        continue;
+                    merge(merged, new JSONObject(pending.data));
+                    obsolete.add(pending.nsClientID);
+                }
+                if (obsolete.size() > 0) {
+                    merge(merged, new JSONObject(dbr.data));
+                    dbr.data = merged.toString();
+                }
+            } else if (dbr.action.equals("dbRemove")) {
+                for (DbRequest pending : store.find("dbUpdate", dbr.collection, dbr._id))
+                    if (!inFlight.contains(pending.nsClientID))
+                        obsolete.add(pending.nsClientID);
+                for (DbRequest pending : store.find("dbUpdateUnset", dbr.collection, dbr._id))
+                    if (!inFlight.contains(pending.nsClientID))
+                        obsolete.add(pending.nsClientID);
+                // records created offline carry NSCLIENT_ID as _id until NS assigns real one
+                for (DbRequest pending : store.find("dbAdd", dbr.collection, dbr._id)) {
+                    if (!inFlight.contains(pending.nsClientID)) {
+                        obsolete.add(pending.nsClientID);
+                        queue = false;
                     }
                 }
-            });
+            }
+        } catch (JSONException e) {
+            log.error("Unhandled exception", e);
+            return true;
+        }
+        if (obsolete.size() > 0) {
+            store.delete(obsolete);
+            log.debug("QUEUE coalesced " + dbr.action + " " + dbr.collection + ": removed " + obsolete.size() + (queue ? "" : ", cancelled"));
+        }
+        return queue;
+    }
+
+    private static void merge(JSONObject target, JSONObject source) throws JSONException {
+        Iterator<String> keys = source.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            target.put(key, source.get(key));
         }
     }
 
@@ -45,9 +45,13 @@ public class BroadcastSgvs {
         }
     }
 
-    public static void handleNewSgv(JSONArray sgvs, Context context, boolean isDelta) {
+    // sgvs are stored by NSBatchIngest in AAPS itself, only other apps are notified
+    public static void handleNewSgvExternal(JSONArray sgvs, Context context, boolean isDelta) {
+        if (SP.getBoolean(R.string.key_nsclient_localbroadcasts, true))
+            sendExternal(BroadcastTreatment.splitArray(sgvs), context, isDelta);
+    }
 
-        List<JSONArray> splitted = BroadcastTreatment.splitArray(sgvs);
+    private static void sendExternal(List<JSONArray> splitted, Context context, boolean isDelta) {
         for (JSONArray part : splitted) {
             Bundle bundle = new Bundle();
             bundle.putString("sgvs", part.toString());
@@ -55,19 +59,7 @@ public class BroadcastSgvs {
             Intent intent = new Intent(Intents.ACTION_NEW_SGV);
             intent.putExtras(bundle);
             intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            LocalBroadcastManager.getInstance(MainApp.instance()).sendBroadcast(intent);
-        }
-
-        if(SP.getBoolean(R.string.key_nsclient_localbroadcasts, true)) {
-            for (JSONArray part : splitted) {
-                Bundle bundle = new Bundle();
-                bundle.putString("sgvs", part.toString());
-                bundle.putBoolean("delta", isDelta);
-                Intent intent = new Intent(Intents.ACTION_NEW_SGV);
-                intent.putExtras(bundle);
-                intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-                context.sendBroadcast(intent);
-            }
+            context.sendBroadcast(intent);
         }
     }
 
@@ -2,11 +2,9 @@ package info.nightscout.androidaps.plugins.NSClientInternal.broadcasts;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.support.v4.content.LocalBroadcastManager;
 
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,7 +13,6 @@ import java.util.List;
 
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.R;
-import info.nightscout.androidaps.Services.Intents;
 import info.nightscout.utils.SP;
 
 /**
@@ -24,149 +21,21 @@ import info.nightscout.utils.SP;
 public class BroadcastTreatment {
     private static Logger log = LoggerFactory.getLogger(BroadcastTreatment.class);
 
-    public static void handleNewTreatment(JSONObject treatment, boolean isDelta, boolean isLocalBypass) {
-
-        Bundle bundle = new Bundle();
-        bundle.putString("treatment", treatment.toString());
-        bundle.putBoolean("delta", isDelta);
-        bundle.putBoolean("islocal", isLocalBypass);
-        Intent intent = new Intent(Intents.ACTION_NEW_TREATMENT);
-        intent.putExtras(bundle);
-        intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-        LocalBroadcastManager.getInstance(MainApp.instance()).sendBroadcast(intent);
-
-        if (SP.getBoolean(R.string.key_nsclient_localbroadcasts, true)) {
-            bundle = new Bundle();
-            bundle.putString("treatment", treatment.toString());
-            bundle.putBoolean("delta", isDelta);
-            intent = new Intent(Intents.ACTION_NEW_TREATMENT);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            MainApp.instance().getApplicationContext().sendBroadcast(intent);
-        }
-    }
-
-    public static void handleNewTreatment(JSONArray treatments, boolean isDelta) {
-
-        List<JSONArray> splitted = splitArray(treatments);
-        for (JSONArray part : splitted) {
+    // treatments are stored by NSBatchIngest in AAPS itself, only other apps are notified
+    public static void handleTreatmentsExternal(String action, JSONArray treatments, boolean isDelta) {
+        if (!SP.getBoolean(R.string.key_nsclient_localbroadcasts, true))
+            return;
+        for (JSONArray part : splitArray(treatments)) {
             Bundle bundle = new Bundle();
             bundle.putString("treatments", part.toString());
             bundle.putBoolean("delta", isDelta);
-            Intent intent = new Intent(Intents.ACTION_NEW_TREATMENT);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            LocalBroadcastManager.getInstance(MainApp.instance()).sendBroadcast(intent);
-        }
-
-        if (SP.getBoolean(R.string.key_nsclient_localbroadcasts, true)) {
-            splitted = splitArray(treatments);
-            for (JSONArray part : splitted) {
-                Bundle bundle = new Bundle();
-                bundle.putString("treatments", part.toString());
-                bundle.putBoolean("delta", isDelta);
-                Intent intent = new Intent(Intents.ACTION_NEW_TREATMENT);
-                intent.putExtras(bundle);
-                intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-                MainApp.instance().getApplicationContext().sendBroadcast(intent);
-            }
-        }
-    }
-
-    public void handleChangedTreatment(JSONObject treatment, boolean isDelta) {
-
-        Bundle bundle = new Bundle();
-        bundle.putString("treatment", treatment.toString());
-        bundle.putBoolean("delta", isDelta);
-        Intent intent = new Intent(Intents.ACTION_CHANGED_TREATMENT);
-        intent.putExtras(bundle);
-        intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-        LocalBroadcastManager.getInstance(MainApp.instance()).sendBroadcast(intent);
-
-
-        if (SP.getBoolean(R.string.key_nsclient_localbroadcasts, true)) {
-            bundle = new Bundle();
-            bundle.putString("treatment", treatment.toString());
-            bundle.putBoolean("delta", isDelta);
-            intent = new Intent(Intents.ACTION_CHANGED_TREATMENT);
+            Intent intent = new Intent(action);
             intent.putExtras(bundle);
             intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
             MainApp.instance().getApplicationContext().sendBroadcast(intent);
         }
     }
 
-    public static void handleChangedTreatment(JSONArray treatments, boolean isDelta) {
-
-        List<JSONArray> splitted = splitArray(treatments);
-        for (JSONArray part : splitted) {
-            Bundle bundle = new Bundle();
-            bundle.putString("treatments", part.toString());
-            bundle.putBoolean("delta", isDelta);
-            Intent intent = new Intent(Intents.ACTION_CHANGED_TREATMENT);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            LocalBroadcastManager.getInstance(MainApp.instance()).sendBroadcast(intent);
-        }
-
-        if (SP.getBoolean(R.string.key_nsclient_localbroadcasts, true)) {
-            splitted = splitArray(treatments);
-            for (JSONArray part : splitted) {
-                Bundle bundle = new Bundle();
-                bundle.putString("treatments", part.toString());
-                bundle.putBoolean("delta", isDelta);
-                Intent intent = new Intent(Intents.ACTION_CHANGED_TREATMENT);
-                intent.putExtras(bundle);
-                intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-                MainApp.instance().getApplicationContext().sendBroadcast(intent);
-            }
-        }
-    }
-
-    public static void handleRemovedTreatment(JSONObject treatment, boolean isDelta) {
-
-        Bundle bundle = new Bundle();
-        bundle.putString("treatment", treatment.toString());
-        bundle.putBoolean("delta", isDelta);
-        Intent intent = new Intent(Intents.ACTION_REMOVED_TREATMENT);
-        intent.putExtras(bundle);
-        intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-        LocalBroadcastManager.getInstance(MainApp.instance()).sendBroadcast(intent);
-
-
-        if (SP.getBoolean(R.string.key_nsclient_localbroadcasts, true)) {
-            bundle = new Bundle();
-            bundle.putString("treatment", treatment.toString());
-            bundle.putBoolean("delta", isDelta);
-            intent = new Intent(Intents.ACTION_REMOVED_TREATMENT);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            MainApp.instance().getApplicationContext().sendBroadcast(intent);
-        }
-    }
-
-    public static void handleRemovedTreatment(JSONArray treatments, boolean isDelta) {
-
-        Bundle bundle = new Bundle();
-        bundle.putString("treatments", treatments.toString());
-        bundle.putBoolean("delta", isDelta);
-        Intent intent = new Intent(Intents.ACTION_REMOVED_TREATMENT);
-        intent.putExtras(bundle);
-        intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-        LocalBroadcastManager.getInstance(MainApp.instance()).sendBroadcast(intent);
-
-
-        if (SP.getBoolean(R.string.key_nsclient_localbroadcasts, true)) {
-            bundle = new Bundle();
-            bundle.putString("treatments", treatments.toString());
-            bundle.putBoolean("delta", isDelta);
-            intent = new Intent(Intents.ACTION_REMOVED_TREATMENT);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            MainApp.instance().getApplicationContext().sendBroadcast(intent);
-        }
-    }
-
-
     public static List<JSONArray> splitArray(JSONArray array) {
         List<JSONArray> ret = new ArrayList<>();
         try {
@@ -0,0 +1,105 @@
+package info.nightscout.androidaps.plugins.NSClientInternal.data;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import info.nightscout.utils.SP;
+
+/**
+ * Newest record date applied per NS collection, kept across restarts.
+ * <p>
+ * NS authorize message accepts one "from" for all collections so the lowest watermark
+ * is sent. Watermarks are in clock of uploading device, so busy collections protect against
+ * clock difference between phone and uploader. Collections without recent records
+ * (no calibrations for days etc.) are taken as synced up to the last processed data packet,
+ * otherwise they would pin "from" to the beginning of history.
+ * Watermarks are updated in memory and stored once per packet.
+ */
+
+public class NSSyncWatermarks {
+    public static final String[] COLLECTIONS = {"sgvs", "treatments", "devicestatus", "profiles", "food", "mbgs", "cals"};
+
+    // records uploaded by other devices may be stamped by clock slightly behind ours
+    static final long OVERLAP = 5 * 60 * 1000L;
+    // collection without records this long before last packet is treated as quiet
+    static final long QUIET = 60 * 60 * 1000L;
+
+    private static final String PREFIX = "ns_watermark_";
+    private static final String LAST_PACKET = "ns_watermark_lastpacket";
+
+    private final Map<String, Long> watermarks = new LinkedHashMap<>();
+    private long lastPacket = 0;
+    private boolean dirty = false;
+
+    public NSSyncWatermarks() {
+        for (String collection : COLLECTIONS)
+            watermarks.put(collection, SP.getLong(PREFIX + collection, 0L));
+        lastPacket = SP.getLong(LAST_PACKET, 0L);
+    }
+
+    public synchronized long get(String collection) {
+        Long watermark = watermarks.get(collection);
+        return watermark != null ? watermark : 0;
+    }
+
+    public synchronized void update(String collection, long mills) {
+        if (mills <= 0 || mills >= System.currentTimeMillis() || !watermarks.containsKey(collection))
+            return;
+        if (mills > watermarks.get(collection)) {
+            watermarks.put(collection, mills);
+            dirty = true;
+        }
+    }
+
+    public void update(String collection, JSONArray records) {
+        for (int index = 0; index < records.length(); index++) {
+            JSONObject record = records.optJSONObject(index);
+            if (record != null)
+                update(collection, record.optLong("mills", record.optLong("date", 0)));
+        }
+    }
+
+    public synchronized void packetProcessed(long time) {
+        lastPacket = time;
+        save();
+    }
+
+    /**
+     * @param historyStart oldest time NS sends anyway
+     * @return time to be sent as "from" in authorize message, 0 for full history
+     */
+    public synchronized long from(long historyStart) {
+        if (lastPacket == 0)
+            return 0;
+        long from = Long.MAX_VALUE;
+        for (long watermark : watermarks.values()) {
+            if (watermark < lastPacket - QUIET)
+                watermark = lastPacket;
+            from = Math.min(from, watermark);
+        }
+        from = Math.min(from, lastPacket) - OVERLAP;
+        return from > historyStart ? from : 0;
+    }
+
+    public synchronized void reset() {
+        for (String collection : COLLECTIONS) {
+            watermarks.put(collection, 0L);
+            SP.remove(PREFIX + collection);
+        }
+        lastPacket = 0;
+        SP.remove(LAST_PACKET);
+        dirty = false;
+    }
+
+    private void save() {
+        if (dirty) {
+            for (Map.Entry<String, Long> entry : watermarks.entrySet())
+                SP.putLong(PREFIX + entry.getKey(), entry.getValue());
+            dirty = false;
+        }
+        SP.putLong(LAST_PACKET, lastPacket);
+    }
+}
@@ -6,6 +6,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.PowerManager;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -13,8 +14,10 @@ import org.slf4j.LoggerFactory;
 
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.R;
+import info.nightscout.androidaps.Services.Intents;
 import info.nightscout.androidaps.db.DbRequest;
 import info.nightscout.androidaps.interfaces.PluginBase;
+import info.nightscout.androidaps.plugins.NSClientInternal.NSBatchIngest;
 import info.nightscout.androidaps.plugins.NSClientInternal.NSClientInternalPlugin;
 import info.nightscout.androidaps.plugins.NSClientInternal.UploadQueue;
 import info.nightscout.androidaps.plugins.NSClientInternal.broadcasts.BroadcastTreatment;
@@ -24,6 +27,8 @@ import info.nightscout.utils.SP;
 public class DBAccessReceiver extends BroadcastReceiver {
     private static Logger log = LoggerFactory.getLogger(DBAccessReceiver.class);
 
+    private static long lastNsClientId = 0;
+
 
     @Override
     public void onReceive(Context context, Intent intent) {
@@ -53,76 +58,90 @@ public class DBAccessReceiver extends BroadcastReceiver {
             } catch (Exception e) {
             }
 
-            if (data == null && !action.equals("dbRemove") || _id == null && action.equals("dbRemove")) {
-                log.debug("DBACCESS no data inside record");
-                return;
-            }
+            processRequest(action, collection, _id, data);
+        } finally {
+            wakeLock.release();
+        }
+
+    }
+
+    /**
+     * Queue request for upload. Called directly when request is created in AAPS
+     * with internal NSClient enabled, otherwise from received DBACCESS broadcast
+     */
+    public static void processRequest(String action, String collection, String _id, JSONObject data) {
+        if (data == null && !action.equals("dbRemove") || _id == null && action.equals("dbRemove")) {
+            log.debug("DBACCESS no data inside record");
+            return;
+        }
+
+        if (action.equals("dbRemove")) {
+            data = new JSONObject();
+        }
+        // mark by id
+        Long nsclientid = nextNsClientId();
+        try {
+            data.put("NSCLIENT_ID", nsclientid);
+        } catch (JSONException e) {
+            log.error("Unhandled exception", e);
+        }
+
+        if (!isAllowedCollection(collection)) {
+            log.debug("DBACCESS wrong collection specified");
+            return;
+        }
 
-            if (action.equals("dbRemove")) {
-                data = new JSONObject();
+        if (action.equals("dbRemove")) {
+            if (shouldUpload()) {
+                DbRequest dbr = new DbRequest(action, collection, nsclientid.toString(), _id);
+                UploadQueue.add(dbr);
             }
-            // mark by id
-            Long nsclientid = System.currentTimeMillis();
-            try {
-                data.put("NSCLIENT_ID", nsclientid);
-            } catch (JSONException e) {
-                log.error("Unhandled exception", e);
+        } else  if (action.equals("dbUpdate")) {
+            if (shouldUpload()) {
+                DbRequest dbr = new DbRequest(action, collection, nsclientid.toString(), _id, data);
+                UploadQueue.add(dbr);
             }
-
-            if (!isAllowedCollection(collection)) {
-                log.debug("DBACCESS wrong collection specified");
-                return;
+        } else {
+            DbRequest dbr = new DbRequest(action, collection, nsclientid.toString(), data);
+            // this is not used as mongo _id but only for searching in UploadQueue database
+            // if record has to be removed from queue before upload
+            dbr._id = nsclientid.toString();
+
+            if (shouldUpload()) {
+                UploadQueue.add(dbr);
             }
-
-            if (action.equals("dbRemove")) {
-                if (shouldUpload()) {
-                    DbRequest dbr = new DbRequest(action, collection, nsclientid.toString(), _id);
-                    UploadQueue.add(dbr);
-                }
-            } else  if (action.equals("dbUpdate")) {
-                if (shouldUpload()) {
-                    DbRequest dbr = new DbRequest(action, collection, nsclientid.toString(), _id, data);
-                    UploadQueue.add(dbr);
-                }
-            } else {
-                DbRequest dbr = new DbRequest(action, collection, nsclientid.toString(), data);
-                // this is not used as mongo _id but only for searching in UploadQueue database
-                // if record has to be removed from queue before upload
-                dbr._id = nsclientid.toString();
-
-                if (shouldUpload()) {
-                    UploadQueue.add(dbr);
-                }
-                if (collection.equals("treatments")) {
-                    genereateTreatmentOfflineBroadcast(dbr);
-                }
+            if (collection.equals("treatments")) {
+                genereateTreatmentOfflineBroadcast(dbr);
             }
-
-        } finally {
-            wakeLock.release();
         }
+    }
 
+    // records created in one millisecond must not share queue key
+    private static synchronized long nextNsClientId() {
+        lastNsClientId = Math.max(System.currentTimeMillis(), lastNsClientId + 1);
+        return lastNsClientId;
     }
 
-    public boolean shouldUpload() {
+    public static boolean shouldUpload() {
         NSClientInternalPlugin nsClientInternalPlugin = MainApp.getSpecificPlugin(NSClientInternalPlugin.class);
         return nsClientInternalPlugin.isEnabled(PluginBase.GENERAL) && !SP.getBoolean(R.string.key_ns_noupload, false);
     }
 
-    public void genereateTreatmentOfflineBroadcast(DbRequest request) {
+    public static void genereateTreatmentOfflineBroadcast(DbRequest request) {
         if (request.action.equals("dbAdd")) {
             try {
                 JSONObject data = new JSONObject(request.data);
                 data.put("mills", DateUtil.fromISODateString(data.getString("created_at")).getTime());
                 data.put("_id", data.get("NSCLIENT_ID")); // this is only fake id
-                BroadcastTreatment.handleNewTreatment(data, false, true);
+                NSBatchIngest.storeLocalTreatment(data);
+                BroadcastTreatment.handleTreatmentsExternal(Intents.ACTION_NEW_TREATMENT, new JSONArray().put(data), false);
             } catch (Exception e) {
                 log.error("Unhadled exception", e);
             }
         }
     }
 
-    private boolean isAllowedCollection(String collection) {
+    private static boolean isAllowedCollection(String collection) {
         // "treatments" || "entries" || "devicestatus" || "profile" || "food"
         if (collection.equals("treatments")) return true;
         if (collection.equals("entries")) return true;
@@ -12,7 +12,6 @@ import android.os.PowerManager;
 import com.crashlytics.android.Crashlytics;
 import com.google.common.base.Charsets;
 import com.google.common.hash.Hashing;
-import com.j256.ormlite.dao.CloseableIterator;
 import com.squareup.otto.Subscribe;
 
 import org.json.JSONArray;
@@ -22,23 +21,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URISyntaxException;
-import java.sql.SQLException;
 import java.util.Date;
 
 import info.nightscout.androidaps.Config;
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.R;
+import info.nightscout.androidaps.Services.Intents;
 import info.nightscout.androidaps.data.ProfileStore;
-import info.nightscout.androidaps.db.DbRequest;
 import info.nightscout.androidaps.events.EventAppExit;
 import info.nightscout.androidaps.events.EventConfigBuilderChange;
 import info.nightscout.androidaps.events.EventPreferenceChange;
 import info.nightscout.androidaps.interfaces.PluginBase;
+import info.nightscout.androidaps.plugins.ConstraintsObjectives.ObjectivesPlugin;
+import info.nightscout.androidaps.plugins.NSClientInternal.InboundLane;
+import info.nightscout.androidaps.plugins.NSClientInternal.NSBatchIngest;
 import info.nightscout.androidaps.plugins.NSClientInternal.NSClientInternalPlugin;
+import info.nightscout.androidaps.plugins.NSClientInternal.UploadEngine;
 import info.nightscout.androidaps.plugins.NSClientInternal.UploadQueue;
-import info.nightscout.androidaps.plugins.NSClientInternal.acks.NSAddAck;
 import info.nightscout.androidaps.plugins.NSClientInternal.acks.NSAuthAck;
-import info.nightscout.androidaps.plugins.NSClientInternal.acks.NSUpdateAck;
 import info.nightscout.androidaps.plugins.NSClientInternal.broadcasts.BroadcastAlarm;
 import info.nightscout.androidaps.plugins.NSClientInternal.broadcasts.BroadcastAnnouncement;
 import info.nightscout.androidaps.plugins.NSClientInternal.broadcasts.BroadcastCals;
@@ -54,6 +54,7 @@ import info.nightscout.androidaps.plugins.NSClientInternal.broadcasts.BroadcastU
 import info.nightscout.androidaps.plugins.NSClientInternal.data.AlarmAck;
 import info.nightscout.androidaps.plugins.NSClientInternal.data.NSSettingsStatus;
 import info.nightscout.androidaps.plugins.NSClientInternal.data.NSSgv;
+import info.nightscout.androidaps.plugins.NSClientInternal.data.NSSyncWatermarks;
 import info.nightscout.androidaps.plugins.NSClientInternal.data.NSTreatment;
 import info.nightscout.androidaps.plugins.NSClientInternal.events.EventNSClientNewLog;
 import info.nightscout.androidaps.plugins.NSClientInternal.events.EventNSClientRestart;
@@ -63,6 +64,7 @@ import info.nightscout.androidaps.plugins.Overview.events.EventNewNotification;
 import info.nightscout.androidaps.plugins.Overview.notifications.Notification;
 import info.nightscout.utils.DateUtil;
 import info.nightscout.utils.SP;
+import io.socket.client.Ack;
 import io.socket.client.IO;
 import io.socket.client.Socket;
 import io.socket.emitter.Emitter;
@@ -76,6 +78,9 @@ public class NSClientService extends Service {
     static ProfileStore profileStore;
 
     static public Handler handler;
+    // alarms are never queued behind data packets
+    static public InboundLane alarmLane;
+    static public InboundLane dataLane;
 
     public static Socket mSocket;
     public static boolean isConnected = false;
@@ -93,21 +98,42 @@ public class NSClientService extends Service {
     private String nsDevice = "";
     private Integer nsHours = 48;
 
-    public long lastResendTime = 0;
-
     public long latestDateInReceivedData = 0;
+    private NSSyncWatermarks watermarks = new NSSyncWatermarks();
 
     private String nsAPIhashCode = "";
 
     public static UploadQueue uploadQueue = new UploadQueue();
 
+    private static UploadEngine.Transport transport = new UploadEngine.Transport() {
+        @Override
+        public boolean isReady() {
+            Socket socket = mSocket;
+            return isConnected && hasWriteAuth && socket != null && socket.connected();
+        }
+
+        @Override
+        public void emit(String event, JSONObject message, Ack ack) {
+            Socket socket = mSocket;
+            if (socket != null)
+                socket.emit(event, message, ack);
+        }
+    };
+
+    public static volatile UploadEngine uploadEngine = new UploadEngine(transport);
+
     public NSClientService() {
         registerBus();
+        if (uploadEngine.isShutdown())
+            uploadEngine = new UploadEngine(transport);
         if (handler == null) {
             HandlerThread handlerThread = new HandlerThread(NSClientService.class.getSimpleName() + "Handler");
             handlerThread.start();
             handler = new Handler(handlerThread.getLooper());
+            dataLane = InboundLane.onHandler("data", handler);
         }
+        if (alarmLane == null)
+            alarmLane = InboundLane.prioritized("NSClientAlarms");
 
         PowerManager powerManager = (PowerManager) MainApp.instance().getApplicationContext().getSystemService(Context.POWER_SERVICE);
         mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "NSClientService");
@@ -123,6 +149,7 @@ public class NSClientService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        uploadEngine.shutdown();
         mWakeLock.release();
     }
 
@@ -171,6 +198,7 @@ public class NSClientService extends Service {
                 ev.isChanged(R.string.key_nsclientinternal_paused)
                 ) {
             latestDateInReceivedData = 0;
+            watermarks.reset();
             destroy();
             initialize();
         }
@@ -180,6 +208,7 @@ public class NSClientService extends Service {
     public void onStatusEvent(EventConfigBuilderChange ev) {
         if (nsEnabled != MainApp.getSpecificPlugin(NSClientInternalPlugin.class).isEnabled(PluginBase.GENERAL)) {
             latestDateInReceivedData = 0;
+            watermarks.reset();
             destroy();
             initialize();
         }
@@ -188,6 +217,7 @@ public class NSClientService extends Service {
     @Subscribe
     public void onStatusEvent(final EventNSClientRestart ev) {
         latestDateInReceivedData = 0;
+        watermarks.reset();
         restart();
     }
 
@@ -263,6 +293,7 @@ public class NSClientService extends Service {
             MainApp.bus().post(new EventNSClientNewLog("NSCLIENT", "destroy"));
             isConnected = false;
             hasWriteAuth = false;
+            uploadEngine.reset();
             mSocket.disconnect();
             mSocket = null;
         }
@@ -271,17 +302,19 @@ public class NSClientService extends Service {
 
     public void sendAuthMessage(NSAuthAck ack) {
         JSONObject authMessage = new JSONObject();
+        long now = System.currentTimeMillis();
+        long from = watermarks.from(now - nsHours * 60 * 60 * 1000L);
         try {
             authMessage.put("client", "Android_" + nsDevice);
             authMessage.put("history", nsHours);
             authMessage.put("status", true); // receive status
-            authMessage.put("from", latestDateInReceivedData); // send data newer than
+            authMessage.put("from", from); // send data newer than
             authMessage.put("secret", nsAPIhashCode);
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
             return;
         }
-        MainApp.bus().post(new EventNSClientNewLog("AUTH", "requesting auth"));
+        MainApp.bus().post(new EventNSClientNewLog("AUTH", "requesting auth" + (from != 0 ? ", data from " + DateUtil.dateAndTimeString(from) : "")));
         mSocket.emit("authorize", authMessage, ack);
     }
 
@@ -307,6 +340,9 @@ public class NSClientService extends Service {
             MainApp.bus().post(new EventNewNotification(noperm));
         } else {
             MainApp.bus().post(new EventDismissNotification(Notification.NSCLIENT_NO_WRITE_PERMISSION));
+            // acks of requests sent on previous connection never come
+            uploadEngine.reset();
+            resend("Authenticated");
         }
     }
 
@@ -315,6 +351,7 @@ public class NSClientService extends Service {
         nsURL = SP.getString(R.string.key_nsclientinternal_url, "");
         nsAPISecret = SP.getString(R.string.key_nsclientinternal_api_secret, "");
         nsDevice = SP.getString("careportal_enteredby", "");
+        uploadEngine.setWindow(SP.getInt(R.string.key_ns_upload_window, UploadEngine.DEFAULT_WINDOW));
     }
 
     private Emitter.Listener onPing = new Emitter.Listener() {
@@ -341,21 +378,26 @@ public class NSClientService extends Service {
          */
         @Override
         public void call(final Object... args) {
-            JSONObject data;
+            final JSONObject data;
             try {
                 data = (JSONObject) args[0];
             } catch (Exception e) {
                 Crashlytics.log("Wrong Announcement from NS: " + args[0]);
                 return;
             }
-            if (Config.detailedLog)
-                try {
-                    MainApp.bus().post(new EventNSClientNewLog("ANNOUNCEMENT", data.has("message") ? data.getString("message") : "received"));
-                } catch (Exception e) {
-                    Crashlytics.logException(e);
+            alarmLane.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (Config.detailedLog)
+                        try {
+                            MainApp.bus().post(new EventNSClientNewLog("ANNOUNCEMENT", data.has("message") ? data.getString("message") : "received"));
+                        } catch (Exception e) {
+                            Crashlytics.logException(e);
+                        }
+                    BroadcastAnnouncement.handleAnnouncement(data, getApplicationContext());
+                    log.debug(data.toString());
                 }
-            BroadcastAnnouncement.handleAnnouncement(data, getApplicationContext());
-            log.debug(data.toString());
+            });
         }
     };
 
@@ -375,17 +417,22 @@ public class NSClientService extends Service {
          */
         @Override
         public void call(final Object... args) {
-            if (Config.detailedLog)
-                MainApp.bus().post(new EventNSClientNewLog("ALARM", "received"));
-            JSONObject data;
+            final JSONObject data;
             try {
                 data = (JSONObject) args[0];
             } catch (Exception e) {
                 Crashlytics.log("Wrong alarm from NS: " + args[0]);
                 return;
             }
-            BroadcastAlarm.handleAlarm(data, getApplicationContext());
-            log.debug(data.toString());
+            alarmLane.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (Config.detailedLog)
+                        MainApp.bus().post(new EventNSClientNewLog("ALARM", "received, " + alarmLane));
+                    BroadcastAlarm.handleAlarm(data, getApplicationContext());
+                    log.debug(data.toString());
+                }
+            });
         }
     };
 
@@ -405,17 +452,22 @@ public class NSClientService extends Service {
          */
         @Override
         public void call(final Object... args) {
-            JSONObject data;
+            final JSONObject data;
             try {
                 data = (JSONObject) args[0];
             } catch (Exception e) {
                 Crashlytics.log("Wrong Urgent alarm from NS: " + args[0]);
                 return;
             }
-            if (Config.detailedLog)
-                MainApp.bus().post(new EventNSClientNewLog("URGENTALARM", "received"));
-            BroadcastUrgentAlarm.handleUrgentAlarm(data, getApplicationContext());
-            log.debug(data.toString());
+            alarmLane.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (Config.detailedLog)
+                        MainApp.bus().post(new EventNSClientNewLog("URGENTALARM", "received, " + alarmLane));
+                    BroadcastUrgentAlarm.handleUrgentAlarm(data, getApplicationContext());
+                    log.debug(data.toString());
+                }
+            });
         }
     };
 
@@ -430,24 +482,29 @@ public class NSClientService extends Service {
          */
         @Override
         public void call(final Object... args) {
-            JSONObject data;
+            final JSONObject data;
             try {
                 data = (JSONObject) args[0];
             } catch (Exception e) {
                 Crashlytics.log("Wrong Urgent alarm from NS: " + args[0]);
                 return;
             }
-            if (Config.detailedLog)
-                MainApp.bus().post(new EventNSClientNewLog("CLEARALARM", "received"));
-            BroadcastClearAlarm.handleClearAlarm(data, getApplicationContext());
-            log.debug(data.toString());
+            alarmLane.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (Config.detailedLog)
+                        MainApp.bus().post(new EventNSClientNewLog("CLEARALARM", "received, " + alarmLane));
+                    BroadcastClearAlarm.handleClearAlarm(data, getApplicationContext());
+                    log.debug(data.toString());
+                }
+            });
         }
     };
 
     private Emitter.Listener onDataUpdate = new Emitter.Listener() {
         @Override
         public void call(final Object... args) {
-            NSClientService.handler.post(new Runnable() {
+            dataLane.post(new Runnable() {
                 @Override
                 public void run() {
                     PowerManager powerManager = (PowerManager) MainApp.instance().getApplicationContext().getSystemService(Context.POWER_SERVICE);
@@ -462,13 +519,15 @@ public class NSClientService extends Service {
                             // delta means only increment/changes are comming
                             boolean isDelta = data.has("delta");
                             boolean isFull = !isDelta;
-                            MainApp.bus().post(new EventNSClientNewLog("DATA", "Data packet #" + dataCounter++ + (isDelta ? " delta" : " full")));
+                            long now = System.currentTimeMillis();
+                            MainApp.bus().post(new EventNSClientNewLog("DATA", "Data packet #" + dataCounter++ + (isDelta ? " delta" : " full") + ", " + dataLane));
 
                             if (data.has("profiles")) {
                                 JSONArray profiles = data.getJSONArray("profiles");
                                 if (profiles.length() > 0) {
                                     JSONObject profile = (JSONObject) profiles.get(profiles.length() - 1);
                                     profileStore = new ProfileStore(profile);
+                                    watermarks.update("profiles", profiles);
                                     broadcastProfile = true;
                                     MainApp.bus().post(new EventNSClientNewLog("PROFILE", "profile received"));
                                 }
@@ -542,14 +601,18 @@ public class NSClientService extends Service {
                                     }
                                 }
                                 if (removedTreatments.length() > 0) {
-                                    BroadcastTreatment.handleRemovedTreatment(removedTreatments, isDelta);
+                                    NSBatchIngest.removeTreatments(removedTreatments);
+                                    BroadcastTreatment.handleTreatmentsExternal(Intents.ACTION_REMOVED_TREATMENT, removedTreatments, isDelta);
                                 }
                                 if (updatedTreatments.length() > 0) {
-                                    BroadcastTreatment.handleChangedTreatment(updatedTreatments, isDelta);
+                                    NSBatchIngest.storeTreatments(updatedTreatments);
+                                    BroadcastTreatment.handleTreatmentsExternal(Intents.ACTION_CHANGED_TREATMENT, updatedTreatments, isDelta);
                                 }
                                 if (addedTreatments.length() > 0) {
-                                    BroadcastTreatment.handleNewTreatment(addedTreatments, isDelta);
+                                    NSBatchIngest.storeTreatments(addedTreatments);
+                                    BroadcastTreatment.handleTreatmentsExternal(Intents.ACTION_NEW_TREATMENT, addedTreatments, isDelta);
                                 }
+                                watermarks.update("treatments", treatments);
                             }
                             if (data.has("devicestatus")) {
                                 JSONArray devicestatuses = data.getJSONArray("devicestatus");
@@ -561,6 +624,7 @@ public class NSClientService extends Service {
                                         UploadQueue.removeID(jsonStatus);
                                     }
                                     BroadcastDeviceStatus.handleNewDeviceStatus(devicestatuses, MainApp.instance().getApplicationContext(), isDelta);
+                                    watermarks.update("devicestatus", devicestatuses);
                                 }
                             }
                             if (data.has("food")) {
@@ -599,6 +663,7 @@ public class NSClientService extends Service {
                                 if (addedFoods.length() > 0) {
                                     BroadcastFood.handleNewFood(addedFoods, MainApp.instance().getApplicationContext(), isDelta);
                                 }
+                                watermarks.update("food", foods);
                             }
                             if (data.has("")) {
                                 JSONArray foods = data.getJSONArray("food");
@@ -622,6 +687,7 @@ public class NSClientService extends Service {
                                     UploadQueue.removeID(jsonMbg);
                                 }
                                 BroadcastMbgs.handleNewMbg(mbgs, MainApp.instance().getApplicationContext(), isDelta);
+                                watermarks.update("mbgs", mbgs);
                             }
                             if (data.has("cals")) {
                                 JSONArray cals = data.getJSONArray("cals");
@@ -633,6 +699,7 @@ public class NSClientService extends Service {
                                     UploadQueue.removeID(cals.optJSONObject(index));
                                 }
                                 BroadcastCals.handleNewCal(cals, MainApp.instance().getApplicationContext(), isDelta);
+                                watermarks.update("cals", cals);
                             }
                             if (data.has("sgvs")) {
                                 JSONArray sgvs = data.getJSONArray("sgvs");
@@ -657,8 +724,16 @@ public class NSClientService extends Service {
                                 if (Notification.isAlarmForStaleData() && lessThan15MinAgo) {
                                     MainApp.bus().post(new EventDismissNotification(Notification.NSALARM));
                                 }
-                                BroadcastSgvs.handleNewSgv(sgvs, MainApp.instance().getApplicationContext(), isDelta);
+                                int created = NSBatchIngest.storeSgvs(sgvs);
+                                if (created > 0)
+                                    MainApp.bus().post(new EventNSClientNewLog("DATA", "stored " + created + " new sgvs"));
+                                // Objectives 0
+                                ObjectivesPlugin.bgIsAvailableInNS = true;
+                                ObjectivesPlugin.saveProgress();
+                                BroadcastSgvs.handleNewSgvExternal(sgvs, MainApp.instance().getApplicationContext(), isDelta);
+                                watermarks.update("sgvs", sgvs);
                             }
+                            watermarks.packetProcessed(now);
                             MainApp.bus().post(new EventNSClientNewLog("LAST", DateUtil.dateAndTimeString(latestDateInReceivedData)));
                         } catch (JSONException e) {
                             log.error("Unhandled exception", e);
@@ -673,84 +748,17 @@ public class NSClientService extends Service {
         }
     };
 
-    public void dbUpdate(DbRequest dbr, NSUpdateAck ack) {
-        try {
-            if (!isConnected || !hasWriteAuth) return;
-            JSONObject message = new JSONObject();
-            message.put("collection", dbr.collection);
-            message.put("_id", dbr._id);
-            message.put("data", new JSONObject(dbr.data));
-            mSocket.emit("dbUpdate", message, ack);
-            MainApp.bus().post(new EventNSClientNewLog("DBUPDATE " + dbr.collection, "Sent " + dbr._id));
-        } catch (JSONException e) {
-            log.error("Unhandled exception", e);
-        }
-    }
-
-    public void dbUpdateUnset(DbRequest dbr, NSUpdateAck ack) {
-        try {
-            if (!isConnected || !hasWriteAuth) return;
-            JSONObject message = new JSONObject();
-            message.put("collection", dbr.collection);
-            message.put("_id", dbr._id);
-            message.put("data", new JSONObject(dbr.data));
-            mSocket.emit("dbUpdateUnset", message, ack);
-            MainApp.bus().post(new EventNSClientNewLog("DBUPDATEUNSET " + dbr.collection, "Sent " + dbr._id));
-        } catch (JSONException e) {
-            log.error("Unhandled exception", e);
-        }
-    }
-
-    public void dbRemove(DbRequest dbr, NSUpdateAck ack) {
-        try {
-            if (!isConnected || !hasWriteAuth) return;
-            JSONObject message = new JSONObject();
-            message.put("collection", dbr.collection);
-            message.put("_id", dbr._id);
-            mSocket.emit("dbRemove", message, ack);
-            MainApp.bus().post(new EventNSClientNewLog("DBREMOVE " + dbr.collection, "Sent " + dbr._id));
-        } catch (JSONException e) {
-            log.error("Unhandled exception", e);
-        }
-    }
-
-    @Subscribe
-    public void onStatusEvent(NSUpdateAck ack) {
-        if (ack.result) {
-            uploadQueue.removeID(ack.action, ack._id);
-            MainApp.bus().post(new EventNSClientNewLog("DBUPDATE/DBREMOVE", "Acked " + ack._id));
-        } else {
-            MainApp.bus().post(new EventNSClientNewLog("ERROR", "DBUPDATE/DBREMOVE Unknown response"));
-        }
-    }
-
-    public void dbAdd(DbRequest dbr, NSAddAck ack) {
-        try {
-            if (!isConnected || !hasWriteAuth) return;
-            JSONObject message = new JSONObject();
-            message.put("collection", dbr.collection);
-            message.put("data", new JSONObject(dbr.data));
-            mSocket.emit("dbAdd", message, ack);
-            MainApp.bus().post(new EventNSClientNewLog("DBADD " + dbr.collection, "Sent " + dbr.nsClientID));
-        } catch (JSONException e) {
-            log.error("Unhandled exception", e);
-        }
-    }
-
-    public void sendAlarmAck(AlarmAck alarmAck) {
+    public void sendAlarmAck(final AlarmAck alarmAck) {
         if (!isConnected || !hasWriteAuth) return;
-        mSocket.emit("ack", alarmAck.level, alarmAck.group, alarmAck.silenceTime);
-        MainApp.bus().post(new EventNSClientNewLog("ALARMACK ", alarmAck.level + " " + alarmAck.group + " " + alarmAck.silenceTime));
-    }
-
-    @Subscribe
-    public void onStatusEvent(NSAddAck ack) {
-        if (ack.nsClientID != null) {
-            uploadQueue.removeID(ack.json);
-            MainApp.bus().post(new EventNSClientNewLog("DBADD", "Acked " + ack.nsClientID));
-        } else {
-            MainApp.bus().post(new EventNSClientNewLog("ERROR", "DBADD Unknown response"));
-        }
+        alarmLane.post(new Runnable() {
+            @Override
+            public void run() {
+                Socket socket = mSocket;
+                if (socket == null) return;
+                socket.emit("ack", alarmAck.level, alarmAck.group, alarmAck.silenceTime);
+                MainApp.bus().post(new EventNSClientNewLog("ALARMACK ", alarmAck.level + " " + alarmAck.group + " " + alarmAck.silenceTime));
+            }
+        });
     }
 
     private boolean isCurrent(NSTreatment treatment) {
@@ -770,51 +778,7 @@ public class NSClientService extends Service {
 
         if (!isConnected || !hasWriteAuth) return;
 
-        handler.post(new Runnable() {
-            @Override
-            public void run() {
-                if (mSocket == null || !mSocket.connected()) return;
-
-                if (lastResendTime > System.currentTimeMillis() - 10 * 1000L) {
-                    log.debug("Skipping resend by lastResendTime: " + ((System.currentTimeMillis() - lastResendTime) / 1000L) + " sec");
-                    return;
-                }
-                lastResendTime = System.currentTimeMillis();
-
-                MainApp.bus().post(new EventNSClientNewLog("QUEUE", "Resend started: " + reason));
-
-                CloseableIterator<DbRequest> iterator = null;
-                int maxcount = 30;
-                try {
-                    iterator = MainApp.getDbHelper().getDbRequestInterator();
-                    try {
-                        while (iterator.hasNext() && maxcount > 0) {
-                            DbRequest dbr = iterator.next();
-                            if (dbr.action.equals("dbAdd")) {
-                                NSAddAck addAck = new NSAddAck();
-                                dbAdd(dbr, addAck);
-                            } else if (dbr.action.equals("dbRemove")) {
-                                NSUpdateAck removeAck = new NSUpdateAck(dbr.action, dbr._id);
-                                dbRemove(dbr, removeAck);
-                            } else if (dbr.action.equals("dbUpdate")) {
-                                NSUpdateAck updateAck = new NSUpdateAck(dbr.action, dbr._id);
-                                dbUpdate(dbr, updateAck);
-                            } else if (dbr.action.equals("dbUpdateUnset")) {
-                                NSUpdateAck updateUnsetAck = new NSUpdateAck(dbr.action, dbr._id);
-                                dbUpdateUnset(dbr, updateUnsetAck);
-                            }
-                            maxcount--;
-                        }
-                    } finally {
-                        iterator.close();
-                    }
-                } catch (SQLException e) {
-                    log.error("Unhandled exception", e);
-                }
-
-                MainApp.bus().post(new EventNSClientNewLog("QUEUE", "Resend ended: " + reason));
-            }
-        });
+        uploadEngine.resend(reason);
     }
 
     public void restart() {
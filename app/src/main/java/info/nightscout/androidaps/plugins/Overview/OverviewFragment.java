@@ -48,6 +48,7 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -103,6 +104,7 @@ import info.nightscout.androidaps.plugins.Overview.activities.QuickWizardListAct
 import info.nightscout.androidaps.plugins.Overview.events.EventDismissNotification;
 import info.nightscout.androidaps.plugins.Overview.events.EventSetWakeLock;
 import info.nightscout.androidaps.plugins.Overview.graphData.GraphData;
+import info.nightscout.androidaps.plugins.Overview.graphData.OverviewGraphModel;
 import info.nightscout.androidaps.plugins.Overview.notifications.Notification;
 import info.nightscout.androidaps.plugins.Overview.notifications.NotificationStore;
 import info.nightscout.androidaps.plugins.SourceXdrip.SourceXdripPlugin;
@@ -188,6 +190,8 @@ public class OverviewFragment extends Fragment implements View.OnClickListener,
     final Object updateSync = new Object();
 
     private static final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+    // graphs are prepared one at a time
+    private static final ExecutorService graphWorker = Executors.newSingleThreadExecutor();
     private static ScheduledFuture<?> scheduledUpdate = null;
 
     public OverviewFragment() {
@@ -1328,7 +1332,7 @@ public class OverviewFragment extends Fragment implements View.OnClickListener,
 
         // ****** GRAPH *******
 
-        new Thread(new Runnable() {
+        graphWorker.execute(new Runnable() {
             @Override
             public void run() {
                 // allign to hours
@@ -1361,10 +1365,14 @@ public class OverviewFragment extends Fragment implements View.OnClickListener,
 
                 final long now = System.currentTimeMillis();
 
+                // only data missing since last refresh is calculated
+                OverviewGraphModel.Snapshot snapshot = OverviewPlugin.getPlugin().getGraphModel(hoursToFetch).update(fromTime, now);
+                Profiler.log(log, from + " - graph data", updateGUIStart);
+
                 //  ------------------ 1st graph
                 Profiler.log(log, from + " - 1st graph - START", updateGUIStart);
 
-                final GraphData graphData = new GraphData(bgGraph);
+                final GraphData graphData = new GraphData(bgGraph, snapshot);
 
                 // **** In range Area ****
                 graphData.addInRangeArea(fromTime, endTime, lowLine, highLine);
@@ -1392,7 +1400,7 @@ public class OverviewFragment extends Fragment implements View.OnClickListener,
                 // ------------------ 2nd graph
                 Profiler.log(log, from + " - 2nd graph - START", updateGUIStart);
 
-                final GraphData secondGraphData = new GraphData(iobGraph);
+                final GraphData secondGraphData = new GraphData(iobGraph, snapshot);
 
                 boolean useIobForScale = false;
                 boolean useCobForScale = false;
@@ -1442,7 +1450,7 @@ public class OverviewFragment extends Fragment implements View.OnClickListener,
                     });
                 }
             }
-        }).start();
+        });
 
         Profiler.log(log, from, updateGUIStart);
     }
@@ -7,13 +7,22 @@ import org.json.JSONException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.R;
 import info.nightscout.androidaps.data.QuickWizard;
+import info.nightscout.androidaps.events.EventConfigBuilderChange;
+import info.nightscout.androidaps.events.EventNewBG;
+import info.nightscout.androidaps.events.EventNewBasalProfile;
+import info.nightscout.androidaps.events.EventPreferenceChange;
 import info.nightscout.androidaps.events.EventRefreshOverview;
 import info.nightscout.androidaps.interfaces.PluginBase;
+import info.nightscout.androidaps.plugins.IobCobCalculator.events.EventAutosensCalculationFinished;
+import info.nightscout.androidaps.plugins.IobCobCalculator.events.EventNewHistoryData;
 import info.nightscout.androidaps.plugins.Overview.events.EventDismissNotification;
 import info.nightscout.androidaps.plugins.Overview.events.EventNewNotification;
+import info.nightscout.androidaps.plugins.Overview.graphData.OverviewGraphModel;
 import info.nightscout.androidaps.plugins.Overview.notifications.NotificationStore;
 import info.nightscout.utils.SP;
 
@@ -39,6 +48,9 @@ public class OverviewPlugin implements PluginBase {
 
     public NotificationStore notificationStore = new NotificationStore();
 
+    // graph data by displayed range in hours
+    private final HashMap<Integer, OverviewGraphModel> graphModels = new HashMap<>();
+
     public OverviewPlugin() {
         String storedData = SP.getString("QuickWizard", "[]");
         try {
@@ -128,4 +140,62 @@ public class OverviewPlugin implements PluginBase {
             MainApp.bus().post(new EventRefreshOverview("EventDismissNotification"));
     }
 
+    public synchronized OverviewGraphModel getGraphModel(int hours) {
+        OverviewGraphModel model = graphModels.get(hours);
+        if (model == null) {
+            model = new OverviewGraphModel();
+            graphModels.put(hours, model);
+        }
+        return model;
+    }
+
+    private synchronized void resetGraphModels() {
+        for (OverviewGraphModel model : graphModels.values())
+            model.reset();
+    }
+
+    @Subscribe
+    public void onStatusEvent(final EventNewBG ev) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (OverviewGraphModel model : graphModels.values())
+                model.bgChanged(ev.time, now);
+        }
+    }
+
+    @Subscribe
+    public void onStatusEvent(final EventNewHistoryData ev) {
+        synchronized (this) {
+            for (OverviewGraphModel model : graphModels.values())
+                model.invalidate(ev.time);
+        }
+    }
+
+    @Subscribe
+    public void onStatusEvent(final EventAutosensCalculationFinished ev) {
+        synchronized (this) {
+            for (OverviewGraphModel model : graphModels.values())
+                model.calculationFinished();
+        }
+    }
+
+    // same events reset whole IobCobCalculatorPlugin cache
+    @Subscribe
+    public void onStatusEvent(final EventNewBasalProfile ev) {
+        resetGraphModels();
+    }
+
+    @Subscribe
+    public void onStatusEvent(final EventConfigBuilderChange ev) {
+        resetGraphModels();
+    }
+
+    @Subscribe
+    public void onStatusEvent(final EventPreferenceChange ev) {
+        if (ev.isChanged(R.string.key_openapsama_autosens_period) ||
+                ev.isChanged(R.string.key_age) ||
+                ev.isChanged(R.string.key_absorption_maxtime))
+            resetGraphModels();
+    }
+
 }
@@ -25,9 +25,7 @@ import info.nightscout.androidaps.db.ExtendedBolus;
 import info.nightscout.androidaps.db.ProfileSwitch;
 import info.nightscout.androidaps.db.Treatment;
 import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
-import info.nightscout.androidaps.plugins.IobCobCalculator.AutosensData;
-import info.nightscout.androidaps.plugins.IobCobCalculator.IobCobCalculatorPlugin;
-import info.nightscout.androidaps.plugins.IobCobCalculator.BasalData;
+import info.nightscout.androidaps.plugins.IobCobCalculator.BasalTimeline;
 import info.nightscout.androidaps.plugins.OpenAPSAMA.DetermineBasalResultAMA;
 import info.nightscout.androidaps.plugins.Overview.graphExtensions.AreaGraphSeries;
 import info.nightscout.androidaps.plugins.Overview.graphExtensions.DataPointWithLabelInterface;
@@ -50,15 +48,17 @@ public class GraphData {
     private List<BgReading> bgReadingsArray;
     private String units;
     private List<Series> series = new ArrayList<>();
+    private OverviewGraphModel.Snapshot snapshot;
 
-    public GraphData(GraphView graph) {
+    public GraphData(GraphView graph, OverviewGraphModel.Snapshot snapshot) {
         units = MainApp.getConfigBuilder().getProfileUnits();
         this.graph = graph;
+        this.snapshot = snapshot;
     }
 
     public void addBgReadings(long fromTime, long toTime, double lowLine, double highLine, DetermineBasalResultAMA amaResult) {
         double maxBgValue = 0d;
-        bgReadingsArray = MainApp.getDbHelper().getBgreadingsDataFromTime(fromTime, true);
+        bgReadingsArray = snapshot.bgReadings;
         List<DataPointWithLabelInterface> bgListArray = new ArrayList<>();
 
         if (bgReadingsArray.size() == 0) {
@@ -128,8 +128,9 @@ public class GraphData {
         double lastAbsoluteLineBasal = 0;
         double lastBaseBasal = 0;
         double lastTempBasal = 0;
-        for (long time = fromTime; time < toTime; time += 60 * 1000L) {
-            BasalData basalData = IobCobCalculatorPlugin.getBasalData(time);
+        // rates change only at segment starts
+        for (BasalTimeline.Segment basalData : BasalTimeline.build(fromTime, toTime)) {
+            long time = basalData.start;
             double baseBasalValue = basalData.basal;
             double absoluteLineValue = baseBasalValue;
             double tempBasalValue = 0;
@@ -286,8 +287,10 @@ public class GraphData {
         double lastIob = 0;
         Scale iobScale = new Scale();
 
-        for (long time = fromTime; time <= toTime; time += 5 * 60 * 1000L) {
-            double iob = IobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(time).iob;
+        for (OverviewGraphModel.IobSample sample : snapshot.iob) {
+            if (sample.time < fromTime || sample.time > toTime) continue;
+            long time = sample.time;
+            double iob = sample.iob;
             if (Math.abs(lastIob - iob) > 0.02) {
                 if (Math.abs(lastIob - iob) > 0.2)
                     iobArray.add(new ScaledDataPoint(time, lastIob, iobScale));
@@ -321,9 +324,10 @@ public class GraphData {
         int lastCob = 0;
         Scale cobScale = new Scale();
 
-        for (long time = fromTime; time <= toTime; time += 5 * 60 * 1000L) {
-            AutosensData autosensData = IobCobCalculatorPlugin.getAutosensData(time);
-            if (autosensData != null) {
+        for (OverviewGraphModel.AutosensSample autosensData : snapshot.autosens) {
+            if (autosensData.time < fromTime || autosensData.time > toTime) continue;
+            long time = autosensData.time;
+            if (autosensData.present) {
                 int cob = (int) autosensData.cob;
                 if (cob != lastCob) {
                     if (autosensData.carbsFromBolus > 0)
@@ -368,9 +372,10 @@ public class GraphData {
         Double maxDevValueFound = 0d;
         Scale devScale = new Scale();
 
-        for (long time = fromTime; time <= toTime; time += 5 * 60 * 1000L) {
-            AutosensData autosensData = IobCobCalculatorPlugin.getAutosensData(time);
-            if (autosensData != null) {
+        for (OverviewGraphModel.AutosensSample autosensData : snapshot.autosens) {
+            if (autosensData.time < fromTime || autosensData.time > toTime) continue;
+            long time = autosensData.time;
+            if (autosensData.present) {
                 int color = Color.BLACK; // "="
                 if (autosensData.pastSensitivity.equals("C")) color = Color.GRAY;
                 if (autosensData.pastSensitivity.equals("+")) color = Color.GREEN;
@@ -406,9 +411,10 @@ public class GraphData {
         Double maxRatioValueFound = 0d;
         Scale ratioScale = new Scale(-1d);
 
-        for (long time = fromTime; time <= toTime; time += 5 * 60 * 1000L) {
-            AutosensData autosensData = IobCobCalculatorPlugin.getAutosensData(time);
-            if (autosensData != null) {
+        for (OverviewGraphModel.AutosensSample autosensData : snapshot.autosens) {
+            if (autosensData.time < fromTime || autosensData.time > toTime) continue;
+            long time = autosensData.time;
+            if (autosensData.present) {
                 ratioArray.add(new DataPoint(time, autosensData.autosensRatio));
                 maxRatioValueFound = Math.max(maxRatioValueFound, Math.abs(autosensData.autosensRatio));
             }
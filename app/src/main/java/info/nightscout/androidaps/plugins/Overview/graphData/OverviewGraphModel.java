@@ -0,0 +1,285 @@
+package info.nightscout.androidaps.plugins.Overview.graphData;
+
+import android.support.v4.util.LongSparseArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.db.BgReading;
+import info.nightscout.androidaps.plugins.IobCobCalculator.AutosensData;
+import info.nightscout.androidaps.plugins.IobCobCalculator.IobCobCalculatorPlugin;
+
+/**
+ * Data of overview graphs for one displayed time range, kept between refreshes.
+ * <p>
+ * Samples are taken every 5 min from the start of the range. Samples which can't change
+ * any more are kept and only new ones are appended on refresh, history changes drop
+ * the affected tail only. Graphs are built from immutable snapshots.
+ */
+
+public class OverviewGraphModel {
+    private static Logger log = LoggerFactory.getLogger(OverviewGraphModel.class);
+
+    static final long STEP = 5 * 60 * 1000L;
+    // late readings are reloaded within this window, older backfill from its oldest reading
+    static final long BG_TAIL = 30 * 60 * 1000L;
+
+    public static class IobSample {
+        public final long time;
+        public final double iob;
+
+        IobSample(long time, double iob) {
+            this.time = time;
+            this.iob = iob;
+        }
+    }
+
+    public static class AutosensSample {
+        public final long time;
+        // false if autosens data is not available for this time
+        public final boolean present;
+        public final double cob;
+        public final double carbsFromBolus;
+        public final double deviation;
+        public final String pastSensitivity;
+        public final double autosensRatio;
+
+        AutosensSample(long time, AutosensData data) {
+            this.time = time;
+            present = data != null;
+            cob = present ? data.cob : 0d;
+            carbsFromBolus = present ? data.carbsFromBolus : 0d;
+            deviation = present ? data.deviation : 0d;
+            pastSensitivity = present ? data.pastSensitivity : "";
+            autosensRatio = present ? data.autosensRatio : 1d;
+        }
+    }
+
+    public static class Snapshot {
+        public final long fromTime;
+        public final long now;
+        // oldest first
+        public final List<BgReading> bgReadings;
+        public final List<IobSample> iob;
+        public final List<AutosensSample> autosens;
+
+        Snapshot(long fromTime, long now, List<BgReading> bgReadings, List<IobSample> iob, List<AutosensSample> autosens) {
+            this.fromTime = fromTime;
+            this.now = now;
+            this.bgReadings = Collections.unmodifiableList(bgReadings);
+            this.iob = Collections.unmodifiableList(iob);
+            this.autosens = Collections.unmodifiableList(autosens);
+        }
+    }
+
+    interface Source {
+        // ascending
+        List<BgReading> bgReadings(long from);
+
+        double iob(long time);
+
+        AutosensData autosens(long time);
+
+        // time of newest calculated autosens data, 0 if none
+        long lastAutosensTime();
+    }
+
+    static final Source DEFAULT_SOURCE = new Source() {
+        @Override
+        public List<BgReading> bgReadings(long from) {
+            return MainApp.getDbHelper().getBgreadingsDataFromTime(from, true);
+        }
+
+        @Override
+        public double iob(long time) {
+            return IobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(time).iob;
+        }
+
+        @Override
+        public AutosensData autosens(long time) {
+            return IobCobCalculatorPlugin.getAutosensData(time);
+        }
+
+        @Override
+        public long lastAutosensTime() {
+            LongSparseArray<AutosensData> table = IobCobCalculatorPlugin.getAutosensDataTable();
+            try {
+                return table.size() > 0 ? table.keyAt(table.size() - 1) : 0;
+            } catch (Exception e) {
+                // table is being recalculated
+                return 0;
+            }
+        }
+    };
+
+    private final Source source;
+
+    private long start = 0;
+    private final List<BgReading> bgReadings = new ArrayList<>();
+    private boolean bgValid = false;
+    // oldest reading changed since last load
+    private long bgChangedFrom = Long.MAX_VALUE;
+    // stable samples, contiguous from start
+    private final List<IobSample> iobSamples = new ArrayList<>();
+    private final List<AutosensSample> autosensSamples = new ArrayList<>();
+    // earliest history change waiting for autosens recalculation
+    private long pendingInvalidation = Long.MAX_VALUE;
+
+    // refresh timing
+    private int fullRefreshes = 0;
+    private long fullRefreshTime = 0;
+    private int incrementalRefreshes = 0;
+    private long incrementalRefreshTime = 0;
+
+    public OverviewGraphModel() {
+        this(DEFAULT_SOURCE);
+    }
+
+    OverviewGraphModel(Source source) {
+        this.source = source;
+    }
+
+    /**
+     * Brings the model to the range [fromTime, now], computing only missing samples
+     */
+    public synchronized Snapshot update(long fromTime, long now) {
+        long refreshStart = System.currentTimeMillis();
+        boolean full = moveStart(fromTime);
+        int computed = 0;
+
+        // BG
+        if (!bgValid || bgReadings.size() == 0) {
+            long reloadFrom = bgReadings.size() > 0 ? Math.max(start, Math.min(bgChangedFrom, bgReadings.get(bgReadings.size() - 1).date - BG_TAIL)) : start;
+            for (int i = bgReadings.size() - 1; i >= 0 && bgReadings.get(i).date >= reloadFrom; i--)
+                bgReadings.remove(i);
+            bgReadings.addAll(source.bgReadings(reloadFrom));
+            bgValid = true;
+            bgChangedFrom = Long.MAX_VALUE;
+        }
+
+        // IOB, values before now don't change until history changes
+        List<IobSample> iob = new ArrayList<>(iobSamples);
+        for (long time = nextTime(iobSamples); time <= now; time += STEP) {
+            IobSample sample = new IobSample(time, source.iob(time));
+            computed++;
+            iob.add(sample);
+            if (time + 60 * 1000L <= now)
+                iobSamples.add(sample);
+        }
+
+        // autosens, stable up to last calculated data
+        long lastAutosens = source.lastAutosensTime();
+        List<AutosensSample> autosens = new ArrayList<>(autosensSamples);
+        for (long time = nextTime(autosensSamples); time <= now; time += STEP) {
+            AutosensSample sample = new AutosensSample(time, source.autosens(time));
+            computed++;
+            autosens.add(sample);
+            if (time <= lastAutosens && autosens.size() == autosensSamples.size() + 1)
+                autosensSamples.add(sample);
+        }
+
+        long spent = System.currentTimeMillis() - refreshStart;
+        if (full) {
+            fullRefreshes++;
+            fullRefreshTime += spent;
+        } else {
+            incrementalRefreshes++;
+            incrementalRefreshTime += spent;
+        }
+        log.debug("Graph model " + (full ? "full" : "incremental") + " refresh in " + spent + " ms, computed " + computed
+                + " reused " + (iob.size() + autosens.size() - computed) + " samples. " + timingString());
+        return new Snapshot(start, now, new ArrayList<>(bgReadings), iob, autosens);
+    }
+
+    private long nextTime(List<?> samples) {
+        return start + samples.size() * STEP;
+    }
+
+    // @return true if nothing could be reused
+    private boolean moveStart(long fromTime) {
+        boolean empty = iobSamples.size() == 0 && autosensSamples.size() == 0 && bgReadings.size() == 0;
+        if (fromTime == start)
+            return empty;
+        if (fromTime < start || (fromTime - start) % STEP != 0) {
+            reset();
+            start = fromTime;
+            return true;
+        }
+        int shift = (int) ((fromTime - start) / STEP);
+        removeHead(iobSamples, shift);
+        removeHead(autosensSamples, shift);
+        while (bgReadings.size() > 0 && bgReadings.get(0).date < fromTime)
+            bgReadings.remove(0);
+        start = fromTime;
+        return empty;
+    }
+
+    private static void removeHead(List<?> samples, int count) {
+        samples.subList(0, Math.min(count, samples.size())).clear();
+    }
+
+    private static void removeFrom(List<?> samples, int index) {
+        if (index < samples.size())
+            samples.subList(Math.max(0, index), samples.size()).clear();
+    }
+
+    private int indexOf(long time) {
+        if (time <= start)
+            return 0;
+        return (int) ((time - start + STEP - 1) / STEP);
+    }
+
+    // new or backfilled BG readings, time is date of the oldest one
+    public synchronized void bgChanged(long time, long now) {
+        bgValid = false;
+        bgChangedFrom = Math.min(bgChangedFrom, time);
+        // autosens of last readings is recalculated
+        removeFrom(autosensSamples, indexOf(Math.min(time, now - BG_TAIL)));
+        // backfill older than the tail, samples cached before recalculation are stale
+        if (time < now - BG_TAIL)
+            pendingInvalidation = Math.min(pendingInvalidation, time);
+    }
+
+    // history changed at time, drop samples affected by it
+    public synchronized void invalidate(long time) {
+        int index = indexOf(time - STEP);
+        removeFrom(iobSamples, index);
+        removeFrom(autosensSamples, index);
+        pendingInvalidation = Math.min(pendingInvalidation, time);
+    }
+
+    // autosens calculated after history change replaces samples cached meanwhile
+    public synchronized void calculationFinished() {
+        if (pendingInvalidation == Long.MAX_VALUE)
+            return;
+        removeFrom(autosensSamples, indexOf(pendingInvalidation - STEP));
+        pendingInvalidation = Long.MAX_VALUE;
+    }
+
+    public synchronized void reset() {
+        bgReadings.clear();
+        bgValid = false;
+        bgChangedFrom = Long.MAX_VALUE;
+        iobSamples.clear();
+        autosensSamples.clear();
+        pendingInvalidation = Long.MAX_VALUE;
+    }
+
+    synchronized int cachedIobSamples() {
+        return iobSamples.size();
+    }
+
+    synchronized int cachedAutosensSamples() {
+        return autosensSamples.size();
+    }
+
+    public synchronized String timingString() {
+        return "Full: " + fullRefreshes + "x avg " + (fullRefreshes > 0 ? fullRefreshTime / fullRefreshes : 0) + " ms"
+                + " Incremental: " + incrementalRefreshes + "x avg " + (incrementalRefreshes > 0 ? incrementalRefreshTime / incrementalRefreshes : 0) + " ms";
+    }
+}
@@ -17,6 +17,7 @@ import info.nightscout.androidaps.R;
 import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.data.ProfileStore;
 import info.nightscout.androidaps.data.PumpEnactResult;
+import info.nightscout.androidaps.data.PumpSession;
 import info.nightscout.androidaps.db.ExtendedBolus;
 import info.nightscout.androidaps.db.TemporaryBasal;
 import info.nightscout.androidaps.interfaces.ConstraintsInterface;
@@ -363,6 +364,18 @@ public abstract class AbstractDanaRPlugin implements PluginBase, PumpInterface,
         if (sExecutionService != null) sExecutionService.getPumpStatus();
     }
 
+    @Override
+    public PumpEnactResult runSession(PumpSession session) {
+        if (sExecutionService == null)
+            return session.run(this);
+        sExecutionService.startSession();
+        try {
+            return session.run(this);
+        } finally {
+            sExecutionService.finishSession();
+        }
+    }
+
     @Override
     public JSONObject getJSONStatus() {
         if (pump.lastConnection + 5 * 60 * 1000L < System.currentTimeMillis()) {
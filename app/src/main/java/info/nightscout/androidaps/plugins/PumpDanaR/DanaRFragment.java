@@ -38,6 +38,7 @@ import info.nightscout.androidaps.plugins.PumpDanaR.Dialogs.ProfileViewDialog;
 import info.nightscout.androidaps.plugins.PumpDanaR.activities.DanaRHistoryActivity;
 import info.nightscout.androidaps.plugins.PumpDanaR.activities.DanaRStatsActivity;
 import info.nightscout.androidaps.plugins.PumpDanaR.events.EventDanaRNewStatus;
+import info.nightscout.androidaps.queue.ConnectionHealth;
 import info.nightscout.androidaps.queue.events.EventQueueChanged;
 import info.nightscout.utils.DateUtil;
 import info.nightscout.utils.DecimalFormatter;
@@ -70,6 +71,7 @@ public class DanaRFragment extends SubscriberFragment {
     @BindView(R.id.danar_bolusstep) TextView bolusStepView;
     @BindView(R.id.danar_serialnumber) TextView serialNumberView;
     @BindView(R.id.danar_queue) TextView queueView;
+    @BindView(R.id.danar_connectionhealth) TextView connectionHealthView;
 
     @BindView(R.id.overview_pumpstatuslayout) LinearLayout pumpStatusLayout;
     @BindView(R.id.overview_pumpstatus) TextView pumpStatusView;
@@ -234,6 +236,8 @@ public class DanaRFragment extends SubscriberFragment {
                     basalStepView.setText("" + pump.basalStep);
                     bolusStepView.setText("" + pump.bolusStep);
                     serialNumberView.setText("" + pump.serialNumber);
+                    // connect time p50 / p90 / p99
+                    connectionHealthView.setText(ConnectionHealth.getInstance().summary(ConnectionHealth.driver(ConfigBuilderPlugin.getActivePump())));
                     if (queueView != null) {
                         Spanned status = ConfigBuilderPlugin.getCommandQueue().spannedStatus();
                         if (status.toString().equals("")) {
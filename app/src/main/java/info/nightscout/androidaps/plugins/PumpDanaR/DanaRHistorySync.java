@@ -0,0 +1,139 @@
+package info.nightscout.androidaps.plugins.PumpDanaR;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.db.DanaRHistoryRecord;
+import info.nightscout.androidaps.plugins.PumpDanaR.events.EventDanaRHistoryChanged;
+import info.nightscout.utils.SP;
+
+/**
+ * Incremental download of pump history for DanaR family and DanaRS.
+ * <p>
+ * Time of last fully synced record is persisted per pump serial and record type.
+ * Records received during session are written in one transaction after the pump
+ * reports end of history, records older than watermark are dropped.
+ */
+
+public class DanaRHistorySync {
+    private static Logger log = LoggerFactory.getLogger(DanaRHistorySync.class);
+
+    // pseudo record type for event history of DanaRv2 and DanaRS
+    public static final byte EVENTS = (byte) 0xFF;
+
+    private static final String KEY_PREFIX = "danar_history_sync_";
+
+    // used from queue thread and pump message handlers
+    private static final DanaRHistorySync instance = new DanaRHistorySync();
+
+    public static DanaRHistorySync getInstance() {
+        return instance;
+    }
+
+    private final List<DanaRHistoryRecord> pending = new ArrayList<>();
+    private boolean active = false;
+    private byte type;
+    private long watermark;
+    private long newest;
+    private int received;
+    private long sessionStart;
+
+    public volatile long lastTransferMillis = 0;
+    public volatile long lastApplyMillis = 0;
+
+    private static String key(byte type) {
+        return KEY_PREFIX + DanaRPump.getInstance().serialNumber + "_" + (type & 0xFF);
+    }
+
+    // serial is empty until first status read, watermark would be shared by all pumps
+    private static boolean serialKnown() {
+        String serialNumber = DanaRPump.getInstance().serialNumber;
+        return serialNumber != null && !serialNumber.isEmpty();
+    }
+
+    public long getWatermark(byte type) {
+        if (!serialKnown())
+            return 0L;
+        return SP.getLong(key(type), 0L);
+    }
+
+    public void setWatermark(byte type, long time) {
+        if (!serialKnown())
+            return;
+        SP.putLong(key(type), time);
+    }
+
+    // called after database reset, history must be downloaded again
+    // serial is usually not known yet at that time, watermarks of all pumps are removed
+    public static void resetWatermarks() {
+        SP.removeStartingWith(KEY_PREFIX);
+    }
+
+    /**
+     * Begins download session of one record type
+     *
+     * @return time of last synced record, 0 if complete history should be requested
+     */
+    public synchronized long start(byte type) {
+        this.type = type;
+        watermark = getWatermark(type);
+        // records may be gone from database, watermark is not valid then
+        if (watermark != 0 && !MainApp.getDbHelper().hasDanaRHistoryRecords(type))
+            watermark = 0;
+        newest = watermark;
+        received = 0;
+        pending.clear();
+        sessionStart = System.currentTimeMillis();
+        active = true;
+        log.debug("History sync type " + type + " from: " + new Date(watermark).toLocaleString());
+        return watermark;
+    }
+
+    public synchronized void add(DanaRHistoryRecord record) {
+        if (!active) {
+            // received outside of session
+            MainApp.getDbHelper().createOrUpdate(record);
+            return;
+        }
+        received++;
+        // records at watermark may have been updated by pump, stored again
+        if (record.recordDate < watermark)
+            return;
+        pending.add(record);
+        newest = Math.max(newest, record.recordDate);
+    }
+
+    /**
+     * Ends session. Records are written only if pump reported end of history,
+     * otherwise next session starts from the same watermark.
+     *
+     * @return number of stored records
+     */
+    public synchronized int finish(boolean complete) {
+        if (!active)
+            return 0;
+        active = false;
+        lastTransferMillis = System.currentTimeMillis() - sessionStart;
+        int count = pending.size();
+        if (!complete) {
+            log.debug("History sync type " + type + " not finished, received " + received + " records in " + lastTransferMillis + " ms");
+            pending.clear();
+            return 0;
+        }
+        long applyStart = System.currentTimeMillis();
+        if (count > 0)
+            MainApp.getDbHelper().createOrUpdate(new ArrayList<>(pending));
+        lastApplyMillis = System.currentTimeMillis() - applyStart;
+        pending.clear();
+        setWatermark(type, newest);
+        log.debug("History sync type " + type + ": " + count + " new of " + received + " received, transfer " + lastTransferMillis + " ms, apply " + lastApplyMillis + " ms");
+        if (count > 0)
+            MainApp.bus().post(new EventDanaRHistoryChanged(type, count));
+        return count;
+    }
+}
@@ -0,0 +1,36 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.comm;
+
+/**
+ * Message lookup indexed directly by 16 bit command code.
+ * <p>
+ * High byte selects page of 256 entries, pages are created only for used high bytes.
+ * Lookup doesn't box command and doesn't allocate.
+ */
+
+public class CommandTable<T> {
+    private final Object[][] pages = new Object[256][];
+    private int size = 0;
+
+    public void put(int command, T message) {
+        int page = (command >> 8) & 0xFF;
+        if (pages[page] == null)
+            pages[page] = new Object[256];
+        if (pages[page][command & 0xFF] == null)
+            size++;
+        pages[page][command & 0xFF] = message;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int command) {
+        Object[] page = pages[(command >> 8) & 0xFF];
+        return page != null ? (T) page[command & 0xFF] : null;
+    }
+
+    public boolean containsKey(int command) {
+        return get(command) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -25,6 +25,8 @@ public class MessageBase {
     private static Logger log = LoggerFactory.getLogger(MessageBase.class);
     private byte[] buffer = new byte[512];
     private int position = 6;
+    // reused by *MillisFromBuff, message is parsed by one serial thread only
+    private GregorianCalendar calendar = null;
 
     public boolean received = false;
     public boolean failed = false;
@@ -161,6 +163,30 @@ public class MessageBase {
         return date;
     }
 
+    // same as *FromBuff(...).getTime() without allocation
+
+    protected long dateMillisFromBuff(byte[] buff, int offset) {
+        return millis(intFromBuff(buff, offset, 1), intFromBuff(buff, offset + 1, 1), intFromBuff(buff, offset + 2, 1), 0, 0, 0);
+    }
+
+    protected long dateTimeMillisFromBuff(byte[] buff, int offset) {
+        return millis(intFromBuff(buff, offset, 1), intFromBuff(buff, offset + 1, 1), intFromBuff(buff, offset + 2, 1),
+                intFromBuff(buff, offset + 3, 1), intFromBuff(buff, offset + 4, 1), 0);
+    }
+
+    protected long dateTimeSecMillisFromBuff(byte[] buff, int offset) {
+        return millis(intFromBuff(buff, offset, 1), intFromBuff(buff, offset + 1, 1), intFromBuff(buff, offset + 2, 1),
+                intFromBuff(buff, offset + 3, 1), intFromBuff(buff, offset + 4, 1), intFromBuff(buff, offset + 5, 1));
+    }
+
+    private long millis(int year, int month, int day, int hour, int minute, int second) {
+        if (calendar == null)
+            calendar = new GregorianCalendar();
+        calendar.clear();
+        calendar.set(2000 + year, month - 1, day, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+
     @TargetApi(Build.VERSION_CODES.KITKAT)
     public static String stringFromBuff(byte[] buff, int offset, int length) {
         byte[] strbuff = new byte[length];
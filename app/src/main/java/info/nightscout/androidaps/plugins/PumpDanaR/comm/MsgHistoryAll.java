@@ -3,10 +3,9 @@ package info.nightscout.androidaps.plugins.PumpDanaR.comm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Date;
-
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.db.DanaRHistoryRecord;
+import info.nightscout.androidaps.plugins.PumpDanaR.DanaRHistorySync;
 import info.nightscout.androidaps.plugins.PumpDanaR.events.EventDanaRSyncStatus;
 import info.nightscout.utils.DateUtil;
 
@@ -20,9 +19,9 @@ public class MsgHistoryAll extends MessageBase {
     @Override
     public void handleMessage(byte[] bytes) {
         byte recordCode = (byte) intFromBuff(bytes, 0, 1);
-        Date date = dateFromBuff(bytes, 1);                     // 3 bytes
-        Date datetime = dateTimeFromBuff(bytes, 1);             // 5 bytes
-        Date datetimewihtsec = dateTimeSecFromBuff(bytes, 1);   // 6 bytes
+        long date = dateMillisFromBuff(bytes, 1);                     // 3 bytes
+        long datetime = dateTimeMillisFromBuff(bytes, 1);             // 5 bytes
+        long datetimewihtsec = dateTimeSecMillisFromBuff(bytes, 1);   // 6 bytes
 
         double dailyBasal = intFromBuff(bytes, 4, 2) * 0.01d;
         double dailyBolus = intFromBuff(bytes, 6, 2) * 0.01d;
@@ -43,7 +42,7 @@ public class MsgHistoryAll extends MessageBase {
 
         switch (recordCode) {
             case RecordTypes.RECORD_TYPE_BOLUS:
-                danaRHistoryRecord.recordDate = datetime.getTime();
+                danaRHistoryRecord.recordDate = datetime;
                 switch (0xF0 & paramByte8) {
                     case 0xA0:
                         danaRHistoryRecord.bolusType = "DS";
@@ -70,48 +69,48 @@ public class MsgHistoryAll extends MessageBase {
                 break;
             case RecordTypes.RECORD_TYPE_DAILY:
                 messageType += "dailyinsulin";
-                danaRHistoryRecord.recordDate = date.getTime();
+                danaRHistoryRecord.recordDate = date;
                 danaRHistoryRecord.recordDailyBasal = dailyBasal;
                 danaRHistoryRecord.recordDailyBolus = dailyBolus;
                 break;
             case RecordTypes.RECORD_TYPE_PRIME:
                 messageType += "prime";
-                danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                danaRHistoryRecord.recordDate = datetimewihtsec;
                 danaRHistoryRecord.recordValue = value * 0.01;
                 break;
             case RecordTypes.RECORD_TYPE_ERROR:
                 messageType += "error";
-                danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                danaRHistoryRecord.recordDate = datetimewihtsec;
                 danaRHistoryRecord.recordValue = value * 0.01;
                 break;
             case RecordTypes.RECORD_TYPE_REFILL:
                 messageType += "refill";
-                danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                danaRHistoryRecord.recordDate = datetimewihtsec;
                 danaRHistoryRecord.recordValue = value * 0.01;
                 break;
             case RecordTypes.RECORD_TYPE_BASALHOUR:
                 messageType += "basal hour";
-                danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                danaRHistoryRecord.recordDate = datetimewihtsec;
                 danaRHistoryRecord.recordValue = value * 0.01;
                 break;
             case RecordTypes.RECORD_TYPE_TB:
                 messageType += "tb";
-                danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                danaRHistoryRecord.recordDate = datetimewihtsec;
                 danaRHistoryRecord.recordValue = value * 0.01;
                 break;
             case RecordTypes.RECORD_TYPE_GLUCOSE:
                 messageType += "glucose";
-                danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                danaRHistoryRecord.recordDate = datetimewihtsec;
                 danaRHistoryRecord.recordValue = value;
                 break;
             case RecordTypes.RECORD_TYPE_CARBO:
                 messageType += "carbo";
-                danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                danaRHistoryRecord.recordDate = datetimewihtsec;
                 danaRHistoryRecord.recordValue = value;
                 break;
             case RecordTypes.RECORD_TYPE_ALARM:
                 messageType += "alarm";
-                danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                danaRHistoryRecord.recordDate = datetimewihtsec;
                 String strAlarm = "None";
                 switch ((int) paramByte8) {
                     case 67:
@@ -132,7 +131,7 @@ public class MsgHistoryAll extends MessageBase {
                 break;
             case RecordTypes.RECORD_TYPE_SUSPEND:
                 messageType += "suspend";
-                danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                danaRHistoryRecord.recordDate = datetimewihtsec;
                 String strRecordValue = "Off";
                 if ((int) paramByte8 == 79)
                     strRecordValue = "On";
@@ -140,7 +139,7 @@ public class MsgHistoryAll extends MessageBase {
                 break;
         }
 
-        MainApp.getDbHelper().createOrUpdate(danaRHistoryRecord);
+        DanaRHistorySync.getInstance().add(danaRHistoryRecord);
 
         ev.message = DateUtil.dateAndTimeString(danaRHistoryRecord.recordDate);
         ev.message += " " + messageType;
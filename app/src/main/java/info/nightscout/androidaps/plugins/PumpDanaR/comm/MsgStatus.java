@@ -3,6 +3,8 @@ package info.nightscout.androidaps.plugins.PumpDanaR.comm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Date;
+
 import info.nightscout.androidaps.Config;
 import info.nightscout.androidaps.plugins.PumpDanaR.DanaRPump;
 
@@ -19,9 +21,11 @@ public class MsgStatus extends MessageBase {
         pump.isExtendedInProgress = intFromBuff(bytes, 3, 1) == 1;
         pump.extendedBolusMinutes = intFromBuff(bytes, 4, 2);
         pump.extendedBolusAmount = intFromBuff(bytes, 6, 2) / 100d;
-        Double lastBolusAmount = intFromBuff(bytes, 13, 2) / 100d;
+        double lastBolusAmount = intFromBuff(bytes, 13, 2) / 100d;
         if (lastBolusAmount != 0d) {
-            pump.lastBolusTime = dateTimeFromBuff(bytes, 8);
+            long lastBolusTime = dateTimeMillisFromBuff(bytes, 8);
+            if (pump.lastBolusTime == null || pump.lastBolusTime.getTime() != lastBolusTime)
+                pump.lastBolusTime = new Date(lastBolusTime);
             pump.lastBolusAmount = lastBolusAmount;
         }
         pump.iob = intFromBuff(bytes, 15, 2) / 100d;
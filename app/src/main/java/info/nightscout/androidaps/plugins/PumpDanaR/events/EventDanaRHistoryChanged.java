@@ -0,0 +1,16 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.events;
+
+import info.nightscout.androidaps.events.Event;
+
+/**
+ * Posted once per history sync session when new records were stored
+ */
+public class EventDanaRHistoryChanged extends Event {
+    public final byte type;
+    public final int count;
+
+    public EventDanaRHistoryChanged(byte type, int count) {
+        this.type = type;
+        this.count = count;
+    }
+}
@@ -23,6 +23,7 @@ import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.data.PumpEnactResult;
 import info.nightscout.androidaps.db.Treatment;
 import info.nightscout.androidaps.events.EventPumpStatusChanged;
+import info.nightscout.androidaps.plugins.PumpDanaR.DanaRHistorySync;
 import info.nightscout.androidaps.plugins.PumpDanaR.DanaRPump;
 import info.nightscout.androidaps.plugins.PumpDanaR.SerialIOThread;
 import info.nightscout.androidaps.plugins.PumpDanaR.comm.MessageBase;
@@ -86,6 +87,35 @@ public abstract class AbstractDanaRExecutionService extends Service {
 
     public abstract boolean extendedBolusStop();
 
+    // inside pump session events are loaded once at the end and state read by changes is reused
+    protected boolean inSession = false;
+    protected boolean eventsPending = false;
+    protected boolean tempBasalStateRead = false;
+    protected boolean extendedBolusStateRead = false;
+
+    public void startSession() {
+        inSession = true;
+        eventsPending = false;
+        tempBasalStateRead = false;
+        extendedBolusStateRead = false;
+    }
+
+    public void finishSession() {
+        inSession = false;
+        tempBasalStateRead = false;
+        extendedBolusStateRead = false;
+        if (eventsPending && isConnected())
+            loadEvents();
+        eventsPending = false;
+    }
+
+    protected void loadEventsOrDefer() {
+        if (inSession)
+            eventsPending = true;
+        else
+            loadEvents();
+    }
+
 
     protected BroadcastReceiver receiver = new BroadcastReceiver() {
         @Override
@@ -208,12 +238,16 @@ public abstract class AbstractDanaRExecutionService extends Service {
                 break;
         }
         MsgHistoryDone done = new MsgHistoryDone();
+        // DanaR sends complete history, already synced records are filtered out
+        DanaRHistorySync historySync = DanaRHistorySync.getInstance();
+        historySync.start(type);
         mSerialIOThread.sendMessage(new MsgPCCommStart());
         SystemClock.sleep(400);
         mSerialIOThread.sendMessage(msg);
         while (!done.received && mRfcommSocket.isConnected()) {
             SystemClock.sleep(100);
         }
+        historySync.finish(done.received);
         SystemClock.sleep(200);
         mSerialIOThread.sendMessage(new MsgPCCommStop());
         result.success = true;
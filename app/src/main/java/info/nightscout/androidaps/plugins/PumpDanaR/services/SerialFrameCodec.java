@@ -0,0 +1,108 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MessageBase;
+import info.nightscout.utils.CRC;
+
+/**
+ * Cuts DanaR/DanaRv2/DanaRKorean packets from RFCOMM stream.
+ * <p>
+ * Stream is read directly into fixed circular buffer, framing and CRC are checked in place.
+ * Each verified packet is copied once into array of its exact length because messages parse
+ * fields at absolute positions and rely on array length.
+ * <p>
+ * Packet: 7E 7E len F1|command_hi command_lo data... crc_hi crc_lo 2E 2E
+ */
+
+public class SerialFrameCodec {
+    private static Logger log = LoggerFactory.getLogger(SerialFrameCodec.class);
+
+    // largest packet is 255 + 7 bytes
+    static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+
+    private final byte[] ring = new byte[CAPACITY];
+    // positions grow forever, index into ring is position & MASK
+    private int head = 0;
+    private int tail = 0;
+    private String error = null;
+
+    /**
+     * Blocks until some data is available
+     *
+     * @return number of bytes read, -1 at end of stream
+     */
+    public int read(InputStream inputStream) throws IOException {
+        int offset = tail & MASK;
+        int count = Math.min(CAPACITY - (tail - head), CAPACITY - offset);
+        int gotBytes = inputStream.read(ring, offset, count);
+        if (gotBytes > 0)
+            tail += gotBytes;
+        return gotBytes;
+    }
+
+    /**
+     * @return verified packet or null if it's not complete yet or stream is corrupted (see getError())
+     */
+    public byte[] nextPacket() {
+        int available = tail - head;
+        if (available < 3) // 3rd byte is packet size
+            return null;
+        if (at(0) != (byte) 0x7E || at(1) != (byte) 0x7E) {
+            error = "Wrong beginning of packet";
+            log.error("Wrong beginning of packet len=" + available + "    " + MessageBase.toHexString(pending()));
+            return null;
+        }
+        int length = (at(2) & 0xFF) + 7;
+        if (available < length)
+            return null;
+        if (at(length - 2) != (byte) 0x2E || at(length - 1) != (byte) 0x2E) {
+            error = "wrong packet";
+            log.error("wrong packet lenght=" + length + " data " + MessageBase.toHexString(pending()));
+            return null;
+        }
+
+        short crc = CRC.getCrc16(ring, head + 3, length - 7, MASK);
+        byte crcByte0 = (byte) (crc >> 8 & 0xFF);
+        byte crcByte1 = (byte) (crc & 0xFF);
+
+        byte crcByte0received = at(length - 4);
+        byte crcByte1received = at(length - 3);
+
+        if (crcByte0 != crcByte0received || crcByte1 != crcByte1received) {
+            error = "crc error";
+            log.error("CRC Error" + String.format("%02x ", crcByte0) + String.format("%02x ", crcByte1) + String.format("%02x ", crcByte0received) + String.format("%02x ", crcByte1received));
+            return null;
+        }
+
+        byte[] packet = copy(head, length);
+        head += length;
+        return packet;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    private byte at(int index) {
+        return ring[(head + index) & MASK];
+    }
+
+    private byte[] pending() {
+        return copy(head, tail - head);
+    }
+
+    private byte[] copy(int from, int length) {
+        byte[] result = new byte[length];
+        int offset = from & MASK;
+        int first = Math.min(length, CAPACITY - offset);
+        System.arraycopy(ring, offset, result, 0, first);
+        System.arraycopy(ring, 0, result, first, length - first);
+        return result;
+    }
+}
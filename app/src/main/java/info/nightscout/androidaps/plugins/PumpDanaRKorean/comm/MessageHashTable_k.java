@@ -3,8 +3,6 @@ package info.nightscout.androidaps.plugins.PumpDanaRKorean.comm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-
 import info.nightscout.androidaps.plugins.PumpDanaR.comm.MessageBase;
 import info.nightscout.androidaps.plugins.PumpDanaR.comm.*;
 
@@ -14,11 +12,11 @@ import info.nightscout.androidaps.plugins.PumpDanaR.comm.*;
 public class MessageHashTable_k {
     private static Logger log = LoggerFactory.getLogger(MessageHashTable_k.class);
 
-    public static HashMap<Integer, MessageBase> messages = null;
+    public static CommandTable<MessageBase> messages = null;
 
     static {
         if (messages == null) {
-            messages = new HashMap<Integer, MessageBase>();
+            messages = new CommandTable<>();
             put(new MsgBolusStop());                 // 0x0101 CMD_MEALINS_STOP
             put(new MsgBolusStart());                // 0x0102 CMD_MEALINS_START_DATA
             put(new MsgBolusProgress());             // 0x0202 CMD_PUMP_THIS_REMAINDER_MEAL_INS
@@ -66,9 +64,10 @@ public class MessageHashTable_k {
         //log.debug(String.format("%04x ", command) + " " + name);
     }
 
-    public static MessageBase findMessage(Integer command) {
-        if (messages.containsKey(command)) {
-            return messages.get(command);
+    public static MessageBase findMessage(int command) {
+        MessageBase message = messages.get(command);
+        if (message != null) {
+            return message;
         } else {
             return new MessageBase();
         }
@@ -26,6 +26,7 @@ import info.nightscout.androidaps.data.DetailedBolusInfo;
 import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.data.ProfileStore;
 import info.nightscout.androidaps.data.PumpEnactResult;
+import info.nightscout.androidaps.data.PumpSession;
 import info.nightscout.androidaps.db.ExtendedBolus;
 import info.nightscout.androidaps.db.TemporaryBasal;
 import info.nightscout.androidaps.db.Treatment;
@@ -257,6 +258,18 @@ public class DanaRSPlugin implements PluginBase, PumpInterface, DanaRInterface,
             danaRSService.getPumpStatus();
     }
 
+    @Override
+    public PumpEnactResult runSession(PumpSession session) {
+        if (danaRSService == null)
+            return session.run(this);
+        danaRSService.startSession();
+        try {
+            return session.run(this);
+        } finally {
+            danaRSService.finishSession();
+        }
+    }
+
     // DanaR interface
 
     @Override
@@ -3,9 +3,8 @@ package info.nightscout.androidaps.plugins.PumpDanaRS.comm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-
 import info.nightscout.androidaps.Config;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.CommandTable;
 
 /**
  * Created by mike on 28.05.2016.
@@ -13,14 +12,14 @@ import info.nightscout.androidaps.Config;
 public class DanaRSMessageHashTable {
     private static Logger log = LoggerFactory.getLogger(DanaRSMessageHashTable.class);
 
-    public static HashMap<Integer, DanaRS_Packet> messages = null;
+    public static CommandTable<DanaRS_Packet> messages = null;
 
     static {
         if (messages == null) {
             boolean savedState = Config.logDanaMessageDetail;
             Config.logDanaMessageDetail = false;
 
-            messages = new HashMap<>();
+            messages = new CommandTable<>();
             put(new DanaRS_Packet_Basal_Set_Cancel_Temporary_Basal());
             put(new DanaRS_Packet_Basal_Get_Basal_Rate());
             put(new DanaRS_Packet_Basal_Get_Profile_Basal_Rate());
@@ -98,9 +97,10 @@ public class DanaRSMessageHashTable {
         messages.put(command, message);
     }
 
-    public static DanaRS_Packet findMessage(Integer command) {
-        if (messages.containsKey(command)) {
-            return messages.get(command);
+    public static DanaRS_Packet findMessage(int command) {
+        DanaRS_Packet message = messages.get(command);
+        if (message != null) {
+            return message;
         } else {
             return new DanaRS_Packet();
         }
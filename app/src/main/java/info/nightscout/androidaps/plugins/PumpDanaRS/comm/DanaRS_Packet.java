@@ -7,6 +7,7 @@ import com.cozmo.danar.util.BleCommandUtil;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.GregorianCalendar;
 
 public class DanaRS_Packet {
     protected static final int TYPE_START = 0;
@@ -17,6 +18,8 @@ public class DanaRS_Packet {
     protected boolean failed;
     protected int type = BleCommandUtil.DANAR_PACKET__TYPE_RESPONSE; // most of the messages, should be changed for others
     protected int opCode;
+    // reused by *MillisFromBuff, packets are parsed on one thread only
+    private GregorianCalendar calendar = null;
 
     public DanaRS_Packet() {
         received = false;
@@ -52,8 +55,8 @@ public class DanaRS_Packet {
     // STATIC FUNCTIONS
 
     public static int getCommand(byte[] data) {
-        int type = byteArrayToInt(getBytes(data, TYPE_START, 1));
-        int opCode = byteArrayToInt(getBytes(data, OPCODE_START, 1));
+        int type = byteArrayToInt(data, TYPE_START, 1);
+        int opCode = byteArrayToInt(data, OPCODE_START, 1);
         return ((type & 0xFF) << 8) + (opCode & 0xFF);
     }
 
@@ -77,6 +80,30 @@ public class DanaRS_Packet {
         return null;
     }
 
+    // same as byteArrayToInt(getBytes(data, srcStart, srcLength)) without copying
+    protected static int byteArrayToInt(byte[] data, int srcStart, int srcLength) {
+        int ret;
+
+        switch (srcLength) {
+            case 1:
+                ret = data[srcStart] & 0x000000FF;
+                break;
+            case 2:
+                ret = ((data[srcStart + 1] & 0x000000FF) << 8) + (data[srcStart] & 0x000000FF);
+                break;
+            case 3:
+                ret = ((data[srcStart + 2] & 0x000000FF) << 16) + ((data[srcStart + 1] & 0x000000FF) << 8) + (data[srcStart] & 0x000000FF);
+                break;
+            case 4:
+                ret = ((data[srcStart + 3] & 0x000000FF) << 24) + ((data[srcStart + 2] & 0x000000FF) << 16) + ((data[srcStart + 1] & 0x000000FF) << 8) + (data[srcStart] & 0x000000FF);
+                break;
+            default:
+                ret = -1;
+                break;
+        }
+        return ret;
+    }
+
     protected static int byteArrayToInt(byte[] b) {
         int ret;
 
@@ -113,6 +140,20 @@ public class DanaRS_Packet {
         return date;
     }
 
+    // same as dateTimeSecFromBuff(...).getTime() without allocation
+    protected long dateTimeSecMillisFromBuff(byte[] buff, int offset) {
+        return millis(intFromBuff(buff, offset, 1), intFromBuff(buff, offset + 1, 1), intFromBuff(buff, offset + 2, 1),
+                intFromBuff(buff, offset + 3, 1), intFromBuff(buff, offset + 4, 1), intFromBuff(buff, offset + 5, 1));
+    }
+
+    protected long millis(int year, int month, int day, int hour, int minute, int second) {
+        if (calendar == null)
+            calendar = new GregorianCalendar();
+        calendar.clear();
+        calendar.set(2000 + year, month - 1, day, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+
     protected static int intFromBuff(byte[] b, int srcStart, int srcLength) {
         int ret;
 
@@ -146,9 +187,9 @@ public class DanaRS_Packet {
     public static Date dateFromBuff(byte[] buff, int offset) {
         Date date =
                 new Date(
-                        100 + byteArrayToInt(getBytes(buff, offset, 1)),
-                        byteArrayToInt(getBytes(buff, offset + 1, 1)) - 1,
-                        byteArrayToInt(getBytes(buff, offset + 2, 1))
+                        100 + byteArrayToInt(buff, offset, 1),
+                        byteArrayToInt(buff, offset + 1, 1) - 1,
+                        byteArrayToInt(buff, offset + 2, 1)
                 );
         return date;
     }
@@ -50,7 +50,7 @@ public class DanaRS_Packet_APS_Basal_Set_Temporary_Basal extends DanaRS_Packet {
 
     @Override
     public void handleMessage(byte[] data) {
-        int result = byteArrayToInt(getBytes(data, DATA_START, 1));
+        int result = byteArrayToInt(data, DATA_START, 1);
         if (result != 0) {
             failed = true;
             log.error("Set APS temp basal start result: " + result + " FAILED!!!");
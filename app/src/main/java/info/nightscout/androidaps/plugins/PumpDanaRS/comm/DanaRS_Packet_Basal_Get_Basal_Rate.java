@@ -32,18 +32,18 @@ public class DanaRS_Packet_Basal_Get_Basal_Rate extends DanaRS_Packet {
 
 		int dataIndex = DATA_START;
 		int dataSize = 2;
-		pump.maxBasal = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+		pump.maxBasal = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		pump.basalStep = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+		pump.basalStep = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
 		if (pump.pumpProfiles == null) pump.pumpProfiles = new double[4][];
 		pump.pumpProfiles[pump.activeProfile] = new double[24];
 		for (int i = 0, size = 24; i < size; i++) {
 			dataIndex += dataSize;
 			dataSize = 2;
-			pump.pumpProfiles[pump.activeProfile][i] = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+			pump.pumpProfiles[pump.activeProfile][i] = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 		}
 		if (Config.logDanaMessageDetail) {
 			log.debug("Max basal: " + pump.maxBasal + " U");
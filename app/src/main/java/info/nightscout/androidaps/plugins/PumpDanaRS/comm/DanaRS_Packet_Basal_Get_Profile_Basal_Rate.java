@@ -43,7 +43,7 @@ public class DanaRS_Packet_Basal_Get_Profile_Basal_Rate extends DanaRS_Packet {
         if (pump.pumpProfiles == null) pump.pumpProfiles = new double[4][];
         pump.pumpProfiles[profileNumber] = new double[24];
         for (int i = 0, size = 24; i < size; i++) {
-            pump.pumpProfiles[profileNumber][i] = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+            pump.pumpProfiles[profileNumber][i] = byteArrayToInt(data, dataIndex, dataSize) / 100d;
             dataIndex += dataSize;
             dataSize = 2;
         }
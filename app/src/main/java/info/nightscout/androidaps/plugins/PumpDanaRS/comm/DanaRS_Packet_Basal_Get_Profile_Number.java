@@ -24,7 +24,7 @@ public class DanaRS_Packet_Basal_Get_Profile_Number extends DanaRS_Packet {
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        pump.activeProfile = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.activeProfile = byteArrayToInt(data, dataIndex, dataSize);
         if (Config.logDanaMessageDetail) {
             log.debug("Active profile: " + pump.activeProfile);
         }
@@ -28,28 +28,28 @@ public class DanaRS_Packet_Basal_Get_Temporary_Basal_State extends DanaRS_Packet
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int error = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int error = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.isTempBasalInProgress = byteArrayToInt(getBytes(data, dataIndex, dataSize)) == 0x01;
-        boolean isAPSTempBasalInProgress = byteArrayToInt(getBytes(data, dataIndex, dataSize)) == 0x02;
+        pump.isTempBasalInProgress = byteArrayToInt(data, dataIndex, dataSize) == 0x01;
+        boolean isAPSTempBasalInProgress = byteArrayToInt(data, dataIndex, dataSize) == 0x02;
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.tempBasalPercent = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.tempBasalPercent = byteArrayToInt(data, dataIndex, dataSize);
         if (pump.tempBasalPercent > 200) pump.tempBasalPercent = (pump.tempBasalPercent - 200) * 10;
 
         dataIndex += dataSize;
         dataSize = 1;
-        int durationHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int durationHour = byteArrayToInt(data, dataIndex, dataSize);
         if (durationHour == 150) pump.tempBasalTotalSec = 15 * 60;
         else if (durationHour == 160) pump.tempBasalTotalSec = 30 * 60;
         else pump.tempBasalTotalSec = durationHour * 60 * 60;
 
         dataIndex += dataSize;
         dataSize = 2;
-        int runningMin = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int runningMin = byteArrayToInt(data, dataIndex, dataSize);
         int tempBasalRemainingMin = (pump.tempBasalTotalSec - runningMin * 60) / 60;
         Date tempBasalStart = pump.isTempBasalInProgress ? getDateFromTempBasalSecAgo(runningMin * 60) : new Date(0);
 
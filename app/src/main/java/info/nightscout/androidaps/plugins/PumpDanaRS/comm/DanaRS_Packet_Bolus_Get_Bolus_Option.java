@@ -27,79 +27,79 @@ public class DanaRS_Packet_Bolus_Get_Bolus_Option extends DanaRS_Packet {
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        pump.isExtendedBolusEnabled = byteArrayToInt(getBytes(data, dataIndex, dataSize)) == 1;
+        pump.isExtendedBolusEnabled = byteArrayToInt(data, dataIndex, dataSize) == 1;
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.bolusCalculationOption = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.bolusCalculationOption = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.missedBolusConfig = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.missedBolusConfig = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus01StartHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus01StartHour = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus01StartMin = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus01StartMin = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus01EndHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus01EndHour = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus01EndMin = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus01EndMin = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus02StartHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus02StartHour = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus02StartMin = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus02StartMin = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus02EndHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus02EndHour = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus02EndMin = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus02EndMin = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus03StartHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus03StartHour = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus03StartMin = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus03StartMin = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus03EndHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus03EndHour = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus03EndMin = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus03EndMin = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus04StartHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus04StartHour = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus04StartMin = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus04StartMin = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus04EndHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus04EndHour = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int missedBolus04EndMin = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int missedBolus04EndMin = byteArrayToInt(data, dataIndex, dataSize);
 
         if (!pump.isExtendedBolusEnabled) {
             Notification notification = new Notification(Notification.EXTENDED_BOLUS_DISABLED, MainApp.sResources.getString(R.string.danar_enableextendedbolus), Notification.URGENT);
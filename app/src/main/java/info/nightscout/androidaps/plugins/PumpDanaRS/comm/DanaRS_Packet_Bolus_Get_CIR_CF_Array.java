@@ -24,98 +24,98 @@ public class DanaRS_Packet_Bolus_Get_CIR_CF_Array extends DanaRS_Packet {
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int language = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int language = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.units = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.units = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.morningCIR = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.morningCIR = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        int cir02 = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int cir02 = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.afternoonCIR = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.afternoonCIR = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        int cir04 = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int cir04 = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.eveningCIR = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.eveningCIR = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        int cir06 = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int cir06 = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.nightCIR = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.nightCIR = byteArrayToInt(data, dataIndex, dataSize);
 
         double cf02, cf04, cf06;
 
         if (pump.units == DanaRPump.UNITS_MGDL) {
             dataIndex += dataSize;
             dataSize = 2;
-            pump.morningCF = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+            pump.morningCF = byteArrayToInt(data, dataIndex, dataSize);
 
             dataIndex += dataSize;
             dataSize = 2;
-            cf02 = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+            cf02 = byteArrayToInt(data, dataIndex, dataSize);
 
             dataIndex += dataSize;
             dataSize = 2;
-            pump.afternoonCF = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+            pump.afternoonCF = byteArrayToInt(data, dataIndex, dataSize);
 
             dataIndex += dataSize;
             dataSize = 2;
-            cf04 = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+            cf04 = byteArrayToInt(data, dataIndex, dataSize);
 
             dataIndex += dataSize;
             dataSize = 2;
-            pump.eveningCF = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+            pump.eveningCF = byteArrayToInt(data, dataIndex, dataSize);
 
             dataIndex += dataSize;
             dataSize = 2;
-            cf06 = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+            cf06 = byteArrayToInt(data, dataIndex, dataSize);
 
             dataIndex += dataSize;
             dataSize = 2;
-            pump.nightCF = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+            pump.nightCF = byteArrayToInt(data, dataIndex, dataSize);
         } else {
             dataIndex += dataSize;
             dataSize = 2;
-            pump.morningCF = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+            pump.morningCF = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
             dataIndex += dataSize;
             dataSize = 2;
-            cf02 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+            cf02 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
             dataIndex += dataSize;
             dataSize = 2;
-            pump.afternoonCF = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+            pump.afternoonCF = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
             dataIndex += dataSize;
             dataSize = 2;
-            cf04 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+            cf04 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
             dataIndex += dataSize;
             dataSize = 2;
-            pump.eveningCF = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+            pump.eveningCF = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
             dataIndex += dataSize;
             dataSize = 2;
-            cf06 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+            cf06 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
             dataIndex += dataSize;
             dataSize = 2;
-            pump.nightCF = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+            pump.nightCF = byteArrayToInt(data, dataIndex, dataSize) / 100d;
         }
 
         if (Config.logDanaMessageDetail) {
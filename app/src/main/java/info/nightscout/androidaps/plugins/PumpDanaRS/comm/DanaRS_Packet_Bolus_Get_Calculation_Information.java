@@ -23,35 +23,35 @@ public class DanaRS_Packet_Bolus_Get_Calculation_Information extends DanaRS_Pack
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int error = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int error = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        double currentBG = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        double currentBG = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        int carbohydrate = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int carbohydrate = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.currentTarget = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.currentTarget = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.currentCIR = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.currentCIR = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.currentCF = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.currentCF = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.iob = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.iob = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.units = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.units = byteArrayToInt(data, dataIndex, dataSize);
 
         if (pump.units == DanaRPump.UNITS_MMOL) {
             pump.currentCF = pump.currentCF / 100d;
@@ -23,15 +23,15 @@ public class DanaRS_Packet_Bolus_Get_Carbohydrate_Calculation_Information extend
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int error = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int error = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        int carbs = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int carbs = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.currentCIR = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.currentCIR = byteArrayToInt(data, dataIndex, dataSize);
 
         if (Config.logDanaMessageDetail) {
             log.debug("Result: " + error);
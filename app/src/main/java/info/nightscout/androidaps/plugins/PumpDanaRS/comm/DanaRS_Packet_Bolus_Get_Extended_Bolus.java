@@ -23,19 +23,19 @@ public class DanaRS_Packet_Bolus_Get_Extended_Bolus extends DanaRS_Packet {
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int error = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int error = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.extendedBolusAbsoluteRate = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.extendedBolusAbsoluteRate = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.maxBolus = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.maxBolus = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.bolusStep = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.bolusStep = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         if (Config.logDanaMessageDetail) {
             log.debug("Result: " + error);
@@ -23,27 +23,27 @@ public class DanaRS_Packet_Bolus_Get_Extended_Bolus_State extends DanaRS_Packet
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int error = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int error = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.isExtendedInProgress = byteArrayToInt(getBytes(data, dataIndex, dataSize)) == 0x01;
+        pump.isExtendedInProgress = byteArrayToInt(data, dataIndex, dataSize) == 0x01;
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.extendedBolusMinutes = byteArrayToInt(getBytes(data, dataIndex, dataSize)) * 30;
+        pump.extendedBolusMinutes = byteArrayToInt(data, dataIndex, dataSize) * 30;
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.extendedBolusAbsoluteRate = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.extendedBolusAbsoluteRate = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.extendedBolusSoFarInMinutes = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.extendedBolusSoFarInMinutes = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.extendedBolusDeliveredSoFar = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.extendedBolusDeliveredSoFar = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         if (Config.logDanaMessageDetail) {
             log.debug("Result: " + error);
@@ -23,11 +23,11 @@ public class DanaRS_Packet_Bolus_Get_Extended_Menu_Option_State extends DanaRS_P
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int extendedMenuOption = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int extendedMenuOption = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.isExtendedInProgress = byteArrayToInt(getBytes(data, dataIndex, dataSize)) == 0x01;
+        pump.isExtendedInProgress = byteArrayToInt(data, dataIndex, dataSize) == 0x01;
 
         if (Config.logDanaMessageDetail) {
             log.debug("extendedMenuOption: " + extendedMenuOption);
@@ -18,19 +18,19 @@ public class DanaRS_Packet_Bolus_Get_Initial_Bolus extends DanaRS_Packet {
     public void handleMessage(byte[] data) {
         int dataIndex = DATA_START;
         int dataSize = 2;
-        double initialBolusValue01 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        double initialBolusValue01 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        double initialBolusValue02 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        double initialBolusValue02 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        double initialBolusValue03 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        double initialBolusValue03 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        double initialBolusValue04 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        double initialBolusValue04 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
         if (Config.logDanaMessageDetail) {
             log.debug("Initial bolus amount 01: " + initialBolusValue01);
             log.debug("Initial bolus amount 02: " + initialBolusValue02);
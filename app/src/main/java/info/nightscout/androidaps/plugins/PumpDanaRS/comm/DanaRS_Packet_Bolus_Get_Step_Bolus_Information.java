@@ -23,36 +23,36 @@ public class DanaRS_Packet_Bolus_Get_Step_Bolus_Information extends DanaRS_Packe
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int error = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int error = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int bolusType = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int bolusType = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.initialBolusAmount = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.initialBolusAmount = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         pump.lastBolusTime = new Date(); // it doesn't provide day only hour+min, workaround: expecting today
         dataIndex += dataSize;
         dataSize = 1;
-        pump.lastBolusTime.setHours(byteArrayToInt(getBytes(data, dataIndex, dataSize)));
+        pump.lastBolusTime.setHours(byteArrayToInt(data, dataIndex, dataSize));
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.lastBolusTime.setMinutes(byteArrayToInt(getBytes(data, dataIndex, dataSize)));
+        pump.lastBolusTime.setMinutes(byteArrayToInt(data, dataIndex, dataSize));
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.lastBolusAmount = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.lastBolusAmount = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.maxBolus = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.maxBolus = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.bolusStep = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.bolusStep = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         if (Config.logDanaMessageDetail) {
             log.debug("Result: " + error);
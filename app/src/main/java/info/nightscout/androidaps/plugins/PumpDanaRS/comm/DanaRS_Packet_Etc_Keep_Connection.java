@@ -19,7 +19,7 @@ public class DanaRS_Packet_Etc_Keep_Connection extends DanaRS_Packet {
     public void handleMessage(byte[] data) {
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int error = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int error = byteArrayToInt(data, dataIndex, dataSize);
         if (Config.logDanaMessageDetail) {
             log.debug("Result: " + error);
         }
@@ -19,7 +19,7 @@ public class DanaRS_Packet_General_Delivery_Status extends DanaRS_Packet {
     public void handleMessage(byte[] data) {
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int status = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int status = byteArrayToInt(data, dataIndex, dataSize);
         if (Config.logDanaMessageDetail) {
             log.debug("Status: " + status);
         }
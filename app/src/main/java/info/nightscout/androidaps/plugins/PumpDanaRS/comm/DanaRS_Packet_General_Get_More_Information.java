@@ -23,36 +23,36 @@ public class DanaRS_Packet_General_Get_More_Information extends DanaRS_Packet {
 
 		int dataIndex = DATA_START;
 		int dataSize = 2;
-		pump.iob = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.iob = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 2;
-		pump.dailyTotalUnits = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+		pump.dailyTotalUnits = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		pump.isExtendedInProgress = byteArrayToInt(getBytes(data, dataIndex, dataSize)) == 0x01;
+		pump.isExtendedInProgress = byteArrayToInt(data, dataIndex, dataSize) == 0x01;
 
 		dataIndex += dataSize;
 		dataSize = 2;
-		pump.extendedBolusRemainingMinutes = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.extendedBolusRemainingMinutes = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 2;
-		double remainRate = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+		double remainRate = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         Date lastBolusTime = new Date(); // it doesn't provide day only hour+min, workaround: expecting today
         dataIndex += dataSize;
         dataSize = 1;
-        lastBolusTime.setHours(byteArrayToInt(getBytes(data, dataIndex, dataSize)));
+        lastBolusTime.setHours(byteArrayToInt(data, dataIndex, dataSize));
 
         dataIndex += dataSize;
         dataSize = 1;
-        lastBolusTime.setMinutes(byteArrayToInt(getBytes(data, dataIndex, dataSize)));
+        lastBolusTime.setMinutes(byteArrayToInt(data, dataIndex, dataSize));
 
 		dataIndex += dataSize;
 		dataSize = 2;
-		pump.lastBolusAmount = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.lastBolusAmount = byteArrayToInt(data, dataIndex, dataSize);
 
         if (Config.logDanaMessageDetail) {
             log.debug("Daily total units: " + pump.dailyTotalUnits + " U");
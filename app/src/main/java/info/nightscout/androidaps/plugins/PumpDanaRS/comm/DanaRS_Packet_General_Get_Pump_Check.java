@@ -26,15 +26,15 @@ public class DanaRS_Packet_General_Get_Pump_Check extends DanaRS_Packet {
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        pump.model = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.model = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.protocol = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.protocol = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.productCode = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.productCode = byteArrayToInt(data, dataIndex, dataSize);
 
         if (Config.logDanaMessageDetail) {
             log.debug("Model: " + String.format("%02X ", pump.model));
@@ -23,15 +23,15 @@ public class DanaRS_Packet_General_Get_Today_Delivery_Total extends DanaRS_Packe
 
 		int dataIndex = DATA_START;
 		int dataSize = 2;
-		pump.dailyTotalUnits = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+		pump.dailyTotalUnits = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
 		dataIndex += dataSize;
 		dataSize = 2;
-		pump.dailyTotalBasalUnits = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+		pump.dailyTotalBasalUnits = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
 		dataIndex += dataSize;
 		dataSize = 2;
-		pump.dailyTotalBolusUnits = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+		pump.dailyTotalBolusUnits = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
 		if (Config.logDanaMessageDetail) {
 			log.debug("Daily total: " + pump.dailyTotalUnits + " U");
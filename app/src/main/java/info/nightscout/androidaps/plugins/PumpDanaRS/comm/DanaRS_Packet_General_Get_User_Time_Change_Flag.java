@@ -18,7 +18,7 @@ public class DanaRS_Packet_General_Get_User_Time_Change_Flag extends DanaRS_Pack
     public void handleMessage(byte[] data) {
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int userTimeChangeFlag = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int userTimeChangeFlag = byteArrayToInt(data, dataIndex, dataSize);
 
         if (Config.logDanaMessageDetail) {
             log.debug("UserTimeChangeFlag: " + userTimeChangeFlag);
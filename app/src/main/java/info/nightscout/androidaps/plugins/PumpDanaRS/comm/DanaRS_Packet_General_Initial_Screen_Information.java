@@ -24,7 +24,7 @@ public class DanaRS_Packet_General_Initial_Screen_Information extends DanaRS_Pac
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int status = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int status = byteArrayToInt(data, dataIndex, dataSize);
 
         pump.pumpSuspended = (status & 0x01) == 0x01;
         pump.isTempBasalInProgress = (status & 0x10) == 0x10;
@@ -33,35 +33,35 @@ public class DanaRS_Packet_General_Initial_Screen_Information extends DanaRS_Pac
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.dailyTotalUnits = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.dailyTotalUnits = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.maxDailyTotalUnits = (int) (byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d);
+        pump.maxDailyTotalUnits = (int) (byteArrayToInt(data, dataIndex, dataSize) / 100d);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.reservoirRemainingUnits = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.reservoirRemainingUnits = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.currentBasal = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.currentBasal = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.tempBasalPercent = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.tempBasalPercent = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        pump.batteryRemaining = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        pump.batteryRemaining = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.extendedBolusAbsoluteRate = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.extendedBolusAbsoluteRate = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        pump.iob = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        pump.iob = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         if (Config.logDanaMessageDetail) {
             log.debug("Pump suspended: " + pump.pumpSuspended);
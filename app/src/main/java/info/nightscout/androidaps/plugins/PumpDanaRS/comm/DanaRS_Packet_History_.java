@@ -11,6 +11,7 @@ import java.util.GregorianCalendar;
 
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.db.DanaRHistoryRecord;
+import info.nightscout.androidaps.plugins.PumpDanaR.DanaRHistorySync;
 import info.nightscout.androidaps.plugins.PumpDanaR.comm.RecordTypes;
 import info.nightscout.androidaps.plugins.PumpDanaR.events.EventDanaRSyncStatus;
 import info.nightscout.utils.DateUtil;
@@ -69,41 +70,41 @@ public abstract class DanaRS_Packet_History_ extends DanaRS_Packet {
         if (data.length == 3) {
             int dataIndex = DATA_START;
             int dataSize = 1;
-            error = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+            error = byteArrayToInt(data, dataIndex, dataSize);
             done = true;
             log.debug("History end. Code: " + error + " Success: " + (error == 0x00));
         } else if (data.length == 5) {
             int dataIndex = DATA_START;
             int dataSize = 1;
-            error = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+            error = byteArrayToInt(data, dataIndex, dataSize);
             done = true;
 
             dataIndex += dataSize;
             dataSize = 2;
-            totalCount = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+            totalCount = byteArrayToInt(data, dataIndex, dataSize);
             log.debug("History end. Code: " + error + " Success: " + (error == 0x00) + " Toatal count: " + totalCount);
         } else {
-            int recordCode = byteArrayToInt(getBytes(data, DATA_START, 1));
-            int historyYear = byteArrayToInt(getBytes(data, DATA_START + 1, 1));
-            int historyMonth = byteArrayToInt(getBytes(data, DATA_START +2 , 1));
-            int historyDay = byteArrayToInt(getBytes(data, DATA_START + 3, 1));
-            int historyHour = byteArrayToInt(getBytes(data, DATA_START + 4, 1));
+            int recordCode = byteArrayToInt(data, DATA_START, 1);
+            int historyYear = byteArrayToInt(data, DATA_START + 1, 1);
+            int historyMonth = byteArrayToInt(data, DATA_START +2 , 1);
+            int historyDay = byteArrayToInt(data, DATA_START + 3, 1);
+            int historyHour = byteArrayToInt(data, DATA_START + 4, 1);
             double dailyBasal = (((data[DATA_START + 4] & 0xFF) << 8) + (data[DATA_START + 5] & 0xFF)) * 0.01d;
-            int historyMinute = byteArrayToInt(getBytes(data, DATA_START + 5, 1));
-            int historySecond = byteArrayToInt(getBytes(data, DATA_START + 6, 1));
+            int historyMinute = byteArrayToInt(data, DATA_START + 5, 1);
+            int historySecond = byteArrayToInt(data, DATA_START + 6, 1);
             byte paramByte7 = (byte) historySecond;
             double dailyBolus = (((data[DATA_START + 6] & 0xFF) << 8) + (data[DATA_START + 7] & 0xFF)) * 0.01d;
 
-            Date date = new Date(100 + historyYear, historyMonth - 1, historyDay);
-            Date datetime = new Date(100 + historyYear, historyMonth - 1, historyDay, historyHour, historyMinute);
-            Date datetimewihtsec = new Date(100 + historyYear, historyMonth - 1, historyDay, historyHour, historyMinute, historySecond);
+            long date = millis(historyYear, historyMonth, historyDay, 0, 0, 0);
+            long datetime = millis(historyYear, historyMonth, historyDay, historyHour, historyMinute, 0);
+            long datetimewihtsec = millis(historyYear, historyMonth, historyDay, historyHour, historyMinute, historySecond);
 
-            int historyCode = byteArrayToInt(getBytes(data, DATA_START + 7, 1));
+            int historyCode = byteArrayToInt(data, DATA_START + 7, 1);
             byte paramByte8 = (byte) historyCode;
 
             int value = ((data[DATA_START + 8] & 0xFF) << 8) + (data[DATA_START + 9] & 0xFF);
 
-            log.debug("History packet: " + recordCode + " Date: " + datetimewihtsec.toLocaleString() + " Code: " + historyCode + " Value: " + value);
+            log.debug("History packet: " + recordCode + " Date: " + DateUtil.dateAndTimeString(datetimewihtsec) + " Code: " + historyCode + " Value: " + value);
 
 
             EventDanaRSyncStatus ev = new EventDanaRSyncStatus();
@@ -118,7 +119,7 @@ public abstract class DanaRS_Packet_History_ extends DanaRS_Packet {
             switch (recordCode) {
                 case 0x02:
                     danaRHistoryRecord.recordCode = RecordTypes.RECORD_TYPE_BOLUS;
-                    danaRHistoryRecord.recordDate = datetime.getTime();
+                    danaRHistoryRecord.recordDate = datetime;
                     switch (0xF0 & paramByte8) {
                         case 0xA0:
                             danaRHistoryRecord.bolusType = "DS";
@@ -146,50 +147,50 @@ public abstract class DanaRS_Packet_History_ extends DanaRS_Packet {
                 case 0x03:
                     danaRHistoryRecord.recordCode = RecordTypes.RECORD_TYPE_DAILY;
                     messageType += "dailyinsulin";
-                    danaRHistoryRecord.recordDate = date.getTime();
+                    danaRHistoryRecord.recordDate = date;
                     danaRHistoryRecord.recordDailyBasal = dailyBasal;
                     danaRHistoryRecord.recordDailyBolus = dailyBolus;
                     break;
                 case 0x04:
                     danaRHistoryRecord.recordCode = RecordTypes.RECORD_TYPE_PRIME;
                     messageType += "prime";
-                    danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                    danaRHistoryRecord.recordDate = datetimewihtsec;
                     danaRHistoryRecord.recordValue = value * 0.01;
                     break;
                 case 0x05:
                     danaRHistoryRecord.recordCode = RecordTypes.RECORD_TYPE_REFILL;
                     messageType += "refill";
-                    danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                    danaRHistoryRecord.recordDate = datetimewihtsec;
                     danaRHistoryRecord.recordValue = value * 0.01;
                     break;
                 case 0x0b:
                     danaRHistoryRecord.recordCode = RecordTypes.RECORD_TYPE_BASALHOUR;
                     messageType += "basal hour";
-                    danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                    danaRHistoryRecord.recordDate = datetimewihtsec;
                     danaRHistoryRecord.recordValue = value * 0.01;
                     break;
                 case 0x99: ///// ????????? don't know the right code
                     danaRHistoryRecord.recordCode = RecordTypes.RECORD_TYPE_TEMP_BASAL;
                     messageType += "tb";
-                    danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                    danaRHistoryRecord.recordDate = datetimewihtsec;
                     danaRHistoryRecord.recordValue = value * 0.01;
                     break;
                 case 0x06:
                     danaRHistoryRecord.recordCode = RecordTypes.RECORD_TYPE_GLUCOSE;
                     messageType += "glucose";
-                    danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                    danaRHistoryRecord.recordDate = datetimewihtsec;
                     danaRHistoryRecord.recordValue = value;
                     break;
                 case 0x07:
                     danaRHistoryRecord.recordCode = RecordTypes.RECORD_TYPE_CARBO;
                     messageType += "carbo";
-                    danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                    danaRHistoryRecord.recordDate = datetimewihtsec;
                     danaRHistoryRecord.recordValue = value;
                     break;
                 case 0x0a:
                     danaRHistoryRecord.recordCode = RecordTypes.RECORD_TYPE_ALARM;
                     messageType += "alarm";
-                    danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                    danaRHistoryRecord.recordDate = datetimewihtsec;
                     String strAlarm = "None";
                     switch ((int) paramByte8) {
                         case 67:
@@ -211,7 +212,7 @@ public abstract class DanaRS_Packet_History_ extends DanaRS_Packet {
                 case 0x09:
                     danaRHistoryRecord.recordCode = RecordTypes.RECORD_TYPE_SUSPEND;
                     messageType += "suspend";
-                    danaRHistoryRecord.recordDate = datetimewihtsec.getTime();
+                    danaRHistoryRecord.recordDate = datetimewihtsec;
                     String strRecordValue = "Off";
                     if ((int) paramByte8 == 79)
                         strRecordValue = "On";
@@ -219,7 +220,7 @@ public abstract class DanaRS_Packet_History_ extends DanaRS_Packet {
                     break;
             }
 
-            MainApp.getDbHelper().createOrUpdate(danaRHistoryRecord);
+            DanaRHistorySync.getInstance().add(danaRHistoryRecord);
 
             ev.message = DateUtil.dateAndTimeString(danaRHistoryRecord.recordDate);
             ev.message += " " + messageType;
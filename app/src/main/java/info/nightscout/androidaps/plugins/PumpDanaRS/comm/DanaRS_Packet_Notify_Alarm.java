@@ -24,7 +24,7 @@ public class DanaRS_Packet_Notify_Alarm extends DanaRS_Packet {
 
     @Override
     public void handleMessage(byte[] data) {
-        alarmCode = byteArrayToInt(getBytes(data, DATA_START, 1));
+        alarmCode = byteArrayToInt(data, DATA_START, 1);
         String errorString = "";
 
         switch (alarmCode) {
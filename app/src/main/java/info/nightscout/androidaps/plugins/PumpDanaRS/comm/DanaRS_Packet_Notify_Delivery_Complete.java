@@ -34,7 +34,7 @@ public class DanaRS_Packet_Notify_Delivery_Complete extends DanaRS_Packet {
 
     @Override
     public void handleMessage(byte[] data) {
-        double deliveredInsulin = byteArrayToInt(getBytes(data, DATA_START, 2)) / 100d;
+        double deliveredInsulin = byteArrayToInt(data, DATA_START, 2) / 100d;
 
         if (t != null) {
             t.insulin = deliveredInsulin;
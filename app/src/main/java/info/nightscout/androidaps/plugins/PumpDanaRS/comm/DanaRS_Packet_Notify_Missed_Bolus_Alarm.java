@@ -25,19 +25,19 @@ public class DanaRS_Packet_Notify_Missed_Bolus_Alarm extends DanaRS_Packet {
 
         int dataIndex = DATA_START;
         int dataSize = 1;
-        startHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        startHour = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        startMin = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        startMin = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        endHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        endHour = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        endMin = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        endMin = byteArrayToInt(data, dataIndex, dataSize);
         if (Config.logDanaMessageDetail) {
             log.debug("Start hour: " + startHour);
             log.debug("Start min: " + startMin);
@@ -24,27 +24,27 @@ public class DanaRS_Packet_Option_Get_Pump_Time extends DanaRS_Packet {
     public void handleMessage(byte[] data) {
         int dataIndex = DATA_START;
         int dataSize = 1;
-        int year = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int year = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int month = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int month = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int day = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int day = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int hour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int hour = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int min = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int min = byteArrayToInt(data, dataIndex, dataSize);
 
         dataIndex += dataSize;
         dataSize = 1;
-        int sec = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        int sec = byteArrayToInt(data, dataIndex, dataSize);
 
         Date time = new Date(100 + year, month - 1, day, hour, min, sec);
         DanaRPump.getInstance().pumpTime = time;
@@ -25,67 +25,67 @@ public class DanaRS_Packet_Option_Get_User_Option extends DanaRS_Packet {
 
 		int dataIndex = DATA_START;
 		int dataSize = 1;
-		pump.timeDisplayType = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.timeDisplayType = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		pump.buttonScrollOnOff = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.buttonScrollOnOff = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		pump.beepAndAlarm = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.beepAndAlarm = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		pump.lcdOnTimeSec = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.lcdOnTimeSec = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		pump.backlightOnTimeSec = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.backlightOnTimeSec = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		pump.selectedLanguage = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.selectedLanguage = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		pump.units = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.units = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		pump.shutdownHour = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.shutdownHour = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		pump.lowReservoirRate = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.lowReservoirRate = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 2;
-		pump.cannulaVolume = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.cannulaVolume = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 2;
-		pump.refillAmount = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		pump.refillAmount = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		int selectableLanguage1 = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		int selectableLanguage1 = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		int selectableLanguage2 = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		int selectableLanguage2 = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		int selectableLanguage3 = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		int selectableLanguage3 = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		int selectableLanguage4 = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		int selectableLanguage4 = byteArrayToInt(data, dataIndex, dataSize);
 
 		dataIndex += dataSize;
 		dataSize = 1;
-		int selectableLanguage5 = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+		int selectableLanguage5 = byteArrayToInt(data, dataIndex, dataSize);
 
 		if (Config.logDanaMessageDetail) {
 			log.debug("timeDisplayType: " + pump.timeDisplayType);
@@ -43,7 +43,7 @@ public class DanaRS_Packet_Option_Set_Pump_Time extends DanaRS_Packet {
     public void handleMessage(byte[] data) {
         int dataIndex = DATA_START;
         int dataSize = 1;
-        error = byteArrayToInt(getBytes(data, dataIndex, dataSize));
+        error = byteArrayToInt(data, dataIndex, dataSize);
         if (Config.logDanaMessageDetail) {
             if (error == 0)
                 log.debug("Result OK");
@@ -19,23 +19,23 @@ public class DanaRS_Packet_Review_Bolus_Avg extends DanaRS_Packet {
     public void handleMessage(byte[] data) {
         int dataIndex = DATA_START;
         int dataSize = 2;
-        double bolusAvg03 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        double bolusAvg03 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        double bolusAvg07 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        double bolusAvg07 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        double bolusAvg14 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        double bolusAvg14 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        double bolusAvg21 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        double bolusAvg21 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
 
         dataIndex += dataSize;
         dataSize = 2;
-        double bolusAvg28 = byteArrayToInt(getBytes(data, dataIndex, dataSize)) / 100d;
+        double bolusAvg28 = byteArrayToInt(data, dataIndex, dataSize) / 100d;
         if (Config.logDanaMessageDetail) {
             log.debug("Bolus average 3d: " + bolusAvg03 + " U");
             log.debug("Bolus average 7d: " + bolusAvg07 + " U");
@@ -17,12 +17,15 @@ import com.cozmo.danar.util.BleCommandUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.R;
@@ -34,6 +37,7 @@ import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRSMessageHashTable
 import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRS_Packet;
 import info.nightscout.androidaps.plugins.PumpDanaRS.events.EventDanaRSPacket;
 import info.nightscout.androidaps.plugins.PumpDanaRS.events.EventDanaRSPairingSuccess;
+import info.nightscout.androidaps.queue.ConnectionHealth;
 import info.nightscout.utils.SP;
 
 /**
@@ -43,13 +47,16 @@ import info.nightscout.utils.SP;
 public class BLEComm {
     private static Logger log = LoggerFactory.getLogger(BLEComm.class);
 
+    // retry of rejected write
     private static final long WRITE_DELAY_MILLIS = 50;
+    // continue with next chunk if write completion doesn't come
+    private static final long WRITE_TIMEOUT_MILLIS = 500;
+    private static final int MAX_CHUNK = 20;
+    private static final long REPLY_TIMEOUT_MILLIS = 5000;
 
     public static String UART_READ_UUID = "0000fff1-0000-1000-8000-00805f9b34fb";
     public static String UART_WRITE_UUID = "0000fff2-0000-1000-8000-00805f9b34fb";
 
-    private byte PACKET_START_BYTE = (byte) 0xA5;
-    private byte PACKET_END_BYTE = (byte) 0x5A;
     private static BLEComm instance = null;
 
     public static BLEComm getInstance(DanaRSService service) {
@@ -58,11 +65,25 @@ public class BLEComm {
         return instance;
     }
 
+    // all GATT writes and parsing of received data run serialized here
     private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
     private ScheduledFuture<?> scheduledDisconnection = null;
 
     private DanaRS_Packet processsedMessage = null;
-    private ArrayList<byte[]> mSendQueue = new ArrayList<>();
+
+    // write pipeline, accessed from worker only
+    private final ArrayDeque<byte[]> writeQueue = new ArrayDeque<>();
+    private byte[] writing = null;
+    private int writeOffset = 0;
+    private boolean writePending = false;
+    private ScheduledFuture<?> writeTimeout = null;
+    // chunk buffers by size, value is passed to stack synchronously in writeCharacteristic()
+    private final byte[][] chunkPool = new byte[MAX_CHUNK + 1][];
+
+    private final BleFrameCodec receiver = new BleFrameCodec();
+
+    // friendly name -> {count, sum, max} of round trip in ms
+    private final HashMap<String, long[]> roundTrips = new HashMap<>();
 
     private BluetoothManager mBluetoothManager = null;
     private BluetoothAdapter mBluetoothAdapter = null;
@@ -79,6 +100,18 @@ public class BLEComm {
 
     private DanaRSService service;
 
+    private final PacketEncryption encryption = new PacketEncryption() {
+        @Override
+        public byte[] getEncryptedPacket(int opcode, byte[] params, String deviceName) {
+            return BleCommandUtil.getInstance().getEncryptedPacket(opcode, params, deviceName);
+        }
+
+        @Override
+        public byte[] getDecryptedPacket(byte[] packet) {
+            return BleCommandUtil.getInstance().getDecryptedPacket(packet);
+        }
+    };
+
     BLEComm(DanaRSService service) {
         this.service = service;
         initialize();
@@ -204,6 +237,14 @@ public class BLEComm {
                 mBluetoothGatt.discoverServices();
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
                 close();
+                receiver.reset();
+                worker.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        clearWriteQueue();
+                    }
+                });
+                log.debug("Round trips: " + roundTripStats());
                 isConnected = false;
                 isConnecting = false;
                 MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTED));
@@ -222,36 +263,22 @@ public class BLEComm {
 
         public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
             log.debug("onCharacteristicRead" + (characteristic != null ? ":" + DanaRS_Packet.toHexString(characteristic.getValue()) : ""));
-            addToReadBuffer(characteristic.getValue());
-            readDataParsing();
+            receiver.append(characteristic.getValue());
+            ConnectionHealth.getInstance().addBytes(characteristic.getValue().length);
+            worker.execute(readDataParsing);
         }
 
         public void onCharacteristicChanged(BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic) {
             log.debug("onCharacteristicChanged" + (characteristic != null ? ":" + DanaRS_Packet.toHexString(characteristic.getValue()) : ""));
-            addToReadBuffer(characteristic.getValue());
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    readDataParsing();
-                }
-            }).start();
+            receiver.append(characteristic.getValue());
+            ConnectionHealth.getInstance().addBytes(characteristic.getValue().length);
+            worker.execute(readDataParsing);
         }
 
         public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
             log.debug("onCharacteristicWrite" + (characteristic != null ? ":" + DanaRS_Packet.toHexString(characteristic.getValue()) : ""));
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    synchronized (mSendQueue) {
-                        // after message sent, check if there is the rest of the message waiting and send it
-                        if (mSendQueue.size() > 0) {
-                            byte[] bytes = mSendQueue.get(0);
-                            mSendQueue.remove(0);
-                            writeCharacteristic_NO_RESPONSE(getUARTWriteBTGattChar(), bytes);
-                        }
-                    }
-                }
-            }).start();
+            // after chunk sent, continue with the rest of the message
+            worker.execute(chunkWritten);
         }
     };
 
@@ -277,6 +304,7 @@ public class BLEComm {
         mBluetoothGatt.readCharacteristic(characteristic);
     }
 
+    // packet is queued and written in 20 bytes chunks, next chunk after completion of previous one
     public void writeCharacteristic_NO_RESPONSE(final BluetoothGattCharacteristic characteristic, final byte[] data) {
         if ((mBluetoothAdapter == null) || (mBluetoothGatt == null)) {
             log.debug("BluetoothAdapter not initialized_ERROR");
@@ -285,15 +313,69 @@ public class BLEComm {
             return;
         }
 
-        new Thread(new Runnable() {
+        worker.execute(new Runnable() {
             public void run() {
-                SystemClock.sleep(WRITE_DELAY_MILLIS);
-                characteristic.setValue(data);
-                characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
-                log.debug("writeCharacteristic:" + DanaRS_Packet.toHexString(data));
-                mBluetoothGatt.writeCharacteristic(characteristic);
+                writeQueue.add(data);
+                if (!writePending)
+                    writeNextChunk(characteristic);
             }
-        }).start();
+        });
+    }
+
+    // runs on worker
+    private void writeNextChunk(BluetoothGattCharacteristic characteristic) {
+        if (writing == null || writeOffset >= writing.length) {
+            writing = writeQueue.poll();
+            writeOffset = 0;
+            if (writing == null)
+                return;
+        }
+        if ((mBluetoothAdapter == null) || (mBluetoothGatt == null)) {
+            log.debug("BluetoothAdapter not initialized_ERROR");
+            clearWriteQueue();
+            return;
+        }
+        int length = Math.min(MAX_CHUNK, writing.length - writeOffset);
+        byte[] chunk = chunkPool[length];
+        if (chunk == null)
+            chunk = chunkPool[length] = new byte[length];
+        System.arraycopy(writing, writeOffset, chunk, 0, length);
+
+        characteristic.setValue(chunk);
+        characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        log.debug("writeCharacteristic:" + DanaRS_Packet.toHexString(chunk));
+        writePending = true;
+        if (mBluetoothGatt.writeCharacteristic(characteristic)) {
+            writeOffset += length;
+            ConnectionHealth.getInstance().addBytes(length);
+            writeTimeout = worker.schedule(chunkWritten, WRITE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            // stack is busy, try the same chunk again
+            writeTimeout = worker.schedule(chunkWritten, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final Runnable chunkWritten = new Runnable() {
+        @Override
+        public void run() {
+            if (!writePending)
+                return;
+            if (writeTimeout != null)
+                writeTimeout.cancel(false);
+            writeTimeout = null;
+            writePending = false;
+            writeNextChunk(getUARTWriteBTGattChar());
+        }
+    };
+
+    // runs on worker
+    private void clearWriteQueue() {
+        if (writeTimeout != null)
+            writeTimeout.cancel(false);
+        writeTimeout = null;
+        writeQueue.clear();
+        writing = null;
+        writePending = false;
     }
 
     public BluetoothGattCharacteristic getUARTReadBTGattChar() {
@@ -345,200 +427,131 @@ public class BLEComm {
         }
     }
 
-    private byte[] readBuffer = new byte[1024];
-    private int bufferLength = 0;
-
-    private void addToReadBuffer(byte[] buffer) {
-        //log.debug("addToReadBuffer " + DanaRS_Packet.toHexString(buffer));
-        if (buffer == null || buffer.length == 0) {
-            return;
+    private final Runnable readDataParsing = new Runnable() {
+        @Override
+        public void run() {
+            byte[] packet;
+            while ((packet = receiver.nextPacket()) != null)
+                processPacket(packet);
         }
-        synchronized (readBuffer) {
-            // Append incomming data to input buffer
-            System.arraycopy(buffer, 0, readBuffer, bufferLength, buffer.length);
-            bufferLength += buffer.length;
-        }
-    }
+    };
 
-    private void readDataParsing() {
-        boolean startSignatureFound = false, packetIsValid = false;
-        boolean isProcessing;
-
-        isProcessing = true;
-
-        while (isProcessing) {
-            int length = 0;
-            byte[] inputBuffer = null;
-            synchronized (readBuffer) {
-                // Find packet start [A5 A5]
-                if (bufferLength >= 6) {
-                    for (int idxStartByte = 0; idxStartByte < bufferLength - 2; idxStartByte++) {
-                        if ((readBuffer[idxStartByte] == PACKET_START_BYTE) && (readBuffer[idxStartByte + 1] == PACKET_START_BYTE)) {
-                            if (idxStartByte > 0) {
-                                // if buffer doesn't start with signature remove the leading trash
-                                log.debug("Shifting the input buffer by " + idxStartByte + " bytes");
-                                System.arraycopy(readBuffer, idxStartByte, readBuffer, 0, bufferLength - idxStartByte);
-                                bufferLength -= idxStartByte;
-                            }
-                            startSignatureFound = true;
-                            break;
-                        }
-                    }
-                }
-                // A5 A5 LEN TYPE CODE PARAMS CHECKSUM1 CHECKSUM2 5A 5A
-                //           ^---- LEN -----^
-                // total packet length 2 + 1 + readBuffer[2] + 2 + 2
-                if (startSignatureFound) {
-                    length = readBuffer[2];
-                    // test if there is enough data loaded
-                    if (length + 7 > bufferLength)
-                        return;
-                    // Verify packed end [5A 5A]
-                    if ((readBuffer[length + 5] == PACKET_END_BYTE) && (readBuffer[length + 6] == PACKET_END_BYTE)) {
-                        packetIsValid = true;
-                    }
-                }
-                if (packetIsValid) {
-                    inputBuffer = new byte[length + 7];
-                    // copy packet to input buffer
-                    System.arraycopy(readBuffer, 0, inputBuffer, 0, length + 7);
-                    // Cut off the message from readBuffer
-                    try {
-                        System.arraycopy(readBuffer, length + 7, readBuffer, 0, bufferLength - (length + 7));
-                    } catch (Exception e) {
-                        log.debug("length: " + length + "bufferLength: " + bufferLength);
-                        throw e;
-                    }
-                    bufferLength -= (length + 7);
-                    // now we have encrypted packet in inputBuffer
-                }
+    // runs on worker
+    private void processPacket(byte[] inputBuffer) {
+        try {
+            // decrypt the packet
+            inputBuffer = encryption.getDecryptedPacket(inputBuffer);
+
+            if (inputBuffer == null) {
+                log.debug("Null decryptedInputBuffer");
+                return;
             }
-            if (packetIsValid) {
-                try {
-                    // decrypt the packet
-                    inputBuffer = BleCommandUtil.getInstance().getDecryptedPacket(inputBuffer);
-
-                    if (inputBuffer == null) {
-                        log.debug("Null decryptedInputBuffer");
-                        return;
-                    }
 
-                    switch (inputBuffer[0]) {
-                        // initial handshake packet
-                        case (byte) BleCommandUtil.DANAR_PACKET__TYPE_ENCRYPTION_RESPONSE:
-                            switch (inputBuffer[1]) {
-                                // 1st packet
-                                case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PUMP_CHECK:
-                                    if (inputBuffer.length == 4 && inputBuffer[2] == 'O' && inputBuffer[3] == 'K') {
-                                        log.debug("<<<<< " + "ENCRYPTION__PUMP_CHECK (OK)" + " " + DanaRS_Packet.toHexString(inputBuffer));
-                                        // Grab pairing key from preferences if exists
-                                        String pairingKey = SP.getString(MainApp.sResources.getString(R.string.key_danars_pairingkey) + DanaRSPlugin.mDeviceName, null);
-                                        log.debug("Using stored pairing key: " + pairingKey);
-                                        if (pairingKey != null) {
-                                            byte[] encodedPairingKey = DanaRS_Packet.hexToBytes(pairingKey);
-                                            byte[] bytes = BleCommandUtil.getInstance().getEncryptedPacket(BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__CHECK_PASSKEY, encodedPairingKey, null);
-                                            log.debug(">>>>> " + "ENCRYPTION__CHECK_PASSKEY" + " " + DanaRS_Packet.toHexString(bytes));
-                                            writeCharacteristic_NO_RESPONSE(getUARTWriteBTGattChar(), bytes);
-                                        } else {
-                                            // Stored pairing key does not exists, request pairing
-                                            SendPairingRequest();
-                                        }
-
-                                    } else if (inputBuffer.length == 6 && inputBuffer[2] == 'B' && inputBuffer[3] == 'U' && inputBuffer[4] == 'S' && inputBuffer[5] == 'Y') {
-                                        log.debug("<<<<< " + "ENCRYPTION__PUMP_CHECK (BUSY)" + " " + DanaRS_Packet.toHexString(inputBuffer));
-                                        mSendQueue.clear();
-                                        MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTED, MainApp.sResources.getString(R.string.pumpbusy)));
-                                    } else {
-                                        log.debug("<<<<< " + "ENCRYPTION__PUMP_CHECK (ERROR)" + " " + DanaRS_Packet.toHexString(inputBuffer));
-                                        mSendQueue.clear();
-                                        MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTED, MainApp.sResources.getString(R.string.connectionerror)));
-                                    }
-                                    break;
-                                // 2nd packet, pairing key
-                                case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__CHECK_PASSKEY:
-                                    log.debug("<<<<< " + "ENCRYPTION__CHECK_PASSKEY" + " " + DanaRS_Packet.toHexString(inputBuffer));
-                                    if (inputBuffer[2] == (byte) 0x00) {
-                                        // Paring is not requested, sending time info
-                                        SendTimeInfo();
-                                    } else {
-                                        // Pairing on pump is requested
-                                        SendPairingRequest();
-                                    }
-                                    break;
-                                case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_REQUEST:
-                                    log.debug("<<<<< " + "ENCRYPTION__PASSKEY_REQUEST " + DanaRS_Packet.toHexString(inputBuffer));
-                                    if (inputBuffer[2] != (byte) 0x00) {
-                                        disconnect("passkey request failed");
-                                    }
-                                    break;
-                                // Paring response, OK button on pump pressed
-                                case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_RETURN:
-                                    log.debug("<<<<< " + "ENCRYPTION__PASSKEY_RETURN " + DanaRS_Packet.toHexString(inputBuffer));
-                                    // Paring is successfull, sending time info
-                                    MainApp.bus().post(new EventDanaRSPairingSuccess());
-                                    SendTimeInfo();
-                                    byte[] pairingKey = {inputBuffer[2], inputBuffer[3]};
-                                    // store pairing key to preferences
-                                    SP.putString(MainApp.sResources.getString(R.string.key_danars_pairingkey) + DanaRSPlugin.mDeviceName, DanaRS_Packet.bytesToHex(pairingKey));
-                                    log.debug("Got pairing key: " + DanaRS_Packet.bytesToHex(pairingKey));
-                                    break;
-                                // time and user password information. last packet in handshake
-                                case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION:
-                                    log.debug("<<<<< " + "ENCRYPTION__TIME_INFORMATION " + /*message.getMessageName() + " " + */ DanaRS_Packet.toHexString(inputBuffer));
-                                    int size = inputBuffer.length;
-                                    int pass = ((inputBuffer[size - 1] & 0x000000FF) << 8) + ((inputBuffer[size - 2] & 0x000000FF));
-                                    pass = pass ^ 3463;
-                                    DanaRPump.getInstance().rs_password = Integer.toHexString(pass);
-                                    log.debug("Pump user password: " + Integer.toHexString(pass));
-
-                                    MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.CONNECTED));
-                                    isConnected = true;
-                                    isConnecting = false;
-                                    log.debug("RS connected and status read");
-                                    break;
+            switch (inputBuffer[0]) {
+                // initial handshake packet
+                case (byte) BleCommandUtil.DANAR_PACKET__TYPE_ENCRYPTION_RESPONSE:
+                    switch (inputBuffer[1]) {
+                        // 1st packet
+                        case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PUMP_CHECK:
+                            if (inputBuffer.length == 4 && inputBuffer[2] == 'O' && inputBuffer[3] == 'K') {
+                                log.debug("<<<<< " + "ENCRYPTION__PUMP_CHECK (OK)" + " " + DanaRS_Packet.toHexString(inputBuffer));
+                                // Grab pairing key from preferences if exists
+                                String pairingKey = SP.getString(MainApp.sResources.getString(R.string.key_danars_pairingkey) + DanaRSPlugin.mDeviceName, null);
+                                log.debug("Using stored pairing key: " + pairingKey);
+                                if (pairingKey != null) {
+                                    byte[] encodedPairingKey = DanaRS_Packet.hexToBytes(pairingKey);
+                                    byte[] bytes = encryption.getEncryptedPacket(BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__CHECK_PASSKEY, encodedPairingKey, null);
+                                    log.debug(">>>>> " + "ENCRYPTION__CHECK_PASSKEY" + " " + DanaRS_Packet.toHexString(bytes));
+                                    writeCharacteristic_NO_RESPONSE(getUARTWriteBTGattChar(), bytes);
+                                } else {
+                                    // Stored pairing key does not exists, request pairing
+                                    SendPairingRequest();
+                                }
+
+                            } else if (inputBuffer.length == 6 && inputBuffer[2] == 'B' && inputBuffer[3] == 'U' && inputBuffer[4] == 'S' && inputBuffer[5] == 'Y') {
+                                log.debug("<<<<< " + "ENCRYPTION__PUMP_CHECK (BUSY)" + " " + DanaRS_Packet.toHexString(inputBuffer));
+                                clearWriteQueue();
+                                MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTED, MainApp.sResources.getString(R.string.pumpbusy)));
+                            } else {
+                                log.debug("<<<<< " + "ENCRYPTION__PUMP_CHECK (ERROR)" + " " + DanaRS_Packet.toHexString(inputBuffer));
+                                clearWriteQueue();
+                                MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTED, MainApp.sResources.getString(R.string.connectionerror)));
                             }
                             break;
-                        // common data packet
-                        default:
-                            DanaRS_Packet message;
-                            // Retrieve message code from received buffer and last message sent
-                            int originalCommand = processsedMessage != null ? processsedMessage.getCommand() : 0xFFFF;
-                            int receivedCommand = DanaRS_Packet.getCommand(inputBuffer);
-                            if (originalCommand == receivedCommand) {
-                                // it's response to last message
-                                message = processsedMessage;
+                        // 2nd packet, pairing key
+                        case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__CHECK_PASSKEY:
+                            log.debug("<<<<< " + "ENCRYPTION__CHECK_PASSKEY" + " " + DanaRS_Packet.toHexString(inputBuffer));
+                            if (inputBuffer[2] == (byte) 0x00) {
+                                // Paring is not requested, sending time info
+                                SendTimeInfo();
                             } else {
-                                // it's not response to last message, create new instance
-                                message = DanaRSMessageHashTable.findMessage(receivedCommand);
+                                // Pairing on pump is requested
+                                SendPairingRequest();
                             }
-                            if (message != null) {
-                                log.debug("<<<<< " + message.getFriendlyName() + " " + DanaRS_Packet.toHexString(inputBuffer));
-                                // process received data
-                                message.handleMessage(inputBuffer);
-                                message.setReceived();
-                                synchronized (message) {
-                                    // notify to sendMessage
-                                    message.notify();
-                                }
-                                MainApp.bus().post(new EventDanaRSPacket(message));
-                            } else {
-                                log.error("Unknown message received " + DanaRS_Packet.toHexString(inputBuffer));
+                            break;
+                        case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_REQUEST:
+                            log.debug("<<<<< " + "ENCRYPTION__PASSKEY_REQUEST " + DanaRS_Packet.toHexString(inputBuffer));
+                            if (inputBuffer[2] != (byte) 0x00) {
+                                disconnect("passkey request failed");
                             }
                             break;
+                        // Paring response, OK button on pump pressed
+                        case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_RETURN:
+                            log.debug("<<<<< " + "ENCRYPTION__PASSKEY_RETURN " + DanaRS_Packet.toHexString(inputBuffer));
+                            // Paring is successfull, sending time info
+                            MainApp.bus().post(new EventDanaRSPairingSuccess());
+                            SendTimeInfo();
+                            byte[] pairingKey = {inputBuffer[2], inputBuffer[3]};
+                            // store pairing key to preferences
+                            SP.putString(MainApp.sResources.getString(R.string.key_danars_pairingkey) + DanaRSPlugin.mDeviceName, DanaRS_Packet.bytesToHex(pairingKey));
+                            log.debug("Got pairing key: " + DanaRS_Packet.bytesToHex(pairingKey));
+                            break;
+                        // time and user password information. last packet in handshake
+                        case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION:
+                            log.debug("<<<<< " + "ENCRYPTION__TIME_INFORMATION " + /*message.getMessageName() + " " + */ DanaRS_Packet.toHexString(inputBuffer));
+                            int size = inputBuffer.length;
+                            int pass = ((inputBuffer[size - 1] & 0x000000FF) << 8) + ((inputBuffer[size - 2] & 0x000000FF));
+                            pass = pass ^ 3463;
+                            DanaRPump.getInstance().rs_password = Integer.toHexString(pass);
+                            log.debug("Pump user password: " + Integer.toHexString(pass));
+
+                            MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.CONNECTED));
+                            isConnected = true;
+                            isConnecting = false;
+                            log.debug("RS connected and status read");
+                            break;
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-                startSignatureFound = false;
-                packetIsValid = false;
-                if (bufferLength < 6) {
-                    // stop the loop
-                    isProcessing = false;
-                }
-            } else {
-                // stop the loop
-                isProcessing = false;
+                    break;
+                // common data packet
+                default:
+                    DanaRS_Packet message;
+                    // Retrieve message code from received buffer and last message sent
+                    int originalCommand = processsedMessage != null ? processsedMessage.getCommand() : 0xFFFF;
+                    int receivedCommand = DanaRS_Packet.getCommand(inputBuffer);
+                    if (originalCommand == receivedCommand) {
+                        // it's response to last message
+                        message = processsedMessage;
+                    } else {
+                        // it's not response to last message, create new instance
+                        message = DanaRSMessageHashTable.findMessage(receivedCommand);
+                    }
+                    if (message != null) {
+                        log.debug("<<<<< " + message.getFriendlyName() + " " + DanaRS_Packet.toHexString(inputBuffer));
+                        // process received data
+                        message.handleMessage(inputBuffer);
+                        message.setReceived();
+                        synchronized (message) {
+                            // notify to sendMessage
+                            message.notify();
+                        }
+                        MainApp.bus().post(new EventDanaRSPacket(message));
+                    } else {
+                        log.error("Unknown message received " + DanaRS_Packet.toHexString(inputBuffer));
+                    }
+                    break;
             }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 
@@ -550,74 +563,49 @@ public class BLEComm {
         byte[] command = {(byte) message.getType(), (byte) message.getOpCode()};
         byte[] params = message.getRequestParams();
         log.debug(">>>>> " + message.getFriendlyName() + " " + DanaRS_Packet.toHexString(command) + " " + DanaRS_Packet.toHexString(params));
-        byte[] bytes = BleCommandUtil.getInstance().getEncryptedPacket(message.getOpCode(), params, null);
-        // If there is another message not completely sent, add to queue only
-        if (mSendQueue.size() > 0) {
-            // Split to parts per 20 bytes max
-            for (; ; ) {
-                if (bytes.length > 20) {
-                    byte[] addBytes = new byte[20];
-                    System.arraycopy(bytes, 0, addBytes, 0, addBytes.length);
-                    byte[] reBytes = new byte[bytes.length - addBytes.length];
-                    System.arraycopy(bytes, addBytes.length, reBytes, 0, reBytes.length);
-                    bytes = reBytes;
-                    synchronized (mSendQueue) {
-                        mSendQueue.add(addBytes);
-                    }
-                } else {
-                    synchronized (mSendQueue) {
-                        mSendQueue.add(bytes);
-                    }
-                    break;
-                }
-            }
-
-        } else {
-            if (bytes.length > 20) {
-                // Cut first 20 bytes
-                byte[] sendBytes = new byte[20];
-                System.arraycopy(bytes, 0, sendBytes, 0, sendBytes.length);
-                byte[] reBytes = new byte[bytes.length - sendBytes.length];
-                System.arraycopy(bytes, sendBytes.length, reBytes, 0, reBytes.length);
-                bytes = reBytes;
-                // and send
-                writeCharacteristic_NO_RESPONSE(getUARTWriteBTGattChar(), sendBytes);
-                // The rest split to parts per 20 bytes max
-                for (; ; ) {
-                    if (bytes.length > 20) {
-                        byte[] addBytes = new byte[20];
-                        System.arraycopy(bytes, 0, addBytes, 0, addBytes.length);
-                        reBytes = new byte[bytes.length - addBytes.length];
-                        System.arraycopy(bytes, addBytes.length, reBytes, 0, reBytes.length);
-                        bytes = reBytes;
-                        synchronized (mSendQueue) {
-                            mSendQueue.add(addBytes);
-                        }
-                    } else {
-                        synchronized (mSendQueue) {
-                            mSendQueue.add(bytes);
-                        }
-                        break;
-                    }
-                }
-            } else {
-                writeCharacteristic_NO_RESPONSE(getUARTWriteBTGattChar(), bytes);
-            }
-        }
-        // The rest from queue is send from onCharasteristicWrite (after sending 1st part)
+        byte[] bytes = encryption.getEncryptedPacket(message.getOpCode(), params, null);
+        long sent = System.currentTimeMillis();
+        // split to 20 bytes chunks in write pipeline
+        writeCharacteristic_NO_RESPONSE(getUARTWriteBTGattChar(), bytes);
+        // reply may come before we start waiting
         synchronized (message) {
             try {
-                message.wait(5000);
+                long remaining = REPLY_TIMEOUT_MILLIS;
+                while (!message.isReceived() && remaining > 0) {
+                    message.wait(remaining);
+                    remaining = REPLY_TIMEOUT_MILLIS - (System.currentTimeMillis() - sent);
+                }
             } catch (InterruptedException e) {
                 log.error("sendMessage InterruptedException", e);
                 e.printStackTrace();
             }
         }
 
-        //SystemClock.sleep(200);
         if (!message.isReceived()) {
             log.warn("Reply not received " + message.getFriendlyName());
+        } else {
+            long roundTrip = System.currentTimeMillis() - sent;
+            recordRoundTrip(message.getFriendlyName(), roundTrip);
+            log.debug("Round trip " + message.getFriendlyName() + " " + roundTrip + " ms");
+        }
+    }
+
+    private synchronized void recordRoundTrip(String name, long roundTrip) {
+        long[] stats = roundTrips.get(name);
+        if (stats == null)
+            roundTrips.put(name, stats = new long[3]);
+        stats[0]++;
+        stats[1] += roundTrip;
+        stats[2] = Math.max(stats[2], roundTrip);
+    }
+
+    public synchronized String roundTripStats() {
+        String s = "";
+        for (Map.Entry<String, long[]> entry : roundTrips.entrySet()) {
+            long[] stats = entry.getValue();
+            s += "\n" + entry.getKey() + ": " + stats[0] + "x avg " + stats[1] / stats[0] + " ms max " + stats[2] + " ms";
         }
+        return s;
     }
 
     private void SendPairingRequest() {
@@ -628,20 +616,20 @@ public class BLEComm {
         i.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         MainApp.instance().startActivity(i);
 
-        byte[] bytes = BleCommandUtil.getInstance().getEncryptedPacket(BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_REQUEST, null, null);
+        byte[] bytes = encryption.getEncryptedPacket(BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_REQUEST, null, null);
         log.debug(">>>>> " + "ENCRYPTION__PASSKEY_REQUEST" + " " + DanaRS_Packet.toHexString(bytes));
         writeCharacteristic_NO_RESPONSE(getUARTWriteBTGattChar(), bytes);
     }
 
     protected void SendPumpCheck() {
         // 1st message sent to pump after connect
-        byte[] bytes = BleCommandUtil.getInstance().getEncryptedPacket(BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PUMP_CHECK, null, getConnectDeviceName());
+        byte[] bytes = encryption.getEncryptedPacket(BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PUMP_CHECK, null, getConnectDeviceName());
         log.debug(">>>>> " + "ENCRYPTION__PUMP_CHECK (0x00)" + " " + DanaRS_Packet.toHexString(bytes));
         writeCharacteristic_NO_RESPONSE(getUARTWriteBTGattChar(), bytes);
     }
 
     private void SendTimeInfo() {
-        byte[] bytes = BleCommandUtil.getInstance().getEncryptedPacket(BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION, null, null);
+        byte[] bytes = encryption.getEncryptedPacket(BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION, null, null);
         log.debug(">>>>> " + "ENCRYPTION__TIME_INFORMATION" + " " + DanaRS_Packet.toHexString(bytes));
         writeCharacteristic_NO_RESPONSE(getUARTWriteBTGattChar(), bytes);
     }
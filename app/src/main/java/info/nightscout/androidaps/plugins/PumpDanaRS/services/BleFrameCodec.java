@@ -0,0 +1,101 @@
+package info.nightscout.androidaps.plugins.PumpDanaRS.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cuts encrypted DanaRS packets from BLE notifications.
+ * <p>
+ * Notifications are appended to fixed circular buffer, leading trash is skipped until
+ * start signature. Each complete packet is copied once into array of its exact length
+ * because decryption works on whole array.
+ * <p>
+ * Packet: A5 A5 LEN TYPE CODE PARAMS CHECKSUM1 CHECKSUM2 5A 5A
+ */
+
+public class BleFrameCodec {
+    private static Logger log = LoggerFactory.getLogger(BleFrameCodec.class);
+
+    private static final byte PACKET_START_BYTE = (byte) 0xA5;
+    private static final byte PACKET_END_BYTE = (byte) 0x5A;
+
+    // largest packet is 255 + 7 bytes
+    static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+
+    private final byte[] ring = new byte[CAPACITY];
+    // positions grow forever, index into ring is position & MASK
+    private int head = 0;
+    private int tail = 0;
+
+    /**
+     * Called from binder thread with content of notification
+     *
+     * @return false if data didn't fit and buffer was reset
+     */
+    public synchronized boolean append(byte[] data) {
+        if (data == null || data.length == 0)
+            return true;
+        if (data.length > CAPACITY - (tail - head)) {
+            log.error("Receive buffer overflow, dropping " + (tail - head) + " bytes");
+            head = tail;
+            if (data.length > CAPACITY)
+                return false;
+        }
+        int offset = tail & MASK;
+        int first = Math.min(data.length, CAPACITY - offset);
+        System.arraycopy(data, 0, ring, offset, first);
+        System.arraycopy(data, first, ring, 0, data.length - first);
+        tail += data.length;
+        return true;
+    }
+
+    /**
+     * @return encrypted packet or null if there is no complete packet yet
+     */
+    public synchronized byte[] nextPacket() {
+        int skipped = 0;
+        try {
+            while (true) {
+                // find packet start [A5 A5]
+                while (head < tail && (at(0) != PACKET_START_BYTE || (tail - head >= 2 && at(1) != PACKET_START_BYTE))) {
+                    head++;
+                    skipped++;
+                }
+                // A5 A5 LEN TYPE CODE PARAMS CHECKSUM1 CHECKSUM2 5A 5A
+                //           ^---- LEN -----^
+                if (tail - head < 3)
+                    return null;
+                int length = (at(2) & 0xFF) + 7;
+                // test if there is enough data loaded
+                if (tail - head < length)
+                    return null;
+                // verify packet end [5A 5A], otherwise continue searching after false start
+                if (at(length - 2) != PACKET_END_BYTE || at(length - 1) != PACKET_END_BYTE) {
+                    log.error("Wrong end of packet length=" + length);
+                    head++;
+                    skipped++;
+                    continue;
+                }
+                byte[] packet = new byte[length];
+                int offset = head & MASK;
+                int first = Math.min(length, CAPACITY - offset);
+                System.arraycopy(ring, offset, packet, 0, first);
+                System.arraycopy(ring, 0, packet, first, length - first);
+                head += length;
+                return packet;
+            }
+        } finally {
+            if (skipped > 0)
+                log.debug("Shifting the input buffer by " + skipped + " bytes");
+        }
+    }
+
+    public synchronized void reset() {
+        head = tail;
+    }
+
+    private byte at(int index) {
+        return ring[(head + index) & MASK];
+    }
+}
@@ -28,6 +28,7 @@ import info.nightscout.androidaps.plugins.Overview.Dialogs.BolusProgressDialog;
 import info.nightscout.androidaps.plugins.Overview.notifications.Notification;
 import info.nightscout.androidaps.plugins.Overview.events.EventNewNotification;
 import info.nightscout.androidaps.plugins.Overview.events.EventOverviewBolusProgress;
+import info.nightscout.androidaps.plugins.PumpDanaR.DanaRHistorySync;
 import info.nightscout.androidaps.plugins.PumpDanaR.DanaRPump;
 import info.nightscout.androidaps.plugins.PumpDanaR.comm.RecordTypes;
 import info.nightscout.androidaps.plugins.PumpDanaR.events.EventDanaRNewStatus;
@@ -86,6 +87,12 @@ public class DanaRSService extends Service {
 
     private long lastHistoryFetched = 0;
 
+    // inside pump session events are loaded once at the end and state read by changes is reused
+    private boolean inSession = false;
+    private boolean eventsPending = false;
+    private boolean tempBasalStateRead = false;
+    private boolean extendedBolusStateRead = false;
+
     public DanaRSService() {
         try {
             MainApp.bus().unregister(this);
@@ -124,12 +131,17 @@ public class DanaRSService extends Service {
             MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.gettingpumpstatus)));
 
             bleComm.sendMessage(new DanaRS_Packet_General_Initial_Screen_Information());
-            MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.gettingextendedbolusstatus)));
-            bleComm.sendMessage(new DanaRS_Packet_Bolus_Get_Extended_Bolus_State());
+            // already read in this session by temp basal or extended bolus change
+            if (!extendedBolusStateRead) {
+                MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.gettingextendedbolusstatus)));
+                bleComm.sendMessage(new DanaRS_Packet_Bolus_Get_Extended_Bolus_State());
+            }
             MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.gettingbolusstatus)));
             bleComm.sendMessage(new DanaRS_Packet_Bolus_Get_Step_Bolus_Information()); // last bolus, bolusStep, maxBolus
-            MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.gettingtempbasalstatus)));
-            bleComm.sendMessage(new DanaRS_Packet_Basal_Get_Temporary_Basal_State());
+            if (!tempBasalStateRead) {
+                MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.gettingtempbasalstatus)));
+                bleComm.sendMessage(new DanaRS_Packet_Basal_Get_Temporary_Basal_State());
+            }
 
             long now = System.currentTimeMillis();
             if (danaRPump.lastSettingsRead + 60 * 60 * 1000L < now || !MainApp.getSpecificPlugin(DanaRSPlugin.class).isInitialized()) {
@@ -154,7 +166,7 @@ public class DanaRSService extends Service {
                 danaRPump.lastSettingsRead = now;
             }
 
-            loadEvents();
+            loadEventsOrDefer();
 
             danaRPump.lastConnection = now;
             MainApp.bus().post(new EventDanaRNewStatus());
@@ -172,8 +184,35 @@ public class DanaRSService extends Service {
         log.debug("Pump status loaded");
     }
 
+    public void startSession() {
+        inSession = true;
+        eventsPending = false;
+        tempBasalStateRead = false;
+        extendedBolusStateRead = false;
+    }
+
+    public void finishSession() {
+        inSession = false;
+        tempBasalStateRead = false;
+        extendedBolusStateRead = false;
+        if (eventsPending && isConnected())
+            loadEvents();
+        eventsPending = false;
+    }
+
+    private void loadEventsOrDefer() {
+        if (inSession)
+            eventsPending = true;
+        else
+            loadEvents();
+    }
+
     public PumpEnactResult loadEvents() {
+        eventsPending = false;
         DanaRS_Packet_APS_History_Events msg;
+        // after restart continue from last synced event
+        if (lastHistoryFetched == 0)
+            lastHistoryFetched = DanaRHistorySync.getInstance().getWatermark(DanaRHistorySync.EVENTS);
         if (lastHistoryFetched == 0) {
             msg = new DanaRS_Packet_APS_History_Events(0);
             log.debug("Loading complete event history");
@@ -189,6 +228,8 @@ public class DanaRSService extends Service {
             lastHistoryFetched = DanaRS_Packet_APS_History_Events.lastEventTimeLoaded - 45 * 60 * 1000L; // always load last 45 min
         else
             lastHistoryFetched = 0;
+        if (msg.done)
+            DanaRHistorySync.getInstance().setWatermark(DanaRHistorySync.EVENTS, lastHistoryFetched);
         log.debug("Events loaded");
         return new PumpEnactResult().success(true);
     }
@@ -299,7 +340,8 @@ public class DanaRSService extends Service {
         bleComm.sendMessage(new DanaRS_Packet_Basal_Set_Temporary_Basal(percent, durationInHours));
         SystemClock.sleep(200);
         bleComm.sendMessage(new DanaRS_Packet_Basal_Get_Temporary_Basal_State());
-        loadEvents();
+        tempBasalStateRead = inSession;
+        loadEventsOrDefer();
         MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
         return true;
     }
@@ -313,7 +355,8 @@ public class DanaRSService extends Service {
         MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.settingtempbasal)));
         bleComm.sendMessage(new DanaRS_Packet_APS_Basal_Set_Temporary_Basal(percent));
         bleComm.sendMessage(new DanaRS_Packet_Basal_Get_Temporary_Basal_State());
-        loadEvents();
+        tempBasalStateRead = inSession;
+        loadEventsOrDefer();
         MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
         return true;
     }
@@ -323,7 +366,8 @@ public class DanaRSService extends Service {
         MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.stoppingtempbasal)));
         bleComm.sendMessage(new DanaRS_Packet_Basal_Set_Cancel_Temporary_Basal());
         bleComm.sendMessage(new DanaRS_Packet_Basal_Get_Temporary_Basal_State());
-        loadEvents();
+        tempBasalStateRead = inSession;
+        loadEventsOrDefer();
         MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
         return true;
     }
@@ -334,7 +378,8 @@ public class DanaRSService extends Service {
         bleComm.sendMessage(new DanaRS_Packet_Bolus_Set_Extended_Bolus(insulin, durationInHalfHours));
         SystemClock.sleep(200);
         bleComm.sendMessage(new DanaRS_Packet_Bolus_Get_Extended_Bolus_State());
-        loadEvents();
+        extendedBolusStateRead = inSession;
+        loadEventsOrDefer();
         MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
         return true;
     }
@@ -344,7 +389,8 @@ public class DanaRSService extends Service {
         MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.stoppingextendedbolus)));
         bleComm.sendMessage(new DanaRS_Packet_Bolus_Set_Extended_Bolus_Cancel());
         bleComm.sendMessage(new DanaRS_Packet_Bolus_Get_Extended_Bolus_State());
-        loadEvents();
+        extendedBolusStateRead = inSession;
+        loadEventsOrDefer();
         MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
         return true;
     }
@@ -366,34 +412,37 @@ public class DanaRSService extends Service {
     public PumpEnactResult loadHistory(byte type) {
         PumpEnactResult result = new PumpEnactResult();
         if (!isConnected()) return result;
+        DanaRHistorySync historySync = DanaRHistorySync.getInstance();
+        // request only records newer than last synced one
+        Date from = new Date(historySync.start(type));
         DanaRS_Packet_History_ msg = null;
         switch (type) {
             case RecordTypes.RECORD_TYPE_ALARM:
-                msg = new DanaRS_Packet_History_Alarm();
+                msg = new DanaRS_Packet_History_Alarm(from);
                 break;
             case RecordTypes.RECORD_TYPE_PRIME:
-                msg = new DanaRS_Packet_History_Prime();
+                msg = new DanaRS_Packet_History_Prime(from);
                 break;
             case RecordTypes.RECORD_TYPE_BASALHOUR:
-                msg = new DanaRS_Packet_History_Basal();
+                msg = new DanaRS_Packet_History_Basal(from);
                 break;
             case RecordTypes.RECORD_TYPE_BOLUS:
-                msg = new DanaRS_Packet_History_Bolus();
+                msg = new DanaRS_Packet_History_Bolus(from);
                 break;
             case RecordTypes.RECORD_TYPE_CARBO:
-                msg = new DanaRS_Packet_History_Carbohydrate();
+                msg = new DanaRS_Packet_History_Carbohydrate(from);
                 break;
             case RecordTypes.RECORD_TYPE_DAILY:
-                msg = new DanaRS_Packet_History_Daily();
+                msg = new DanaRS_Packet_History_Daily(from);
                 break;
             case RecordTypes.RECORD_TYPE_GLUCOSE:
-                msg = new DanaRS_Packet_History_Blood_Glucose();
+                msg = new DanaRS_Packet_History_Blood_Glucose(from);
                 break;
             case RecordTypes.RECORD_TYPE_REFILL:
-                msg = new DanaRS_Packet_History_Refill();
+                msg = new DanaRS_Packet_History_Refill(from);
                 break;
             case RecordTypes.RECORD_TYPE_SUSPEND:
-                msg = new DanaRS_Packet_History_Suspend();
+                msg = new DanaRS_Packet_History_Suspend(from);
                 break;
         }
         if (msg != null) {
@@ -403,8 +452,11 @@ public class DanaRSService extends Service {
             while (!msg.done && isConnected()) {
                 SystemClock.sleep(100);
             }
+            historySync.finish(msg.done);
             SystemClock.sleep(200);
             bleComm.sendMessage(new DanaRS_Packet_General_Set_History_Upload_Mode(0));
+        } else {
+            historySync.finish(false);
         }
         result.success = true;
         result.comment = "OK";
@@ -0,0 +1,14 @@
+package info.nightscout.androidaps.plugins.PumpDanaRS.services;
+
+/**
+ * Packet layer of DanaRS protocol.
+ * <p>
+ * Pump uses native BleCommandUtil, tests and emulator plug in plain implementation.
+ * Decrypted packet is TYPE OPCODE PARAMS...
+ */
+
+public interface PacketEncryption {
+    byte[] getEncryptedPacket(int opcode, byte[] params, String deviceName);
+
+    byte[] getDecryptedPacket(byte[] packet);
+}
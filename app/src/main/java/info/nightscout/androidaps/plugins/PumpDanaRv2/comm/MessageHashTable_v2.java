@@ -3,8 +3,6 @@ package info.nightscout.androidaps.plugins.PumpDanaRv2.comm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-
 import info.nightscout.androidaps.plugins.PumpDanaR.comm.MessageBase;
 import info.nightscout.androidaps.plugins.PumpDanaR.comm.*;
 
@@ -15,11 +13,11 @@ import info.nightscout.androidaps.plugins.PumpDanaR.comm.*;
 public class MessageHashTable_v2 {
     private static Logger log = LoggerFactory.getLogger(MessageHashTable_v2.class);
 
-    public static HashMap<Integer, MessageBase> messages = null;
+    public static CommandTable<MessageBase> messages = null;
 
     static {
         if (messages == null) {
-            messages = new HashMap<Integer, MessageBase>();
+            messages = new CommandTable<>();
             put(new MsgBolusStop());                 // 0x0101 CMD_MEALINS_STOP
             put(new MsgBolusStart());                // 0x0102 CMD_MEALINS_START_DATA
             put(new MsgBolusStartWithSpeed());       // 0x0104 CMD_MEALINS_START_DATA_SPEED
@@ -86,9 +84,10 @@ public class MessageHashTable_v2 {
         //log.debug(String.format("%04x ", command) + " " + name);
     }
 
-    public static MessageBase findMessage(Integer command) {
-        if (messages.containsKey(command)) {
-            return messages.get(command);
+    public static MessageBase findMessage(int command) {
+        MessageBase message = messages.get(command);
+        if (message != null) {
+            return message;
         } else {
             return new MessageBase();
         }
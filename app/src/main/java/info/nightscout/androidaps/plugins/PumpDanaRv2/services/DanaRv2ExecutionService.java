@@ -28,6 +28,7 @@ import info.nightscout.androidaps.plugins.Overview.Dialogs.BolusProgressDialog;
 import info.nightscout.androidaps.plugins.Overview.events.EventNewNotification;
 import info.nightscout.androidaps.plugins.Overview.events.EventOverviewBolusProgress;
 import info.nightscout.androidaps.plugins.Overview.notifications.Notification;
+import info.nightscout.androidaps.plugins.PumpDanaR.DanaRHistorySync;
 import info.nightscout.androidaps.plugins.PumpDanaR.DanaRPump;
 import info.nightscout.androidaps.plugins.PumpDanaR.comm.MessageBase;
 import info.nightscout.androidaps.plugins.PumpDanaR.comm.MsgBolusProgress;
@@ -176,10 +177,15 @@ public class DanaRv2ExecutionService extends AbstractDanaRExecutionService {
             MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.gettingbolusstatus)));
             mSerialIOThread.sendMessage(statusMsg);
             mSerialIOThread.sendMessage(statusBasicMsg);
-            MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.gettingtempbasalstatus)));
-            mSerialIOThread.sendMessage(tempStatusMsg);
-            MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.gettingextendedbolusstatus)));
-            mSerialIOThread.sendMessage(exStatusMsg);
+            // already read in this session by temp basal or extended bolus change
+            if (!tempBasalStateRead) {
+                MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.gettingtempbasalstatus)));
+                mSerialIOThread.sendMessage(tempStatusMsg);
+            }
+            if (!extendedBolusStateRead) {
+                MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.gettingextendedbolusstatus)));
+                mSerialIOThread.sendMessage(exStatusMsg);
+            }
 
             long now = System.currentTimeMillis();
             if (mDanaRPump.lastSettingsRead + 60 * 60 * 1000L < now || !MainApp.getSpecificPlugin(DanaRv2Plugin.class).isInitialized()) {
@@ -207,7 +213,7 @@ public class DanaRv2ExecutionService extends AbstractDanaRExecutionService {
                 mDanaRPump.lastSettingsRead = now;
             }
 
-            loadEvents();
+            loadEventsOrDefer();
 
             mDanaRPump.lastConnection = now;
             MainApp.bus().post(new EventDanaRNewStatus());
@@ -235,7 +241,8 @@ public class DanaRv2ExecutionService extends AbstractDanaRExecutionService {
         MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.settingtempbasal)));
         mSerialIOThread.sendMessage(new MsgSetTempBasalStart(percent, durationInHours));
         mSerialIOThread.sendMessage(new MsgStatusTempBasal_v2());
-        loadEvents();
+        tempBasalStateRead = inSession;
+        loadEventsOrDefer();
         MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
         return true;
     }
@@ -250,7 +257,8 @@ public class DanaRv2ExecutionService extends AbstractDanaRExecutionService {
         MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.settingtempbasal)));
         mSerialIOThread.sendMessage(new MsgSetAPSTempBasalStart_v2(percent));
         mSerialIOThread.sendMessage(new MsgStatusTempBasal_v2());
-        loadEvents();
+        tempBasalStateRead = inSession;
+        loadEventsOrDefer();
         MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
         return true;
     }
@@ -260,7 +268,8 @@ public class DanaRv2ExecutionService extends AbstractDanaRExecutionService {
         MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.stoppingtempbasal)));
         mSerialIOThread.sendMessage(new MsgSetTempBasalStop());
         mSerialIOThread.sendMessage(new MsgStatusTempBasal_v2());
-        loadEvents();
+        tempBasalStateRead = inSession;
+        loadEventsOrDefer();
         MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
         return true;
     }
@@ -270,7 +279,8 @@ public class DanaRv2ExecutionService extends AbstractDanaRExecutionService {
         MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.settingextendedbolus)));
         mSerialIOThread.sendMessage(new MsgSetExtendedBolusStart(insulin, (byte) (durationInHalfHours & 0xFF)));
         mSerialIOThread.sendMessage(new MsgStatusBolusExtended_v2());
-        loadEvents();
+        extendedBolusStateRead = inSession;
+        loadEventsOrDefer();
         MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
         return true;
     }
@@ -280,7 +290,8 @@ public class DanaRv2ExecutionService extends AbstractDanaRExecutionService {
         MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.stoppingextendedbolus)));
         mSerialIOThread.sendMessage(new MsgSetExtendedBolusStop());
         mSerialIOThread.sendMessage(new MsgStatusBolusExtended_v2());
-        loadEvents();
+        extendedBolusStateRead = inSession;
+        loadEventsOrDefer();
         MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
         return true;
     }
@@ -395,8 +406,12 @@ public class DanaRv2ExecutionService extends AbstractDanaRExecutionService {
     public PumpEnactResult loadEvents() {
         if (!isConnected())
             return new PumpEnactResult().success(false);
+        eventsPending = false;
         SystemClock.sleep(300);
         MsgHistoryEvents_v2 msg;
+        // after restart continue from last synced event
+        if (lastHistoryFetched == 0)
+            lastHistoryFetched = DanaRHistorySync.getInstance().getWatermark(DanaRHistorySync.EVENTS);
         if (lastHistoryFetched == 0) {
             msg = new MsgHistoryEvents_v2();
             log.debug("Loading complete event history");
@@ -413,6 +428,8 @@ public class DanaRv2ExecutionService extends AbstractDanaRExecutionService {
             lastHistoryFetched = MsgHistoryEvents_v2.lastEventTimeLoaded - 45 * 60 * 1000L; //always load last 45 min;
         else
             lastHistoryFetched = 0;
+        if (msg.done)
+            DanaRHistorySync.getInstance().setWatermark(DanaRHistorySync.EVENTS, lastHistoryFetched);
         return new PumpEnactResult().success(true);
     }
 
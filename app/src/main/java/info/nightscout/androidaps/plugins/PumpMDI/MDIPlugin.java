@@ -14,6 +14,7 @@ import info.nightscout.androidaps.R;
 import info.nightscout.androidaps.data.DetailedBolusInfo;
 import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.data.PumpEnactResult;
+import info.nightscout.androidaps.data.PumpSession;
 import info.nightscout.androidaps.interfaces.PluginBase;
 import info.nightscout.androidaps.interfaces.PumpDescription;
 import info.nightscout.androidaps.interfaces.PumpInterface;
@@ -155,6 +156,11 @@ public class MDIPlugin implements PluginBase, PumpInterface {
     public void getPumpStatus() {
     }
 
+    @Override
+    public PumpEnactResult runSession(PumpSession session) {
+        return session.run(this);
+    }
+
     @Override
     public PumpEnactResult setNewBasalProfile(Profile profile) {
         // Do nothing here. we are using MainApp.getConfigBuilder().getActiveProfile().getProfile();
@@ -16,6 +16,7 @@ import info.nightscout.androidaps.R;
 import info.nightscout.androidaps.data.DetailedBolusInfo;
 import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.data.PumpEnactResult;
+import info.nightscout.androidaps.data.PumpSession;
 import info.nightscout.androidaps.db.ExtendedBolus;
 import info.nightscout.androidaps.db.Source;
 import info.nightscout.androidaps.db.TemporaryBasal;
@@ -215,6 +216,11 @@ public class VirtualPumpPlugin implements PluginBase, PumpInterface {
         lastDataTime = new Date();
     }
 
+    @Override
+    public PumpEnactResult runSession(PumpSession session) {
+        return session.run(this);
+    }
+
     @Override
     public PumpEnactResult setNewBasalProfile(Profile profile) {
         lastDataTime = new Date();
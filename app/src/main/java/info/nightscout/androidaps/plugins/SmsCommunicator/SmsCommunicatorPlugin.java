@@ -26,6 +26,7 @@ import info.nightscout.androidaps.data.GlucoseStatus;
 import info.nightscout.androidaps.data.IobTotal;
 import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.db.BgReading;
+import info.nightscout.androidaps.db.DailyStats;
 import info.nightscout.androidaps.db.DatabaseHelper;
 import info.nightscout.androidaps.db.Source;
 import info.nightscout.androidaps.events.EventPreferenceChange;
@@ -40,6 +41,7 @@ import info.nightscout.androidaps.plugins.PumpDanaRKorean.DanaRKoreanPlugin;
 import info.nightscout.androidaps.plugins.SmsCommunicator.events.EventNewSMS;
 import info.nightscout.androidaps.plugins.SmsCommunicator.events.EventSmsCommunicatorUpdateGui;
 import info.nightscout.androidaps.queue.Callback;
+import info.nightscout.utils.DateUtil;
 import info.nightscout.utils.DecimalFormatter;
 import info.nightscout.utils.NSUpload;
 import info.nightscout.utils.SP;
@@ -388,6 +390,17 @@ public class SmsCommunicatorPlugin implements PluginBase {
                                 break;
                         }
                     break;
+                case "TDD":
+                    List<DailyStats> dailyStats = MainApp.getDbHelper().dailyStatsHelper.getDailyStats(3);
+                    for (DailyStats day : dailyStats) {
+                        reply += DateUtil.dateString(day.date) + " "
+                                + MainApp.sResources.getString(R.string.sms_tdd) + " " + DecimalFormatter.to2Decimal(day.tdd()) + "U "
+                                + MainApp.sResources.getString(R.string.sms_tir) + " " + DecimalFormatter.to0Decimal(day.inRangePct()) + "%\n";
+                    }
+                    sendSMS(new Sms(receivedSms.phoneNumber, reply, new Date()));
+                    receivedSms.processed = true;
+                    Answers.getInstance().logCustom(new CustomEvent("SMS_Tdd"));
+                    break;
                 case "DANAR":
                     DanaRPlugin danaRPlugin = MainApp.getSpecificPlugin(DanaRPlugin.class);
                     if (danaRPlugin != null && danaRPlugin.isEnabled(PluginBase.PUMP)) {
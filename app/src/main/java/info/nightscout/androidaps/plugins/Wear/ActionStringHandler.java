@@ -19,6 +19,7 @@ import info.nightscout.androidaps.R;
 import info.nightscout.androidaps.data.DetailedBolusInfo;
 import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.db.BgReading;
+import info.nightscout.androidaps.db.DailyStats;
 import info.nightscout.androidaps.db.DanaRHistoryRecord;
 import info.nightscout.androidaps.db.DatabaseHelper;
 import info.nightscout.androidaps.db.ProfileSwitch;
@@ -279,8 +280,10 @@ public class ActionStringHandler {
                     (danaKorean == null || danaKorean != activePump) &&
                     (danaRS == null || danaRS != activePump)
                     ) {
-                sendError("Pump does not support TDDs!");
-                return;
+                // pump doesn't keep TDDs, use aggregates collected from treatments and temp basals
+                rTitle = "TDD";
+                rAction = "statusmessage";
+                rMessage = generateDailyStatsMessage();
             } else {
                 // check if DB up to date
                 List<DanaRHistoryRecord> dummies = new LinkedList<DanaRHistoryRecord>();
@@ -328,6 +331,16 @@ public class ActionStringHandler {
         lastConfirmActionString = rAction;
     }
 
+    private static String generateDailyStatsMessage() {
+        List<DailyStats> dailyStats = MainApp.getDbHelper().dailyStatsHelper.getDailyStats(7);
+        DateFormat df = new SimpleDateFormat("dd.MM.");
+        String message = "";
+        for (DailyStats day : dailyStats) {
+            message += df.format(new Date(day.date)) + " " + DecimalFormatter.to2Decimal(day.tdd()) + "U " + DecimalFormatter.to0Decimal(day.inRangePct()) + "% TIR\n";
+        }
+        return message;
+    }
+
     private static String generateTDDMessage(List<DanaRHistoryRecord> historyList, List<DanaRHistoryRecord> dummies) {
 
         ProfileInterface activeProfile = MainApp.getConfigBuilder().getActiveProfileInterface();
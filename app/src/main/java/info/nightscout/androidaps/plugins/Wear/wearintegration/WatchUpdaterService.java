@@ -38,6 +38,7 @@ import info.nightscout.androidaps.db.TemporaryBasal;
 import info.nightscout.androidaps.interfaces.PluginBase;
 import info.nightscout.androidaps.interfaces.TreatmentsInterface;
 import info.nightscout.androidaps.plugins.IobCobCalculator.AutosensData;
+import info.nightscout.androidaps.plugins.IobCobCalculator.BasalTimeline;
 import info.nightscout.androidaps.plugins.IobCobCalculator.IobCobCalculatorPlugin;
 import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.plugins.Loop.LoopPlugin;
@@ -352,99 +353,47 @@ public class WatchUpdaterService extends WearableListenerService implements
         ArrayList<DataMap> temps = new ArrayList<>();
 
 
-        Profile profile = MainApp.getConfigBuilder().getProfile();
-
-        if (profile == null) {
+        List<BasalTimeline.Segment> segments = BasalTimeline.build(startTimeWindow, now);
+        if (segments.size() == 0) {
             return;
         }
 
-        long beginBasalSegmentTime = startTimeWindow;
-        long runningTime = startTimeWindow;
-
-        double beginBasalValue = profile.getBasal(beginBasalSegmentTime);
-        double endBasalValue = beginBasalValue;
-
-        TemporaryBasal tb1 = MainApp.getConfigBuilder().getTempBasalFromHistory(runningTime);
-        TemporaryBasal tb2 = MainApp.getConfigBuilder().getTempBasalFromHistory(runningTime);
-        double tb_before = beginBasalValue;
-        double tb_amount = beginBasalValue;
-        long tb_start = runningTime;
-
-        if (tb1 != null) {
-            tb_before = beginBasalValue;
-            tb_amount = tb1.tempBasalConvertedToAbsolute(runningTime);
-            tb_start = runningTime;
-        }
-
-
-        for (; runningTime < now; runningTime += 5 * 60 * 1000) {
-
-            //basal rate
-            endBasalValue = profile.getBasal(runningTime);
-            if (endBasalValue != beginBasalValue) {
-                //push the segment we recently left
-                basals.add(basalMap(beginBasalSegmentTime, runningTime, beginBasalValue));
-
-                //begin new Basal segment
-                beginBasalSegmentTime = runningTime;
-                beginBasalValue = endBasalValue;
+        // profile basal, segments also split on temp changes
+        BasalTimeline.Segment basalStart = segments.get(0);
+        BasalTimeline.Segment previous = basalStart;
+        for (int i = 1; i < segments.size(); i++) {
+            BasalTimeline.Segment segment = segments.get(i);
+            if (segment.basal != basalStart.basal || segment.start != previous.end) {
+                basals.add(basalMap(basalStart.start, previous.end, basalStart.basal));
+                basalStart = segment;
             }
-
-            //temps
-            tb2 = MainApp.getConfigBuilder().getTempBasalFromHistory(runningTime);
-
-            if (tb1 == null && tb2 == null) {
-                //no temp stays no temp
-
-            } else if (tb1 != null && tb2 == null) {
-                //temp is over -> push it
-                temps.add(tempDatamap(tb_start, tb_before, runningTime, endBasalValue, tb_amount));
-                tb1 = null;
-
-            } else if (tb1 == null && tb2 != null) {
-                //temp begins
-                tb1 = tb2;
-                tb_start = runningTime;
-                tb_before = endBasalValue;
-                tb_amount = tb1.tempBasalConvertedToAbsolute(runningTime);
-
-            } else if (tb1 != null && tb2 != null) {
-                double currentAmount = tb2.tempBasalConvertedToAbsolute(runningTime);
-                if (currentAmount != tb_amount) {
-                    temps.add(tempDatamap(tb_start, tb_before, runningTime, currentAmount, tb_amount));
-                    tb_start = runningTime;
-                    tb_before = tb_amount;
-                    tb_amount = currentAmount;
-                    tb1 = tb2;
-                }
-            }
-        }
-        if (beginBasalSegmentTime != runningTime) {
-            //push the remaining segment
-            basals.add(basalMap(beginBasalSegmentTime, runningTime, beginBasalValue));
-        }
-        if (tb1 != null) {
-            tb2 = MainApp.getConfigBuilder().getTempBasalFromHistory(now); //use "now" to express current situation
-            if (tb2 == null) {
-                //express the cancelled temp by painting it down one minute early
-                temps.add(tempDatamap(tb_start, tb_before, now - 1 * 60 * 1000, endBasalValue, tb_amount));
-            } else {
+            previous = segment;
+        }
+        basals.add(basalMap(basalStart.start, previous.end, basalStart.basal));
+
+        //temps
+        for (int i = 0; i < segments.size(); i++) {
+            BasalTimeline.Segment first = segments.get(i);
+            if (!first.isTempBasalRunning)
+                continue;
+            // join segments of the same temp split by basal changes
+            int last = i;
+            while (last + 1 < segments.size() && segments.get(last + 1).start == segments.get(last).end
+                    && segments.get(last + 1).isTempBasalRunning && segments.get(last + 1).tempBasalAbsolute == first.tempBasalAbsolute)
+                last++;
+            BasalTimeline.Segment before = i > 0 && segments.get(i - 1).end == first.start ? segments.get(i - 1) : null;
+            BasalTimeline.Segment after = last + 1 < segments.size() && segments.get(last + 1).start == segments.get(last).end ? segments.get(last + 1) : null;
+            double tb_before = before != null && before.isTempBasalRunning ? before.tempBasalAbsolute : first.basal;
+            double tb_amount = first.tempBasalAbsolute;
+            long tb_end = segments.get(last).end;
+            if (after == null && tb_end >= now) {
                 //express currently running temp by painting it a bit into the future
-                double currentAmount = tb2.tempBasalConvertedToAbsolute(now);
-                if (currentAmount != tb_amount) {
-                    temps.add(tempDatamap(tb_start, tb_before, now, tb_amount, tb_amount));
-                    temps.add(tempDatamap(now, tb_amount, runningTime + 5 * 60 * 1000, currentAmount, currentAmount));
-                } else {
-                    temps.add(tempDatamap(tb_start, tb_before, runningTime + 5 * 60 * 1000, tb_amount, tb_amount));
-                }
-            }
-        } else {
-            tb2 = MainApp.getConfigBuilder().getTempBasalFromHistory(now); //use "now" to express current situation
-            if (tb2 != null) {
-                //onset at the end
-                double currentAmount = tb2.tempBasalConvertedToAbsolute(runningTime);
-                temps.add(tempDatamap(now - 1 * 60 * 1000, endBasalValue, runningTime + 5 * 60 * 1000, currentAmount, currentAmount));
+                temps.add(tempDatamap(first.start, tb_before, now + 5 * 60 * 1000, tb_amount, tb_amount));
+            } else {
+                double tb_after = after == null ? segments.get(last).basal : after.tempBasalAbsolute;
+                temps.add(tempDatamap(first.start, tb_before, tb_end, tb_after, tb_amount));
             }
+            i = last;
         }
 
         DataMap dm = new DataMap();
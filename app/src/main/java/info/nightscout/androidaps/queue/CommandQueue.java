@@ -9,6 +9,8 @@ import android.text.Spanned;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedList;
 
 import info.nightscout.androidaps.MainApp;
@@ -32,6 +34,7 @@ import info.nightscout.androidaps.queue.commands.CommandExtendedBolus;
 import info.nightscout.androidaps.queue.commands.CommandLoadEvents;
 import info.nightscout.androidaps.queue.commands.CommandLoadHistory;
 import info.nightscout.androidaps.queue.commands.CommandReadStatus;
+import info.nightscout.androidaps.queue.commands.CommandSession;
 import info.nightscout.androidaps.queue.commands.CommandSetProfile;
 import info.nightscout.androidaps.queue.commands.CommandTempBasalAbsolute;
 import info.nightscout.androidaps.queue.commands.CommandTempBasalPercent;
@@ -46,9 +49,11 @@ import info.nightscout.androidaps.queue.commands.CommandTempBasalPercent;
  * <p>
  * app no longer waits for result but passes Callback
  * <p>
- * request is added to queue, if another request of the same type already exists in queue, it's removed prior adding
+ * request is added to queue, pending requests it supersedes (by default the same type) are removed prior adding
+ * and request is dropped if pending one already covers it (READSTATUS behind SETPROFILE)
  * but if request of the same type is currently executed (probably important only for bolus which is running long time), new request is declined
- * new QueueThread is created and started if current if finished
+ * queue is ordered by Command.Priority: bolus and cancel, basal changes, status, history
+ * QueueThread is created on first command and woken up by each new command
  * CommandReadStatus is added automatically before command if queue is empty
  * <p>
  * biggest change is we don't need exec pump commands in Handler because it's finished immediately
@@ -61,6 +66,7 @@ import info.nightscout.androidaps.queue.commands.CommandTempBasalPercent;
  * <p>
  * if connect is successful: isConnected() becomes true, isConnecting() becomes false
  * CommandQueue starts calling execute() of commands. execute() is expected to be blocking (return after finish).
+ * consecutive commands supporting PumpSession (temp basal, status, events) are executed together in one session
  * callback with result is called after finish automatically
  * if connect failed: isConnected() becomes false, isConnecting() becomes false
  * connect() is called again
@@ -75,43 +81,57 @@ public class CommandQueue {
     protected Command performing;
 
     private QueueThread thread = null;
+    // temporary queue lets its thread finish when empty
+    private boolean keepThread = true;
+    // pump stays connected until this time even if queue is empty
+    private volatile long keepConnectedUntil = 0;
+
+    // wait time statistics per priority
+    private final long[] executedCount = new long[Command.Priority.values().length];
+    private final long[] latencySum = new long[Command.Priority.values().length];
+    private final long[] maxLatency = new long[Command.Priority.values().length];
 
     private PumpEnactResult executingNowError() {
         return new PumpEnactResult().success(false).enacted(false).comment(MainApp.sResources.getString(R.string.executingrightnow));
     }
 
     public boolean isRunning(Command.CommandType type) {
-        if (performing != null && performing.commandType == type)
+        if (performing != null && performing.includes(type))
             return true;
         return false;
     }
 
-    private synchronized void removeAll(Command.CommandType type) {
-        for (int i = 0; i < queue.size(); i++) {
-            if (queue.get(i).commandType == type) {
-                queue.remove(i);
-            }
+    // queue is kept ordered by priority, FIFO inside the same priority
+    // returns false if command is absorbed by pending one
+    private synchronized boolean add(Command command) {
+        for (Command pending : queue) {
+            if (command.absorbedBy(pending))
+                return false;
         }
-    }
-
-    private synchronized boolean isLastScheduled(Command.CommandType type) {
-        if (queue.size() > 0 && queue.get(queue.size() - 1).commandType == type) {
-            return true;
+        Iterator<Command> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (command.supersedes(iterator.next()))
+                iterator.remove();
         }
-        return false;
-    }
-
-    private synchronized void inject(Command command) {
-        // inject as a first command
-        queue.addFirst(command);
-    }
-
-    private synchronized void add(Command command) {
-        queue.add(command);
+        int position = queue.size();
+        while (position > 0 && queue.get(position - 1).priority().ordinal() > command.priority().ordinal())
+            position--;
+        queue.add(position, command);
+        return true;
     }
 
     synchronized void pickup() {
         performing = queue.poll();
+        // following commands which can share the connection are executed in one pump session
+        if (performing != null && queue.size() > 0) {
+            CommandSession session = new CommandSession();
+            if (session.add(performing)) {
+                while (queue.size() > 0 && session.add(queue.peek()))
+                    queue.poll();
+                if (session.size() > 1)
+                    performing = session;
+            }
+        }
     }
 
     synchronized void clear() {
@@ -136,16 +156,68 @@ public class CommandQueue {
     }
 
     // After new command added to the queue
-    // start thread again if not already running
+    // start thread if not running yet and wake it up
     protected synchronized void notifyAboutNewCommand() {
         if (thread == null || thread.getState() == Thread.State.TERMINATED) {
             thread = new QueueThread(this);
             thread.start();
         }
+        thread.wakeUp();
+    }
+
+    // connect now (if not connected) and keep connection until given time
+    public void keepConnected(long until) {
+        keepConnectedUntil = until;
+        log.debug("QUEUE: keep connected until " + new Date(until).toLocaleString());
+        notifyAboutNewCommand();
+    }
+
+    public void cancelKeepConnected() {
+        keepConnectedUntil = 0;
+    }
+
+    public boolean isKeepingConnection() {
+        return keepConnectedUntil > System.currentTimeMillis();
+    }
+
+    long keepConnectedUntil() {
+        return keepConnectedUntil;
+    }
+
+    // called by idle thread, returns true if thread should finish
+    synchronized boolean releaseThread(QueueThread idle) {
+        if (keepThread || queue.size() > 0 || isKeepingConnection() || thread != idle)
+            return false;
+        thread = null;
+        return true;
+    }
+
+    // time from queueing to start of execution
+    synchronized long recordLatency(Command command) {
+        long latency = System.currentTimeMillis() - command.queuedAt;
+        int priority = command.priority().ordinal();
+        executedCount[priority]++;
+        latencySum[priority] += latency;
+        maxLatency[priority] = Math.max(maxLatency[priority], latency);
+        return latency;
+    }
+
+    public synchronized String latencyStats() {
+        String s = "";
+        for (Command.Priority priority : Command.Priority.values()) {
+            int i = priority.ordinal();
+            if (executedCount[i] == 0)
+                continue;
+            if (!s.equals(""))
+                s += ", ";
+            s += priority.name().toLowerCase() + " " + executedCount[i] + "x avg " + latencySum[i] / executedCount[i] + " ms max " + maxLatency[i] + " ms";
+        }
+        return s;
     }
 
     public static void independentConnect(String reason, Callback callback) {
         CommandQueue tempCommandQueue = new CommandQueue();
+        tempCommandQueue.keepThread = false;
         tempCommandQueue.readStatus(reason, callback);
     }
 
@@ -157,9 +229,6 @@ public class CommandQueue {
             return false;
         }
 
-        // remove all unfinished boluses
-        removeAll(Command.CommandType.BOLUS);
-
         // apply constraints
         detailedBolusInfo.insulin = MainApp.getConfigBuilder().applyBolusConstraints(detailedBolusInfo.insulin);
         detailedBolusInfo.carbs = MainApp.getConfigBuilder().applyCarbsConstraints((int) detailedBolusInfo.carbs);
@@ -186,9 +255,6 @@ public class CommandQueue {
             return false;
         }
 
-        // remove all unfinished 
-        removeAll(Command.CommandType.TEMPBASAL);
-
         Double rateAfterConstraints = MainApp.getConfigBuilder().applyBasalConstraints(absoluteRate);
 
         // add new command to queue
@@ -207,9 +273,6 @@ public class CommandQueue {
             return false;
         }
 
-        // remove all unfinished 
-        removeAll(Command.CommandType.TEMPBASAL);
-
         Integer percentAfterConstraints = MainApp.getConfigBuilder().applyBasalConstraints(percent);
 
         // add new command to queue
@@ -230,9 +293,6 @@ public class CommandQueue {
 
         Double rateAfterConstraints = MainApp.getConfigBuilder().applyBolusConstraints(insulin);
 
-        // remove all unfinished
-        removeAll(Command.CommandType.EXTENDEDBOLUS);
-
         // add new command to queue
         add(new CommandExtendedBolus(rateAfterConstraints, durationInMinutes, callback));
 
@@ -249,9 +309,6 @@ public class CommandQueue {
             return false;
         }
 
-        // remove all unfinished 
-        removeAll(Command.CommandType.TEMPBASAL);
-
         // add new command to queue
         add(new CommandCancelTempBasal(enforceNew, callback));
 
@@ -268,9 +325,6 @@ public class CommandQueue {
             return false;
         }
 
-        // remove all unfinished 
-        removeAll(Command.CommandType.EXTENDEDBOLUS);
-
         // add new command to queue
         add(new CommandCancelExtendedBolus(callback));
 
@@ -310,9 +364,6 @@ public class CommandQueue {
             return false;
         }
 
-        // remove all unfinished
-        removeAll(Command.CommandType.BASALPROFILE);
-
         // add new command to queue
         add(new CommandSetProfile(profile, callback));
 
@@ -323,19 +374,14 @@ public class CommandQueue {
 
     // returns true if command is queued
     public boolean readStatus(String reason, Callback callback) {
-        if (isLastScheduled(Command.CommandType.READSTATUS)) {
+        // add new command to queue
+        if (!add(new CommandReadStatus(reason, callback))) {
             log.debug("QUEUE: READSTATUS " + reason + " ignored as duplicated");
             if (callback != null)
                 callback.result(executingNowError()).run();
             return false;
         }
 
-        // remove all unfinished 
-        //removeAll(Command.CommandType.READSTATUS);
-
-        // add new command to queue
-        add(new CommandReadStatus(reason, callback));
-
         notifyAboutNewCommand();
 
         return true;
@@ -349,9 +395,6 @@ public class CommandQueue {
             return false;
         }
 
-        // remove all unfinished 
-        removeAll(Command.CommandType.LOADHISTORY);
-
         // add new command to queue
         add(new CommandLoadHistory(type, callback));
 
@@ -368,9 +411,6 @@ public class CommandQueue {
             return false;
         }
 
-        // remove all unfinished
-        removeAll(Command.CommandType.LOADEVENTS);
-
         // add new command to queue
         add(new CommandLoadEvents(callback));
 
@@ -379,7 +419,7 @@ public class CommandQueue {
         return true;
     }
 
-    public Spanned spannedStatus() {
+    public synchronized Spanned spannedStatus() {
         String s = "";
         int line = 0;
         if (performing != null) {
@@ -392,6 +432,9 @@ public class CommandQueue {
             s += queue.get(i).status();
             line++;
         }
+        String stats = latencyStats();
+        if (line != 0 && !stats.equals(""))
+            s += "<br><i>wait: " + stats + "</i>";
         return Html.fromHtml(s);
     }
 
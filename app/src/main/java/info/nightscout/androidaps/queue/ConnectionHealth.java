@@ -0,0 +1,268 @@
+package info.nightscout.androidaps.queue;
+
+import com.squareup.otto.Subscribe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import info.nightscout.androidaps.Constants;
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.R;
+import info.nightscout.androidaps.events.EventPreferenceChange;
+import info.nightscout.androidaps.interfaces.PumpInterface;
+import info.nightscout.utils.SP;
+
+/**
+ * Connection health of pump drivers.
+ * <p>
+ * Each connection attempt is recorded with connect time, failure cause and bytes transferred
+ * into bounded in-memory history per driver. QueueThread uses it for backoff of reconnects
+ * and for Bluetooth watchdog decisions, pump fragments show connection latency percentiles.
+ */
+
+public class ConnectionHealth {
+
+    public enum Cause {
+        NONE, // connected and finished normally
+        FAILED, // connection attempt ended without connection
+        DROPPED, // connection lost while commands were pending
+        TIMEOUT, // no connection in PUMP_MAX_CONNECTION_TIME_IN_SECONDS
+        WATCHDOG // attempt abandoned by Bluetooth watchdog
+    }
+
+    public static class Attempt {
+        public final long start;
+        // -1 if connection was not established
+        public long connectTime = -1;
+        public long end = 0;
+        public Cause cause = Cause.NONE;
+        public long bytes = 0;
+
+        Attempt(long start) {
+            this.start = start;
+        }
+
+        public boolean connected() {
+            return connectTime >= 0;
+        }
+
+        public boolean failed() {
+            return end != 0 && cause != Cause.NONE;
+        }
+    }
+
+    static final int HISTORY = 100;
+    // successful connections needed before watchdog timeout is derived from history
+    static final int MIN_SAMPLES = 5;
+    static final long WATCHDOG_LATENCY_FACTOR = 4;
+    static final long MIN_WATCHDOG_TIMEOUT = 30 * 1000L;
+    static final long BACKOFF_BASE = 1000L;
+    static final long BACKOFF_MAX = 30 * 1000L;
+
+    // used from queue thread, bus handlers and BLE callbacks
+    private static final ConnectionHealth instance = new ConnectionHealth();
+
+    public static ConnectionHealth getInstance() {
+        return instance;
+    }
+
+    // newest last
+    private final HashMap<String, LinkedList<Attempt>> history = new HashMap<>();
+    private Attempt current = null;
+
+    // preferences are cached and reloaded on change
+    private volatile Boolean watchdogEnabled = null;
+    private volatile long lastBark = -1;
+
+    ConnectionHealth() {
+    }
+
+    public void start() {
+        MainApp.bus().register(this);
+    }
+
+    @Subscribe
+    public void onStatusEvent(final EventPreferenceChange ev) {
+        if (ev.isChanged(R.string.key_btwatchdog))
+            watchdogEnabled = null;
+    }
+
+    public static String driver(PumpInterface pump) {
+        return pump.getClass().getSimpleName();
+    }
+
+    public synchronized void attemptStarted(String driver, long now) {
+        if (current != null)
+            attemptFinished(Cause.FAILED, now);
+        current = new Attempt(now);
+        LinkedList<Attempt> attempts = history.get(driver);
+        if (attempts == null) {
+            attempts = new LinkedList<>();
+            history.put(driver, attempts);
+        }
+        if (attempts.size() == HISTORY)
+            attempts.removeFirst();
+        attempts.add(current);
+    }
+
+    public synchronized void connected(long now) {
+        if (current != null && !current.connected())
+            current.connectTime = now - current.start;
+    }
+
+    public synchronized void attemptFinished(Cause cause, long now) {
+        if (current == null)
+            return;
+        current.cause = cause;
+        current.end = now;
+        current = null;
+    }
+
+    public synchronized boolean inAttempt() {
+        return current != null;
+    }
+
+    public synchronized boolean isAttemptConnected() {
+        return current != null && current.connected();
+    }
+
+    // called by drivers for every chunk read or written
+    public synchronized void addBytes(int count) {
+        if (current != null && count > 0)
+            current.bytes += count;
+    }
+
+    synchronized List<Attempt> attempts(String driver) {
+        LinkedList<Attempt> attempts = history.get(driver);
+        return attempts == null ? new ArrayList<Attempt>() : new ArrayList<>(attempts);
+    }
+
+    private List<Long> connectTimes(String driver) {
+        List<Long> times = new ArrayList<>();
+        for (Attempt attempt : attempts(driver))
+            if (attempt.connected())
+                times.add(attempt.connectTime);
+        Collections.sort(times);
+        return times;
+    }
+
+    /**
+     * @return connect time in ms at percentile (0-100) of successful attempts, -1 if none
+     */
+    public long percentile(String driver, int percentile) {
+        return percentile(connectTimes(driver), percentile);
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.size() == 0)
+            return -1;
+        int index = (int) Math.ceil(percentile / 100d * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    public int failures(String driver) {
+        int count = 0;
+        for (Attempt attempt : attempts(driver))
+            if (attempt.failed())
+                count++;
+        return count;
+    }
+
+    public int failures(String driver, Cause cause) {
+        int count = 0;
+        for (Attempt attempt : attempts(driver))
+            if (attempt.failed() && attempt.cause == cause)
+                count++;
+        return count;
+    }
+
+    // failed attempts since last successful connection
+    int consecutiveFailures(String driver) {
+        List<Attempt> attempts = attempts(driver);
+        int count = 0;
+        for (int i = attempts.size() - 1; i >= 0; i--) {
+            Attempt attempt = attempts.get(i);
+            if (attempt.connected())
+                break;
+            if (attempt.failed())
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return delay before next connection attempt, doubles with each consecutive failure
+     */
+    public long retryDelay(String driver) {
+        int failures = consecutiveFailures(driver);
+        if (failures == 0)
+            return 0;
+        return Math.min(BACKOFF_BASE << Math.min(failures - 1, 10), BACKOFF_MAX);
+    }
+
+    /**
+     * @return time without connection after which watchdog may reset Bluetooth.
+     * Multiple of usual connect time when enough data is recorded, otherwise full connection timeout
+     */
+    public long watchdogTimeout(String driver) {
+        long max = Constants.PUMP_MAX_CONNECTION_TIME_IN_SECONDS * 1000L;
+        List<Long> times = connectTimes(driver);
+        if (times.size() < MIN_SAMPLES)
+            return max;
+        long timeout = percentile(times, 95) * WATCHDOG_LATENCY_FACTOR;
+        return Math.max(MIN_WATCHDOG_TIMEOUT, Math.min(timeout, max));
+    }
+
+    public boolean shouldBark(String driver, long elapsed, long now) {
+        // fields may be reset by preference change meanwhile
+        Boolean enabled = watchdogEnabled;
+        if (enabled == null)
+            watchdogEnabled = enabled = SP.getBoolean(R.string.key_btwatchdog, false);
+        if (!enabled)
+            return false;
+        long last = lastBark;
+        if (last == -1)
+            lastBark = last = SP.getLong(R.string.key_btwatchdog_lastbark, 0L);
+        if (now - last <= Constants.MIN_WATCHDOG_INTERVAL_IN_SECONDS * 1000L)
+            return false;
+        return elapsed > watchdogTimeout(driver);
+    }
+
+    public void barked(long now) {
+        lastBark = now;
+        SP.putLong(R.string.key_btwatchdog_lastbark, now);
+    }
+
+    public long bytes(String driver) {
+        long bytes = 0;
+        for (Attempt attempt : attempts(driver))
+            bytes += attempt.bytes;
+        return bytes;
+    }
+
+    /**
+     * @return connect time percentiles and failures for UI and logs, empty if nothing recorded
+     */
+    public String summary(String driver) {
+        List<Attempt> attempts = attempts(driver);
+        if (attempts.size() == 0)
+            return "";
+        List<Long> times = connectTimes(driver);
+        String s = "";
+        if (times.size() > 0)
+            s += String.format(MainApp.gs(R.string.connectionhealth_percentiles), percentile(times, 50) / 1000d, percentile(times, 90) / 1000d, percentile(times, 99) / 1000d) + ", ";
+        s += String.format(MainApp.gs(R.string.connectionhealth_failures), failures(driver), attempts.size());
+        return s;
+    }
+
+    // for logs, without resources
+    public String logString(String driver) {
+        return "connect p50 " + percentile(driver, 50) + " ms p90 " + percentile(driver, 90) + " ms"
+                + " failed " + failures(driver, Cause.FAILED) + " dropped " + failures(driver, Cause.DROPPED)
+                + " timeout " + failures(driver, Cause.TIMEOUT) + " watchdog " + failures(driver, Cause.WATCHDOG)
+                + " bytes " + bytes(driver);
+    }
+}
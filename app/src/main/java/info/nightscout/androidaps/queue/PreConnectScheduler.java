@@ -0,0 +1,167 @@
+package info.nightscout.androidaps.queue;
+
+import com.squareup.otto.Subscribe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import info.nightscout.androidaps.Config;
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.R;
+import info.nightscout.androidaps.db.BgReading;
+import info.nightscout.androidaps.db.DatabaseHelper;
+import info.nightscout.androidaps.events.EventNewBG;
+import info.nightscout.androidaps.interfaces.PluginBase;
+import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
+import info.nightscout.androidaps.plugins.Loop.LoopPlugin;
+import info.nightscout.utils.SP;
+
+/**
+ * Optional connection to the pump ahead of expected BG reading.
+ * <p>
+ * Cadence of CGM is learned from BgReading timestamps. Queue is asked to connect
+ * shortly before next reading is due and keep connection for a grace period,
+ * so loop enactment doesn't wait for connection.
+ */
+
+public class PreConnectScheduler {
+    private static Logger log = LoggerFactory.getLogger(PreConnectScheduler.class);
+
+    private static final int HISTORY = 12;
+    private static final int MIN_INTERVALS = 3;
+    // intervals within 20% of median are regular
+    private static final double JITTER = 0.2;
+    private static final double MIN_REGULAR = 0.75;
+    private static final long MIN_CADENCE = 60 * 1000L;
+    private static final long MAX_CADENCE = 15 * 60 * 1000L;
+
+    // lead before expected reading and grace period after it in seconds by mode
+    private static final long[] LEAD = {0, 15, 45};
+    private static final long[] GRACE = {0, 60, 180};
+
+    private static PreConnectScheduler instance = null;
+
+    // reached from bus handlers and queue thread, instance is cheap, worker is started when needed
+    public static synchronized PreConnectScheduler getInstance() {
+        if (instance == null) instance = new PreConnectScheduler();
+        return instance;
+    }
+
+    // reading timestamps, oldest first
+    private final long[] readings = new long[HISTORY];
+    private int count = 0;
+    private volatile long lastArrival = 0;
+
+    // created on first schedule, no thread while pre-connect is off
+    private ScheduledExecutorService worker = null;
+    private ScheduledFuture<?> scheduled = null;
+
+    PreConnectScheduler() {
+    }
+
+    public void start() {
+        MainApp.bus().register(this);
+    }
+
+    // 0 = off, 1 = save battery, 2 = low latency
+    static int mode() {
+        String mode = SP.getString(R.string.key_preconnect_mode, "off");
+        if (mode.equals("latency"))
+            return 2;
+        if (mode.equals("battery"))
+            return 1;
+        return 0;
+    }
+
+    private static boolean loopWillEnact() {
+        if (!Config.APS)
+            return false;
+        LoopPlugin loop = LoopPlugin.getPlugin();
+        return loop.isEnabled(PluginBase.LOOP) && !loop.isSuspended() && MainApp.getConfigBuilder().isClosedModeEnabled();
+    }
+
+    /**
+     * @return true if reading is new
+     */
+    synchronized boolean addReading(long date) {
+        if (count > 0 && date <= readings[count - 1])
+            return false;
+        if (count == HISTORY) {
+            System.arraycopy(readings, 1, readings, 0, HISTORY - 1);
+            count--;
+        }
+        readings[count++] = date;
+        return true;
+    }
+
+    /**
+     * @return median interval of regular readings, 0 if readings don't have stable cadence
+     */
+    synchronized long cadence() {
+        if (count <= MIN_INTERVALS)
+            return 0;
+        long[] intervals = new long[count - 1];
+        for (int i = 1; i < count; i++)
+            intervals[i - 1] = readings[i] - readings[i - 1];
+        long[] sorted = intervals.clone();
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        if (median < MIN_CADENCE || median > MAX_CADENCE)
+            return 0;
+        int regular = 0;
+        for (long interval : intervals)
+            if (Math.abs(interval - median) <= median * JITTER)
+                regular++;
+        return regular >= intervals.length * MIN_REGULAR ? median : 0;
+    }
+
+    @Subscribe
+    public void onStatusEvent(final EventNewBG ev) {
+        BgReading bg = DatabaseHelper.lastBg();
+        if (bg == null)
+            return;
+        long now = System.currentTimeMillis();
+        if (!addReading(bg.date))
+            return;
+        lastArrival = now;
+        int mode = mode();
+        if (mode == 0 || !loopWillEnact())
+            return;
+        CommandQueue queue = ConfigBuilderPlugin.getCommandQueue();
+        // reading is here, give loop the grace period to enact
+        if (queue.isKeepingConnection())
+            queue.keepConnected(now + GRACE[mode] * 1000);
+        schedule(now, mode);
+    }
+
+    private synchronized void schedule(long now, int mode) {
+        if (scheduled != null)
+            scheduled.cancel(false);
+        scheduled = null;
+        long cadence = cadence();
+        if (cadence == 0)
+            return;
+        final long expected = lastArrival + cadence;
+        final long until = expected + GRACE[mode] * 1000;
+        long delay = expected - LEAD[mode] * 1000 - now;
+        log.debug("Pre-connect: cadence " + cadence / 1000 + " s, next reading expected " + new Date(expected).toLocaleString());
+        if (worker == null)
+            worker = Executors.newSingleThreadScheduledExecutor();
+        scheduled = worker.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (mode() == 0 || !loopWillEnact())
+                    return;
+                log.debug("Pre-connect: connecting until " + new Date(until).toLocaleString());
+                ConfigBuilderPlugin.getCommandQueue().keepConnected(until);
+            }
+        }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+}
@@ -5,6 +5,8 @@ import android.content.Context;
 import android.os.PowerManager;
 import android.os.SystemClock;
 
+import com.squareup.otto.Subscribe;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,134 +20,237 @@ import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.plugins.Overview.events.EventDismissBolusprogressIfRunning;
 import info.nightscout.androidaps.plugins.Overview.events.EventNewNotification;
 import info.nightscout.androidaps.plugins.Overview.notifications.Notification;
+import info.nightscout.androidaps.queue.commands.Command;
 import info.nightscout.androidaps.queue.events.EventQueueChanged;
-import info.nightscout.utils.SP;
 
 /**
  * Created by mike on 09.11.2017.
+ * <p>
+ * Long-lived state machine driving pump connection and command execution.
+ * Thread sleeps without wakelock while queue is empty and wakes up on new command,
+ * pump connected and pump disconnected events instead of polling.
+ * Connection may be kept open without commands when requested by PreConnectScheduler.
+ * Connection attempts are recorded in ConnectionHealth which drives reconnect backoff and BT watchdog.
  */
 
 public class QueueThread extends Thread {
     private static Logger log = LoggerFactory.getLogger(QueueThread.class);
 
+    // refresh of connecting progress and connection timeout check
+    private static final long CONNECTING_TICK = 1000;
+    private static final long DISCONNECT_DELAY = 5000;
+
     CommandQueue queue;
 
     private long connectionStartTime = 0;
     private long lastCommandTime = 0;
     private boolean connectLogged = false;
+    // no connection attempt before this time, backoff after failed attempt
+    private long retryAt = 0;
+
+    private final ConnectionHealth health = ConnectionHealth.getInstance();
+
+    private final Object lock = new Object();
+    private boolean signalled = false;
 
     private PowerManager.WakeLock mWakeLock;
+    // held instead of mWakeLock while connection is only kept for expected commands
+    private PowerManager.WakeLock mIdleWakeLock;
 
     public QueueThread(CommandQueue queue) {
-        super();
+        super("QueueThread");
 
         this.queue = queue;
         PowerManager powerManager = (PowerManager) MainApp.instance().getApplicationContext().getSystemService(Context.POWER_SERVICE);
         mWakeLock = powerManager.newWakeLock(PowerManager.SCREEN_DIM_WAKE_LOCK, "QueueThread");
+        mWakeLock.setReferenceCounted(false);
+        mIdleWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "QueueThreadIdle");
+        mIdleWakeLock.setReferenceCounted(false);
+    }
+
+    // new command added
+    public void wakeUp() {
+        synchronized (lock) {
+            signalled = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Subscribe
+    public void onStatusEvent(final EventPumpStatusChanged ev) {
+        if (ev.sStatus == EventPumpStatusChanged.CONNECTED || ev.sStatus == EventPumpStatusChanged.DISCONNECTED)
+            wakeUp();
+    }
+
+    // wait for signal, 0 = forever
+    private void await(long millis) {
+        synchronized (lock) {
+            try {
+                if (millis == 0) {
+                    while (!signalled)
+                        lock.wait();
+                } else if (!signalled && millis > 0) {
+                    lock.wait(millis);
+                }
+            } catch (InterruptedException e) {
+                log.error("Unhandled exception", e);
+            }
+            signalled = false;
+        }
     }
 
     @Override
     public final void run() {
-        mWakeLock.acquire();
-        MainApp.bus().post(new EventQueueChanged());
-        connectionStartTime = lastCommandTime = System.currentTimeMillis();
-
+        MainApp.bus().register(this);
         try {
             while (true) {
-                PumpInterface pump = ConfigBuilderPlugin.getActivePump();
-                long secondsElapsed = (System.currentTimeMillis() - connectionStartTime) / 1000;
-
-                if (!pump.isConnected() && secondsElapsed > Constants.PUMP_MAX_CONNECTION_TIME_IN_SECONDS) {
-                    MainApp.bus().post(new EventDismissBolusprogressIfRunning(null));
-                    MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.connectiontimedout)));
-                    log.debug("QUEUE: timed out");
-                    pump.stopConnecting();
-
-                    //BLUETOOTH-WATCHDOG
-                    boolean watchdog = SP.getBoolean(R.string.key_btwatchdog, false);
-                    long last_watchdog = SP.getLong(R.string.key_btwatchdog_lastbark, 0l);
-                    watchdog = watchdog && System.currentTimeMillis() - last_watchdog > (Constants.MIN_WATCHDOG_INTERVAL_IN_SECONDS * 1000);
-                    if(watchdog) {
-                        log.debug("BT watchdog - toggeling the phonest bluetooth");
-                        //write time
-                        SP.putLong(R.string.key_btwatchdog_lastbark, System.currentTimeMillis());
-                        //toggle BT
-                        pump.stopConnecting();
-                        pump.disconnect("watchdog");
-                        SystemClock.sleep(1000);
-                        BluetoothAdapter mBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-                        mBluetoothAdapter.disable();
-                        SystemClock.sleep(1000);
-                        mBluetoothAdapter.enable();
-                        SystemClock.sleep(1000);
-                        //start over again once after watchdog barked
-                        //Notification notification = new Notification(Notification.OLD_NSCLIENT, "Watchdog", Notification.URGENT);
-                        //MainApp.bus().post(new EventNewNotification(notification));
-                        connectionStartTime = lastCommandTime = System.currentTimeMillis();
-                        pump.connect("watchdog");
-                    } else {
-                        queue.clear();
-                        log.debug("QUEUE: no connection possible");
-                        MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
-                        pump.disconnect("Queue empty");
-                        MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTED));
+                if (queue.size() == 0 && !queue.isKeepingConnection()) {
+                    if (queue.releaseThread(this))
                         return;
-                    }
-                }
-
-                if (pump.isConnecting()) {
-                    log.debug("QUEUE: connecting " + secondsElapsed);
-                    MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.CONNECTING, (int) secondsElapsed));
-                    SystemClock.sleep(1000);
+                    await(0);
                     continue;
                 }
+                mWakeLock.acquire();
+                try {
+                    session();
+                } catch (RuntimeException e) {
+                    log.error("Unhandled exception", e);
+                } finally {
+                    mWakeLock.release();
+                    mIdleWakeLock.release();
+                }
+            }
+        } finally {
+            MainApp.bus().unregister(this);
+        }
+    }
+
+    // connect, execute all queued commands and disconnect
+    private void session() {
+        MainApp.bus().post(new EventQueueChanged());
+        connectionStartTime = lastCommandTime = System.currentTimeMillis();
+        connectLogged = false;
+        retryAt = 0;
+
+        while (true) {
+            PumpInterface pump = ConfigBuilderPlugin.getActivePump();
+            String driver = ConnectionHealth.driver(pump);
+            long now = System.currentTimeMillis();
+            long elapsed = now - connectionStartTime;
+            long secondsElapsed = elapsed / 1000;
+
+            //BLUETOOTH-WATCHDOG
+            // barks when connection takes much longer than recorded connections of this driver
+            if (!pump.isConnected() && health.shouldBark(driver, elapsed, now)) {
+                log.debug("BT watchdog - toggling the phone's bluetooth after " + secondsElapsed + " s, " + health.logString(driver));
+                health.attemptFinished(ConnectionHealth.Cause.WATCHDOG, now);
+                health.barked(now);
+                //toggle BT
+                pump.stopConnecting();
+                pump.disconnect("watchdog");
+                SystemClock.sleep(1000);
+                BluetoothAdapter mBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+                mBluetoothAdapter.disable();
+                SystemClock.sleep(1000);
+                mBluetoothAdapter.enable();
+                SystemClock.sleep(1000);
+                //start over again once after watchdog barked
+                connectionStartTime = lastCommandTime = System.currentTimeMillis();
+                retryAt = 0;
+                health.attemptStarted(driver, connectionStartTime);
+                pump.connect("watchdog");
+                await(CONNECTING_TICK);
+                continue;
+            }
+
+            if (!pump.isConnected() && secondsElapsed > Constants.PUMP_MAX_CONNECTION_TIME_IN_SECONDS) {
+                MainApp.bus().post(new EventDismissBolusprogressIfRunning(null));
+                MainApp.bus().post(new EventPumpStatusChanged(MainApp.sResources.getString(R.string.connectiontimedout)));
+                log.debug("QUEUE: timed out, " + health.logString(driver));
+                pump.stopConnecting();
+                health.attemptFinished(ConnectionHealth.Cause.TIMEOUT, now);
+                queue.clear();
+                queue.cancelKeepConnected();
+                log.debug("QUEUE: no connection possible");
+                MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
+                pump.disconnect("Queue empty");
+                MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTED));
+                return;
+            }
+
+            if (pump.isConnecting()) {
+                log.debug("QUEUE: connecting " + secondsElapsed);
+                MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.CONNECTING, (int) secondsElapsed));
+                await(CONNECTING_TICK);
+                continue;
+            }
 
 
-                if (!pump.isConnected()) {
-                    log.debug("QUEUE: connect");
-                    MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.CONNECTING, (int) secondsElapsed));
-                    pump.connect("Connection needed");
-                    SystemClock.sleep(1000);
+            if (!pump.isConnected()) {
+                if (health.inAttempt()) {
+                    // previous attempt failed or connection was lost, back off before next one
+                    health.attemptFinished(health.isAttemptConnected() ? ConnectionHealth.Cause.DROPPED : ConnectionHealth.Cause.FAILED, now);
+                    retryAt = now + health.retryDelay(driver);
+                }
+                MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.CONNECTING, (int) secondsElapsed));
+                if (now < retryAt) {
+                    log.debug("QUEUE: reconnect in " + (retryAt - now) + " ms");
+                    await(Math.min(retryAt - now, CONNECTING_TICK));
                     continue;
                 }
+                log.debug("QUEUE: connect");
+                health.attemptStarted(driver, now);
+                pump.connect("Connection needed");
+                await(CONNECTING_TICK);
+                continue;
+            }
 
-                if (queue.performing() == null) {
-                    if (!connectLogged) {
-                        connectLogged = true;
-                        log.debug("QUEUE: connection time " + secondsElapsed + "s");
-                    }
-                    // Pickup 1st command and set performing variable
-                    if (queue.size() > 0) {
-                        queue.pickup();
-                        log.debug("QUEUE: performing " + queue.performing().status());
-                        MainApp.bus().post(new EventQueueChanged());
-                        queue.performing().execute();
-                        queue.resetPerforming();
-                        MainApp.bus().post(new EventQueueChanged());
-                        lastCommandTime = System.currentTimeMillis();
-                        SystemClock.sleep(100);
-                        continue;
-                    }
+            health.connected(now);
+
+            if (queue.performing() == null) {
+                if (!connectLogged) {
+                    connectLogged = true;
+                    log.debug("QUEUE: connection time " + secondsElapsed + "s, " + health.logString(driver));
+                }
+                // Pickup 1st command and set performing variable
+                if (queue.size() > 0) {
+                    queue.pickup();
+                    Command command = queue.performing();
+                    long latency = queue.recordLatency(command);
+                    log.debug("QUEUE: performing " + command.status() + " latency " + latency + " ms, " + queue.latencyStats());
+                    MainApp.bus().post(new EventQueueChanged());
+                    command.execute();
+                    queue.resetPerforming();
+                    MainApp.bus().post(new EventQueueChanged());
+                    lastCommandTime = System.currentTimeMillis();
+                    continue;
                 }
+            }
 
-                if (queue.size() == 0 && queue.performing() == null) {
-                    long secondsFromLastCommand = (System.currentTimeMillis() - lastCommandTime) / 1000;
-                    if (secondsFromLastCommand >= 5) {
-                        log.debug("QUEUE: queue empty. disconnect");
-                        MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
-                        pump.disconnect("Queue empty");
-                        MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTED));
-                        return;
-                    } else {
-                        log.debug("QUEUE: waiting for disconnect");
-                        SystemClock.sleep(1000);
-                    }
+            if (queue.size() == 0 && queue.performing() == null) {
+                long fromLastCommand = System.currentTimeMillis() - lastCommandTime;
+                // connection requested ahead of expected commands
+                long kept = queue.keepConnectedUntil() - System.currentTimeMillis();
+                if (fromLastCommand >= DISCONNECT_DELAY && kept <= 0) {
+                    log.debug("QUEUE: queue empty. disconnect");
+                    health.attemptFinished(ConnectionHealth.Cause.NONE, System.currentTimeMillis());
+                    MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTING));
+                    pump.disconnect("Queue empty");
+                    MainApp.bus().post(new EventPumpStatusChanged(EventPumpStatusChanged.DISCONNECTED));
+                    return;
+                } else if (kept > DISCONNECT_DELAY - fromLastCommand) {
+                    // pre-connect idle may take minutes every CGM cycle, don't keep screen on
+                    log.debug("QUEUE: keeping connection for " + kept + " ms");
+                    mIdleWakeLock.acquire();
+                    mWakeLock.release();
+                    await(kept);
+                    if (queue.size() > 0)
+                        mWakeLock.acquire();
+                } else {
+                    log.debug("QUEUE: waiting for disconnect");
+                    await(DISCONNECT_DELAY - fromLastCommand);
                 }
             }
-        } finally {
-            mWakeLock.release();
         }
     }
-
-
 }
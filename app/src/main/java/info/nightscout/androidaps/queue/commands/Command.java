@@ -3,6 +3,7 @@ package info.nightscout.androidaps.queue.commands;
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.R;
 import info.nightscout.androidaps.data.PumpEnactResult;
+import info.nightscout.androidaps.data.PumpSession;
 import info.nightscout.androidaps.queue.Callback;
 
 /**
@@ -19,13 +20,57 @@ public abstract class Command {
         LOADEVENTS // so far only Dana specific
     }
 
+    // execution order, lower ordinal runs first
+    public enum Priority {
+        BOLUS_OR_CANCEL,
+        BASAL,
+        STATUS,
+        HISTORY
+    }
+
     public CommandType commandType;
     protected Callback callback;
+    // for measuring latency of queue
+    public long queuedAt = System.currentTimeMillis();
 
     public abstract void execute();
 
     public abstract String status();
 
+    public abstract Priority priority();
+
+    // pending command is removed when this one is added
+    public boolean supersedes(Command pending) {
+        return pending.commandType == commandType;
+    }
+
+    // this command is not added if pending one is already queued
+    public boolean absorbedBy(Command pending) {
+        return false;
+    }
+
+    // pump status is read as part of execution
+    public boolean refreshesStatus() {
+        return false;
+    }
+
+    // command of this type is being executed
+    public boolean includes(CommandType type) {
+        return commandType == type;
+    }
+
+    // command can be executed in one pump session with neighbouring commands
+    // returns added step or null if not supported
+    public PumpSession.Step addToSession(PumpSession session) {
+        return null;
+    }
+
+    // result of execution, standalone or in session
+    public void finish(PumpEnactResult result) {
+        if (callback != null)
+            callback.result(result).run();
+    }
+
     public void cancel() {
         PumpEnactResult result = new PumpEnactResult();
         result.success = false;
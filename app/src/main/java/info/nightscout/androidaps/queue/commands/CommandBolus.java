@@ -36,4 +36,9 @@ public class CommandBolus extends Command {
     public String status() {
         return "BOLUS " + DecimalFormatter.to1Decimal(detailedBolusInfo.insulin) + "U";
     }
+
+    @Override
+    public Priority priority() {
+        return Priority.BOLUS_OR_CANCEL;
+    }
 }
@@ -34,4 +34,9 @@ public class CommandCancelExtendedBolus extends Command {
     public String status() {
         return "CANCEL EXTENDEDBOLUS";
     }
+
+    @Override
+    public Priority priority() {
+        return Priority.BOLUS_OR_CANCEL;
+    }
 }
@@ -2,6 +2,7 @@ package info.nightscout.androidaps.queue.commands;
 
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.data.PumpEnactResult;
+import info.nightscout.androidaps.data.PumpSession;
 import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.queue.Callback;
 
@@ -20,13 +21,21 @@ public class CommandCancelTempBasal extends Command {
 
     @Override
     public void execute() {
-        PumpEnactResult r = ConfigBuilderPlugin.getActivePump().cancelTempBasal(enforceNew);
-        if (callback != null)
-            callback.result(r).run();
+        finish(ConfigBuilderPlugin.getActivePump().cancelTempBasal(enforceNew));
+    }
+
+    @Override
+    public PumpSession.Step addToSession(PumpSession session) {
+        return session.cancelTempBasal(enforceNew);
     }
 
     @Override
     public String status() {
         return "CANCEL TEMPBASAL";
     }
+
+    @Override
+    public Priority priority() {
+        return Priority.BOLUS_OR_CANCEL;
+    }
 }
@@ -39,4 +39,9 @@ public class CommandExtendedBolus extends Command {
     public String status() {
         return "EXTENDEDBOLUS " + insulin + " U " + durationInMinutes + " min";
     }
+
+    @Override
+    public Priority priority() {
+        return Priority.BASAL;
+    }
 }
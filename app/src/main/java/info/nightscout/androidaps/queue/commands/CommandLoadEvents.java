@@ -1,6 +1,7 @@
 package info.nightscout.androidaps.queue.commands;
 
 import info.nightscout.androidaps.data.PumpEnactResult;
+import info.nightscout.androidaps.data.PumpSession;
 import info.nightscout.androidaps.interfaces.DanaRInterface;
 import info.nightscout.androidaps.interfaces.PumpInterface;
 import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
@@ -21,14 +22,30 @@ public class CommandLoadEvents extends Command {
         PumpInterface pump = ConfigBuilderPlugin.getActivePump();
         if (pump instanceof DanaRInterface) {
             DanaRInterface danaPump = (DanaRInterface) pump;
-            PumpEnactResult r = danaPump.loadEvents();
-            if (callback != null)
-                callback.result(r).run();
+            finish(danaPump.loadEvents());
         }
     }
 
+    @Override
+    public PumpSession.Step addToSession(PumpSession session) {
+        return session.loadEvents();
+    }
+
+    @Override
+    public void finish(PumpEnactResult result) {
+        // not supported by pump
+        if (result == null)
+            return;
+        super.finish(result);
+    }
+
     @Override
     public String status() {
         return "LOADEVENTS";
     }
+
+    @Override
+    public Priority priority() {
+        return Priority.HISTORY;
+    }
 }
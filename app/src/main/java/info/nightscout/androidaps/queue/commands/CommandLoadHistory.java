@@ -35,4 +35,9 @@ public class CommandLoadHistory extends Command {
     public String status() {
         return "LOADHISTORY " + type;
     }
+
+    @Override
+    public Priority priority() {
+        return Priority.HISTORY;
+    }
 }
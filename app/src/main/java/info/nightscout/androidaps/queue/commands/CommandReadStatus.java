@@ -1,5 +1,7 @@
 package info.nightscout.androidaps.queue.commands;
 
+import info.nightscout.androidaps.data.PumpEnactResult;
+import info.nightscout.androidaps.data.PumpSession;
 import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.queue.Callback;
 import info.nightscout.utils.LocalAlertUtils;
@@ -20,13 +22,43 @@ public class CommandReadStatus extends Command {
     @Override
     public void execute() {
         ConfigBuilderPlugin.getActivePump().getPumpStatus();
+        finish(null);
+    }
+
+    @Override
+    public PumpSession.Step addToSession(PumpSession session) {
+        return session.readStatus();
+    }
+
+    @Override
+    public void finish(PumpEnactResult result) {
         LocalAlertUtils.notifyPumpStatusRead();
-        if (callback != null)
-            callback.result(null).run();
+        // status read has no result
+        super.finish(null);
     }
 
     @Override
     public String status() {
         return "READSTATUS " + reason;
     }
+
+    @Override
+    public Priority priority() {
+        return Priority.STATUS;
+    }
+
+    @Override
+    public boolean supersedes(Command pending) {
+        return false;
+    }
+
+    @Override
+    public boolean absorbedBy(Command pending) {
+        return pending.refreshesStatus();
+    }
+
+    @Override
+    public boolean refreshesStatus() {
+        return true;
+    }
 }
@@ -0,0 +1,83 @@
+package info.nightscout.androidaps.queue.commands;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.Config;
+import info.nightscout.androidaps.data.PumpEnactResult;
+import info.nightscout.androidaps.data.PumpSession;
+import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
+
+/**
+ * Consecutive queued commands executed in one pump session
+ */
+
+public class CommandSession extends Command {
+    private static Logger log = LoggerFactory.getLogger(CommandSession.class);
+
+    private final PumpSession session = new PumpSession();
+    private final List<Command> commands = new ArrayList<>();
+    private final List<PumpSession.Step> steps = new ArrayList<>();
+
+    /**
+     * @return false if command can't be executed in session
+     */
+    public boolean add(Command command) {
+        PumpSession.Step step = command.addToSession(session);
+        if (step == null)
+            return false;
+        if (commands.size() == 0) {
+            commandType = command.commandType;
+            queuedAt = command.queuedAt;
+        }
+        commands.add(command);
+        steps.add(step);
+        return true;
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    @Override
+    public void execute() {
+        PumpEnactResult r = ConfigBuilderPlugin.getActivePump().runSession(session);
+        if (Config.logCongigBuilderActions)
+            log.debug("runSession commands: " + commands.size() + " success: " + r.success + " enacted: " + r.enacted);
+        for (int i = 0; i < commands.size(); i++)
+            commands.get(i).finish(steps.get(i).result);
+    }
+
+    @Override
+    public String status() {
+        String s = "";
+        for (Command command : commands) {
+            if (!s.equals(""))
+                s += ", ";
+            s += command.status();
+        }
+        return s;
+    }
+
+    @Override
+    public Priority priority() {
+        return commands.get(0).priority();
+    }
+
+    @Override
+    public boolean includes(CommandType type) {
+        for (Command command : commands)
+            if (command.includes(type))
+                return true;
+        return false;
+    }
+
+    @Override
+    public void cancel() {
+        for (Command command : commands)
+            command.cancel();
+    }
+}
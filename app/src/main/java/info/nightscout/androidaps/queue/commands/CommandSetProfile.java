@@ -5,6 +5,7 @@ import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.data.PumpEnactResult;
 import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.queue.Callback;
+import info.nightscout.utils.LocalAlertUtils;
 
 /**
  * Created by mike on 09.11.2017.
@@ -22,6 +23,8 @@ public class CommandSetProfile extends Command {
     @Override
     public void execute() {
         PumpEnactResult r = ConfigBuilderPlugin.getActivePump().setNewBasalProfile(profile);
+        if (r.success)
+            LocalAlertUtils.notifyPumpStatusRead();
         if (callback != null)
             callback.result(r).run();
     }
@@ -30,4 +33,15 @@ public class CommandSetProfile extends Command {
     public String status() {
         return "SETPROFILE";
     }
+
+    @Override
+    public Priority priority() {
+        return Priority.BASAL;
+    }
+
+    // updateBasalsInPump() reads status after profile upload
+    @Override
+    public boolean refreshesStatus() {
+        return true;
+    }
 }
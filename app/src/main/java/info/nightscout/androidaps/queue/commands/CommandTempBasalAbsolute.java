@@ -6,6 +6,7 @@ import org.slf4j.LoggerFactory;
 import info.nightscout.androidaps.Config;
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.data.PumpEnactResult;
+import info.nightscout.androidaps.data.PumpSession;
 import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.queue.Callback;
 
@@ -30,15 +31,28 @@ public class CommandTempBasalAbsolute extends Command {
 
     @Override
     public void execute() {
-        PumpEnactResult r = ConfigBuilderPlugin.getActivePump().setTempBasalAbsolute(absoluteRate, durationInMinutes, enforceNew);
+        finish(ConfigBuilderPlugin.getActivePump().setTempBasalAbsolute(absoluteRate, durationInMinutes, enforceNew));
+    }
+
+    @Override
+    public PumpSession.Step addToSession(PumpSession session) {
+        return session.tempBasalAbsolute(absoluteRate, durationInMinutes, enforceNew);
+    }
+
+    @Override
+    public void finish(PumpEnactResult r) {
         if (Config.logCongigBuilderActions)
             log.debug("setTempBasalAbsolute rate: " + absoluteRate + " durationInMinutes: " + durationInMinutes + " success: " + r.success + " enacted: " + r.enacted);
-        if (callback != null)
-            callback.result(r).run();
+        super.finish(r);
     }
 
     @Override
     public String status() {
         return "TEMPBASAL " + absoluteRate + " U/h " + durationInMinutes + " min";
     }
+
+    @Override
+    public Priority priority() {
+        return Priority.BASAL;
+    }
 }
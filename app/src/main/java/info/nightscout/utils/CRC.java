@@ -32,6 +32,16 @@ public final class CRC {
         return unsignedShort(value);
     }
 
+    // content is circular buffer of size mask + 1 (power of 2), offset may point anywhere
+    public static short getCrc16(byte[] content, int offset, int length, int mask) {
+        int value = 0;
+
+        for (int pos = offset; pos < offset + length; pos++) {
+            value = unsignedShort((value << 8) ^ CRC16_TABLE[((value >>> 8) ^ content[pos & mask]) & 0xff]);
+        }
+        return unsignedShort(value);
+    }
+
     public static short unsignedShort(int value) {
         return (short) ((short) value & 0xFFFF);
     }
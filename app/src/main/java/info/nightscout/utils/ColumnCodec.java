@@ -0,0 +1,200 @@
+package info.nightscout.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encoders for one column of values used by history export.
+ * <p>
+ * Integers and timestamps are stored as zigzag varint deltas, doubles as fixed point deltas
+ * when the column allows it, everything is deflated per column afterwards.
+ */
+
+public class ColumnCodec {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static final byte ENCODING_DELTA = 1;   // zigzag varint of differences to previous value
+    public static final byte ENCODING_FIXED = 2;   // value * FIXED_SCALE encoded as ENCODING_DELTA
+    public static final byte ENCODING_DOUBLE = 3;  // raw IEEE 754
+    public static final byte ENCODING_BOOLEAN = 4; // one bit per value
+    public static final byte ENCODING_STRING = 5;  // varint (length + 1), 0 means null, then utf-8 bytes
+
+    public static final double FIXED_SCALE = 1000d;
+
+    // ------------------ longs ------------------
+
+    public static void encodeLongs(long[] values, int count, ByteArrayOutputStream out) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            writeVarLong(out, zigzag(values[i] - previous));
+            previous = values[i];
+        }
+    }
+
+    public static long[] decodeLongs(ByteBuffer in, int count) {
+        long[] values = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += unzigzag(readVarLong(in));
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    // ------------------ doubles ------------------
+
+    /**
+     * @return encoding used. Fixed point if all values are representable with FIXED_SCALE
+     */
+    public static byte encodeDoubles(double[] values, int count, ByteArrayOutputStream out) {
+        long[] fixed = new long[count];
+        for (int i = 0; i < count; i++) {
+            double scaled = values[i] * FIXED_SCALE;
+            if (Double.isNaN(scaled) || Double.isInfinite(scaled) || Math.abs(scaled) > Long.MAX_VALUE / 2
+                    || Math.round(scaled) / FIXED_SCALE != values[i]) {
+                ByteBuffer buffer = ByteBuffer.allocate(count * 8);
+                for (int j = 0; j < count; j++)
+                    buffer.putDouble(values[j]);
+                out.write(buffer.array(), 0, buffer.position());
+                return ENCODING_DOUBLE;
+            }
+            fixed[i] = Math.round(scaled);
+        }
+        encodeLongs(fixed, count, out);
+        return ENCODING_FIXED;
+    }
+
+    public static double[] decodeDoubles(ByteBuffer in, int count, byte encoding) {
+        double[] values = new double[count];
+        if (encoding == ENCODING_DOUBLE) {
+            for (int i = 0; i < count; i++)
+                values[i] = in.getDouble();
+        } else {
+            long[] fixed = decodeLongs(in, count);
+            for (int i = 0; i < count; i++)
+                values[i] = fixed[i] / FIXED_SCALE;
+        }
+        return values;
+    }
+
+    // ------------------ booleans ------------------
+
+    public static void encodeBooleans(boolean[] values, int count, ByteArrayOutputStream out) {
+        int current = 0;
+        for (int i = 0; i < count; i++) {
+            if (values[i])
+                current |= 1 << (i % 8);
+            if (i % 8 == 7) {
+                out.write(current);
+                current = 0;
+            }
+        }
+        if (count % 8 != 0)
+            out.write(current);
+    }
+
+    public static boolean[] decodeBooleans(ByteBuffer in, int count) {
+        boolean[] values = new boolean[count];
+        int current = 0;
+        for (int i = 0; i < count; i++) {
+            if (i % 8 == 0)
+                current = in.get() & 0xFF;
+            values[i] = (current & (1 << (i % 8))) != 0;
+        }
+        return values;
+    }
+
+    // ------------------ strings ------------------
+
+    public static void encodeStrings(String[] values, int count, ByteArrayOutputStream out) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == null) {
+                writeVarLong(out, 0);
+            } else {
+                byte[] bytes = values[i].getBytes(UTF8);
+                writeVarLong(out, bytes.length + 1);
+                out.write(bytes, 0, bytes.length);
+            }
+        }
+    }
+
+    public static String[] decodeStrings(ByteBuffer in, int count) {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            int length = (int) readVarLong(in);
+            if (length == 0)
+                continue;
+            byte[] bytes = new byte[length - 1];
+            in.get(bytes);
+            values[i] = new String(bytes, UTF8);
+        }
+        return values;
+    }
+
+    // ------------------ compression ------------------
+
+    public static byte[] compress(byte[] raw, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(raw, 0, length);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 2));
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    public static ByteBuffer decompress(byte[] compressed, int rawLength) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        byte[] raw = new byte[rawLength];
+        int offset = 0;
+        while (offset < rawLength && !inflater.finished()) {
+            int n = inflater.inflate(raw, offset, rawLength - offset);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                break;
+            offset += n;
+        }
+        inflater.end();
+        if (offset != rawLength)
+            throw new DataFormatException("Expected " + rawLength + " bytes, got " + offset);
+        return ByteBuffer.wrap(raw);
+    }
+
+    // ------------------ varints ------------------
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package info.nightscout.utils;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
+import android.os.Environment;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.R;
+import info.nightscout.androidaps.db.HistoryArchive;
+import info.nightscout.androidaps.events.EventAppExit;
+
+/**
+ * Export and import of treatments, BG and careportal history to external storage
+ * for moving to new phone or offline analysis
+ */
+
+public class ImportExportHistory {
+    private static Logger log = LoggerFactory.getLogger(ImportExportHistory.class);
+    static File path = new File(Environment.getExternalStorageDirectory().toString());
+    static final File file = new File(path, MainApp.sResources.getString(R.string.app_name) + "History");
+
+    public static void exportHistory(final Activity c) {
+        new AlertDialog.Builder(c)
+                .setMessage(MainApp.sResources.getString(R.string.export_history_to) + " " + file + " ?")
+                .setPositiveButton(android.R.string.yes, new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    long start = System.currentTimeMillis();
+                                    int records = new HistoryArchive(MainApp.getDbHelper()).exportHistory(file);
+                                    log.debug("History exported: " + records + " records in " + (System.currentTimeMillis() - start) + " ms, " + file.length() + " bytes");
+                                    ToastUtils.showToastInUiThread(c, String.format(MainApp.sResources.getString(R.string.history_exported), records));
+                                } catch (FileNotFoundException e) {
+                                    ToastUtils.showToastInUiThread(c, MainApp.sResources.getString(R.string.filenotfound) + " " + file);
+                                    log.error("Unhandled exception", e);
+                                } catch (IOException | SQLException e) {
+                                    ToastUtils.showToastInUiThread(c, MainApp.sResources.getString(R.string.history_export_failed));
+                                    log.error("Unhandled exception", e);
+                                }
+                            }
+                        }, "HistoryExport").start();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    public static void importHistory(final Activity c) {
+        new AlertDialog.Builder(c)
+                .setMessage(MainApp.sResources.getString(R.string.import_history_from) + " " + file + " ?")
+                .setPositiveButton(android.R.string.yes, new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    long start = System.currentTimeMillis();
+                                    final int records = new HistoryArchive(MainApp.getDbHelper()).importHistory(file);
+                                    log.debug("History imported: " + records + " records in " + (System.currentTimeMillis() - start) + " ms");
+                                    MainApp.getDbHelper().dailyStatsHelper.resetDailyStats();
+                                    c.runOnUiThread(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            OKDialog.show(c, String.format(MainApp.sResources.getString(R.string.history_imported), records), MainApp.sResources.getString(R.string.restartingapp), new Runnable() {
+                                                @Override
+                                                public void run() {
+                                                    log.debug("Exiting");
+                                                    MainApp.instance().stopKeepAliveService();
+                                                    MainApp.bus().post(new EventAppExit());
+                                                    MainApp.closeDbHelper();
+                                                    c.finish();
+                                                    System.runFinalization();
+                                                    System.exit(0);
+                                                }
+                                            });
+                                        }
+                                    });
+                                } catch (FileNotFoundException e) {
+                                    ToastUtils.showToastInUiThread(c, MainApp.sResources.getString(R.string.filenotfound) + " " + file);
+                                    log.error("Unhandled exception", e);
+                                } catch (IOException | SQLException e) {
+                                    ToastUtils.showToastInUiThread(c, MainApp.sResources.getString(R.string.history_import_failed));
+                                    log.error("Unhandled exception", e);
+                                }
+                            }
+                        }, "HistoryImport").start();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+}
@@ -29,11 +29,15 @@ import info.nightscout.androidaps.db.CareportalEvent;
 import info.nightscout.androidaps.db.ExtendedBolus;
 import info.nightscout.androidaps.db.ProfileSwitch;
 import info.nightscout.androidaps.db.TemporaryBasal;
+import info.nightscout.androidaps.interfaces.PluginBase;
 import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.plugins.Loop.APSResult;
 import info.nightscout.androidaps.plugins.Loop.DeviceStatus;
 import info.nightscout.androidaps.plugins.Loop.LoopPlugin;
+import info.nightscout.androidaps.plugins.NSClientInternal.DeviceStatusPublisher;
+import info.nightscout.androidaps.plugins.NSClientInternal.NSClientInternalPlugin;
 import info.nightscout.androidaps.plugins.NSClientInternal.data.DbLogger;
+import info.nightscout.androidaps.plugins.NSClientInternal.receivers.DBAccessReceiver;
 import info.nightscout.androidaps.plugins.OpenAPSAMA.DetermineBasalResultAMA;
 import info.nightscout.androidaps.plugins.OpenAPSMA.DetermineBasalResultMA;
 
@@ -46,7 +50,6 @@ public class NSUpload {
 
     public static void uploadTempBasalStartAbsolute(TemporaryBasal temporaryBasal, Double originalExtendedAmount) {
         try {
-            Context context = MainApp.instance().getApplicationContext();
             JSONObject data = new JSONObject();
             data.put("eventType", CareportalEvent.TEMPBASAL);
             data.put("duration", temporaryBasal.durationInMinutes);
@@ -57,15 +60,7 @@ public class NSUpload {
             data.put("enteredBy", "openaps://" + MainApp.instance().getString(R.string.app_name));
             if (originalExtendedAmount != null)
                 data.put("originalExtendedAmount", originalExtendedAmount); // for back synchronization
-            Bundle bundle = new Bundle();
-            bundle.putString("action", "dbAdd");
-            bundle.putString("collection", "treatments");
-            bundle.putString("data", data.toString());
-            Intent intent = new Intent(Intents.ACTION_DATABASE);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            context.sendBroadcast(intent);
-            DbLogger.dbAdd(intent, data.toString());
+            dbAccess("dbAdd", "treatments", null, data);
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
         }
@@ -84,7 +79,6 @@ public class NSUpload {
                     uploadTempBasalStartAbsolute(t, null);
                 }
             } else {
-                Context context = MainApp.instance().getApplicationContext();
                 JSONObject data = new JSONObject();
                 data.put("eventType", CareportalEvent.TEMPBASAL);
                 data.put("duration", temporaryBasal.durationInMinutes);
@@ -93,15 +87,7 @@ public class NSUpload {
                     data.put("pumpId", temporaryBasal.pumpId);
                 data.put("created_at", DateUtil.toISOString(temporaryBasal.date));
                 data.put("enteredBy", "openaps://" + MainApp.instance().getString(R.string.app_name));
-                Bundle bundle = new Bundle();
-                bundle.putString("action", "dbAdd");
-                bundle.putString("collection", "treatments");
-                bundle.putString("data", data.toString());
-                Intent intent = new Intent(Intents.ACTION_DATABASE);
-                intent.putExtras(bundle);
-                intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-                context.sendBroadcast(intent);
-                DbLogger.dbAdd(intent, data.toString());
+                dbAccess("dbAdd", "treatments", null, data);
             }
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
@@ -110,7 +96,6 @@ public class NSUpload {
 
     public static void uploadTempBasalEnd(long time, boolean isFakedTempBasal, long pumpId) {
         try {
-            Context context = MainApp.instance().getApplicationContext();
             JSONObject data = new JSONObject();
             data.put("eventType", CareportalEvent.TEMPBASAL);
             data.put("created_at", DateUtil.toISOString(time));
@@ -119,15 +104,7 @@ public class NSUpload {
                 data.put("isFakedTempBasal", isFakedTempBasal);
             if (pumpId != 0)
                 data.put("pumpId", pumpId);
-            Bundle bundle = new Bundle();
-            bundle.putString("action", "dbAdd");
-            bundle.putString("collection", "treatments");
-            bundle.putString("data", data.toString());
-            Intent intent = new Intent(Intents.ACTION_DATABASE);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            context.sendBroadcast(intent);
-            DbLogger.dbAdd(intent, data.toString());
+            dbAccess("dbAdd", "treatments", null, data);
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
         }
@@ -135,7 +112,6 @@ public class NSUpload {
 
     public static void uploadExtendedBolus(ExtendedBolus extendedBolus) {
         try {
-            Context context = MainApp.instance().getApplicationContext();
             JSONObject data = new JSONObject();
             data.put("eventType", CareportalEvent.COMBOBOLUS);
             data.put("duration", extendedBolus.durationInMinutes);
@@ -147,15 +123,7 @@ public class NSUpload {
                 data.put("pumpId", extendedBolus.pumpId);
             data.put("created_at", DateUtil.toISOString(extendedBolus.date));
             data.put("enteredBy", "openaps://" + MainApp.instance().getString(R.string.app_name));
-            Bundle bundle = new Bundle();
-            bundle.putString("action", "dbAdd");
-            bundle.putString("collection", "treatments");
-            bundle.putString("data", data.toString());
-            Intent intent = new Intent(Intents.ACTION_DATABASE);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            context.sendBroadcast(intent);
-            DbLogger.dbAdd(intent, data.toString());
+            dbAccess("dbAdd", "treatments", null, data);
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
         }
@@ -163,7 +131,6 @@ public class NSUpload {
 
     public static void uploadExtendedBolusEnd(long time, long pumpId) {
         try {
-            Context context = MainApp.instance().getApplicationContext();
             JSONObject data = new JSONObject();
             data.put("eventType", CareportalEvent.COMBOBOLUS);
             data.put("duration", 0);
@@ -175,15 +142,7 @@ public class NSUpload {
             data.put("enteredBy", "openaps://" + MainApp.instance().getString(R.string.app_name));
             if (pumpId != 0)
                 data.put("pumpId", pumpId);
-            Bundle bundle = new Bundle();
-            bundle.putString("action", "dbAdd");
-            bundle.putString("collection", "treatments");
-            bundle.putString("data", data.toString());
-            Intent intent = new Intent(Intents.ACTION_DATABASE);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            context.sendBroadcast(intent);
-            DbLogger.dbAdd(intent, data.toString());
+            dbAccess("dbAdd", "treatments", null, data);
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
         }
@@ -235,16 +194,10 @@ public class NSUpload {
             deviceStatus.uploaderBattery = batteryLevel;
 
             deviceStatus.created_at = DateUtil.toISOString(new Date());
-            Context context = MainApp.instance().getApplicationContext();
-            Bundle bundle = new Bundle();
-            bundle.putString("action", "dbAdd");
-            bundle.putString("collection", "devicestatus");
-            bundle.putString("data", deviceStatus.mongoRecord().toString());
-            Intent intent = new Intent(Intents.ACTION_DATABASE);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            context.sendBroadcast(intent);
-            DbLogger.dbAdd(intent, deviceStatus.mongoRecord().toString());
+            JSONObject record = DeviceStatusPublisher.prepare(deviceStatus.mongoRecord(), System.currentTimeMillis());
+            if (record == null)
+                return;
+            dbAccess("dbAdd", "devicestatus", null, record);
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
         }
@@ -312,17 +265,7 @@ public class NSUpload {
             data.put("created_at", DateUtil.toISOString(profileSwitch.date));
             data.put("enteredBy", MainApp.instance().getString(R.string.app_name));
             if (profileSwitch._id != null) {
-                Context context = MainApp.instance().getApplicationContext();
-                Bundle bundle = new Bundle();
-                bundle.putString("action", "dbUpdate");
-                bundle.putString("collection", "treatments");
-                bundle.putString("data", data.toString());
-                bundle.putString("_id", profileSwitch._id);
-                Intent intent = new Intent(Intents.ACTION_DATABASE);
-                intent.putExtras(bundle);
-                intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-                context.sendBroadcast(intent);
-                DbLogger.dbAdd(intent, data.toString());
+                dbAccess("dbUpdate", "treatments", profileSwitch._id, data);
             }
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
@@ -343,16 +286,7 @@ public class NSUpload {
                 prebolus.put("created_at", DateUtil.toISOString(preBolusDate));
                 uploadCareportalEntryToNS(prebolus);
             }
-            Context context = MainApp.instance().getApplicationContext();
-            Bundle bundle = new Bundle();
-            bundle.putString("action", "dbAdd");
-            bundle.putString("collection", "treatments");
-            bundle.putString("data", data.toString());
-            Intent intent = new Intent(Intents.ACTION_DATABASE);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            context.sendBroadcast(intent);
-            DbLogger.dbAdd(intent, data.toString());
+            dbAccess("dbAdd", "treatments", null, data);
         } catch (Exception e) {
             log.error("Unhandled exception", e);
         }
@@ -361,16 +295,7 @@ public class NSUpload {
 
     public static void removeCareportalEntryFromNS(String _id) {
         try {
-            Context context = MainApp.instance().getApplicationContext();
-            Bundle bundle = new Bundle();
-            bundle.putString("action", "dbRemove");
-            bundle.putString("collection", "treatments");
-            bundle.putString("_id", _id);
-            Intent intent = new Intent(Intents.ACTION_DATABASE);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            context.sendBroadcast(intent);
-            DbLogger.dbRemove(intent, _id);
+            dbAccess("dbRemove", "treatments", _id, null);
         } catch (Exception e) {
             log.error("Unhandled exception", e);
         }
@@ -379,31 +304,18 @@ public class NSUpload {
 
     public static void uploadOpenAPSOffline(double durationInMinutes) {
         try {
-            Context context = MainApp.instance().getApplicationContext();
             JSONObject data = new JSONObject();
             data.put("eventType", "OpenAPS Offline");
             data.put("duration", durationInMinutes);
             data.put("created_at", DateUtil.toISOString(new Date()));
             data.put("enteredBy", "openaps://" + MainApp.instance().getString(R.string.app_name));
-            Bundle bundle = new Bundle();
-            bundle.putString("action", "dbAdd");
-            bundle.putString("collection", "treatments");
-            bundle.putString("data", data.toString());
-            Intent intent = new Intent(Intents.ACTION_DATABASE);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            context.sendBroadcast(intent);
-            DbLogger.dbAdd(intent, data.toString());
+            dbAccess("dbAdd", "treatments", null, data);
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
         }
     }
 
     public static void uploadError(String error) {
-        Context context = MainApp.instance().getApplicationContext();
-        Bundle bundle = new Bundle();
-        bundle.putString("action", "dbAdd");
-        bundle.putString("collection", "treatments");
         JSONObject data = new JSONObject();
         try {
             data.put("eventType", "Announcement");
@@ -413,19 +325,10 @@ public class NSUpload {
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
         }
-        bundle.putString("data", data.toString());
-        Intent intent = new Intent(Intents.ACTION_DATABASE);
-        intent.putExtras(bundle);
-        intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-        context.sendBroadcast(intent);
-        DbLogger.dbAdd(intent, data.toString());
+        dbAccess("dbAdd", "treatments", null, data);
     }
 
     public static void uploadBg(BgReading reading) {
-        Context context = MainApp.instance().getApplicationContext();
-        Bundle bundle = new Bundle();
-        bundle.putString("action", "dbAdd");
-        bundle.putString("collection", "entries");
         JSONObject data = new JSONObject();
         try {
             data.put("device", "AndroidAPS-DexcomG5");
@@ -437,20 +340,11 @@ public class NSUpload {
         } catch (JSONException e) {
             log.error("Unhandled exception", e);
         }
-        bundle.putString("data", data.toString());
-        Intent intent = new Intent(Intents.ACTION_DATABASE);
-        intent.putExtras(bundle);
-        intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-        context.sendBroadcast(intent);
-        DbLogger.dbAdd(intent, data.toString());
+        dbAccess("dbAdd", "entries", null, data);
     }
 
     public static void uploadAppStart() {
         if (SP.getBoolean(R.string.key_ns_logappstartedevent, true)) {
-            Context context = MainApp.instance().getApplicationContext();
-            Bundle bundle = new Bundle();
-            bundle.putString("action", "dbAdd");
-            bundle.putString("collection", "treatments");
             JSONObject data = new JSONObject();
             try {
                 data.put("eventType", "Note");
@@ -459,33 +353,44 @@ public class NSUpload {
             } catch (JSONException e) {
                 log.error("Unhandled exception", e);
             }
-            bundle.putString("data", data.toString());
-            Intent intent = new Intent(Intents.ACTION_DATABASE);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            context.sendBroadcast(intent);
-            DbLogger.dbAdd(intent, data.toString());
+            dbAccess("dbAdd", "treatments", null, data);
         }
     }
 
     public static void removeFoodFromNS(String _id) {
         try {
-            Context context = MainApp.instance().getApplicationContext();
-            Bundle bundle = new Bundle();
-            bundle.putString("action", "dbRemove");
-            bundle.putString("collection", "food");
-            bundle.putString("_id", _id);
-            Intent intent = new Intent(Intents.ACTION_DATABASE);
-            intent.putExtras(bundle);
-            intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-            context.sendBroadcast(intent);
-            DbLogger.dbRemove(intent, _id);
+            dbAccess("dbRemove", "food", _id, null);
         } catch (Exception e) {
             log.error("Unhandled exception", e);
         }
 
     }
 
+    // internal NSClient takes request directly, Intent is broadcast for external NSClient app only
+    private static void dbAccess(String action, String collection, String _id, JSONObject data) {
+        NSClientInternalPlugin nsClientInternalPlugin = MainApp.getSpecificPlugin(NSClientInternalPlugin.class);
+        if (nsClientInternalPlugin != null && nsClientInternalPlugin.isEnabled(PluginBase.GENERAL)) {
+            DBAccessReceiver.processRequest(action, collection, _id, data);
+            return;
+        }
+        Context context = MainApp.instance().getApplicationContext();
+        Bundle bundle = new Bundle();
+        bundle.putString("action", action);
+        bundle.putString("collection", collection);
+        if (_id != null)
+            bundle.putString("_id", _id);
+        if (data != null)
+            bundle.putString("data", data.toString());
+        Intent intent = new Intent(Intents.ACTION_DATABASE);
+        intent.putExtras(bundle);
+        intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
+        context.sendBroadcast(intent);
+        if (action.equals("dbRemove"))
+            DbLogger.dbRemove(intent, _id);
+        else
+            DbLogger.dbAdd(intent, data.toString());
+    }
+
     public static void sendToXdrip(BgReading bgReading) {
         final String XDRIP_PLUS_NS_EMULATOR = "com.eveningoutpost.dexdrip.NS_EMULATOR";
         SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US);
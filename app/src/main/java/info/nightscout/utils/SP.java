@@ -139,4 +139,12 @@ public class SP {
         editor.remove(key);
         editor.apply();
     }
+
+    static public void removeStartingWith(String prefix) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (String key : sharedPreferences.getAll().keySet())
+            if (key.startsWith(prefix))
+                editor.remove(key);
+        editor.apply();
+    }
 }
@@ -0,0 +1,61 @@
+package info.nightscout.androidaps.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CareportalEventCacheTest {
+
+    private static CareportalEvent event(String _id, long date, String eventType) {
+        CareportalEvent careportalEvent = new CareportalEvent();
+        careportalEvent._id = _id;
+        careportalEvent.date = date;
+        careportalEvent.eventType = eventType;
+        return careportalEvent;
+    }
+
+    @Test
+    public void dateChangeTest() throws Exception {
+        long now = System.currentTimeMillis();
+        CareportalEventCache cache = new CareportalEventCache();
+        cache.setRange(now - 60 * 60 * 1000L, new ArrayList<CareportalEvent>(), cache.modification());
+        cache.setLast(CareportalEvent.NOTE, null, cache.modification());
+
+        cache.put(event("a", now - 30 * 60 * 1000L, CareportalEvent.NOTE));
+        // update from NS moves the record
+        cache.put(event("a", now - 10 * 60 * 1000L, CareportalEvent.NOTE));
+
+        List<CareportalEvent> events = cache.getFromTime(now - 60 * 60 * 1000L, true);
+        assertEquals(1, events.size());
+        assertEquals(now - 10 * 60 * 1000L, events.get(0).date);
+        // latest of type is reloaded
+        assertFalse(cache.hasLast(CareportalEvent.NOTE));
+    }
+
+    @Test
+    public void copyTest() throws Exception {
+        long now = System.currentTimeMillis();
+        CareportalEventCache cache = new CareportalEventCache();
+        cache.setRange(now - 60 * 60 * 1000L, new ArrayList<CareportalEvent>(), cache.modification());
+        cache.setLast(CareportalEvent.NOTE, null, cache.modification());
+
+        CareportalEvent stored = event("a", now - 30 * 60 * 1000L, CareportalEvent.NOTE);
+        cache.put(stored);
+        stored.eventType = CareportalEvent.QUESTION;
+        cache.getFromTime(now - 60 * 60 * 1000L, true).get(0).date = now;
+        cache.getLast(CareportalEvent.NOTE)._id = "b";
+
+        CareportalEvent cached = cache.getFromTime(now - 60 * 60 * 1000L, true).get(0);
+        assertEquals(now - 30 * 60 * 1000L, cached.date);
+        assertEquals(CareportalEvent.NOTE, cached.eventType);
+        assertEquals("a", cache.getLast(CareportalEvent.NOTE)._id);
+
+        cache.remove(cached);
+        assertEquals(0, cache.getFromTime(now - 60 * 60 * 1000L, true).size());
+        assertFalse(cache.hasLast(CareportalEvent.NOTE));
+    }
+}
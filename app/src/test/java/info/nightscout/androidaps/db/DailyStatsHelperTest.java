@@ -0,0 +1,98 @@
+package info.nightscout.androidaps.db;
+
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.File;
+import java.util.Calendar;
+import java.util.List;
+
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.data.Profile;
+import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MainApp.class, ConfigBuilderPlugin.class})
+// sqlite native library can be loaded by one class loader only
+@PowerMockIgnore("org.sqlite.*")
+public class DailyStatsHelperTest {
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final Class[] TABLES = {DailyStats.class, BgReading.class, Treatment.class, TemporaryBasal.class, ExtendedBolus.class};
+
+    private File file;
+    private JdbcConnectionSource connectionSource;
+    private DailyStatsHelper helper;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void prepare() throws Exception {
+        file = File.createTempFile("dailystats", ".db");
+        connectionSource = new JdbcConnectionSource("jdbc:sqlite:" + file.getAbsolutePath());
+        for (Class table : TABLES)
+            TableUtils.createTable(connectionSource, table);
+
+        DatabaseHelper databaseHelper = mock(DatabaseHelper.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return DaoManager.createDao(connectionSource, (Class) invocation.getArguments()[0]);
+            }
+        }).when(databaseHelper).getDao(any(Class.class));
+        helper = new DailyStatsHelper(databaseHelper);
+
+        // 1 U/h all day
+        Profile profile = mock(Profile.class);
+        when(profile.getBasal(anyLong())).thenReturn(1d);
+        ConfigBuilderPlugin configBuilder = mock(ConfigBuilderPlugin.class);
+        when(configBuilder.getProfile(anyLong())).thenReturn(profile);
+        PowerMockito.mockStatic(MainApp.class);
+        when(MainApp.getConfigBuilder()).thenReturn(configBuilder);
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        connectionSource.close();
+        file.delete();
+    }
+
+    @Test
+    public void basalAcrossMidnightTest() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2017, Calendar.JUNE, 1, 0, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long day = calendar.getTimeInMillis();
+        long nextDay = DailyStats.startOfNextDay(day);
+
+        // read at noon, basal of running day
+        List<DailyStats> stats = helper.getDailyStats(1, day + 12 * HOUR);
+        assertEquals(day, stats.get(0).date);
+        assertEquals(12d, stats.get(0).basal, 0.01d);
+
+        // next read after midnight completes previous day
+        stats = helper.getDailyStats(2, nextDay + HOUR);
+        assertEquals(nextDay, stats.get(0).date);
+        assertEquals(1d, stats.get(0).basal, 0.01d);
+        assertEquals(day, stats.get(1).date);
+        assertEquals(24d, stats.get(1).basal, 0.01d);
+        assertEquals(24d, stats.get(1).tdd(), 0.01d);
+    }
+}
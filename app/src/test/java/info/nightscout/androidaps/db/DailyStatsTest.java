@@ -0,0 +1,57 @@
+package info.nightscout.androidaps.db;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.assertEquals;
+
+public class DailyStatsTest {
+
+    @Test
+    public void startOfDayTest() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2018, Calendar.JANUARY, 20, 13, 45, 10);
+        long noon = calendar.getTimeInMillis();
+        calendar.set(2018, Calendar.JANUARY, 20, 0, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long midnight = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        long nextMidnight = calendar.getTimeInMillis();
+
+        assertEquals(midnight, DailyStats.startOfDay(noon));
+        assertEquals(midnight, DailyStats.startOfDay(midnight));
+        assertEquals(nextMidnight, DailyStats.startOfNextDay(noon));
+        assertEquals(midnight, new DailyStats(noon).date);
+    }
+
+    @Test
+    public void bgAggregatesTest() throws Exception {
+        DailyStats stats = new DailyStats(0);
+        stats.addBg(60);
+        stats.addBg(100);
+        stats.addBg(140);
+        stats.addBg(200);
+
+        assertEquals(4, stats.bgCount);
+        assertEquals(1, stats.bgBelow);
+        assertEquals(2, stats.bgInRange);
+        assertEquals(1, stats.bgAbove);
+        assertEquals(125d, stats.meanBg(), 0.0001d);
+        assertEquals(51.7204d, stats.sdBg(), 0.0001d);
+        assertEquals(50d, stats.inRangePct(), 0.0001d);
+
+        stats.reset();
+        assertEquals(0, stats.bgCount);
+        assertEquals(0d, stats.meanBg(), 0.0001d);
+        assertEquals(0d, stats.sdBg(), 0.0001d);
+    }
+
+    @Test
+    public void tddTest() throws Exception {
+        DailyStats stats = new DailyStats(0);
+        stats.basal = 12.5d;
+        stats.bolus = 20.25d;
+        assertEquals(32.75d, stats.tdd(), 0.0001d);
+    }
+}
@@ -0,0 +1,160 @@
+package info.nightscout.androidaps.db;
+
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Query plan regression test. Hot queries from DatabaseHelper must be served by an index
+ * and never fall back to full table scan. Upgrade of older schema must end with all tables and indexes
+ */
+public class DatabaseMigrationsTest {
+
+    // tables as created by ormlite, reduced to columns used in queries
+    private static final String[] TABLES = {
+            "CREATE TABLE CareportalEvents (date BIGINT PRIMARY KEY, isValid BOOLEAN, source INTEGER, _id VARCHAR, eventType VARCHAR, json VARCHAR)",
+            "CREATE TABLE BgReadings (date BIGINT PRIMARY KEY, isValid BOOLEAN, value DOUBLE PRECISION, direction VARCHAR, raw DOUBLE PRECISION, source INTEGER, _id VARCHAR)",
+            "CREATE TABLE Treatments (date BIGINT PRIMARY KEY, isValid BOOLEAN, pumpId BIGINT, source INTEGER, _id VARCHAR, insulin DOUBLE PRECISION, carbs DOUBLE PRECISION)",
+            "CREATE INDEX Treatments_pumpId_idx ON Treatments (pumpId)",
+            "CREATE TABLE TemporaryBasals (date BIGINT PRIMARY KEY, isValid BOOLEAN, pumpId BIGINT, source INTEGER, _id VARCHAR, durationInMinutes INTEGER)",
+            "CREATE INDEX TemporaryBasals_pumpId_idx ON TemporaryBasals (pumpId)",
+            "CREATE TABLE ExtendedBoluses (date BIGINT PRIMARY KEY, isValid BOOLEAN, pumpId BIGINT, source INTEGER, _id VARCHAR, insulin DOUBLE PRECISION)",
+            "CREATE INDEX ExtendedBoluses_pumpId_idx ON ExtendedBoluses (pumpId)",
+            "CREATE TABLE TempTargets (date BIGINT PRIMARY KEY, isValid BOOLEAN, source INTEGER, _id VARCHAR)",
+            "CREATE TABLE ProfileSwitches (date BIGINT PRIMARY KEY, isValid BOOLEAN, source INTEGER, _id VARCHAR)",
+            "CREATE TABLE Foods (key BIGINT PRIMARY KEY, isValid BOOLEAN, _id VARCHAR, name VARCHAR)",
+            "CREATE TABLE DBRequests (nsClientID VARCHAR PRIMARY KEY, action VARCHAR, collection VARCHAR, data VARCHAR, _id VARCHAR)",
+            "CREATE TABLE DanaRHistory (bytes VARCHAR PRIMARY KEY, _id VARCHAR, recordCode TINYINT, recordDate BIGINT)",
+    };
+
+    private static final String[] HOT_QUERIES = {
+            "SELECT * FROM CareportalEvents WHERE eventType = 'Site Change' ORDER BY date DESC LIMIT 1",
+            "SELECT * FROM CareportalEvents WHERE date >= 1000 ORDER BY date ASC",
+            "SELECT * FROM CareportalEvents WHERE _id = 'abc'",
+            "SELECT * FROM BgReadings WHERE value > 38 AND isValid = 1 ORDER BY date DESC LIMIT 1",
+            "SELECT * FROM BgReadings WHERE date >= 1000 AND value > 38 AND isValid = 1 ORDER BY date ASC",
+            "SELECT * FROM Treatments WHERE pumpId = 5",
+            "SELECT * FROM Treatments WHERE _id = 'abc'",
+            "SELECT * FROM Treatments WHERE date >= 1000 ORDER BY date DESC",
+            "SELECT * FROM TemporaryBasals WHERE pumpId = 5",
+            "SELECT * FROM TemporaryBasals WHERE _id = 'abc'",
+            "SELECT * FROM TemporaryBasals WHERE date >= 1000 ORDER BY date ASC",
+            "SELECT * FROM ExtendedBoluses WHERE pumpId = 5",
+            "SELECT * FROM ExtendedBoluses WHERE _id = 'abc'",
+            "SELECT * FROM TempTargets WHERE _id = 'abc'",
+            "SELECT * FROM ProfileSwitches WHERE _id = 'abc'",
+            "SELECT * FROM Foods WHERE _id = 'abc'",
+            "SELECT * FROM DBRequests WHERE _id = 'abc' AND action = 'dbAdd' LIMIT 10",
+            "SELECT * FROM DBRequests WHERE nsClientID = '123'",
+            "SELECT * FROM DanaRHistory WHERE recordCode = 2 ORDER BY recordDate DESC LIMIT 200",
+    };
+
+    private Connection connection;
+
+    @Before
+    public void prepare() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        Statement statement = connection.createStatement();
+        for (String sql : TABLES)
+            statement.execute(sql);
+        for (String sql : DatabaseMigrations.INDEXES)
+            statement.execute(sql);
+        statement.close();
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void hotQueriesUseIndexTest() throws Exception {
+        Statement statement = connection.createStatement();
+        for (String query : HOT_QUERIES) {
+            ResultSet rs = statement.executeQuery("EXPLAIN QUERY PLAN " + query);
+            boolean hasStep = false;
+            while (rs.next()) {
+                String detail = rs.getString("detail");
+                hasStep = true;
+                boolean fullScan = detail.startsWith("SCAN") && !detail.contains("INDEX");
+                assertFalse("Full table scan: " + query + " -> " + detail, fullScan);
+                assertFalse("Sorting without index: " + query + " -> " + detail, detail.contains("TEMP B-TREE"));
+            }
+            rs.close();
+            assertTrue(hasStep);
+        }
+        statement.close();
+    }
+
+    @Test
+    public void indexesAreIdempotentTest() throws Exception {
+        Statement statement = connection.createStatement();
+        for (String sql : DatabaseMigrations.INDEXES)
+            statement.execute(sql);
+        statement.close();
+    }
+
+    @Test
+    public void upgradeFromV8Test() throws Exception {
+        File file = File.createTempFile("upgrade", ".db");
+        String url = "jdbc:sqlite:" + file.getAbsolutePath();
+        JdbcConnectionSource connectionSource = new JdbcConnectionSource(url);
+        Connection database = null;
+        try {
+            // v8 schema, without DailyStats and indexes
+            Class[] v8Tables = {TempTarget.class, Treatment.class, BgReading.class, DanaRHistoryRecord.class, DbRequest.class,
+                    TemporaryBasal.class, ExtendedBolus.class, CareportalEvent.class, ProfileSwitch.class, Food.class};
+            for (Class table : v8Tables)
+                TableUtils.createTableIfNotExists(connectionSource, table);
+
+            DatabaseMigrations.upgrade(connectionSource, 8, 9);
+
+            Set<String> tables = new HashSet<>();
+            Set<String> indexes = new HashSet<>();
+            database = DriverManager.getConnection(url);
+            Statement statement = database.createStatement();
+            ResultSet rs = statement.executeQuery("SELECT type, name FROM sqlite_master");
+            while (rs.next()) {
+                if (rs.getString("type").equals("table"))
+                    tables.add(rs.getString("name"));
+                else if (rs.getString("type").equals("index"))
+                    indexes.add(rs.getString("name"));
+            }
+            rs.close();
+            assertTrue(tables.contains(DatabaseHelper.DATABASE_DAILYSTATS));
+            for (String sql : DatabaseMigrations.INDEXES) {
+                String name = sql.split(" ")[5];
+                assertTrue("Missing index " + name, indexes.contains(name));
+            }
+
+            // DailyStats is usable after upgrade
+            statement.execute("INSERT INTO " + DatabaseHelper.DATABASE_DAILYSTATS + " (date) VALUES (1000)");
+            rs = statement.executeQuery("SELECT COUNT(*) FROM " + DatabaseHelper.DATABASE_DAILYSTATS);
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+            rs.close();
+            statement.close();
+        } finally {
+            if (database != null)
+                database.close();
+            connectionSource.close();
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package info.nightscout.androidaps.db;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class HistoryArchiveTest {
+    private static final Class[] TABLES = {BgReading.class, Treatment.class, TemporaryBasal.class, ExtendedBolus.class,
+            CareportalEvent.class, TempTarget.class, ProfileSwitch.class};
+
+    private File sourceFile;
+    private File targetFile;
+    private File archive;
+    private JdbcConnectionSource source;
+    private JdbcConnectionSource target;
+
+    @Before
+    public void prepare() throws Exception {
+        sourceFile = File.createTempFile("source", ".db");
+        targetFile = File.createTempFile("target", ".db");
+        archive = File.createTempFile("history", ".bin");
+        source = new JdbcConnectionSource("jdbc:sqlite:" + sourceFile.getAbsolutePath());
+        target = new JdbcConnectionSource("jdbc:sqlite:" + targetFile.getAbsolutePath());
+        for (Class table : TABLES) {
+            TableUtils.createTable(source, table);
+            TableUtils.createTable(target, table);
+        }
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        source.close();
+        target.close();
+        sourceFile.delete();
+        targetFile.delete();
+        archive.delete();
+    }
+
+    // DatabaseHelper serving daos of given database
+    @SuppressWarnings("unchecked")
+    private static DatabaseHelper helper(final ConnectionSource connectionSource) throws Exception {
+        DatabaseHelper databaseHelper = mock(DatabaseHelper.class);
+        databaseHelper.careportalEventCache = new CareportalEventCache();
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return DaoManager.createDao(connectionSource, (Class) invocation.getArguments()[0]);
+            }
+        }).when(databaseHelper).getDao(any(Class.class));
+        return databaseHelper;
+    }
+
+    @Test
+    public void roundTripTest() throws Exception {
+        Dao<BgReading, Long> bgDao = DaoManager.createDao(source, BgReading.class);
+        // more than one block
+        int bgCount = HistoryArchive.BLOCK_SIZE + 100;
+        for (int i = 0; i < bgCount; i++) {
+            BgReading bgReading = new BgReading();
+            bgReading.date = 1000000L + i * 5 * 60 * 1000L;
+            bgReading.value = 100 + i % 50;
+            bgReading.direction = i % 2 == 0 ? "Flat" : "FortyFiveUp";
+            bgReading._id = i % 3 == 0 ? null : "bg" + i;
+            bgDao.create(bgReading);
+        }
+        Dao<Treatment, Long> treatmentDao = DaoManager.createDao(source, Treatment.class);
+        Treatment treatment = new Treatment();
+        treatment.date = 2000000L;
+        treatment.insulin = 1.35d;
+        treatment.carbs = 20d;
+        treatment.isSMB = true;
+        treatment._id = "5a1b2c3d4e5f6a7b8c9d0e1f";
+        treatmentDao.create(treatment);
+        Dao<CareportalEvent, Long> careportalDao = DaoManager.createDao(source, CareportalEvent.class);
+        CareportalEvent careportalEvent = new CareportalEvent();
+        careportalEvent.date = 3000000L;
+        careportalEvent.eventType = CareportalEvent.SITECHANGE;
+        careportalEvent.json = "{\"notes\":\"new site\"}";
+        careportalDao.create(careportalEvent);
+
+        int exported = new HistoryArchive(helper(source)).exportHistory(archive);
+        assertEquals(bgCount + 2, exported);
+        assertTrue(archive.length() > 0);
+
+        int imported = new HistoryArchive(helper(target)).importHistory(archive);
+        assertEquals(exported, imported);
+
+        List<BgReading> bgReadings = DaoManager.createDao(target, BgReading.class).queryBuilder().orderBy("date", true).query();
+        List<BgReading> expected = bgDao.queryBuilder().orderBy("date", true).query();
+        assertEquals(expected.size(), bgReadings.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).date, bgReadings.get(i).date);
+            assertEquals(expected.get(i).value, bgReadings.get(i).value, 0d);
+            assertEquals(expected.get(i).direction, bgReadings.get(i).direction);
+            assertEquals(expected.get(i)._id, bgReadings.get(i)._id);
+            assertEquals(expected.get(i).isValid, bgReadings.get(i).isValid);
+        }
+
+        Treatment importedTreatment = DaoManager.createDao(target, Treatment.class).queryForId(2000000L);
+        assertEquals(1.35d, importedTreatment.insulin, 0d);
+        assertEquals(20d, importedTreatment.carbs, 0d);
+        assertTrue(importedTreatment.isSMB);
+        assertEquals(treatment._id, importedTreatment._id);
+
+        CareportalEvent importedEvent = DaoManager.createDao(target, CareportalEvent.class).queryForId(3000000L);
+        assertEquals(CareportalEvent.SITECHANGE, importedEvent.eventType);
+        assertEquals(careportalEvent.json, importedEvent.json);
+
+        // importing again merges by date
+        new HistoryArchive(helper(target)).importHistory(archive);
+        assertEquals(bgCount, DaoManager.createDao(target, BgReading.class).countOf());
+    }
+}
@@ -0,0 +1,93 @@
+package info.nightscout.androidaps.plugins.IobCobCalculator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import info.nightscout.androidaps.db.ExtendedBolus;
+import info.nightscout.androidaps.db.TemporaryBasal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class BasalTimelineTest {
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private static long midnight() {
+        Calendar c = Calendar.getInstance();
+        c.set(2017, Calendar.JUNE, 1, 0, 0, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        return c.getTimeInMillis();
+    }
+
+    // 1 U/h from midnight, 2 U/h from 6:00
+    private static List<BasalTimeline.Schedule> schedule(long from, long to) {
+        return Arrays.asList(new BasalTimeline.Schedule(from, to, new int[]{0, 6 * 60 * 60}, new double[]{1d, 2d}));
+    }
+
+    private static void assertSegment(BasalTimeline.Segment segment, long start, long end, double basal, boolean temp, double absolute) {
+        assertEquals(start, segment.start);
+        assertEquals(end, segment.end);
+        assertEquals(basal, segment.basal, 0.001d);
+        assertEquals(temp, segment.isTempBasalRunning);
+        assertEquals(absolute, segment.tempBasalAbsolute, 0.001d);
+    }
+
+    @Test
+    public void segmentsTest() {
+        long day = midnight();
+        long from = day + 4 * HOUR;
+        long to = day + 8 * HOUR;
+
+        TemporaryBasal percent = new TemporaryBasal(day + 5 * HOUR);
+        percent.percentRate = 50;
+        percent.durationInMinutes = 120;
+        // ending event only
+        TemporaryBasal ending = new TemporaryBasal(day + 7 * HOUR);
+
+        ExtendedBolus extended = new ExtendedBolus(day + 7 * HOUR + HOUR / 2);
+        extended.insulin = 1;
+        extended.durationInMinutes = 15;
+
+        List<BasalTimeline.Segment> segments = BasalTimeline.build(from, to, schedule(from, to),
+                Arrays.asList(percent, ending), Arrays.asList(extended));
+        assertEquals(6, segments.size());
+        assertSegment(segments.get(0), from, day + 5 * HOUR, 1d, false, 1d);
+        assertSegment(segments.get(1), day + 5 * HOUR, day + 6 * HOUR, 1d, true, 0.5d);
+        // percent temp follows schedule change
+        assertSegment(segments.get(2), day + 6 * HOUR, day + 7 * HOUR, 2d, true, 1d);
+        assertSegment(segments.get(3), day + 7 * HOUR, day + 7 * HOUR + HOUR / 2, 2d, false, 2d);
+        assertSegment(segments.get(4), day + 7 * HOUR + HOUR / 2, day + 7 * HOUR + 3 * HOUR / 4, 2d, true, 6d);
+        assertSegment(segments.get(5), day + 7 * HOUR + 3 * HOUR / 4, to, 2d, false, 2d);
+    }
+
+    @Test
+    public void wholeDayAndUnknownProfileTest() {
+        long day = midnight();
+        long from = day;
+        long to = day + 24 * HOUR;
+
+        TemporaryBasal absolute = new TemporaryBasal(day + 23 * HOUR);
+        absolute.isAbsolute = true;
+        absolute.absoluteRate = 3d;
+        absolute.durationInMinutes = 180;
+
+        // one segment per change, temp runs past end of window
+        List<BasalTimeline.Segment> segments = BasalTimeline.build(from, to, schedule(from, to),
+                Arrays.asList(absolute), new ArrayList<ExtendedBolus>());
+        assertEquals(3, segments.size());
+        assertSegment(segments.get(0), from, day + 6 * HOUR, 1d, false, 1d);
+        assertSegment(segments.get(1), day + 6 * HOUR, day + 23 * HOUR, 2d, false, 2d);
+        assertSegment(segments.get(2), day + 23 * HOUR, to, 2d, true, 3d);
+
+        // no profile in first hours
+        segments = BasalTimeline.build(from, to, schedule(day + 2 * HOUR, to),
+                new ArrayList<TemporaryBasal>(), new ArrayList<ExtendedBolus>());
+        assertEquals(2, segments.size());
+        assertSegment(segments.get(0), day + 2 * HOUR, day + 6 * HOUR, 1d, false, 1d);
+        assertFalse(segments.get(1).isTempBasalRunning);
+    }
+}
@@ -0,0 +1,45 @@
+package info.nightscout.androidaps.plugins.NSClientInternal;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class DeviceStatusPublisherTest {
+
+    private JSONObject status(int bg, String created, int battery) throws Exception {
+        JSONArray iob = new JSONArray();
+        for (int i = 0; i < 48; i++)
+            iob.put(bg - i);
+        JSONObject suggested = new JSONObject();
+        suggested.put("bg", bg);
+        suggested.put("timestamp", created);
+        suggested.put("predBGs", new JSONObject().put("IOB", iob));
+        JSONObject record = new JSONObject();
+        record.put("openaps", new JSONObject().put("suggested", suggested));
+        record.put("uploaderBattery", battery);
+        record.put("created_at", created);
+        return record;
+    }
+
+    @Test
+    public void fingerprintTest() throws Exception {
+        String first = DeviceStatusPublisher.fingerprint(status(120, "2017-07-01T10:00:00Z", 80));
+        // new timestamps and small battery drop are not a change
+        assertEquals(first, DeviceStatusPublisher.fingerprint(status(120, "2017-07-01T10:05:00Z", 81)));
+        assertNotEquals(first, DeviceStatusPublisher.fingerprint(status(125, "2017-07-01T10:05:00Z", 80)));
+        assertNotEquals(first, DeviceStatusPublisher.fingerprint(status(120, "2017-07-01T10:05:00Z", 70)));
+    }
+
+    @Test
+    public void truncatePredictionsTest() throws Exception {
+        JSONObject suggested = status(120, "2017-07-01T10:00:00Z", 80).getJSONObject("openaps").getJSONObject("suggested");
+        DeviceStatusPublisher.truncatePredictions(suggested, 24);
+        JSONArray iob = suggested.getJSONObject("predBGs").getJSONArray("IOB");
+        assertEquals(24, iob.length());
+        assertEquals(120, iob.getInt(0));
+        assertEquals(97, iob.getInt(23));
+    }
+}
@@ -0,0 +1,304 @@
+package info.nightscout.androidaps.plugins.NSClientInternal;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.socket.client.Ack;
+
+/**
+ * In-process stand-in for Nightscout websocket API used by NSClientService.
+ * <p>
+ * Speaks authorize, dataUpdate, dbAdd, dbUpdate, dbUpdateUnset and dbRemove the way
+ * NS does and plugs in as UploadEngine transport. Link can be scripted for latency,
+ * lost acks and disconnects, collections can be filled with bulk history.
+ * Like NS treatments, records already stored with the same NSCLIENT_ID are not inserted again.
+ */
+
+public class FakeNightscout implements UploadEngine.Transport {
+
+    public interface DataListener {
+        void onDataUpdate(JSONObject data);
+    }
+
+    private final ScheduledExecutorService link = Executors.newSingleThreadScheduledExecutor();
+    private final Random random = new Random(1);
+    private final Map<String, List<JSONObject>> collections = new LinkedHashMap<>();
+    private DataListener listener;
+
+    private boolean connected = true;
+    private int generation = 0;
+    private long latency = 0;
+    private double dropRate = 0;
+
+    private int emits = 0;
+    private int records = 0;
+    private int idCounter = 0;
+
+    public FakeNightscout() {
+        for (String collection : new String[]{"entries", "treatments", "devicestatus", "food", "profile"})
+            collections.put(collection, new ArrayList<JSONObject>());
+    }
+
+    // ------------ scripting ------------
+
+    public synchronized FakeNightscout latency(long latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    // fraction of emits which are processed but never acked
+    public synchronized FakeNightscout dropRate(double dropRate) {
+        this.dropRate = dropRate;
+        return this;
+    }
+
+    // acks on the way are lost
+    public synchronized void disconnect() {
+        connected = false;
+        generation++;
+    }
+
+    public synchronized void connect() {
+        connected = true;
+    }
+
+    public synchronized void loadHistory(String collection, int count, long from, long interval) throws JSONException {
+        for (int i = 0; i < count; i++) {
+            JSONObject record = new JSONObject();
+            record.put("_id", nextId());
+            record.put("date", from + i * interval);
+            if (collection.equals("entries")) {
+                record.put("type", "sgv");
+                record.put("sgv", 100 + i % 50);
+            } else {
+                record.put("eventType", "Note");
+                record.put("created_at", from + i * interval);
+            }
+            collections.get(collection).add(record);
+        }
+    }
+
+    // ------------ inspection ------------
+
+    public synchronized int count(String collection) {
+        return collections.get(collection).size();
+    }
+
+    public synchronized JSONObject find(String collection, String _id) {
+        for (JSONObject record : collections.get(collection))
+            if (_id.equals(record.optString("_id")))
+                return record;
+        return null;
+    }
+
+    public synchronized int emits() {
+        return emits;
+    }
+
+    public synchronized int records() {
+        return records;
+    }
+
+    public void shutdown() {
+        link.shutdownNow();
+    }
+
+    // ------------ websocket API ------------
+
+    /**
+     * Returns auth response, full data newer than "from" is delivered to listener afterwards
+     */
+    public synchronized JSONObject authorize(JSONObject message, DataListener listener) throws JSONException {
+        this.listener = listener;
+        long from = message.optLong("from", 0);
+        final JSONObject data = new JSONObject();
+        data.put("sgvs", newer("entries", from));
+        data.put("treatments", newer("treatments", from));
+        data.put("devicestatus", newer("devicestatus", from));
+        data.put("food", newer("food", from));
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                notifyListener(data);
+            }
+        });
+        JSONObject ack = new JSONObject();
+        ack.put("read", true);
+        ack.put("write", true);
+        ack.put("write_treatment", true);
+        return ack;
+    }
+
+    @Override
+    public synchronized boolean isReady() {
+        return connected;
+    }
+
+    @Override
+    public synchronized void emit(String event, JSONObject message, final Ack ack) {
+        if (!connected)
+            return;
+        emits++;
+        final Object response;
+        try {
+            String collection = message.getString("collection");
+            switch (event) {
+                case "dbAdd":
+                    response = dbAdd(collection, message.get("data"));
+                    break;
+                case "dbUpdate":
+                    response = dbUpdate(collection, message.optString("_id", null), message.getJSONObject("data"), false);
+                    break;
+                case "dbUpdateUnset":
+                    response = dbUpdate(collection, message.optString("_id", null), message.getJSONObject("data"), true);
+                    break;
+                case "dbRemove":
+                    response = dbRemove(collection, message.optString("_id", null));
+                    break;
+                default:
+                    return;
+            }
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        if (random.nextDouble() < dropRate)
+            return;
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                ack.call(response);
+            }
+        });
+    }
+
+    private Object dbAdd(String collection, Object data) throws JSONException {
+        JSONArray documents = data instanceof JSONArray ? (JSONArray) data : new JSONArray().put(data);
+        JSONArray inserted = new JSONArray();
+        JSONArray delta = new JSONArray();
+        for (int i = 0; i < documents.length(); i++) {
+            JSONObject document = new JSONObject(documents.getJSONObject(i).toString());
+            JSONObject existing = findByClientId(collection, document.optLong("NSCLIENT_ID", 0));
+            if (existing != null) {
+                inserted.put(existing);
+                continue;
+            }
+            document.put("_id", nextId());
+            collections.get(collection).add(document);
+            records++;
+            inserted.put(document);
+            delta.put(document);
+        }
+        if (delta.length() > 0)
+            pushDelta(collection, delta);
+        return inserted;
+    }
+
+    private Object dbUpdate(String collection, String _id, JSONObject data, boolean unset) throws JSONException {
+        if (_id == null)
+            return result("Missing _id");
+        JSONObject record = find(collection, _id);
+        if (record != null) {
+            Iterator<String> keys = data.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (unset)
+                    record.remove(key);
+                else
+                    record.put(key, data.get(key));
+            }
+            records++;
+            JSONObject changed = new JSONObject(record.toString());
+            changed.put("action", "update");
+            pushDelta(collection, new JSONArray().put(changed));
+        }
+        return result("success");
+    }
+
+    private Object dbRemove(String collection, String _id) throws JSONException {
+        if (_id == null)
+            return result("Missing _id");
+        JSONObject record = find(collection, _id);
+        if (record != null) {
+            collections.get(collection).remove(record);
+            records++;
+            JSONObject removed = new JSONObject(record.toString());
+            removed.put("action", "remove");
+            pushDelta(collection, new JSONArray().put(removed));
+        }
+        return result("success");
+    }
+
+    // ------------ helpers ------------
+
+    private JSONObject result(String result) throws JSONException {
+        return new JSONObject().put("result", result);
+    }
+
+    private JSONObject findByClientId(String collection, long nsClientId) {
+        if (nsClientId == 0)
+            return null;
+        for (JSONObject record : collections.get(collection))
+            if (record.optLong("NSCLIENT_ID", 0) == nsClientId)
+                return record;
+        return null;
+    }
+
+    private JSONArray newer(String collection, long from) {
+        JSONArray result = new JSONArray();
+        for (JSONObject record : collections.get(collection))
+            if (record.optLong("date", 0) > from)
+                result.put(record);
+        return result;
+    }
+
+    private void pushDelta(String collection, JSONArray records) throws JSONException {
+        final JSONObject data = new JSONObject();
+        data.put("delta", true);
+        data.put(collection.equals("entries") ? "sgvs" : collection, records);
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                notifyListener(data);
+            }
+        });
+    }
+
+    private void notifyListener(JSONObject data) {
+        DataListener current;
+        synchronized (this) {
+            current = listener;
+        }
+        if (current != null)
+            current.onDataUpdate(data);
+    }
+
+    // runs after link latency unless connection is lost meanwhile
+    private void deliver(final Runnable runnable) {
+        final int sentIn = generation;
+        link.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (FakeNightscout.this) {
+                    if (sentIn != generation)
+                        return;
+                }
+                runnable.run();
+            }
+        }, latency, TimeUnit.MILLISECONDS);
+    }
+
+    private String nextId() {
+        return String.format("%024x", ++idCounter);
+    }
+}
@@ -0,0 +1,212 @@
+package info.nightscout.androidaps.plugins.NSClientInternal;
+
+import com.squareup.otto.Bus;
+import com.squareup.otto.ThreadEnforcer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.db.DbRequest;
+import io.socket.client.Ack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Sync scenarios against FakeNightscout
+ */
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MainApp.class})
+public class UploadEngineTest {
+    private FakeNightscout nightscout = new FakeNightscout();
+    private UploadQueueTest.MemoryStore store = new UploadQueueTest.MemoryStore();
+    private UploadEngine engine;
+    private long lastNsClientId = System.currentTimeMillis();
+
+    @Before
+    public void prepareMock() {
+        PowerMockito.mockStatic(MainApp.class);
+        when(MainApp.bus()).thenReturn(new Bus(ThreadEnforcer.ANY));
+
+        engine = new UploadEngine(nightscout, store);
+        engine.ackTimeout = 300;
+        engine.minBackoff = 10;
+    }
+
+    @After
+    public void shutdown() {
+        engine.shutdown();
+        nightscout.shutdown();
+    }
+
+    @Test
+    public void shutdownTest() throws Exception {
+        engine.shutdown();
+        // stored for next engine, nothing sent
+        queue("treatments", 3);
+        assertEquals(3, store.size());
+        assertEquals(0, engine.inFlight());
+
+        engine = new UploadEngine(nightscout, store);
+        engine.resend("Restarted");
+        assertTrue(awaitDrained(5 * 1000L));
+    }
+
+    @Test
+    public void removeAfterAckTest() throws Exception {
+        final List<Ack> acks = new ArrayList<>();
+        engine = new UploadEngine(new UploadEngine.Transport() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void emit(String event, JSONObject message, Ack ack) {
+                synchronized (acks) {
+                    acks.add(ack);
+                }
+            }
+        }, store);
+        queue("treatments", 1);
+        long end = System.currentTimeMillis() + 5 * 1000L;
+        while (engine.inFlight() == 0 && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        assertEquals(1, engine.inFlight());
+        String _id = store.requests.keySet().iterator().next();
+
+        // no pump cycle between ack and remove
+        engine.shutdown();
+        synchronized (acks) {
+            acks.get(0).call(new JSONArray());
+        }
+        engine.add(new DbRequest("dbRemove", "treatments", nextNsClientId(), _id));
+
+        // record is on NS already, remove must be sent
+        assertEquals(1, store.size());
+        assertEquals("dbRemove", store.requests.values().iterator().next().action);
+    }
+
+    @Test
+    public void backlogDrainTest() throws Exception {
+        nightscout.latency(20);
+        queue("entries", 1000);
+        queue("treatments", 100);
+
+        assertTrue(awaitDrained(20 * 1000L));
+        assertEquals(1000, nightscout.count("entries"));
+        assertEquals(100, nightscout.count("treatments"));
+        // entries go in batches, treatments one by one
+        assertTrue(nightscout.emits() < 100 + 1000 / 10);
+        assertTrue(engine.averageThroughput() > 0);
+    }
+
+    @Test
+    public void pendingReadTest() throws Exception {
+        List<DbRequest> pending = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            pending.add(new DbRequest("dbAdd", "treatments", nextNsClientId(), new JSONObject()));
+        // one emit per treatment, nothing more to read
+        assertEquals(2, UploadEngine.rowsToFill(pending, 2));
+        assertEquals(3, UploadEngine.rowsToFill(pending, 3));
+
+        pending.clear();
+        for (int i = 0; i < 3; i++)
+            pending.add(new DbRequest("dbAdd", "entries", nextNsClientId(), new JSONObject()));
+        pending.add(new DbRequest("dbAdd", "treatments", nextNsClientId(), new JSONObject()));
+        // open batch of entries can take following rows
+        assertEquals(4 + UploadEngine.MAX_BATCH - 3, UploadEngine.rowsToFill(pending, 2));
+        assertEquals(4 + UploadEngine.MAX_BATCH - 3 + UploadEngine.MAX_BATCH, UploadEngine.rowsToFill(pending, 3));
+    }
+
+    @Test
+    public void lossyLinkTest() throws Exception {
+        nightscout.latency(5).dropRate(0.2);
+        queue("treatments", 100);
+        Thread.sleep(100);
+
+        // connection lost in the middle of upload
+        nightscout.disconnect();
+        engine.reset();
+        Thread.sleep(100);
+        nightscout.connect();
+        engine.reset();
+        engine.resend("Authenticated");
+
+        assertTrue(awaitDrained(30 * 1000L));
+        // records with lost acks are sent again but stored once
+        assertEquals(100, nightscout.count("treatments"));
+        assertTrue(nightscout.emits() > 100);
+    }
+
+    @Test
+    public void updateAndRemoveTest() throws Exception {
+        final List<JSONObject> received = new ArrayList<>();
+        nightscout.loadHistory("treatments", 10, System.currentTimeMillis() - 60 * 60 * 1000L, 60 * 1000L);
+        JSONObject auth = nightscout.authorize(new JSONObject().put("from", 0), new FakeNightscout.DataListener() {
+            @Override
+            public void onDataUpdate(JSONObject data) {
+                synchronized (received) {
+                    received.add(data);
+                }
+            }
+        });
+        assertTrue(auth.getBoolean("write_treatment"));
+
+        String _id = String.format("%024x", 3);
+        engine.add(new DbRequest("dbUpdate", "treatments", nextNsClientId(), _id, new JSONObject().put("notes", "updated")));
+        engine.add(new DbRequest("dbRemove", "treatments", nextNsClientId(), String.format("%024x", 4)));
+        assertTrue(awaitDrained(5 * 1000L));
+
+        assertEquals("updated", nightscout.find("treatments", _id).getString("notes"));
+        assertNull(nightscout.find("treatments", String.format("%024x", 4)));
+        Thread.sleep(100);
+        synchronized (received) {
+            // full history + update + remove
+            assertEquals(3, received.size());
+            assertEquals(10, received.get(0).getJSONArray("treatments").length());
+            assertEquals("remove", received.get(2).getJSONArray("treatments").getJSONObject(0).getString("action"));
+        }
+    }
+
+    private String nextNsClientId() {
+        return String.valueOf(++lastNsClientId);
+    }
+
+    private void queue(String collection, int count) throws JSONException {
+        for (int i = 0; i < count; i++) {
+            String nsClientId = nextNsClientId();
+            JSONObject data = new JSONObject();
+            data.put("date", Long.parseLong(nsClientId));
+            data.put("NSCLIENT_ID", Long.parseLong(nsClientId));
+            DbRequest dbr = new DbRequest("dbAdd", collection, nsClientId, data);
+            dbr._id = nsClientId;
+            engine.add(dbr);
+        }
+    }
+
+    private boolean awaitDrained(long timeout) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        while (System.currentTimeMillis() < end) {
+            if (store.size() == 0 && engine.inFlight() == 0)
+                return true;
+            Thread.sleep(10);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,112 @@
+package info.nightscout.androidaps.plugins.NSClientInternal;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import info.nightscout.androidaps.db.DbRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UploadQueueTest {
+
+    static class MemoryStore implements UploadEngine.Store {
+        Map<String, DbRequest> requests = new LinkedHashMap<>();
+
+        @Override
+        public synchronized List<DbRequest> pending(int max, Set<String> skip) {
+            List<DbRequest> result = new ArrayList<>();
+            for (DbRequest dbr : requests.values())
+                if (!skip.contains(dbr.nsClientID) && result.size() < max)
+                    result.add(dbr);
+            return result;
+        }
+
+        @Override
+        public synchronized List<DbRequest> find(String action, String collection, String _id) {
+            List<DbRequest> result = new ArrayList<>();
+            for (DbRequest dbr : requests.values())
+                if (dbr.action.equals(action) && dbr.collection.equals(collection) && (_id == null || _id.equals(dbr._id)))
+                    result.add(dbr);
+            return result;
+        }
+
+        @Override
+        public synchronized void create(DbRequest dbr) {
+            requests.put(dbr.nsClientID, dbr);
+        }
+
+        @Override
+        public synchronized void delete(Collection<String> nsClientIDs) {
+            for (String id : nsClientIDs)
+                requests.remove(id);
+        }
+
+        synchronized int size() {
+            return requests.size();
+        }
+    }
+
+    private MemoryStore store = new MemoryStore();
+    private Set<String> inFlight = new HashSet<>();
+
+    private void add(DbRequest dbr) {
+        if (UploadQueue.coalesce(dbr, store, inFlight))
+            store.create(dbr);
+    }
+
+    @Test
+    public void updatesAreFoldedTest() throws Exception {
+        add(new DbRequest("dbUpdate", "treatments", "1", "abc", new JSONObject("{\"insulin\":1,\"notes\":\"a\"}")));
+        add(new DbRequest("dbUpdate", "treatments", "2", "abc", new JSONObject("{\"insulin\":2}")));
+        add(new DbRequest("dbUpdate", "treatments", "3", "other", new JSONObject("{\"insulin\":5}")));
+
+        assertEquals(2, store.requests.size());
+        JSONObject merged = new JSONObject(store.requests.get("2").data);
+        assertEquals(2, merged.getInt("insulin"));
+        assertEquals("a", merged.getString("notes"));
+
+        // update already sent is not touched
+        inFlight.add("2");
+        add(new DbRequest("dbUpdate", "treatments", "4", "abc", new JSONObject("{\"insulin\":3}")));
+        assertEquals(3, store.requests.size());
+    }
+
+    @Test
+    public void addFollowedByRemoveCancelsTest() throws Exception {
+        DbRequest dbAdd = new DbRequest("dbAdd", "treatments", "10", new JSONObject("{\"insulin\":1}"));
+        dbAdd._id = "10";
+        add(dbAdd);
+        add(new DbRequest("dbUpdate", "treatments", "11", "10", new JSONObject("{\"insulin\":2}")));
+        add(new DbRequest("dbRemove", "treatments", "12", "10"));
+        assertEquals(0, store.requests.size());
+
+        // add already sent must be removed on NS
+        add(dbAdd);
+        inFlight.add("10");
+        add(new DbRequest("dbRemove", "treatments", "13", "10"));
+        assertEquals(2, store.requests.size());
+        assertTrue(store.requests.containsKey("13"));
+    }
+
+    @Test
+    public void devicestatusKeepsNewestTest() throws Exception {
+        add(new DbRequest("dbAdd", "devicestatus", "20", new JSONObject("{\"n\":1}")));
+        add(new DbRequest("dbAdd", "devicestatus", "21", new JSONObject("{\"n\":2}")));
+        add(new DbRequest("dbAdd", "treatments", "22", new JSONObject("{\"n\":3}")));
+        add(new DbRequest("dbAdd", "devicestatus", "23", new JSONObject("{\"n\":4}")));
+
+        assertEquals(2, store.requests.size());
+        assertTrue(store.requests.containsKey("23"));
+        assertFalse(store.requests.containsKey("21"));
+    }
+}
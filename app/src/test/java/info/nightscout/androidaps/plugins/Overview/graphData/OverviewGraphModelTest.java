@@ -0,0 +1,162 @@
+package info.nightscout.androidaps.plugins.Overview.graphData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.db.BgReading;
+import info.nightscout.androidaps.plugins.IobCobCalculator.AutosensData;
+
+import static org.junit.Assert.assertEquals;
+
+public class OverviewGraphModelTest {
+    private static final long STEP = OverviewGraphModel.STEP;
+    private static final long START = 1500000000000L;
+
+    static class TestSource implements OverviewGraphModel.Source {
+        List<BgReading> readings = new ArrayList<>();
+        long lastAutosens = 0;
+        double iobValue = 1d;
+        int bgQueries = 0;
+        int iobCalls = 0;
+        int autosensCalls = 0;
+
+        void addReading(long date) {
+            BgReading bg = new BgReading();
+            bg.date = date;
+            bg.value = 100;
+            // kept ascending
+            int index = readings.size();
+            while (index > 0 && readings.get(index - 1).date > date)
+                index--;
+            readings.add(index, bg);
+        }
+
+        @Override
+        public List<BgReading> bgReadings(long from) {
+            bgQueries++;
+            List<BgReading> result = new ArrayList<>();
+            for (BgReading bg : readings)
+                if (bg.date >= from)
+                    result.add(bg);
+            return result;
+        }
+
+        @Override
+        public double iob(long time) {
+            iobCalls++;
+            return iobValue;
+        }
+
+        @Override
+        public AutosensData autosens(long time) {
+            autosensCalls++;
+            if (time > lastAutosens)
+                return null;
+            AutosensData data = new AutosensData();
+            data.cob = 10;
+            return data;
+        }
+
+        @Override
+        public long lastAutosensTime() {
+            return lastAutosens;
+        }
+    }
+
+    @Test
+    public void appendOnlyTest() {
+        TestSource source = new TestSource();
+        for (long time = START; time <= START + 60 * 60 * 1000L; time += STEP)
+            source.addReading(time);
+        source.lastAutosens = START + 60 * 60 * 1000L;
+        OverviewGraphModel model = new OverviewGraphModel(source);
+
+        long now = START + 60 * 60 * 1000L + 2 * 60 * 1000L;
+        OverviewGraphModel.Snapshot snapshot = model.update(START, now);
+        assertEquals(13, snapshot.bgReadings.size());
+        assertEquals(13, snapshot.iob.size());
+        assertEquals(13, snapshot.autosens.size());
+        assertEquals(13, model.cachedIobSamples());
+        assertEquals(13, model.cachedAutosensSamples());
+
+        // nothing new, nothing calculated
+        source.iobCalls = source.autosensCalls = source.bgQueries = 0;
+        snapshot = model.update(START, now + 60 * 1000L);
+        assertEquals(13, snapshot.iob.size());
+        assertEquals(0, source.iobCalls);
+        assertEquals(0, source.autosensCalls);
+        assertEquals(0, source.bgQueries);
+
+        // new reading, only the tail is loaded and only new samples calculated
+        now += STEP;
+        source.addReading(START + 65 * 60 * 1000L);
+        model.bgChanged(START + 65 * 60 * 1000L, now);
+        snapshot = model.update(START, now);
+        assertEquals(14, snapshot.bgReadings.size());
+        assertEquals(1, source.bgQueries);
+        assertEquals(1, source.iobCalls);
+        // autosens of last 30 min is sampled again, new reading is not calculated yet
+        assertEquals(6, source.autosensCalls);
+        assertEquals(13, model.cachedAutosensSamples());
+        assertEquals(false, snapshot.autosens.get(13).present);
+    }
+
+    @Test
+    public void backfillTest() {
+        TestSource source = new TestSource();
+        // CGM gap 10-20 min after start
+        for (long time = START; time <= START + 60 * 60 * 1000L; time += STEP)
+            if (time < START + 10 * 60 * 1000L || time > START + 20 * 60 * 1000L)
+                source.addReading(time);
+        source.lastAutosens = START + 60 * 60 * 1000L;
+        OverviewGraphModel model = new OverviewGraphModel(source);
+        long now = START + 60 * 60 * 1000L + 2 * 60 * 1000L;
+        OverviewGraphModel.Snapshot snapshot = model.update(START, now);
+        assertEquals(10, snapshot.bgReadings.size());
+        assertEquals(13, model.cachedAutosensSamples());
+
+        // gap backfilled, older than the reloaded tail
+        source.addReading(START + 10 * 60 * 1000L);
+        source.addReading(START + 15 * 60 * 1000L);
+        source.addReading(START + 20 * 60 * 1000L);
+        model.bgChanged(START + 10 * 60 * 1000L, now);
+        assertEquals(2, model.cachedAutosensSamples());
+        snapshot = model.update(START, now);
+        assertEquals(13, snapshot.bgReadings.size());
+        for (int i = 0; i < snapshot.bgReadings.size(); i++)
+            assertEquals(START + i * STEP, snapshot.bgReadings.get(i).date);
+
+        // samples cached before autosens recalculation are replaced when it finishes
+        model.calculationFinished();
+        assertEquals(1, model.cachedAutosensSamples());
+    }
+
+    @Test
+    public void invalidateAndMoveTest() {
+        TestSource source = new TestSource();
+        source.lastAutosens = START + 60 * 60 * 1000L;
+        OverviewGraphModel model = new OverviewGraphModel(source);
+        long now = START + 60 * 60 * 1000L + 2 * 60 * 1000L;
+        model.update(START, now);
+
+        // treatment 30 min ago, samples from 35 min ago are recalculated
+        source.iobValue = 2d;
+        model.invalidate(START + 30 * 60 * 1000L);
+        assertEquals(5, model.cachedIobSamples());
+        OverviewGraphModel.Snapshot snapshot = model.update(START, now);
+        assertEquals(1d, snapshot.iob.get(4).iob, 0.01d);
+        assertEquals(2d, snapshot.iob.get(5).iob, 0.01d);
+        assertEquals(13, model.cachedIobSamples());
+
+        // range moves by one hour, head is dropped
+        snapshot = model.update(START + 60 * 60 * 1000L, now);
+        assertEquals(1, model.cachedIobSamples());
+        assertEquals(START + 60 * 60 * 1000L, snapshot.iob.get(0).time);
+
+        // not aligned to samples, start over
+        model.update(START + 60 * 1000L, now);
+        assertEquals(START + 60 * 1000L, model.update(START + 60 * 1000L, now).iob.get(0).time);
+    }
+}
@@ -0,0 +1,188 @@
+package info.nightscout.androidaps.plugins.PumpDanaR;
+
+import com.squareup.otto.Bus;
+import com.squareup.otto.ThreadEnforcer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import info.nightscout.androidaps.Config;
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.db.DanaRHistoryRecord;
+import info.nightscout.androidaps.db.DatabaseHelper;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MsgHistoryBolus;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MsgHistoryDone;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.RecordTypes;
+import info.nightscout.androidaps.plugins.PumpDanaR.emulator.DanaRLink;
+import info.nightscout.androidaps.plugins.PumpDanaR.emulator.DanaRPumpEmulator;
+import info.nightscout.androidaps.plugins.PumpDanaR.emulator.EmulatedPump;
+import info.nightscout.androidaps.plugins.PumpDanaR.emulator.Faults;
+import info.nightscout.utils.DateUtil;
+import info.nightscout.utils.SP;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyByte;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MainApp.class, DateUtil.class, SP.class})
+public class DanaRHistorySyncTest {
+    private static final long TIMEOUT = 2000;
+
+    private final HashMap<String, Long> preferences = new HashMap<>();
+    private DatabaseHelper databaseHelper;
+    private boolean savedLogState;
+
+    @Before
+    public void prepareMock() {
+        savedLogState = Config.logDanaMessageDetail;
+        Config.logDanaMessageDetail = false;
+        DanaRPump.getInstance().serialNumber = "AAA00000AA";
+        databaseHelper = mock(DatabaseHelper.class);
+        when(databaseHelper.hasDanaRHistoryRecords(anyByte())).thenReturn(true);
+        PowerMockito.mockStatic(MainApp.class);
+        when(MainApp.getDbHelper()).thenReturn(databaseHelper);
+        when(MainApp.bus()).thenReturn(new Bus(ThreadEnforcer.ANY));
+        PowerMockito.mockStatic(DateUtil.class);
+
+        PowerMockito.mockStatic(SP.class);
+        when(SP.getLong(anyString(), anyLong())).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                Long value = preferences.get((String) invocation.getArguments()[0]);
+                return value != null ? value : (Long) invocation.getArguments()[1];
+            }
+        });
+        PowerMockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                preferences.put((String) invocation.getArguments()[0], (Long) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(SP.class);
+        SP.putLong(anyString(), anyLong());
+        PowerMockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                String prefix = (String) invocation.getArguments()[0];
+                Iterator<String> keys = preferences.keySet().iterator();
+                while (keys.hasNext())
+                    if (keys.next().startsWith(prefix))
+                        keys.remove();
+                return null;
+            }
+        }).when(SP.class);
+        SP.removeStartingWith(anyString());
+    }
+
+    @After
+    public void restoreLogging() {
+        Config.logDanaMessageDetail = savedLogState;
+        DanaRPump.getInstance().serialNumber = "";
+    }
+
+    private static boolean download(DanaRLink link) throws Exception {
+        new MsgHistoryDone();
+        link.sendMessage(new MsgHistoryBolus(), TIMEOUT);
+        long start = System.currentTimeMillis();
+        while (!MsgHistoryDone.received && System.currentTimeMillis() - start < TIMEOUT * 10)
+            Thread.sleep(10);
+        return MsgHistoryDone.received;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void incrementalSyncTest() throws Exception {
+        EmulatedPump pump = new EmulatedPump();
+        pump.generateHistory(3, 1);
+        List<EmulatedPump.HistoryRecord> initial = pump.getHistory(RecordTypes.RECORD_TYPE_BOLUS);
+        DanaRHistorySync sync = DanaRHistorySync.getInstance();
+        DanaRLink link = new DanaRLink(new DanaRPumpEmulator(pump, Faults.none()));
+        try {
+            // first session stores everything in one batch
+            assertEquals(0, sync.start(RecordTypes.RECORD_TYPE_BOLUS));
+            assertTrue(download(link));
+            assertEquals(initial.size(), sync.finish(true));
+            long watermark = sync.getWatermark(RecordTypes.RECORD_TYPE_BOLUS);
+            assertTrue(watermark > 0);
+
+            // interrupted session doesn't move watermark
+            pump.bolus(1.5);
+            assertEquals(watermark, sync.start(RecordTypes.RECORD_TYPE_BOLUS));
+            assertEquals(0, sync.finish(false));
+            assertEquals(watermark, sync.getWatermark(RecordTypes.RECORD_TYPE_BOLUS));
+
+            // next session stores only records from watermark
+            pump.bolus(2.5);
+            int expected = 0;
+            for (EmulatedPump.HistoryRecord record : pump.getHistory(RecordTypes.RECORD_TYPE_BOLUS))
+                if (record.date >= watermark)
+                    expected++;
+            assertTrue(expected < initial.size());
+            sync.start(RecordTypes.RECORD_TYPE_BOLUS);
+            assertTrue(download(link));
+            assertEquals(expected, sync.finish(true));
+
+            ArgumentCaptor<List> batches = ArgumentCaptor.forClass(List.class);
+            verify(databaseHelper, times(2)).createOrUpdate(batches.capture());
+            assertEquals(initial.size(), batches.getAllValues().get(0).size());
+            assertEquals(expected, batches.getAllValues().get(1).size());
+            verify(databaseHelper, never()).createOrUpdate(any(DanaRHistoryRecord.class));
+        } finally {
+            link.close();
+        }
+    }
+
+    @Test
+    public void emptyDatabaseTest() {
+        DanaRHistorySync sync = DanaRHistorySync.getInstance();
+        sync.setWatermark(RecordTypes.RECORD_TYPE_CARBO, 1000);
+        // records were removed from database, complete history is needed
+        when(databaseHelper.hasDanaRHistoryRecords(RecordTypes.RECORD_TYPE_CARBO)).thenReturn(false);
+        assertEquals(0, sync.start(RecordTypes.RECORD_TYPE_CARBO));
+        sync.finish(false);
+    }
+
+    @Test
+    public void unknownSerialTest() {
+        DanaRHistorySync sync = DanaRHistorySync.getInstance();
+        sync.setWatermark(RecordTypes.RECORD_TYPE_PRIME, 1000);
+        // status not read yet, full history is requested and no watermark is stored
+        DanaRPump.getInstance().serialNumber = "";
+        assertEquals(0, sync.getWatermark(RecordTypes.RECORD_TYPE_PRIME));
+        sync.setWatermark(RecordTypes.RECORD_TYPE_PRIME, 2000);
+        DanaRPump.getInstance().serialNumber = "AAA00000AA";
+        assertEquals(1000, sync.getWatermark(RecordTypes.RECORD_TYPE_PRIME));
+    }
+
+    @Test
+    public void resetWithUnknownSerialTest() {
+        DanaRHistorySync sync = DanaRHistorySync.getInstance();
+        sync.setWatermark(DanaRHistorySync.EVENTS, 1000);
+        // database reset runs before first status read
+        DanaRPump.getInstance().serialNumber = "";
+        DanaRHistorySync.resetWatermarks();
+        DanaRPump.getInstance().serialNumber = "AAA00000AA";
+        assertEquals(0, sync.getWatermark(DanaRHistorySync.EVENTS));
+    }
+}
@@ -0,0 +1,139 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.comm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import info.nightscout.androidaps.Config;
+import info.nightscout.androidaps.plugins.PumpDanaR.DanaRPump;
+import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRS_Packet;
+import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRS_Packet_General_Initial_Screen_Information;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Dispatch and parsing of frequent status and history messages must not allocate
+ */
+
+public class MessageAllocationTest {
+    private static final int ROUNDS = 10000;
+    // measuring itself may allocate a few bytes
+    private static final long TOLERANCE = 1024;
+
+    private boolean savedLogState;
+
+    private interface Work {
+        void run(int round);
+    }
+
+    @Before
+    public void disableLogging() {
+        savedLogState = Config.logDanaMessageDetail;
+        Config.logDanaMessageDetail = false;
+    }
+
+    @After
+    public void restoreLogging() {
+        Config.logDanaMessageDetail = savedLogState;
+    }
+
+    private long allocatedBytes(Work work) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        // warm up, first use creates reusable state
+        for (int i = 0; i < ROUNDS; i++)
+            work.run(i);
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++)
+            work.run(i);
+        return threadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static byte[] danaRPacket(int command, int payloadLength) {
+        byte[] packet = new byte[payloadLength + 10];
+        packet[4] = (byte) (command >> 8 & 0xFF);
+        packet[5] = (byte) (command & 0xFF);
+        for (int i = 0; i < payloadLength; i++)
+            packet[6 + i] = (byte) (i + 1);
+        return packet;
+    }
+
+    @Test
+    public void commandTableTest() {
+        final CommandTable<MessageBase> table = new CommandTable<>();
+        final MessageBase status = new MsgStatus();
+        table.put(status.getCommand(), status);
+        table.put(0xF0F1, new MessageBase());
+
+        assertSame(status, table.get(0x020B));
+        assertEquals(null, table.get(0x020C));
+        assertEquals(null, table.get(0x120B));
+        assertEquals(2, table.size());
+
+        long allocated = allocatedBytes(new Work() {
+            @Override
+            public void run(int round) {
+                table.get(round & 0xFFFF);
+            }
+        });
+        assertTrue("allocated " + allocated, allocated < TOLERANCE);
+    }
+
+    @Test
+    public void statusParsingTest() {
+        final MsgStatus message = new MsgStatus();
+        final byte[] packet = danaRPacket(0x020B, 17);
+        long allocated = allocatedBytes(new Work() {
+            @Override
+            public void run(int round) {
+                message.handleMessage(packet);
+            }
+        });
+        assertTrue("allocated " + allocated, allocated < TOLERANCE);
+        assertEquals(MessageBase.dateTimeFromBuff(packet, 8).getTime(), DanaRPump.getInstance().lastBolusTime.getTime());
+
+        final DanaRS_Packet_General_Initial_Screen_Information rsMessage = new DanaRS_Packet_General_Initial_Screen_Information();
+        final byte[] rsPacket = new byte[20];
+        rsPacket[0] = (byte) 0xB2;
+        rsPacket[1] = (byte) 0x02;
+        allocated = allocatedBytes(new Work() {
+            @Override
+            public void run(int round) {
+                rsPacket[3] = (byte) round;
+                DanaRS_Packet.getCommand(rsPacket);
+                rsMessage.handleMessage(rsPacket);
+            }
+        });
+        assertTrue("allocated " + allocated, allocated < TOLERANCE);
+    }
+
+    @Test
+    public void historyTimestampTest() {
+        final MessageBase message = new MsgHistoryAll();
+        final byte[] packet = danaRPacket(0x41F2, 10);
+        packet[7] = 17; // year
+        packet[8] = 3;  // month
+        packet[9] = 26; // day
+        packet[10] = 2;
+        packet[11] = 30;
+        packet[12] = 15;
+        assertEquals(MessageBase.dateFromBuff(packet, 1).getTime(), message.dateMillisFromBuff(packet, 1));
+        assertEquals(MessageBase.dateTimeFromBuff(packet, 1).getTime(), message.dateTimeMillisFromBuff(packet, 1));
+        assertEquals(MessageBase.dateTimeSecFromBuff(packet, 1).getTime(), message.dateTimeSecMillisFromBuff(packet, 1));
+
+        long allocated = allocatedBytes(new Work() {
+            @Override
+            public void run(int round) {
+                packet[12] = (byte) (round % 60);
+                message.dateMillisFromBuff(packet, 1);
+                message.dateTimeMillisFromBuff(packet, 1);
+                message.dateTimeSecMillisFromBuff(packet, 1);
+            }
+        });
+        assertTrue("allocated " + allocated, allocated < TOLERANCE);
+    }
+}
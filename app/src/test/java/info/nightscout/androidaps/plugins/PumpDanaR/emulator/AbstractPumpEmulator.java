@@ -0,0 +1,103 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.emulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * In-memory transport with pump side running on its own thread.
+ * Replies pass through injected latency and faults.
+ */
+
+public abstract class AbstractPumpEmulator implements PumpTransport {
+    private static final byte[] CLOSED = new byte[0];
+
+    protected final EmulatedPump pump;
+    protected final Faults faults;
+
+    private final ExecutorService pumpThread = Executors.newSingleThreadExecutor();
+    private final LinkedBlockingQueue<byte[]> replies = new LinkedBlockingQueue<>();
+    private volatile boolean closed = false;
+
+    public int requests = 0;
+
+    private final InputStream inputStream = new InputStream() {
+        private byte[] current = null;
+        private int position = 0;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (current == null || position >= current.length) {
+                try {
+                    current = replies.take();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                position = 0;
+                if (current == CLOSED) {
+                    replies.add(CLOSED);
+                    return -1;
+                }
+            }
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    };
+
+    protected AbstractPumpEmulator(EmulatedPump pump, Faults faults) {
+        this.pump = pump;
+        this.faults = faults;
+    }
+
+    @Override
+    public void write(final byte[] data) throws IOException {
+        if (closed)
+            throw new IOException("bt socket closed");
+        final byte[] copy = data.clone();
+        pumpThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                received(copy);
+            }
+        });
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        pumpThread.shutdownNow();
+        replies.add(CLOSED);
+    }
+
+    // runs on pump thread
+    protected abstract void received(byte[] data);
+
+    // runs on pump thread
+    protected void reply(byte[] data) {
+        faults.delay();
+        data = faults.apply(data);
+        if (data != null && !closed)
+            deliver(data);
+    }
+
+    // data appears in app side input stream as one read
+    protected void deliver(byte[] data) {
+        replies.add(data);
+    }
+}
@@ -0,0 +1,143 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.emulator;
+
+import com.squareup.otto.Bus;
+import com.squareup.otto.ThreadEnforcer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import info.nightscout.androidaps.Config;
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.db.DanaRHistoryRecord;
+import info.nightscout.androidaps.db.DatabaseHelper;
+import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
+import info.nightscout.androidaps.plugins.PumpDanaR.DanaRPump;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MessageBase;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MsgHistoryBasalHour;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MsgHistoryBolus;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MsgHistoryDone;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MsgSetTempBasalStart;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MsgStatusBasic;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MsgStatusTempBasal;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.RecordTypes;
+import info.nightscout.utils.DateUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * DanaR message classes against emulated pump over in-memory transport
+ */
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MainApp.class, DateUtil.class, ConfigBuilderPlugin.class})
+public class DanaREmulatorTest {
+    private static final long TIMEOUT = 2000;
+
+    private EmulatedPump pump;
+    private DatabaseHelper databaseHelper;
+    private boolean savedLogState;
+
+    @Before
+    public void prepareMock() {
+        savedLogState = Config.logDanaMessageDetail;
+        Config.logDanaMessageDetail = false;
+        databaseHelper = mock(DatabaseHelper.class);
+        PowerMockito.mockStatic(MainApp.class);
+        when(MainApp.getDbHelper()).thenReturn(databaseHelper);
+        when(MainApp.bus()).thenReturn(new Bus(ThreadEnforcer.ANY));
+        when(MainApp.getConfigBuilder()).thenReturn(mock(ConfigBuilderPlugin.class));
+        PowerMockito.mockStatic(DateUtil.class);
+        pump = new EmulatedPump();
+    }
+
+    @After
+    public void restoreLogging() {
+        Config.logDanaMessageDetail = savedLogState;
+    }
+
+    @Test
+    public void statusAndTempBasalTest() throws Exception {
+        pump.reservoirRemainingUnits = 123.5;
+        pump.batteryRemaining = 55;
+        DanaRLink link = new DanaRLink(new DanaRPumpEmulator(pump, Faults.none()));
+        try {
+            assertTrue(link.sendMessage(new MsgStatusBasic(), TIMEOUT));
+            assertEquals(123.5, DanaRPump.getInstance().reservoirRemainingUnits, 0.01);
+            assertEquals(55, DanaRPump.getInstance().batteryRemaining);
+
+            MsgSetTempBasalStart start = new MsgSetTempBasalStart(150, 2);
+            assertTrue(link.sendMessage(start, TIMEOUT));
+            assertFalse(start.failed);
+            assertTrue(pump.isTempBasalInProgress());
+
+            assertTrue(link.sendMessage(new MsgStatusTempBasal(), TIMEOUT));
+            assertTrue(DanaRPump.getInstance().isTempBasalInProgress);
+            assertEquals(150, DanaRPump.getInstance().tempBasalPercent);
+            assertEquals(0, link.errors);
+        } finally {
+            link.close();
+        }
+    }
+
+    @Test
+    public void historyDownloadTest() throws Exception {
+        pump.generateHistory(30, 1);
+        int expected = pump.getHistory(RecordTypes.RECORD_TYPE_BOLUS).size() + pump.getHistory(RecordTypes.RECORD_TYPE_BASALHOUR).size();
+        DanaRLink link = new DanaRLink(new DanaRPumpEmulator(pump, Faults.none()));
+        try {
+            downloadHistory(link, new MsgHistoryBolus());
+            downloadHistory(link, new MsgHistoryBasalHour());
+
+            verify(databaseHelper, times(expected)).createOrUpdate(any(DanaRHistoryRecord.class));
+            assertEquals(0, link.errors);
+        } finally {
+            link.close();
+        }
+    }
+
+    // same as loadHistory() of execution service, without PCCommStart/Stop
+    private static void downloadHistory(DanaRLink link, MessageBase msg) throws Exception {
+        new MsgHistoryDone();
+        link.sendMessage(msg, TIMEOUT);
+        long start = System.currentTimeMillis();
+        while (!MsgHistoryDone.received && System.currentTimeMillis() - start < TIMEOUT * 10)
+            Thread.sleep(10);
+        assertTrue(MsgHistoryDone.received);
+    }
+
+    @Test
+    public void faultsTest() throws Exception {
+        Faults faults = new Faults(1);
+        faults.latencyMillis = 20;
+        DanaRLink link = new DanaRLink(new DanaRPumpEmulator(pump, faults));
+        try {
+            long start = System.currentTimeMillis();
+            assertTrue(link.sendMessage(new MsgStatusBasic(), TIMEOUT));
+            assertTrue(System.currentTimeMillis() - start >= faults.latencyMillis);
+
+            faults.dropProbability = 1;
+            assertFalse(link.sendMessage(new MsgStatusBasic(), 200));
+            assertEquals(1, faults.dropped);
+
+            faults.dropProbability = 0;
+            faults.corruptProbability = 1;
+            // damaged reply fails CRC or breaks framing, never reaches the message
+            assertFalse(link.sendMessage(new MsgStatusBasic(), 200));
+            assertEquals(1, faults.corrupted);
+        } finally {
+            link.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.emulator;
+
+import java.io.IOException;
+
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MessageBase;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.MessageHashTable;
+import info.nightscout.androidaps.plugins.PumpDanaR.services.SerialFrameCodec;
+
+/**
+ * App side of DanaR stream on JVM, receives and dispatches packets the same way as SerialIOThread
+ */
+
+public class DanaRLink extends Thread {
+    private final PumpTransport transport;
+    private final SerialFrameCodec codec = new SerialFrameCodec();
+    private volatile MessageBase processedMessage;
+
+    public int received = 0;
+    public int errors = 0;
+
+    public DanaRLink(PumpTransport transport) {
+        super("DanaRLink");
+        this.transport = transport;
+        start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (codec.read(transport.getInputStream()) >= 0) {
+                byte[] packet;
+                while ((packet = codec.nextPacket()) != null) {
+                    int command = (packet[5] & 0xFF) | ((packet[4] << 8) & 0xFF00);
+                    MessageBase message = processedMessage;
+                    if (message == null || message.getCommand() != command)
+                        message = MessageHashTable.findMessage(command);
+                    received++;
+                    message.received = true;
+                    message.handleMessage(packet);
+                    synchronized (message) {
+                        message.notify();
+                    }
+                }
+                if (codec.getError() != null) {
+                    // SerialIOThread disconnects here, link reports it and stops
+                    errors++;
+                    break;
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * @return true if reply was received within timeout
+     */
+    public boolean sendMessage(MessageBase message, long timeout) throws IOException {
+        processedMessage = message;
+        long start = System.currentTimeMillis();
+        transport.write(message.getRawMessageBytes());
+        synchronized (message) {
+            try {
+                while (!message.received && System.currentTimeMillis() - start < timeout)
+                    message.wait(Math.max(1, timeout - (System.currentTimeMillis() - start)));
+            } catch (InterruptedException ignored) {
+            }
+        }
+        return message.received;
+    }
+
+    public void close() {
+        transport.close();
+    }
+}
@@ -0,0 +1,159 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.emulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.RecordTypes;
+import info.nightscout.androidaps.plugins.PumpDanaR.services.SerialFrameCodec;
+import info.nightscout.utils.CRC;
+
+/**
+ * DanaR pump side of RFCOMM stream: 7E 7E len F1 cmd_hi cmd_lo data... crc_hi crc_lo 2E 2E
+ * <p>
+ * Answers status, temp basal and history commands from EmulatedPump state,
+ * other commands are acknowledged with empty reply.
+ */
+
+public class DanaRPumpEmulator extends AbstractPumpEmulator {
+    private SerialFrameCodec codec = new SerialFrameCodec();
+
+    public DanaRPumpEmulator(EmulatedPump pump, Faults faults) {
+        super(pump, faults);
+    }
+
+    public static byte[] frame(int command, byte[] payload) {
+        int length = payload.length + 3;
+        byte[] packet = new byte[length + 7];
+        packet[0] = (byte) 0x7E;
+        packet[1] = (byte) 0x7E;
+        packet[2] = (byte) length;
+        packet[3] = (byte) 0xF1;
+        packet[4] = (byte) (command >> 8 & 0xFF);
+        packet[5] = (byte) (command & 0xFF);
+        System.arraycopy(payload, 0, packet, 6, payload.length);
+        short crc = CRC.getCrc16(packet, 3, length);
+        packet[length + 3] = (byte) (crc >> 8 & 0xFF);
+        packet[length + 4] = (byte) (crc & 0xFF);
+        packet[length + 5] = (byte) 0x2E;
+        packet[length + 6] = (byte) 0x2E;
+        return packet;
+    }
+
+    @Override
+    protected void received(byte[] data) {
+        ByteArrayInputStream input = new ByteArrayInputStream(data);
+        try {
+            while (input.available() > 0) {
+                codec.read(input);
+                byte[] packet;
+                while ((packet = codec.nextPacket()) != null) {
+                    requests++;
+                    handle(packet);
+                }
+                if (codec.getError() != null) {
+                    // pump ignores garbage and waits for next packet
+                    codec = new SerialFrameCodec();
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void handle(byte[] packet) {
+        int command = ((packet[4] & 0xFF) << 8) | (packet[5] & 0xFF);
+        switch (command) {
+            case 0x020A: // MsgStatusBasic
+                reply(frame(command, statusBasic()));
+                break;
+            case 0x0205: // MsgStatusTempBasal
+                reply(frame(command, statusTempBasal()));
+                break;
+            case 0x0401: // MsgSetTempBasalStart
+                reply(frame(command, result(pump.startTempBasal(packet[6] & 0xFF, packet[7] & 0xFF))));
+                break;
+            case 0x0403: // MsgSetTempBasalStop
+                reply(frame(command, result(pump.stopTempBasal())));
+                break;
+            case 0x3101:
+                history(command, RecordTypes.RECORD_TYPE_BOLUS);
+                break;
+            case 0x3102:
+                history(command, RecordTypes.RECORD_TYPE_DAILY);
+                break;
+            case 0x3104:
+                history(command, RecordTypes.RECORD_TYPE_GLUCOSE);
+                break;
+            case 0x3105:
+                history(command, RecordTypes.RECORD_TYPE_ALARM);
+                break;
+            case 0x3106:
+                history(command, RecordTypes.RECORD_TYPE_ERROR);
+                break;
+            case 0x3107:
+                history(command, RecordTypes.RECORD_TYPE_CARBO);
+                break;
+            case 0x3108:
+                history(command, RecordTypes.RECORD_TYPE_REFILL);
+                break;
+            case 0x3109:
+                history(command, RecordTypes.RECORD_TYPE_SUSPEND);
+                break;
+            case 0x310A:
+                history(command, RecordTypes.RECORD_TYPE_BASALHOUR);
+                break;
+            default:
+                reply(frame(command, new byte[0]));
+                break;
+        }
+    }
+
+    private static byte[] result(boolean success) {
+        return new byte[]{(byte) (success ? 1 : 0)};
+    }
+
+    // 2 bytes values are big endian, 3 bytes little endian
+    private byte[] statusBasic() {
+        byte[] data = new byte[21];
+        synchronized (pump) {
+            int daily = (int) Math.round(pump.dailyTotalUnits * 750);
+            int reservoir = (int) Math.round(pump.reservoirRemainingUnits * 750);
+            int basal = (int) Math.round(pump.currentBasal * 100);
+            data[0] = (byte) (pump.pumpSuspended ? 1 : 0);
+            data[2] = (byte) (daily & 0xFF);
+            data[3] = (byte) (daily >> 8 & 0xFF);
+            data[4] = (byte) (daily >> 16 & 0xFF);
+            data[5] = (byte) (pump.maxDailyTotalUnits * 100 >> 8 & 0xFF);
+            data[6] = (byte) (pump.maxDailyTotalUnits * 100 & 0xFF);
+            data[7] = (byte) (reservoir & 0xFF);
+            data[8] = (byte) (reservoir >> 8 & 0xFF);
+            data[9] = (byte) (reservoir >> 16 & 0xFF);
+            data[11] = (byte) (basal >> 8 & 0xFF);
+            data[12] = (byte) (basal & 0xFF);
+            data[13] = (byte) pump.getTempBasalPercent();
+            data[15] = (byte) (pump.isTempBasalInProgress() ? 1 : 0);
+            data[20] = (byte) pump.batteryRemaining;
+        }
+        return data;
+    }
+
+    private byte[] statusTempBasal() {
+        int running = pump.getTempBasalRunningSeconds();
+        return new byte[]{
+                (byte) (pump.isTempBasalInProgress() ? 1 : 0),
+                (byte) pump.getTempBasalPercent(),
+                (byte) pump.getTempBasalDurationHours(),
+                (byte) (running & 0xFF),
+                (byte) (running >> 8 & 0xFF),
+                (byte) (running >> 16 & 0xFF)
+        };
+    }
+
+    // every record is sent as separate packet with request command, then MsgHistoryDone
+    private void history(int command, byte code) {
+        List<EmulatedPump.HistoryRecord> records = pump.getHistory(code);
+        for (EmulatedPump.HistoryRecord record : records)
+            reply(frame(command, record.toBytes(code)));
+        reply(frame(0x31F1, new byte[0]));
+    }
+}
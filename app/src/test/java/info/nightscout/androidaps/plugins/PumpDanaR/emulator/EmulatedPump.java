@@ -0,0 +1,148 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.emulator;
+
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.RecordTypes;
+
+/**
+ * State of emulated Dana pump shared by DanaR and DanaRS protocol emulators
+ */
+
+public class EmulatedPump {
+
+    public static class HistoryRecord {
+        // RecordTypes code
+        public final byte code;
+        public final long date;
+        // seconds, or bolus duration in minutes
+        public final int param7;
+        // bolus type and duration hours
+        public final int param8;
+        // 0.01 U for insulin records
+        public final int value;
+
+        HistoryRecord(byte code, long date, int param7, int param8, int value) {
+            this.code = code;
+            this.date = date;
+            this.param7 = param7;
+            this.param8 = param8;
+            this.value = value;
+        }
+
+        // code yy mm dd hh mi ss|p7 p8 value_hi value_lo
+        public byte[] toBytes(byte recordCode) {
+            GregorianCalendar calendar = new GregorianCalendar();
+            calendar.setTimeInMillis(date);
+            return new byte[]{
+                    recordCode,
+                    (byte) (calendar.get(GregorianCalendar.YEAR) - 2000),
+                    (byte) (calendar.get(GregorianCalendar.MONTH) + 1),
+                    (byte) calendar.get(GregorianCalendar.DAY_OF_MONTH),
+                    (byte) calendar.get(GregorianCalendar.HOUR_OF_DAY),
+                    (byte) calendar.get(GregorianCalendar.MINUTE),
+                    (byte) param7,
+                    (byte) param8,
+                    (byte) (value >> 8 & 0xFF),
+                    (byte) (value & 0xFF)
+            };
+        }
+    }
+
+    public double reservoirRemainingUnits = 150;
+    public int batteryRemaining = 80;
+    public double dailyTotalUnits = 0;
+    public int maxDailyTotalUnits = 25;
+    public double currentBasal = 1;
+    public boolean pumpSuspended = false;
+
+    private int tempBasalPercent = 0;
+    private long tempBasalStart = 0;
+    private int tempBasalDurationHours = 0;
+
+    private final List<HistoryRecord> history = new ArrayList<>();
+
+    // emulated clock, tests may override
+    public long now() {
+        return System.currentTimeMillis();
+    }
+
+    public synchronized boolean isTempBasalInProgress() {
+        return tempBasalDurationHours > 0 && now() < tempBasalStart + tempBasalDurationHours * 60 * 60 * 1000L;
+    }
+
+    public synchronized int getTempBasalPercent() {
+        return isTempBasalInProgress() ? tempBasalPercent : 0;
+    }
+
+    public synchronized int getTempBasalDurationHours() {
+        return isTempBasalInProgress() ? tempBasalDurationHours : 0;
+    }
+
+    public synchronized int getTempBasalRunningSeconds() {
+        return isTempBasalInProgress() ? (int) ((now() - tempBasalStart) / 1000) : 0;
+    }
+
+    public synchronized boolean startTempBasal(int percent, int durationInHours) {
+        if (pumpSuspended || percent < 0 || percent > 200 || durationInHours < 1 || durationInHours > 24)
+            return false;
+        tempBasalPercent = percent;
+        tempBasalDurationHours = durationInHours;
+        tempBasalStart = now();
+        addRecord(RecordTypes.RECORD_TYPE_TB, tempBasalStart, percent);
+        return true;
+    }
+
+    public synchronized boolean stopTempBasal() {
+        if (!isTempBasalInProgress())
+            return false;
+        tempBasalDurationHours = 0;
+        return true;
+    }
+
+    public synchronized boolean bolus(double amount) {
+        if (pumpSuspended || amount <= 0 || amount > reservoirRemainingUnits)
+            return false;
+        reservoirRemainingUnits -= amount;
+        dailyTotalUnits += amount;
+        // bolus record is stored with minutes resolution, 0x80 = standard bolus
+        history.add(new HistoryRecord(RecordTypes.RECORD_TYPE_BOLUS, now() / 60000 * 60000, 0, 0x80, (int) Math.round(amount * 100)));
+        return true;
+    }
+
+    public synchronized void addRecord(byte code, long date, int value) {
+        date = date / 1000 * 1000;
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.setTimeInMillis(date);
+        history.add(new HistoryRecord(code, date, calendar.get(GregorianCalendar.SECOND), 0, value));
+    }
+
+    public synchronized List<HistoryRecord> getHistory(byte code) {
+        List<HistoryRecord> result = new ArrayList<>();
+        for (HistoryRecord record : history)
+            if (record.code == code)
+                result.add(record);
+        return result;
+    }
+
+    public synchronized int historySize() {
+        return history.size();
+    }
+
+    // realistic amount of records for given days: boluses, glucose, carbs, basal hours
+    public synchronized void generateHistory(int days, long seed) {
+        Random random = new Random(seed);
+        long end = now() / 60000 * 60000;
+        for (long time = end - days * 24 * 60 * 60 * 1000L; time < end; time += 60 * 60 * 1000L) {
+            addRecord(RecordTypes.RECORD_TYPE_BASALHOUR, time, 50 + random.nextInt(100));
+            if (random.nextInt(4) == 0) {
+                history.add(new HistoryRecord(RecordTypes.RECORD_TYPE_BOLUS, time + random.nextInt(60) * 60000L, 0, 0x80, 10 + random.nextInt(800)));
+                addRecord(RecordTypes.RECORD_TYPE_CARBO, time, 10 + random.nextInt(60));
+            }
+            if (random.nextInt(3) == 0)
+                addRecord(RecordTypes.RECORD_TYPE_GLUCOSE, time, 70 + random.nextInt(150));
+        }
+    }
+}
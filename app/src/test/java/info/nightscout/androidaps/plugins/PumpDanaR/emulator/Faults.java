@@ -0,0 +1,54 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.emulator;
+
+import java.util.Random;
+
+/**
+ * Latency and faults injected by emulator into replies of the pump
+ */
+
+public class Faults {
+    private final Random random;
+
+    // delay before every reply
+    public long latencyMillis = 0;
+    // reply is not sent
+    public double dropProbability = 0;
+    // one byte of reply is damaged
+    public double corruptProbability = 0;
+
+    public int dropped = 0;
+    public int corrupted = 0;
+
+    public Faults(long seed) {
+        random = new Random(seed);
+    }
+
+    public static Faults none() {
+        return new Faults(0);
+    }
+
+    /**
+     * @return reply to be sent or null if it's dropped
+     */
+    public synchronized byte[] apply(byte[] reply) {
+        if (random.nextDouble() < dropProbability) {
+            dropped++;
+            return null;
+        }
+        if (random.nextDouble() < corruptProbability) {
+            corrupted++;
+            reply = reply.clone();
+            reply[random.nextInt(reply.length)] ^= 0x55;
+        }
+        return reply;
+    }
+
+    public void delay() {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+}
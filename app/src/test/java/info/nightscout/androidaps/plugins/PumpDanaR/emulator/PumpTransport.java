@@ -0,0 +1,19 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.emulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Byte link between app side and pump, RFCOMM stream for DanaR, GATT writes and notifications for DanaRS.
+ * Emulators implement it in memory, another implementation may forward to real device or socket.
+ */
+
+public interface PumpTransport {
+    // app -> pump
+    void write(byte[] data) throws IOException;
+
+    // pump -> app, read blocks until data is available and returns -1 after close
+    InputStream getInputStream();
+
+    void close();
+}
@@ -0,0 +1,138 @@
+package info.nightscout.androidaps.plugins.PumpDanaR.services;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import info.nightscout.utils.CRC;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SerialFrameCodecTest {
+
+    // RFCOMM delivers stream in random chunks
+    static class ChunkedStream extends InputStream {
+        private final byte[] data;
+        private final Random random = new Random(1);
+        private int position = 0;
+
+        ChunkedStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position >= data.length)
+                return -1;
+            int count = Math.min(Math.min(length, 1 + random.nextInt(64)), data.length - position);
+            System.arraycopy(data, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+
+    static byte[] packet(int command, byte[] payload) {
+        int length = payload.length + 3;
+        byte[] packet = new byte[length + 7];
+        packet[0] = (byte) 0x7E;
+        packet[1] = (byte) 0x7E;
+        packet[2] = (byte) length;
+        packet[3] = (byte) 0xF1;
+        packet[4] = (byte) (command >> 8 & 0xFF);
+        packet[5] = (byte) (command & 0xFF);
+        System.arraycopy(payload, 0, packet, 6, payload.length);
+        short crc = CRC.getCrc16(packet, 3, length);
+        packet[length + 3] = (byte) (crc >> 8 & 0xFF);
+        packet[length + 4] = (byte) (crc & 0xFF);
+        packet[length + 5] = (byte) 0x2E;
+        packet[length + 6] = (byte) 0x2E;
+        return packet;
+    }
+
+    // history download: stream of MsgHistory* records
+    static byte[] historyStream(int records) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Random random = new Random(2);
+        for (int i = 0; i < records; i++) {
+            byte[] payload = new byte[10];
+            random.nextBytes(payload);
+            byte[] packet = packet(0x3101 + i % 10, payload);
+            stream.write(packet, 0, packet.length);
+        }
+        return stream.toByteArray();
+    }
+
+    @Test
+    public void splitStreamTest() throws Exception {
+        byte[] first = packet(0x0202, new byte[]{1, 2, 3});
+        byte[] second = packet(0x3101, new byte[200]);
+        byte[] stream = new byte[first.length + second.length];
+        System.arraycopy(first, 0, stream, 0, first.length);
+        System.arraycopy(second, 0, stream, first.length, second.length);
+
+        SerialFrameCodec codec = new SerialFrameCodec();
+        ChunkedStream input = new ChunkedStream(stream);
+        int found = 0;
+        while (codec.read(input) > 0) {
+            byte[] packet;
+            while ((packet = codec.nextPacket()) != null) {
+                assertArrayEquals(found == 0 ? first : second, packet);
+                found++;
+            }
+            assertNull(codec.getError());
+        }
+        assertEquals(2, found);
+    }
+
+    @Test
+    public void wrapAroundTest() throws Exception {
+        byte[] stream = historyStream(2000);
+        SerialFrameCodec codec = new SerialFrameCodec();
+        ChunkedStream input = new ChunkedStream(stream);
+        int found = 0;
+        while (codec.read(input) > 0)
+            while (codec.nextPacket() != null)
+                found++;
+        assertNull(codec.getError());
+        assertEquals(2000, found);
+    }
+
+    @Test
+    public void crcErrorTest() throws Exception {
+        byte[] bad = packet(0x0202, new byte[]{1, 2, 3});
+        bad[7]++;
+        SerialFrameCodec codec = new SerialFrameCodec();
+        ChunkedStream input = new ChunkedStream(bad);
+        while (codec.read(input) > 0)
+            assertNull(codec.nextPacket());
+        assertNotNull(codec.getError());
+    }
+
+    @Test
+    public void throughputTest() throws Exception {
+        byte[] stream = historyStream(20000);
+        long start = System.nanoTime();
+        SerialFrameCodec codec = new SerialFrameCodec();
+        ChunkedStream input = new ChunkedStream(stream);
+        int found = 0;
+        while (codec.read(input) > 0)
+            while (codec.nextPacket() != null)
+                found++;
+        long nanos = System.nanoTime() - start;
+        assertEquals(20000, found);
+        // pump delivers few kB/s, generous bound for slow CI machines
+        assertTrue("decoding " + stream.length / 1024 + " kB took " + nanos / 1000000 + " ms", nanos < 5000 * 1000000L);
+    }
+}
@@ -0,0 +1,129 @@
+package info.nightscout.androidaps.plugins.PumpDanaRS.emulator;
+
+import com.squareup.otto.Bus;
+import com.squareup.otto.ThreadEnforcer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import info.nightscout.androidaps.Config;
+import info.nightscout.androidaps.MainApp;
+import info.nightscout.androidaps.db.DanaRHistoryRecord;
+import info.nightscout.androidaps.db.DatabaseHelper;
+import info.nightscout.androidaps.plugins.PumpDanaR.DanaRPump;
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.RecordTypes;
+import info.nightscout.androidaps.plugins.PumpDanaR.emulator.EmulatedPump;
+import info.nightscout.androidaps.plugins.PumpDanaR.emulator.Faults;
+import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRS_Packet_Basal_Set_Temporary_Basal;
+import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRS_Packet_General_Initial_Screen_Information;
+import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRS_Packet_General_Set_History_Upload_Mode;
+import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRS_Packet_History_;
+import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRS_Packet_History_Basal;
+import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRS_Packet_History_Bolus;
+import info.nightscout.utils.DateUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * DanaRS packet classes against emulated pump, 20 bytes chunks both directions
+ */
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MainApp.class, DateUtil.class})
+public class DanaRSEmulatorTest {
+    private static final long TIMEOUT = 2000;
+
+    private EmulatedPump pump;
+    private DatabaseHelper databaseHelper;
+    private boolean savedLogState;
+
+    @Before
+    public void prepareMock() {
+        savedLogState = Config.logDanaMessageDetail;
+        Config.logDanaMessageDetail = false;
+        databaseHelper = mock(DatabaseHelper.class);
+        PowerMockito.mockStatic(MainApp.class);
+        when(MainApp.getDbHelper()).thenReturn(databaseHelper);
+        when(MainApp.bus()).thenReturn(new Bus(ThreadEnforcer.ANY));
+        PowerMockito.mockStatic(DateUtil.class);
+        pump = new EmulatedPump();
+    }
+
+    @After
+    public void restoreLogging() {
+        Config.logDanaMessageDetail = savedLogState;
+    }
+
+    private DanaRSLink connect(Faults faults) throws Exception {
+        PlainEncryption encryption = new PlainEncryption();
+        DanaRSLink link = new DanaRSLink(new DanaRSPumpEmulator(pump, faults, encryption), encryption);
+        assertTrue(link.connect(TIMEOUT));
+        return link;
+    }
+
+    @Test
+    public void handshakeAndStatusTest() throws Exception {
+        pump.reservoirRemainingUnits = 87.25;
+        pump.batteryRemaining = 40;
+        DanaRSLink link = connect(Faults.none());
+        try {
+            assertEquals(DanaRSPumpEmulator.PASSWORD, link.password);
+
+            assertTrue(link.sendMessage(new DanaRS_Packet_Basal_Set_Temporary_Basal(170, 1), TIMEOUT));
+            assertTrue(pump.isTempBasalInProgress());
+
+            assertTrue(link.sendMessage(new DanaRS_Packet_General_Initial_Screen_Information(), TIMEOUT));
+            DanaRPump danaRPump = DanaRPump.getInstance();
+            assertEquals(87.25, danaRPump.reservoirRemainingUnits, 0.01);
+            assertEquals(40, danaRPump.batteryRemaining);
+            assertTrue(danaRPump.isTempBasalInProgress);
+            assertEquals(170, danaRPump.tempBasalPercent);
+            assertEquals(0, link.errors);
+        } finally {
+            link.close();
+        }
+    }
+
+    @Test
+    public void historyDownloadTest() throws Exception {
+        pump.generateHistory(30, 1);
+        int expected = pump.getHistory(RecordTypes.RECORD_TYPE_BOLUS).size() + pump.getHistory(RecordTypes.RECORD_TYPE_BASALHOUR).size();
+        Faults faults = new Faults(1);
+        // notifications come from the stack with small delays
+        faults.latencyMillis = 1;
+        DanaRSLink link = connect(faults);
+        try {
+            downloadHistory(link, new DanaRS_Packet_History_Bolus());
+            downloadHistory(link, new DanaRS_Packet_History_Basal());
+
+            // one notification per record at least
+            assertTrue(link.received >= expected);
+            verify(databaseHelper, times(expected)).createOrUpdate(any(DanaRHistoryRecord.class));
+            assertEquals(0, link.errors);
+        } finally {
+            link.close();
+        }
+    }
+
+    // same as loadHistory() of DanaRSService
+    private static void downloadHistory(DanaRSLink link, DanaRS_Packet_History_ msg) throws Exception {
+        assertTrue(link.sendMessage(new DanaRS_Packet_General_Set_History_Upload_Mode(1), TIMEOUT));
+        link.sendMessage(msg, TIMEOUT);
+        long start = System.currentTimeMillis();
+        while (!msg.done && System.currentTimeMillis() - start < TIMEOUT * 10)
+            Thread.sleep(10);
+        assertTrue(msg.done);
+        assertTrue(link.sendMessage(new DanaRS_Packet_General_Set_History_Upload_Mode(0), TIMEOUT));
+    }
+}
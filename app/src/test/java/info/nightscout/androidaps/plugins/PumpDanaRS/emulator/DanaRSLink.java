@@ -0,0 +1,138 @@
+package info.nightscout.androidaps.plugins.PumpDanaRS.emulator;
+
+import com.cozmo.danar.util.BleCommandUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import info.nightscout.androidaps.plugins.PumpDanaR.emulator.PumpTransport;
+import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRSMessageHashTable;
+import info.nightscout.androidaps.plugins.PumpDanaRS.comm.DanaRS_Packet;
+import info.nightscout.androidaps.plugins.PumpDanaRS.services.BleFrameCodec;
+import info.nightscout.androidaps.plugins.PumpDanaRS.services.PacketEncryption;
+
+/**
+ * App side of DanaRS link on JVM, handshake and dispatch of packets the same way as BLEComm
+ */
+
+public class DanaRSLink extends Thread {
+    private static final int MAX_CHUNK = 20;
+    private static final String DEVICE_NAME = "EMULATOR";
+    private static final byte[] PAIRING_KEY = {0x12, 0x34};
+
+    private final PumpTransport transport;
+    private final PacketEncryption encryption;
+    private final BleFrameCodec codec = new BleFrameCodec();
+    private volatile DanaRS_Packet processedMessage;
+    private volatile boolean connected = false;
+
+    public int password = 0;
+    public int received = 0;
+    public int errors = 0;
+
+    public DanaRSLink(PumpTransport transport, PacketEncryption encryption) {
+        super("DanaRSLink");
+        this.transport = transport;
+        this.encryption = encryption;
+        start();
+    }
+
+    @Override
+    public void run() {
+        InputStream input = transport.getInputStream();
+        byte[] notification = new byte[MAX_CHUNK];
+        try {
+            int length;
+            while ((length = input.read(notification, 0, MAX_CHUNK)) >= 0) {
+                byte[] value = new byte[length];
+                System.arraycopy(notification, 0, value, 0, length);
+                codec.append(value);
+                byte[] packet;
+                while ((packet = codec.nextPacket()) != null)
+                    processPacket(packet);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void processPacket(byte[] packet) throws IOException {
+        byte[] decrypted = encryption.getDecryptedPacket(packet);
+        if (decrypted == null) {
+            errors++;
+            return;
+        }
+        received++;
+        if (decrypted[0] == (byte) BleCommandUtil.DANAR_PACKET__TYPE_ENCRYPTION_RESPONSE) {
+            switch (decrypted[1]) {
+                case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PUMP_CHECK:
+                    write(encryption.getEncryptedPacket(BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__CHECK_PASSKEY, PAIRING_KEY, null));
+                    break;
+                case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__CHECK_PASSKEY:
+                    write(encryption.getEncryptedPacket(BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION, null, null));
+                    break;
+                case (byte) BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION:
+                    int size = decrypted.length;
+                    password = (((decrypted[size - 1] & 0xFF) << 8) + (decrypted[size - 2] & 0xFF)) ^ 3463;
+                    synchronized (this) {
+                        connected = true;
+                        notifyAll();
+                    }
+                    break;
+            }
+            return;
+        }
+        DanaRS_Packet message = processedMessage;
+        int command = DanaRS_Packet.getCommand(decrypted);
+        if (message == null || message.getCommand() != command)
+            message = DanaRSMessageHashTable.findMessage(command);
+        message.handleMessage(decrypted);
+        message.setReceived();
+        synchronized (message) {
+            message.notify();
+        }
+    }
+
+    // GATT accepts 20 bytes per write
+    private void write(byte[] bytes) throws IOException {
+        for (int offset = 0; offset < bytes.length; offset += MAX_CHUNK) {
+            byte[] chunk = new byte[Math.min(MAX_CHUNK, bytes.length - offset)];
+            System.arraycopy(bytes, offset, chunk, 0, chunk.length);
+            transport.write(chunk);
+        }
+    }
+
+    /**
+     * @return true if handshake finished within timeout
+     */
+    public synchronized boolean connect(long timeout) throws IOException {
+        long start = System.currentTimeMillis();
+        write(encryption.getEncryptedPacket(BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PUMP_CHECK, null, DEVICE_NAME));
+        try {
+            while (!connected && System.currentTimeMillis() - start < timeout)
+                wait(Math.max(1, timeout - (System.currentTimeMillis() - start)));
+        } catch (InterruptedException ignored) {
+        }
+        return connected;
+    }
+
+    /**
+     * @return true if reply was received within timeout
+     */
+    public boolean sendMessage(DanaRS_Packet message, long timeout) throws IOException {
+        processedMessage = message;
+        long start = System.currentTimeMillis();
+        write(encryption.getEncryptedPacket(message.getOpCode(), message.getRequestParams(), null));
+        synchronized (message) {
+            try {
+                while (!message.isReceived() && System.currentTimeMillis() - start < timeout)
+                    message.wait(Math.max(1, timeout - (System.currentTimeMillis() - start)));
+            } catch (InterruptedException ignored) {
+            }
+        }
+        return message.isReceived();
+    }
+
+    public void close() {
+        transport.close();
+    }
+}
@@ -0,0 +1,159 @@
+package info.nightscout.androidaps.plugins.PumpDanaRS.emulator;
+
+import com.cozmo.danar.util.BleCommandUtil;
+
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpDanaR.comm.RecordTypes;
+import info.nightscout.androidaps.plugins.PumpDanaR.emulator.AbstractPumpEmulator;
+import info.nightscout.androidaps.plugins.PumpDanaR.emulator.EmulatedPump;
+import info.nightscout.androidaps.plugins.PumpDanaR.emulator.Faults;
+import info.nightscout.androidaps.plugins.PumpDanaRS.services.BleFrameCodec;
+import info.nightscout.androidaps.plugins.PumpDanaRS.services.PacketEncryption;
+
+/**
+ * DanaRS pump side of GATT link. App writes 20 bytes chunks, replies come as 20 bytes notifications.
+ * <p>
+ * Handles encryption handshake, status, temp basal and history requests from EmulatedPump state,
+ * other commands get OK result.
+ */
+
+public class DanaRSPumpEmulator extends AbstractPumpEmulator {
+    private static final int NOTIFICATION_SIZE = 20;
+
+    // pump user password sent in TIME_INFORMATION
+    public static final int PASSWORD = 0x1234;
+
+    private final BleFrameCodec codec = new BleFrameCodec();
+    private final PacketEncryption encryption;
+
+    public DanaRSPumpEmulator(EmulatedPump pump, Faults faults, PacketEncryption encryption) {
+        super(pump, faults);
+        this.encryption = encryption;
+    }
+
+    @Override
+    protected void received(byte[] data) {
+        codec.append(data);
+        byte[] packet;
+        while ((packet = codec.nextPacket()) != null) {
+            byte[] decrypted = encryption.getDecryptedPacket(packet);
+            // damaged packet is ignored, app times out
+            if (decrypted == null)
+                continue;
+            requests++;
+            handle(decrypted[0] & 0xFF, decrypted[1] & 0xFF, decrypted);
+        }
+    }
+
+    @Override
+    protected void deliver(byte[] data) {
+        for (int offset = 0; offset < data.length; offset += NOTIFICATION_SIZE) {
+            byte[] notification = new byte[Math.min(NOTIFICATION_SIZE, data.length - offset)];
+            System.arraycopy(data, offset, notification, 0, notification.length);
+            super.deliver(notification);
+        }
+    }
+
+    private void send(int type, int opcode, byte[] params) {
+        reply(PlainEncryption.frame(type, opcode, params));
+    }
+
+    private void handle(int type, int opcode, byte[] request) {
+        if (type == BleCommandUtil.DANAR_PACKET__TYPE_ENCRYPTION_REQUEST) {
+            int response = BleCommandUtil.DANAR_PACKET__TYPE_ENCRYPTION_RESPONSE;
+            switch (opcode) {
+                case BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PUMP_CHECK:
+                    send(response, opcode, new byte[]{'O', 'K'});
+                    break;
+                case BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__CHECK_PASSKEY:
+                    send(response, opcode, new byte[]{0x00});
+                    break;
+                case BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION:
+                    int pass = PASSWORD ^ 3463;
+                    send(response, opcode, new byte[]{0, 0, 0, 0, 0, 0, (byte) (pass & 0xFF), (byte) (pass >> 8 & 0xFF)});
+                    break;
+                default:
+                    send(response, opcode, new byte[]{0x00});
+                    break;
+            }
+            return;
+        }
+
+        int response = BleCommandUtil.DANAR_PACKET__TYPE_RESPONSE;
+        switch (opcode) {
+            case BleCommandUtil.DANAR_PACKET__OPCODE_REVIEW__INITIAL_SCREEN_INFORMATION:
+                send(response, opcode, initialScreen());
+                break;
+            case BleCommandUtil.DANAR_PACKET__OPCODE_BASAL__SET_TEMPORARY_BASAL:
+                send(response, opcode, result(pump.startTempBasal(request[2] & 0xFF, request[3] & 0xFF)));
+                break;
+            case BleCommandUtil.DANAR_PACKET__OPCODE_BASAL__CANCEL_TEMPORARY_BASAL:
+                send(response, opcode, result(pump.stopTempBasal()));
+                break;
+            case BleCommandUtil.DANAR_PACKET__OPCODE_REVIEW__BOLUS:
+                history(opcode, RecordTypes.RECORD_TYPE_BOLUS, 0x02);
+                break;
+            case BleCommandUtil.DANAR_PACKET__OPCODE_REVIEW__DAILY:
+                history(opcode, RecordTypes.RECORD_TYPE_DAILY, 0x03);
+                break;
+            case BleCommandUtil.DANAR_PACKET__OPCODE_REVIEW__PRIME:
+                history(opcode, RecordTypes.RECORD_TYPE_PRIME, 0x04);
+                break;
+            case BleCommandUtil.DANAR_PACKET__OPCODE_REVIEW__REFILL:
+                history(opcode, RecordTypes.RECORD_TYPE_REFILL, 0x05);
+                break;
+            case BleCommandUtil.DANAR_PACKET__OPCODE_REVIEW__BLOOD_GLUCOSE:
+                history(opcode, RecordTypes.RECORD_TYPE_GLUCOSE, 0x06);
+                break;
+            case BleCommandUtil.DANAR_PACKET__OPCODE_REVIEW__CARBOHYDRATE:
+                history(opcode, RecordTypes.RECORD_TYPE_CARBO, 0x07);
+                break;
+            case BleCommandUtil.DANAR_PACKET__OPCODE_REVIEW__SUSPEND:
+                history(opcode, RecordTypes.RECORD_TYPE_SUSPEND, 0x09);
+                break;
+            case BleCommandUtil.DANAR_PACKET__OPCODE_REVIEW__ALARM:
+                history(opcode, RecordTypes.RECORD_TYPE_ALARM, 0x0a);
+                break;
+            case BleCommandUtil.DANAR_PACKET__OPCODE_REVIEW__BASAL:
+                history(opcode, RecordTypes.RECORD_TYPE_BASALHOUR, 0x0b);
+                break;
+            default:
+                send(response, opcode, new byte[]{0x00});
+                break;
+        }
+    }
+
+    // 0 = OK
+    private static byte[] result(boolean success) {
+        return new byte[]{(byte) (success ? 0 : 1)};
+    }
+
+    private static void putShort(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value & 0xFF);
+        data[offset + 1] = (byte) (value >> 8 & 0xFF);
+    }
+
+    // values are little endian
+    private byte[] initialScreen() {
+        byte[] data = new byte[15];
+        synchronized (pump) {
+            data[0] = (byte) ((pump.pumpSuspended ? 0x01 : 0) | (pump.isTempBasalInProgress() ? 0x10 : 0));
+            putShort(data, 1, (int) Math.round(pump.dailyTotalUnits * 100));
+            putShort(data, 3, pump.maxDailyTotalUnits * 100);
+            putShort(data, 5, (int) Math.round(pump.reservoirRemainingUnits * 100));
+            putShort(data, 7, (int) Math.round(pump.currentBasal * 100));
+            data[9] = (byte) pump.getTempBasalPercent();
+            data[10] = (byte) pump.batteryRemaining;
+        }
+        return data;
+    }
+
+    // one packet per record, then packet with result code only
+    private void history(int opcode, byte code, int rsCode) {
+        List<EmulatedPump.HistoryRecord> records = pump.getHistory(code);
+        for (EmulatedPump.HistoryRecord record : records)
+            send(BleCommandUtil.DANAR_PACKET__TYPE_RESPONSE, opcode, record.toBytes((byte) rsCode));
+        send(BleCommandUtil.DANAR_PACKET__TYPE_RESPONSE, opcode, new byte[]{0x00});
+    }
+}
@@ -0,0 +1,72 @@
+package info.nightscout.androidaps.plugins.PumpDanaRS.emulator;
+
+import com.cozmo.danar.util.BleCommandUtil;
+
+import java.nio.charset.StandardCharsets;
+
+import info.nightscout.androidaps.plugins.PumpDanaRS.services.PacketEncryption;
+import info.nightscout.utils.CRC;
+
+/**
+ * DanaRS packet layer without encryption: A5 A5 LEN TYPE OPCODE PARAMS CRC_HI CRC_LO 5A 5A
+ * <p>
+ * Only constants of BleCommandUtil are used, native library is not loaded.
+ */
+
+public class PlainEncryption implements PacketEncryption {
+
+    public static byte[] frame(int type, int opcode, byte[] params) {
+        int paramsLength = params != null ? params.length : 0;
+        int length = paramsLength + 2;
+        byte[] packet = new byte[length + 7];
+        packet[0] = (byte) 0xA5;
+        packet[1] = (byte) 0xA5;
+        packet[2] = (byte) length;
+        packet[3] = (byte) type;
+        packet[4] = (byte) opcode;
+        if (params != null)
+            System.arraycopy(params, 0, packet, 5, paramsLength);
+        short crc = CRC.getCrc16(packet, 3, length);
+        packet[length + 3] = (byte) (crc >> 8 & 0xFF);
+        packet[length + 4] = (byte) (crc & 0xFF);
+        packet[length + 5] = (byte) 0x5A;
+        packet[length + 6] = (byte) 0x5A;
+        return packet;
+    }
+
+    static boolean isEncryptionOpcode(int opcode) {
+        switch (opcode) {
+            case BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PUMP_CHECK:
+            case BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION:
+            case BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__CHECK_PASSKEY:
+            case BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_REQUEST:
+            case BleCommandUtil.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_RETURN:
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public byte[] getEncryptedPacket(int opcode, byte[] params, String deviceName) {
+        if (isEncryptionOpcode(opcode)) {
+            if (deviceName != null)
+                params = deviceName.getBytes(StandardCharsets.UTF_8);
+            return frame(BleCommandUtil.DANAR_PACKET__TYPE_ENCRYPTION_REQUEST, opcode, params);
+        }
+        return frame(BleCommandUtil.DANAR_PACKET__TYPE_COMMAND, opcode, params);
+    }
+
+    /**
+     * @return TYPE OPCODE PARAMS or null if checksum doesn't match
+     */
+    @Override
+    public byte[] getDecryptedPacket(byte[] packet) {
+        int length = packet[2] & 0xFF;
+        short crc = CRC.getCrc16(packet, 3, length);
+        if (packet[length + 3] != (byte) (crc >> 8 & 0xFF) || packet[length + 4] != (byte) (crc & 0xFF))
+            return null;
+        byte[] decrypted = new byte[length];
+        System.arraycopy(packet, 3, decrypted, 0, length);
+        return decrypted;
+    }
+}
@@ -0,0 +1,75 @@
+package info.nightscout.androidaps.plugins.PumpDanaRS.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BleFrameCodecTest {
+
+    static byte[] packet(int payloadLength, int seed) {
+        byte[] packet = new byte[payloadLength + 7];
+        packet[0] = (byte) 0xA5;
+        packet[1] = (byte) 0xA5;
+        packet[2] = (byte) payloadLength;
+        for (int i = 0; i < payloadLength + 2; i++)
+            packet[3 + i] = (byte) (seed + i);
+        packet[payloadLength + 5] = (byte) 0x5A;
+        packet[payloadLength + 6] = (byte) 0x5A;
+        return packet;
+    }
+
+    // BLE delivers packet in 20 bytes notifications
+    static void notify(BleFrameCodec codec, byte[] data) {
+        for (int offset = 0; offset < data.length; offset += 20) {
+            byte[] chunk = new byte[Math.min(20, data.length - offset)];
+            System.arraycopy(data, offset, chunk, 0, chunk.length);
+            codec.append(chunk);
+        }
+    }
+
+    @Test
+    public void splitPacketTest() {
+        BleFrameCodec codec = new BleFrameCodec();
+        byte[] first = packet(3, 1);
+        byte[] second = packet(200, 2);
+        notify(codec, first);
+        assertArrayEquals(first, codec.nextPacket());
+        byte[] half = new byte[100];
+        System.arraycopy(second, 0, half, 0, half.length);
+        codec.append(half);
+        assertNull(codec.nextPacket());
+        byte[] rest = new byte[second.length - half.length];
+        System.arraycopy(second, half.length, rest, 0, rest.length);
+        codec.append(rest);
+        assertArrayEquals(second, codec.nextPacket());
+        assertNull(codec.nextPacket());
+    }
+
+    @Test
+    public void resyncTest() {
+        BleFrameCodec codec = new BleFrameCodec();
+        byte[] good = packet(10, 3);
+        // trash, false start with wrong end, good packet
+        codec.append(new byte[]{1, 2, (byte) 0xA5});
+        codec.append(new byte[]{(byte) 0xA5, 0, 1, 2, 3, 4, 5, 6});
+        codec.append(good);
+        assertArrayEquals(good, codec.nextPacket());
+        assertNull(codec.nextPacket());
+    }
+
+    @Test
+    public void wrapAroundTest() {
+        BleFrameCodec codec = new BleFrameCodec();
+        int found = 0;
+        for (int i = 0; i < 1000; i++) {
+            byte[] packet = packet(i % 250, i);
+            notify(codec, packet);
+            byte[] received = codec.nextPacket();
+            assertArrayEquals(packet, received);
+            found++;
+        }
+        assertEquals(1000, found);
+    }
+}
@@ -11,21 +11,36 @@ import junit.framework.Assert;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import info.nightscout.androidaps.Constants;
 import info.nightscout.androidaps.MainApp;
 import info.nightscout.androidaps.data.DetailedBolusInfo;
 import info.nightscout.androidaps.data.Profile;
+import info.nightscout.androidaps.data.PumpEnactResult;
+import info.nightscout.androidaps.data.PumpSession;
 import info.nightscout.androidaps.interfaces.PumpInterface;
 import info.nightscout.androidaps.plugins.ConfigBuilder.ConfigBuilderPlugin;
 import info.nightscout.androidaps.plugins.PumpMDI.MDIPlugin;
 import info.nightscout.androidaps.queue.commands.Command;
+import info.nightscout.utils.LocalAlertUtils;
 import info.nightscout.utils.ToastUtils;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -33,7 +48,7 @@ import static org.mockito.Mockito.when;
  */
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({MainApp.class, ConfigBuilderPlugin.class, ConfigBuilderPlugin.class, ToastUtils.class, Context.class})
+@PrepareForTest({MainApp.class, ConfigBuilderPlugin.class, ConfigBuilderPlugin.class, ToastUtils.class, Context.class, LocalAlertUtils.class})
 public class CommandQueueTest extends CommandQueue {
 
     String profileJson = "{\"dia\":\"3\",\"carbratio\":[{\"time\":\"00:00\",\"value\":\"30\"}],\"carbs_hr\":\"20\",\"delay\":\"20\",\"sens\":[{\"time\":\"00:00\",\"value\":\"100\"}],\"timezone\":\"UTC\",\"basal\":[{\"time\":\"00:00\",\"value\":\"0.1\"}],\"target_low\":[{\"time\":\"00:00\",\"value\":\"4\"}],\"target_high\":[{\"time\":\"00:00\",\"value\":\"5\"}],\"startDate\":\"1970-01-01T00:00:00.000Z\",\"units\":\"mmol\"}";
@@ -103,6 +118,98 @@ public class CommandQueueTest extends CommandQueue {
         Assert.assertNull(performing);
     }
 
+    @Test
+    public void priorityTest() throws Exception {
+        prepareMock(0d, 0);
+
+        loadHistory((byte) 0, null);
+        readStatus("anyString", null);
+        tempBasalAbsolute(0, 30, true, null);
+        bolus(new DetailedBolusInfo(), null);
+        cancelExtended(null);
+        Assert.assertEquals(5, size());
+
+        // bolus and cancel first in order of adding, history last
+        pickup();
+        Assert.assertEquals(Command.CommandType.BOLUS, performing.commandType);
+        pickup();
+        Assert.assertEquals(Command.CommandType.EXTENDEDBOLUS, performing.commandType);
+        // temp basal and status read are executed in one session
+        pickup();
+        Assert.assertEquals(Command.CommandType.TEMPBASAL, performing.commandType);
+        Assert.assertTrue(performing.includes(Command.CommandType.READSTATUS));
+        pickup();
+        Assert.assertEquals(Command.CommandType.LOADHISTORY, performing.commandType);
+        Assert.assertEquals(0, size());
+        resetPerforming();
+
+        // READSTATUS is absorbed by pending READSTATUS or SETPROFILE
+        readStatus("anyString", null);
+        Assert.assertFalse(readStatus("anyString", null));
+        Assert.assertEquals(1, size());
+        clear();
+        setProfile(new Profile(new JSONObject(profileJson), Constants.MGDL), null);
+        Assert.assertFalse(readStatus("anyString", null));
+        Assert.assertEquals(1, size());
+
+        // cancel temp basal supersedes pending temp basal
+        tempBasalAbsolute(0, 30, true, null);
+        cancelTempBasal(true, null);
+        Assert.assertEquals(2, size());
+        pickup();
+        Assert.assertEquals("CANCEL TEMPBASAL", performing.status());
+        clear();
+    }
+
+    @Test
+    public void sessionTest() throws Exception {
+        prepareMock(0d, 0);
+        final PumpInterface pump = mock(PumpInterface.class);
+        when(ConfigBuilderPlugin.getActivePump()).thenReturn(pump);
+        when(pump.setTempBasalPercent(anyInt(), anyInt(), anyBoolean())).thenReturn(new PumpEnactResult().success(true).enacted(true));
+        when(pump.runSession(any(PumpSession.class))).thenAnswer(new Answer<PumpEnactResult>() {
+            @Override
+            public PumpEnactResult answer(InvocationOnMock invocation) throws Throwable {
+                return ((PumpSession) invocation.getArguments()[0]).run(pump);
+            }
+        });
+        PowerMockito.mockStatic(LocalAlertUtils.class);
+
+        final List<PumpEnactResult> results = new ArrayList<>();
+        Callback callback = new Callback() {
+            @Override
+            public void run() {
+                results.add(result);
+            }
+        };
+        bolus(new DetailedBolusInfo(), null);
+        tempBasalPercent(0, 30, true, callback);
+        readStatus("anyString", callback);
+        loadEvents(callback);
+        Assert.assertEquals(4, size());
+
+        // bolus is not part of session
+        pickup();
+        Assert.assertEquals(Command.CommandType.BOLUS, performing.commandType);
+        resetPerforming();
+
+        pickup();
+        Assert.assertEquals(0, size());
+        Assert.assertTrue(performing.includes(Command.CommandType.LOADEVENTS));
+        performing.execute();
+        resetPerforming();
+
+        // status is read once after the change
+        verify(pump, times(1)).runSession(any(PumpSession.class));
+        InOrder inOrder = inOrder(pump);
+        inOrder.verify(pump).setTempBasalPercent(0, 30, true);
+        inOrder.verify(pump, times(1)).getPumpStatus();
+        // events are not supported by this pump, no callback
+        Assert.assertEquals(2, results.size());
+        Assert.assertTrue(results.get(0).enacted);
+        Assert.assertNull(results.get(1));
+    }
+
     private void prepareMock(Double insulin, Integer carbs) throws Exception {
         ConfigBuilderPlugin configBuilderPlugin = mock(ConfigBuilderPlugin.class);
         when(configBuilderPlugin.applyBolusConstraints(insulin)).thenReturn(insulin);
@@ -0,0 +1,76 @@
+package info.nightscout.androidaps.queue;
+
+import org.junit.Test;
+
+import info.nightscout.androidaps.Constants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionHealthTest {
+    private static final String DRIVER = "TestPump";
+
+    private static long connect(ConnectionHealth health, long time, long connectTime) {
+        health.attemptStarted(DRIVER, time);
+        health.connected(time + connectTime);
+        health.addBytes(100);
+        health.attemptFinished(ConnectionHealth.Cause.NONE, time + connectTime + 1000);
+        return time + connectTime + 1000;
+    }
+
+    @Test
+    public void percentilesAndWatchdogTimeoutTest() {
+        ConnectionHealth health = new ConnectionHealth();
+        long max = Constants.PUMP_MAX_CONNECTION_TIME_IN_SECONDS * 1000L;
+        assertEquals(-1, health.percentile(DRIVER, 50));
+        assertEquals(max, health.watchdogTimeout(DRIVER));
+
+        long time = 1000000;
+        for (int i = 1; i <= 10; i++)
+            time = connect(health, time, i * 1000);
+        assertEquals(5000, health.percentile(DRIVER, 50));
+        assertEquals(9000, health.percentile(DRIVER, 90));
+        assertEquals(10000, health.percentile(DRIVER, 99));
+        assertEquals(1000, health.bytes(DRIVER));
+        // enough data, watchdog timeout follows usual connect time
+        assertEquals(40000, health.watchdogTimeout(DRIVER));
+
+        // history is bounded
+        for (int i = 0; i < ConnectionHealth.HISTORY; i++)
+            time = connect(health, time, 40000);
+        assertEquals(ConnectionHealth.HISTORY, health.attempts(DRIVER).size());
+        assertEquals(max, health.watchdogTimeout(DRIVER));
+    }
+
+    @Test
+    public void backoffTest() {
+        ConnectionHealth health = new ConnectionHealth();
+        long time = connect(health, 1000000, 2000);
+        assertEquals(0, health.retryDelay(DRIVER));
+
+        health.attemptStarted(DRIVER, time);
+        assertTrue(health.inAttempt());
+        assertFalse(health.isAttemptConnected());
+        health.attemptFinished(ConnectionHealth.Cause.FAILED, time + 3000);
+        assertEquals(ConnectionHealth.BACKOFF_BASE, health.retryDelay(DRIVER));
+
+        // starting new attempt while previous one is pending fails the previous one
+        health.attemptStarted(DRIVER, time + 5000);
+        health.attemptStarted(DRIVER, time + 9000);
+        health.attemptFinished(ConnectionHealth.Cause.TIMEOUT, time + 20000);
+        assertEquals(3, health.failures(DRIVER));
+        assertEquals(1, health.failures(DRIVER, ConnectionHealth.Cause.TIMEOUT));
+        assertEquals(4 * ConnectionHealth.BACKOFF_BASE, health.retryDelay(DRIVER));
+
+        for (int i = 0; i < 20; i++) {
+            health.attemptStarted(DRIVER, time + 30000 + i);
+            health.attemptFinished(ConnectionHealth.Cause.DROPPED, time + 30000 + i);
+        }
+        assertEquals(ConnectionHealth.BACKOFF_MAX, health.retryDelay(DRIVER));
+
+        // successful connection resets backoff
+        connect(health, time + 60000, 2000);
+        assertEquals(0, health.retryDelay(DRIVER));
+    }
+}
@@ -0,0 +1,49 @@
+package info.nightscout.androidaps.queue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PreConnectSchedulerTest {
+    private static final long MINUTE = 60 * 1000L;
+
+    @Test
+    public void regularCadenceTest() {
+        PreConnectScheduler scheduler = new PreConnectScheduler();
+        long time = 1500000000000L;
+        // not enough readings yet
+        for (int i = 0; i < 4; i++)
+            scheduler.addReading(time + i * 5 * MINUTE);
+        assertEquals(0, scheduler.cadence());
+
+        // jitter of a few seconds and one missed reading
+        scheduler.addReading(time + 4 * 5 * MINUTE + 7000);
+        scheduler.addReading(time + 6 * 5 * MINUTE - 3000);
+        scheduler.addReading(time + 7 * 5 * MINUTE);
+        scheduler.addReading(time + 8 * 5 * MINUTE + 2000);
+        long cadence = scheduler.cadence();
+        assertEquals(5 * MINUTE, cadence, 10000);
+
+        // duplicates and older readings are ignored
+        assertFalse(scheduler.addReading(time + 8 * 5 * MINUTE + 2000));
+        assertFalse(scheduler.addReading(time));
+        assertEquals(cadence, scheduler.cadence());
+    }
+
+    @Test
+    public void irregularReadingsTest() {
+        PreConnectScheduler scheduler = new PreConnectScheduler();
+        long time = 1500000000000L;
+        long[] offsets = {0, 1, 7, 9, 16, 17, 25, 31, 32, 40};
+        for (long offset : offsets)
+            scheduler.addReading(time + offset * MINUTE);
+        assertEquals(0, scheduler.cadence());
+
+        // backfilled readings every few seconds are not a cadence
+        scheduler = new PreConnectScheduler();
+        for (int i = 0; i < 10; i++)
+            scheduler.addReading(time + i * 1000);
+        assertEquals(0, scheduler.cadence());
+    }
+}
@@ -0,0 +1,64 @@
+package info.nightscout.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ColumnCodecTest {
+
+    @Test
+    public void longsTest() throws Exception {
+        long[] values = {1500000000000L, 1500000060000L, 1500000120000L, 1400000000000L, Long.MIN_VALUE, Long.MAX_VALUE, 0};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnCodec.encodeLongs(values, values.length, out);
+        assertArrayEquals(values, ColumnCodec.decodeLongs(roundTrip(out), values.length));
+
+        // regular 1 minute readings take 3 bytes per value after first one
+        long[] readings = new long[100];
+        for (int i = 0; i < readings.length; i++)
+            readings[i] = 1500000000000L + i * 60000L;
+        out.reset();
+        ColumnCodec.encodeLongs(readings, readings.length, out);
+        assertEquals(6 + 99 * 3, out.size());
+    }
+
+    @Test
+    public void doublesTest() throws Exception {
+        double[] fixed = {100d, 0.05d, 1.5d, -0.1d, 0d};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte encoding = ColumnCodec.encodeDoubles(fixed, fixed.length, out);
+        assertEquals(ColumnCodec.ENCODING_FIXED, encoding);
+        assertArrayEquals(fixed, ColumnCodec.decodeDoubles(roundTrip(out), fixed.length, encoding), 0d);
+
+        double[] raw = {1d / 3, 100d, Double.NaN};
+        out.reset();
+        encoding = ColumnCodec.encodeDoubles(raw, raw.length, out);
+        assertEquals(ColumnCodec.ENCODING_DOUBLE, encoding);
+        assertArrayEquals(raw, ColumnCodec.decodeDoubles(roundTrip(out), raw.length, encoding), 0d);
+    }
+
+    @Test
+    public void booleansAndStringsTest() throws Exception {
+        boolean[] booleans = {true, false, false, true, true, true, false, true, true};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnCodec.encodeBooleans(booleans, booleans.length, out);
+        assertEquals(2, out.size());
+        boolean[] decoded = ColumnCodec.decodeBooleans(roundTrip(out), booleans.length);
+        for (int i = 0; i < booleans.length; i++)
+            assertEquals(booleans[i], decoded[i]);
+
+        String[] strings = {"Site Change", null, "", "über"};
+        out.reset();
+        ColumnCodec.encodeStrings(strings, strings.length, out);
+        assertArrayEquals(strings, ColumnCodec.decodeStrings(roundTrip(out), strings.length));
+    }
+
+    private ByteBuffer roundTrip(ByteArrayOutputStream out) throws Exception {
+        byte[] compressed = ColumnCodec.compress(out.toByteArray(), out.size());
+        return ColumnCodec.decompress(compressed, out.size());
+    }
+}